@@ -1,30 +1,64 @@
 import java.util.List;
 
 // Base AST node interfaces/classes
-interface ASTNode { }
+interface ASTNode {
+    /** Source offset of the node's first character, or -1 if unknown. */
+    int start();
+
+    /** Source offset just past the node's last character, or -1 if unknown. */
+    int end();
+}
 
 interface Statement extends ASTNode { }
 
 interface Expression extends ASTNode { }
 
+// Source span shared by all nodes; set by the SyntaxAnalyzer
+abstract class SpannedNode implements ASTNode {
+    int start = -1;
+    int end = -1;
+    SpanShift shift; // if set, the span is stored without shift.delta (see IncrementalParser)
+
+    public int start() {
+        return shift == null ? start : start + shift.delta;
+    }
+
+    public int end() {
+        return shift == null ? end : end + shift.delta;
+    }
+
+    void setSpan(int start, int end) {
+        this.start = start;
+        this.end = end;
+        this.shift = null;
+    }
+}
+
+// Offset added to the spans of many nodes at once, so moving them all is one addition
+final class SpanShift {
+    int delta;
+}
+
 // Statements
-class Declaration implements Statement {
+class Declaration extends SpannedNode implements Statement {
     public final String varName;
+    public int slot = -1; // frame slot, assigned by name resolution
     public Declaration(String varName) {
         this.varName = varName;
     }
 }
 
-class Assignment implements Statement {
+class Assignment extends SpannedNode implements Statement {
     public final String varName;
     public final Expression expression;
+    public int slot = -1; // frame slot of varName, assigned by name resolution
     public Assignment(String varName, Expression expression) {
         this.varName = varName;
         this.expression = expression;
     }
 }
 
-class IfStatement implements Statement {
+class IfStatement extends SpannedNode implements Statement {
     public final Expression condition;
     public final Block thenBlock;
     public final Block elseBlock; // can be null
@@ -35,7 +69,7 @@ class IfStatement implements Statement {
     }
 }
 
-class WhileStatement implements Statement {
+class WhileStatement extends SpannedNode implements Statement {
     public final Expression condition;
     public final Block body;
     public WhileStatement(Expression condition, Block body) {
@@ -44,28 +78,30 @@ class WhileStatement implements Statement {
     }
 }
 
-class PrintStatement implements Statement {
+class PrintStatement extends SpannedNode implements Statement {
     public final Expression expression;
     public PrintStatement(Expression expression) {
         this.expression = expression;
     }
 }
 
-class Block implements Statement {
+class Block extends SpannedNode implements Statement {
     public final List<Statement> statements;
+    public int slotCount = -1; // on the program root: number of variable slots, set by SemanticAnalyzer
     public Block(List<Statement> statements) {
         this.statements = statements;
     }
 }
 
 // Expressions
-class BinaryExpression implements Expression {
+class BinaryExpression extends SpannedNode implements Expression {
     public enum Operator {
         PLUS, MINUS, MULT, DIV, GREATER, LESS, EQUAL, NOTEQUAL
     }
     public final Expression left;
     public final Operator operator;
     public final Expression right;
+    public boolean shared; // occurs more than once in a DAG built by ExpressionFactory.hashConsing()
 
     public BinaryExpression(Expression left, Operator operator, Expression right) {
         this.left = left;
@@ -74,14 +110,15 @@ class BinaryExpression implements Expression {
     }
 }
 
-class Variable implements Expression {
+class Variable extends SpannedNode implements Expression {
     public final String name;
+    public int slot = -1; // frame slot, assigned by name resolution
     public Variable(String name) {
         this.name = name;
     }
 }
 
-class NumberLiteral implements Expression {
+class NumberLiteral extends SpannedNode implements Expression {
     public final int value;
     public NumberLiteral(int value) {
         this.value = value;
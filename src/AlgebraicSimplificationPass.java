@@ -0,0 +1,63 @@
+/**
+ * AlgebraicSimplificationPass.java
+ * ---------------------------------
+ * Rewrites operations whose result follows from an algebraic identity into a copy:
+ *
+ *   x + 0, 0 + x, x - 0, x * 1, 1 * x, x / 1   ->  x
+ *   x * 0, 0 * x, x - x                        ->  0
+ *   x == x                                     ->  1
+ *   x != x, x < x, x > x                       ->  0
+ *
+ * `x / x` and `0 / x` are kept: they fail at run time when x is 0.
+ */
+
+public class AlgebraicSimplificationPass implements TacPass {
+
+    public String name() {
+        return "algebraic-simplification";
+    }
+
+    public boolean run(TacProgram program) {
+        boolean changed = false;
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            if (!TacProgram.isBinary(opcode)) continue;
+            int result = simplify(program, opcode, program.src1(i), program.src2(i));
+            if (result != TacProgram.NONE) {
+                program.set(i, TacProgram.COPY, program.dest(i), result, TacProgram.NONE);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Returns the operand the operation reduces to, or NONE if no identity applies. */
+    private static int simplify(TacProgram program, int opcode, int left, int right) {
+        boolean same = left == right;
+        switch (opcode) {
+            case TacProgram.ADD:
+                if (isValue(program, right, 0)) return left;
+                if (isValue(program, left, 0)) return right;
+                return TacProgram.NONE;
+            case TacProgram.SUB:
+                if (isValue(program, right, 0)) return left;
+                if (same) return program.constant(0);
+                return TacProgram.NONE;
+            case TacProgram.MUL:
+                if (isValue(program, left, 0) || isValue(program, right, 0)) return program.constant(0);
+                if (isValue(program, right, 1)) return left;
+                if (isValue(program, left, 1)) return right;
+                return TacProgram.NONE;
+            case TacProgram.DIV:
+                return isValue(program, right, 1) ? left : TacProgram.NONE;
+            case TacProgram.EQ:
+                return same ? program.constant(1) : TacProgram.NONE;
+            default: // NE, LT, GT
+                return same ? program.constant(0) : TacProgram.NONE;
+        }
+    }
+
+    private static boolean isValue(TacProgram program, int operand, int value) {
+        return ConstantFoldingPass.isConstant(operand) && program.constantValue(operand) == value;
+    }
+}
@@ -0,0 +1,466 @@
+/**
+ * AstArena.java
+ * --------------
+ * A **flat, array-backed AST**: an alternative to the node classes of ASTNode.java for
+ * large programs. A node is an int index; its kind, operator, children and payload
+ * live in parallel primitive arrays, so a whole program is a few dozen objects however
+ * many nodes it has, and walking it reads the arrays front to back.
+ *
+ * Per node:
+ *
+ *   kind        first          second           payload
+ *   BLOCK       child offset   statement count  -
+ *   DECLARATION -              slot             name ID
+ *   ASSIGNMENT  expression     slot             name ID
+ *   IF          condition      then block       else block or NONE
+ *   WHILE       condition      body             -
+ *   PRINT       expression     -                -
+ *   BINARY      left           right            operator ordinal
+ *   VARIABLE    -              slot             name ID
+ *   NUMBER      -              -                value
+ *
+ * plus the source span (start, end) of every node: 21 bytes per node in all. The statements of a Block are stored
+ * contiguously in a separate child array. Nodes are added children first, so the
+ * operands of an expression sit just before it, and the root Block is the last node.
+ * Names are interned once into the arena's NameTable; slots are resolved in place by
+ * SemanticAnalyzer.analyze(AstArena, List).
+ *
+ * Building:
+ * - parse(cursor, diagnostics) parses top-level statement by top-level statement
+ *   (SyntaxAnalyzer.parseEach) and copies each into the arena as soon as it is complete,
+ *   so the node objects of one statement are garbage before the next one is parsed.
+ * - from(Block) copies an existing tree; toBlock() builds node objects back (for the
+ *   Interpreter, the JvmCompiler and ProgramImage), with spans and slots.
+ *
+ * Reading: kind(node) and the accessors below, or accept(node, visitor), which calls the
+ * Visitor method for the node's kind. An arena is not thread-safe.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class AstArena {
+
+    // Node kinds
+    public static final byte BLOCK = 1;
+    public static final byte DECLARATION = 2;
+    public static final byte ASSIGNMENT = 3;
+    public static final byte IF = 4;
+    public static final byte WHILE = 5;
+    public static final byte PRINT = 6;
+    public static final byte BINARY = 7;
+    public static final byte VARIABLE = 8;
+    public static final byte NUMBER = 9;
+
+    /** No node, e.g. the else block of an if without one. */
+    public static final int NONE = -1;
+
+    private static final BinaryExpression.Operator[] OPERATORS = BinaryExpression.Operator.values();
+
+    /** Index-based visitor; each method gets the node and returns a result of the caller's choice. */
+    public interface Visitor {
+        int visitBlock(int node);
+        int visitDeclaration(int node);
+        int visitAssignment(int node);
+        int visitIf(int node);
+        int visitWhile(int node);
+        int visitPrint(int node);
+        int visitBinary(int node);
+        int visitVariable(int node);
+        int visitNumber(int node);
+    }
+
+    private final NameTable names = new NameTable();
+
+    private byte[] kinds;
+    private int[] first;
+    private int[] second;
+    private int[] payload;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    private int[] children = new int[64]; // statements of every Block, contiguous per Block
+    private int childCount;
+    private int[] pending = new int[64];  // statements of the Blocks being built
+    private int pendingCount;
+    private int root = NONE;
+    private int slotCount = -1;
+
+    // Explicit stacks of add(Expression) and toExpression()
+    private BinaryExpression[] binaries = new BinaryExpression[16];
+    private boolean[] rightStarted = new boolean[16];
+    private int[] operands = new int[17];
+    private Expression[] built = new Expression[16];
+
+    public AstArena() {
+        this(256);
+    }
+
+    /** `capacity`: expected number of nodes; the arrays grow as needed. */
+    public AstArena(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        first = new int[capacity];
+        second = new int[capacity];
+        payload = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    /** Parses a whole program into a new arena, recording every error into `diagnostics`. */
+    public static AstArena parse(TokenCursor tokens, List<Diagnostic> diagnostics) {
+        return parse(tokens, diagnostics, 256);
+    }
+
+    /**
+     * As parse(TokenCursor, List), into an arena sized for `capacity` nodes (a program has
+     * fewer nodes than tokens, and about one per 4 bytes of source).
+     */
+    public static AstArena parse(TokenCursor tokens, List<Diagnostic> diagnostics, int capacity) {
+        AstArena arena = new AstArena(capacity);
+        int start = tokens.peekStart();
+        new SyntaxAnalyzer(tokens).parseEach(diagnostics, arena::addTopLevel);
+        arena.finishProgram(start, tokens.end());
+        return arena;
+    }
+
+    /** Copies a program tree into a new arena. */
+    public static AstArena from(Block program) {
+        AstArena arena = new AstArena();
+        for (Statement statement : program.statements) arena.addTopLevel(statement);
+        arena.finishProgram(program.start(), program.end());
+        arena.slotCount = program.slotCount;
+        return arena;
+    }
+
+    // === Building ===
+
+    /** Copies one top-level statement; finishProgram() adds the root Block around them. */
+    public void addTopLevel(Statement statement) {
+        if (root != NONE) throw new IllegalStateException("The program is complete.");
+        push(add(statement));
+    }
+
+    /** Adds the root Block holding every statement added with addTopLevel(). */
+    public void finishProgram(int start, int end) {
+        root = block(0, start, end);
+    }
+
+    private int add(Statement statement) {
+        if (statement instanceof Declaration) {
+            Declaration declaration = (Declaration) statement;
+            return named(DECLARATION, declaration.varName, NONE, declaration.slot, declaration);
+        } else if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            int expression = add(assignment.expression);
+            return named(ASSIGNMENT, assignment.varName, expression, assignment.slot, assignment);
+        } else if (statement instanceof PrintStatement) {
+            PrintStatement print = (PrintStatement) statement;
+            return node(PRINT, add(print.expression), NONE, 0, print);
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            int condition = add(ifStatement.condition);
+            int thenBlock = add(ifStatement.thenBlock);
+            int elseBlock = ifStatement.elseBlock != null ? add(ifStatement.elseBlock) : NONE;
+            return node(IF, condition, thenBlock, elseBlock, ifStatement);
+        } else if (statement instanceof WhileStatement) {
+            WhileStatement whileStatement = (WhileStatement) statement;
+            int condition = add(whileStatement.condition);
+            return node(WHILE, condition, add(whileStatement.body), 0, whileStatement);
+        }
+        Block block = (Block) statement;
+        int mark = pendingCount;
+        for (Statement child : block.statements) push(add(child));
+        return block(mark, block.start(), block.end());
+    }
+
+    /**
+     * Adds an expression in post-order: left operand, right operand, operator. The binary
+     * nodes waiting for their operands are kept on explicit stacks, not the native one.
+     */
+    private int add(Expression expression) {
+        int top = 0;   // binary nodes on the stack
+        int count = 0; // added operands not yet consumed
+        Expression next = expression;
+        while (true) {
+            while (next instanceof BinaryExpression) {
+                if (top == binaries.length) {
+                    binaries = Arrays.copyOf(binaries, top * 2);
+                    rightStarted = Arrays.copyOf(rightStarted, top * 2);
+                    operands = Arrays.copyOf(operands, top * 2 + 1);
+                }
+                binaries[top] = (BinaryExpression) next;
+                rightStarted[top++] = false;
+                next = ((BinaryExpression) next).left;
+            }
+            operands[count++] = addLeaf(next);
+            while (true) {
+                if (top == 0) return operands[0];
+                BinaryExpression binary = binaries[top - 1];
+                if (!rightStarted[top - 1]) {
+                    rightStarted[top - 1] = true;
+                    next = binary.right;
+                    break;
+                }
+                binaries[--top] = null;
+                count--;
+                operands[count - 1] = node(BINARY, operands[count - 1], operands[count], binary.operator.ordinal(), binary);
+            }
+        }
+    }
+
+    private int addLeaf(Expression expression) {
+        if (expression instanceof Variable) {
+            Variable variable = (Variable) expression;
+            return named(VARIABLE, variable.name, NONE, variable.slot, variable);
+        }
+        return node(NUMBER, NONE, NONE, ((NumberLiteral) expression).value, expression);
+    }
+
+    private int named(byte kind, String name, int child, int slot, ASTNode source) {
+        return node(kind, child, slot, names.intern(name), source);
+    }
+
+    private int node(byte kind, int a, int b, int value, ASTNode source) {
+        return node(kind, a, b, value, source.start(), source.end());
+    }
+
+    private int node(byte kind, int a, int b, int value, int start, int end) {
+        if (size == kinds.length) grow();
+        int node = size++;
+        kinds[node] = kind;
+        first[node] = a;
+        second[node] = b;
+        payload[node] = value;
+        starts[node] = start;
+        ends[node] = end;
+        return node;
+    }
+
+    /** A Block of the statements pushed since `mark`. */
+    private int block(int mark, int start, int end) {
+        int count = pendingCount - mark;
+        if (childCount + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(childCount + count, children.length * 2));
+        }
+        System.arraycopy(pending, mark, children, childCount, count);
+        pendingCount = mark;
+        int node = node(BLOCK, childCount, count, 0, start, end);
+        childCount += count;
+        return node;
+    }
+
+    private void push(int node) {
+        if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingCount++] = node;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        first = Arrays.copyOf(first, capacity);
+        second = Arrays.copyOf(second, capacity);
+        payload = Arrays.copyOf(payload, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+    }
+
+    // === Reading ===
+
+    /** The program Block, or NONE before finishProgram(). */
+    public int root() {
+        return root;
+    }
+
+    /** Number of nodes. */
+    public int size() {
+        return size;
+    }
+
+    public NameTable names() {
+        return names;
+    }
+
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    public int start(int node) {
+        return starts[node];
+    }
+
+    public int end(int node) {
+        return ends[node];
+    }
+
+    public int statementCount(int block) {
+        return second[block];
+    }
+
+    public int statement(int block, int index) {
+        return children[first[block] + index];
+    }
+
+    /** ASSIGNMENT and PRINT: the expression. */
+    public int expression(int node) {
+        return first[node];
+    }
+
+    /** IF and WHILE. */
+    public int condition(int node) {
+        return first[node];
+    }
+
+    public int thenBlock(int ifNode) {
+        return second[ifNode];
+    }
+
+    /** NONE if the if has no else part. */
+    public int elseBlock(int ifNode) {
+        return payload[ifNode];
+    }
+
+    public int body(int whileNode) {
+        return second[whileNode];
+    }
+
+    public BinaryExpression.Operator operator(int binary) {
+        return OPERATORS[payload[binary]];
+    }
+
+    public int left(int binary) {
+        return first[binary];
+    }
+
+    /**
+     * The first node of an expression's subtree. Expressions are stored in post-order, so
+     * the subtree is exactly the nodes firstOf(expression) .. expression.
+     */
+    public int firstOf(int expression) {
+        while (kinds[expression] == BINARY) expression = first[expression];
+        return expression;
+    }
+
+    public int right(int binary) {
+        return second[binary];
+    }
+
+    /** DECLARATION, ASSIGNMENT and VARIABLE: the name's ID in names(). */
+    public int nameId(int node) {
+        return payload[node];
+    }
+
+    public String name(int node) {
+        return names.name(payload[node]);
+    }
+
+    /** NUMBER. */
+    public int value(int node) {
+        return payload[node];
+    }
+
+    /** DECLARATION, ASSIGNMENT and VARIABLE: the resolved slot, or -1. */
+    public int slot(int node) {
+        return second[node];
+    }
+
+    public void setSlot(int node, int slot) {
+        second[node] = slot;
+    }
+
+    /** Number of variable slots of the analyzed program, or -1 if it has not been analyzed. */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    public void setSlotCount(int count) {
+        slotCount = count;
+    }
+
+    /** Calls the visitor method for the node's kind and returns its result. */
+    public int accept(int node, Visitor visitor) {
+        switch (kinds[node]) {
+            case BLOCK: return visitor.visitBlock(node);
+            case DECLARATION: return visitor.visitDeclaration(node);
+            case ASSIGNMENT: return visitor.visitAssignment(node);
+            case IF: return visitor.visitIf(node);
+            case WHILE: return visitor.visitWhile(node);
+            case PRINT: return visitor.visitPrint(node);
+            case BINARY: return visitor.visitBinary(node);
+            case VARIABLE: return visitor.visitVariable(node);
+            case NUMBER: return visitor.visitNumber(node);
+            default: throw new IllegalStateException("Unknown node kind " + kinds[node] + " at " + node);
+        }
+    }
+
+    // === Adapter to the node classes ===
+
+    /** The program as a tree of node objects, with the arena's spans and slots. */
+    public Block toBlock() {
+        Block program = toBlock(root);
+        program.slotCount = slotCount;
+        return program;
+    }
+
+    private Block toBlock(int block) {
+        int count = statementCount(block);
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) statements.add(toStatement(statement(block, i)));
+        return spanned(new Block(statements), block);
+    }
+
+    private Statement toStatement(int node) {
+        switch (kinds[node]) {
+            case DECLARATION: {
+                Declaration declaration = new Declaration(name(node));
+                declaration.slot = slot(node);
+                return spanned(declaration, node);
+            }
+            case ASSIGNMENT: {
+                Assignment assignment = new Assignment(name(node), toExpression(expression(node)));
+                assignment.slot = slot(node);
+                return spanned(assignment, node);
+            }
+            case PRINT:
+                return spanned(new PrintStatement(toExpression(expression(node))), node);
+            case IF:
+                return spanned(new IfStatement(toExpression(condition(node)), toBlock(thenBlock(node)),
+                        elseBlock(node) != NONE ? toBlock(elseBlock(node)) : null), node);
+            case WHILE:
+                return spanned(new WhileStatement(toExpression(condition(node)), toBlock(body(node))), node);
+            default:
+                return toBlock(node);
+        }
+    }
+
+    /** Builds the nodes of an expression in stored (post-)order, each operator from the last two results. */
+    private Expression toExpression(int node) {
+        int count = 0;
+        for (int i = firstOf(node); i <= node; i++) {
+            Expression expression;
+            if (kinds[i] == BINARY) {
+                count -= 2;
+                expression = spanned(new BinaryExpression(built[count], operator(i), built[count + 1]), i);
+                built[count + 1] = null;
+            } else if (kinds[i] == VARIABLE) {
+                Variable variable = new Variable(name(i));
+                variable.slot = slot(i);
+                expression = spanned(variable, i);
+            } else {
+                expression = spanned(new NumberLiteral(value(i)), i);
+            }
+            if (count == built.length) built = Arrays.copyOf(built, count * 2);
+            built[count++] = expression;
+        }
+        Expression expression = built[0];
+        built[0] = null;
+        return expression;
+    }
+
+    private <T extends SpannedNode> T spanned(T node, int index) {
+        node.setSpan(starts[index], ends[index]);
+        return node;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * BackendEquivalenceCheck.java
+ * -----------------------------
+ * **Differential test** of every way MiniLang can be compiled and run: each must print
+ * exactly what the Interpreter prints for the same program.
+ *
+ * Programs come from ProgramGenerator (seeds seed, seed+1, ...) and from files. Each one
+ * is run by the Interpreter over the plain AST (the reference) and then:
+ * - vm:          IntermediateCodeGenerator -> BytecodeCompiler -> RegisterVM
+ * - optimized:   the same after PassManager.standard()
+ * - regalloc:    optimized, then RegisterAllocator over temporaries and user variables
+ *                with MAX_REGISTERS registers, so that values are spilled
+ * - jvm:         JvmBackend (the AST compiled to a hidden class)
+ * - dag:         hash-consed AST on the Interpreter, and on the VM with shared values reused
+ * - arena:       AstArena parsed from a StreamingLexer, analyzed and translated in place
+ * - pipelined:   PipelinedFrontEnd over the file
+ * - image:       ProgramImage written and mapped back; its AST on the Interpreter and
+ *                its code on the VM
+ * - stream:      StreamingLexer over the memory-mapped file with a STREAM_WINDOW-char
+ *                window, so the window is refilled mid-token
+ * - regex:       the regex-based scanner instead of the DFA (LexicalAnalyzer.tokenizeWithRegex)
+ *
+ * A file may also declare its expected output in a header comment, one printed value per
+ * word, which the reference must match:
+ *
+ *   // output: 50000
+ *
+ * The JVM backend rejects programs larger than one method allows; that is reported as
+ * skipped, not as a difference. Any other error or difference fails the run (status 1).
+ *
+ * Usage: java BackendEquivalenceCheck [--seed=N] [--count=N] [file ...]
+ *
+ * Without files, every `.minilang` file under `tests/` is checked too.
+ */
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BackendEquivalenceCheck {
+
+    public static final int MAX_REGISTERS = 3;
+    public static final int STREAM_WINDOW = 64;
+
+    // ProgramGenerator settings: small programs, but every statement kind and nesting
+    private static final int STATEMENTS = 40;
+    private static final int DEPTH = 3;
+    private static final int EXPRESSIONS = 4;
+
+    private static final Pattern OUTPUT = Pattern.compile("//\\s*output:(.*)");
+    private static final String TOO_LARGE = "JVM Backend Error: Program is too large";
+
+    /** One way of compiling and running a program, printing to `out`. */
+    private interface Way {
+        void run(Writer out) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        int count = 10;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+            else if (arg.startsWith("--count=")) count = Integer.parseInt(arg.substring("--count=".length()));
+            else if (!arg.startsWith("--")) files.add(Paths.get(arg));
+            else {
+                System.err.println("Usage: java BackendEquivalenceCheck [--seed=N] [--count=N] [file ...]");
+                System.exit(2);
+            }
+        }
+        if (files.isEmpty() && Files.isDirectory(Paths.get("tests"))) {
+            try (Stream<Path> tree = Files.walk(Paths.get("tests"))) {
+                files = tree.filter(file -> file.toString().endsWith(".minilang")).sorted().collect(Collectors.toList());
+            }
+        }
+
+        int failed = 0;
+        for (int i = 0; i < count; i++) {
+            String source = new ProgramGenerator(seed + i, STATEMENTS, DEPTH, EXPRESSIONS).generate();
+            if (!check("seed " + (seed + i), source)) failed++;
+        }
+        for (Path file : files) {
+            if (!check(file.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8))) failed++;
+        }
+
+        int checked = count + files.size();
+        if (failed > 0) {
+            System.out.println(" Equivalence Check: " + failed + " of " + checked + " programs FAILED.");
+            System.exit(1);
+        }
+        System.out.println(" Equivalence Check: Passed (" + checked + " programs).");
+    }
+
+    /** Runs one program every way; prints one line, or one per difference. */
+    private static boolean check(String name, String source) throws IOException {
+        Path file = Files.createTempFile("equivalence", ".minilang");
+        Path image = Files.createTempFile("equivalence", ".mli");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            String reference = output(out -> new Interpreter(parse(source), out).run());
+            boolean passed = true;
+            String declared = declaredOutput(source);
+            if (declared != null && !declared.equals(reference)) {
+                System.out.println(" " + name + ": the interpreter printed " + summary(reference)
+                        + ", the file declares " + summary(declared));
+                passed = false;
+            }
+
+            int skipped = 0;
+            Map<String, Way> ways = ways(source, file, image);
+            for (Map.Entry<String, Way> way : ways.entrySet()) {
+                String output = output(way.getValue());
+                if (output.startsWith("error: " + TOO_LARGE)) {
+                    skipped++;
+                } else if (!output.equals(reference)) {
+                    System.out.println(" " + name + ": " + way.getKey() + " printed " + summary(output)
+                            + ", the interpreter " + summary(reference));
+                    passed = false;
+                }
+            }
+            if (passed) {
+                System.out.println(" " + name + ": " + (ways.size() - skipped) + " ways agree"
+                        + (skipped > 0 ? " (" + skipped + " skipped: too large for the JVM backend)" : "")
+                        + ", " + lines(reference) + " lines of output.");
+            }
+            return passed;
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(image);
+        }
+    }
+
+    private static Map<String, Way> ways(String source, Path file, Path image) {
+        Map<String, Way> ways = new LinkedHashMap<>();
+        ways.put("vm", out -> vm(generate(parse(source)), out));
+        ways.put("optimized", out -> {
+            TacProgram code = generate(parse(source));
+            PassManager.standard().run(code);
+            vm(code, out);
+        });
+        ways.put("regalloc", out -> {
+            TacProgram code = generate(parse(source));
+            PassManager.standard().run(code);
+            new RegisterAllocator(code, true, MAX_REGISTERS).allocate();
+            vm(code, out);
+        });
+        ways.put("jvm", out -> new JvmBackend(parse(source), out).run());
+        ways.put("dag interpreter", out -> new Interpreter(parse(source, ExpressionFactory.hashConsing()), out).run());
+        ways.put("dag vm", out -> vm(new IntermediateCodeGenerator(
+                parse(source, ExpressionFactory.hashConsing()), true).generate(), out));
+        ways.put("arena", out -> {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            try (StreamingLexer lexer = StreamingLexer.wrap(source.getBytes(StandardCharsets.UTF_8), diagnostics)) {
+                AstArena arena = AstArena.parse(lexer, diagnostics);
+                if (diagnostics.isEmpty()) new SemanticAnalyzer().analyze(arena, diagnostics);
+                failOn(diagnostics);
+                vm(new IntermediateCodeGenerator(arena).generate(), out);
+            }
+        });
+        ways.put("pipelined", out -> {
+            PipelinedFrontEnd.Result result = PipelinedFrontEnd.compile(file);
+            failOn(result.diagnostics);
+            vm(result.code, out);
+        });
+        ways.put("image ast", out -> {
+            Block program = parse(source);
+            ProgramImage.write(image, program, generate(program));
+            new Interpreter(ProgramImage.open(image).ast(), out).run();
+        });
+        ways.put("image code", out -> {
+            Block program = parse(source);
+            ProgramImage.write(image, program, generate(program));
+            vm(ProgramImage.open(image).code(), out);
+        });
+        ways.put("stream", out -> {
+            try (StreamingLexer lexer = StreamingLexer.open(file, STREAM_WINDOW)) {
+                vm(generate(analyze(lexer, ExpressionFactory.plain(), new ArrayList<>())), out);
+            }
+        });
+        ways.put("regex", out -> {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            TokenStream tokens = LexicalAnalyzer.tokenizeToStream(source, diagnostics, true);
+            new Interpreter(analyze(tokens.cursor(), ExpressionFactory.plain(), diagnostics), out).run();
+        });
+        return ways;
+    }
+
+    // === Front end and backends ===
+
+    private static Block parse(String source) {
+        return parse(source, ExpressionFactory.plain());
+    }
+
+    private static Block parse(String source, ExpressionFactory expressions) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        TokenStream tokens = LexicalAnalyzer.tokenizeToStream(source, diagnostics, false);
+        return analyze(tokens.cursor(), expressions, diagnostics);
+    }
+
+    private static Block analyze(TokenCursor tokens, ExpressionFactory expressions, List<Diagnostic> diagnostics) {
+        Block program = new SyntaxAnalyzer(tokens, expressions).parse(diagnostics);
+        if (diagnostics.isEmpty()) new SemanticAnalyzer().analyze(program, diagnostics);
+        failOn(diagnostics);
+        return program;
+    }
+
+    private static void failOn(List<Diagnostic> diagnostics) {
+        if (!diagnostics.isEmpty()) throw new RuntimeException(diagnostics.get(0).toString());
+    }
+
+    private static TacProgram generate(Block program) {
+        return new IntermediateCodeGenerator(program).generate();
+    }
+
+    private static void vm(TacProgram code, Writer out) throws IOException {
+        new RegisterVM(new BytecodeCompiler(code).compile(), out).run();
+    }
+
+    /** The output of one way, or "error: message" if it failed. */
+    private static String output(Way way) throws IOException {
+        StringWriter out = new StringWriter();
+        try {
+            way.run(out);
+        } catch (RuntimeException e) {
+            return "error: " + e.getMessage();
+        }
+        return out.toString();
+    }
+
+    // === Reporting ===
+
+    /** The output declared by an `// output:` header line, or null. */
+    private static String declaredOutput(String source) {
+        for (String line : source.split("\n", 20)) {
+            Matcher matcher = OUTPUT.matcher(line);
+            if (matcher.find()) {
+                StringBuilder output = new StringBuilder();
+                for (String value : matcher.group(1).trim().split("\\s+")) {
+                    if (!value.isEmpty()) output.append(value).append('\n');
+                }
+                return output.toString();
+            }
+        }
+        return null;
+    }
+
+    private static int lines(String output) {
+        int lines = 0;
+        for (int i = 0; i < output.length(); i++) {
+            if (output.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    /** The output in a few words: its line count and how it starts. */
+    private static String summary(String output) {
+        if (output.startsWith("error: ")) return "\"" + output + "\"";
+        String head = output.length() > 40 ? output.substring(0, 40) + "..." : output;
+        return lines(output) + " lines \"" + head.replace("\n", " ") + "\"";
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * BatchCompiler.java
+ * -------------------
+ * Compiles **many .minilang files in parallel**, each with its own CompilerPipeline
+ * run, and reports the results per file.
+ *
+ * Usage: java BatchCompiler [options] <input>...
+ *
+ * Inputs:
+ * - a directory: every `*.minilang` file below it;
+ * - a glob, e.g. `programs/**.minilang` (`**` crosses directories; quote the glob so
+ *   the shell leaves it alone);
+ * - `@manifest`: a text file listing one path per line (blank lines and lines starting
+ *   with `#` are skipped; relative paths are relative to the manifest);
+ * - a single file.
+ *
+ * Options:
+ * - `--threads=N`: size of the worker pool (default: available processors).
+ * - `--optimize`: run PassManager.standard() on every program.
+ * - `--out=DIR`: write each program's three-address code to DIR/<path>.tac.
+ * - `--cache=DIR`: keep results in a CompilationCache in DIR; unchanged files are not
+ *   compiled again on the next run. `--cache-size=MB` bounds it (default 256 MB).
+ * - `--stats=FILE`: record CompilerMetrics for every file and write them to FILE as
+ *   JSON lines, one object per file in input order.
+ * - `--scaling`: compile the batch with 1, 2, 4, ... threads up to the pool size and
+ *   report the throughput of each, to check how it scales with the core count.
+ *
+ * Files are compiled on a ForkJoinPool, one task per file. Results come back in input
+ * order; every error of every failed file is listed as `file:line:column: message`,
+ * followed by a summary. A failing file never stops the others: the pipeline turns
+ * every error into a result. The exit status is 1 if any file failed.
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public class BatchCompiler {
+
+    private final CompilerPipeline pipeline;
+    private final Path outputDirectory; // null = do not write code
+
+    public BatchCompiler(CompilerPipeline pipeline, Path outputDirectory) {
+        this.pipeline = pipeline;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean optimize = false;
+        boolean scaling = false;
+        Path out = null;
+        Path cacheDirectory = null;
+        Path stats = null;
+        long cacheBytes = CompilationCache.DEFAULT_MAX_BYTES;
+        List<String> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.equals("--optimize")) {
+                optimize = true;
+            } else if (arg.equals("--scaling")) {
+                scaling = true;
+            } else if (arg.startsWith("--out=")) {
+                out = Paths.get(arg.substring("--out=".length()));
+            } else if (arg.startsWith("--cache=")) {
+                cacheDirectory = Paths.get(arg.substring("--cache=".length()));
+            } else if (arg.startsWith("--stats=")) {
+                stats = Paths.get(arg.substring("--stats=".length()));
+            } else if (arg.startsWith("--cache-size=")) {
+                cacheBytes = Long.parseLong(arg.substring("--cache-size=".length())) * 1024 * 1024;
+            } else {
+                inputs.add(arg);
+            }
+        }
+        if (inputs.isEmpty() || threads < 1 || cacheBytes <= 0) {
+            System.err.println("Usage: java BatchCompiler [--threads=N] [--optimize] [--out=DIR] [--cache=DIR [--cache-size=MB]] [--stats=FILE] [--scaling] <directory | glob | @manifest | file>...");
+            System.exit(2);
+        }
+
+        try {
+            List<Path> files = new ArrayList<>();
+            for (String input : inputs) files.addAll(expand(input));
+            if (files.isEmpty()) {
+                System.err.println(" Batch Error: No .minilang files found.");
+                System.exit(2);
+            }
+
+            CompilationCache cache = cacheDirectory != null ? new CompilationCache(cacheDirectory, cacheBytes) : null;
+            BatchCompiler batch = new BatchCompiler(new CompilerPipeline(optimize, cache, stats != null), out);
+            if (scaling) {
+                batch.measureScaling(files, threads);
+                return;
+            }
+            long start = System.nanoTime();
+            List<CompilationResult> results = batch.compile(files, threads);
+            long nanos = System.nanoTime() - start;
+            int failed = report(results, nanos, threads);
+            if (stats != null) writeStats(results, stats);
+            if (cache != null) {
+                System.out.printf(" Cache: %d hits, %d misses, %.1f MB in %s%n",
+                        cache.hits(), cache.misses(), cache.sizeInBytes() / (1024.0 * 1024), cacheDirectory);
+            }
+            System.exit(failed > 0 ? 1 : 0);
+        } catch (IOException e) {
+            System.err.println(" File Read Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /** Compiles the files on a pool of the given size; results are in the order of the files. */
+    public List<CompilationResult> compile(List<Path> files, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Callable<CompilationResult>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) tasks.add(() -> compileOne(file));
+            List<CompilationResult> results = new ArrayList<>(files.size());
+            for (Future<CompilationResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch Error: Interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Batch Error: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private CompilationResult compileOne(Path file) {
+        CompilationResult result = pipeline.compile(file);
+        if (result.succeeded() && outputDirectory != null) {
+            long start = System.nanoTime();
+            try {
+                write(file, result.code);
+            } catch (IOException | UncheckedIOException e) {
+                return CompilationResult.failure(file, "File Write Error: " + e.getMessage(),
+                        result.nanos + System.nanoTime() - start);
+            }
+        }
+        return result;
+    }
+
+    private void write(Path file, TacProgram code) throws IOException {
+        Path relative = file.isAbsolute() ? file.getFileName() : file.normalize();
+        Path target = outputDirectory.resolve(relative.toString().replaceAll("\\.minilang$", "") + ".tac");
+        if (target.getParent() != null) Files.createDirectories(target.getParent());
+        try (Writer writer = OutputSink.file(target)) {
+            code.writeTo(writer);
+        }
+    }
+
+    /** Prints the failures and a summary; returns the number of failed files. */
+    private static int report(List<CompilationResult> results, long nanos, int threads) {
+        int failed = 0;
+        long instructions = 0;
+        long cpuNanos = 0;
+        for (CompilationResult result : results) {
+            cpuNanos += result.nanos;
+            if (result.succeeded()) {
+                instructions += result.code.size();
+            } else {
+                failed++;
+                for (Diagnostic diagnostic : result.diagnostics) {
+                    System.err.println(" " + result.file + (diagnostic.line > 0 ? ":" : ": ") + diagnostic);
+                }
+            }
+        }
+        System.out.printf(" Compiled %d files: %d succeeded, %d failed, %d instructions%n",
+                results.size(), results.size() - failed, failed, instructions);
+        System.out.printf(" %.1f ms with %d thread%s (%.1f ms of compile time), %.0f files/s%n",
+                nanos / 1e6, threads, threads == 1 ? "" : "s", cpuNanos / 1e6, results.size() * 1e9 / nanos);
+        return failed;
+    }
+
+    /** Writes the metrics of every result as one JSON object per line. */
+    private static void writeStats(List<CompilationResult> results, Path target) throws IOException {
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(target, StandardCharsets.UTF_8), 1 << 16)) {
+            for (CompilationResult result : results) {
+                if (result.metrics == null) continue;
+                writer.write(result.metrics.toJson());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Compiles the batch with 1, 2, 4, ... threads and prints throughput and speedup.
+     * After a warm-up (class loading, JIT), each count takes the best of three runs.
+     */
+    private void measureScaling(List<Path> files, int maxThreads) {
+        for (int k = 0; k < 3; k++) compile(files, maxThreads);
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) counts.add(threads);
+        counts.add(maxThreads);
+
+        System.out.printf(" %-8s %12s %12s %9s%n", "threads", "time (ms)", "files/s", "speedup");
+        double baseline = 0;
+        for (int threads : counts) {
+            long best = Long.MAX_VALUE;
+            for (int k = 0; k < 3; k++) {
+                long start = System.nanoTime();
+                compile(files, threads);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double perSecond = files.size() * 1e9 / best;
+            if (threads == 1) baseline = perSecond;
+            System.out.printf(" %-8d %12.1f %12.0f %8.2fx%n", threads, best / 1e6, perSecond, perSecond / baseline);
+        }
+        System.out.println(" Available processors: " + Runtime.getRuntime().availableProcessors());
+    }
+
+    // === Inputs ===
+
+    /** Source files named by one input: a directory, a glob, an @manifest or a file. */
+    static List<Path> expand(String input) throws IOException {
+        if (input.startsWith("@")) {
+            Path manifest = Paths.get(input.substring(1));
+            Path base = manifest.toAbsolutePath().getParent();
+            List<Path> files = new ArrayList<>();
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                Path path = Paths.get(line);
+                files.add(path.isAbsolute() ? path : base.resolve(path).normalize());
+            }
+            return files;
+        }
+        if (isGlob(input)) {
+            // Walk from the longest leading part without wildcards and match the rest
+            String normalized = input.replace('\\', '/');
+            int firstWildcard = 0;
+            while (!"*?[{".contains(String.valueOf(normalized.charAt(firstWildcard)))) firstWildcard++;
+            int cut = normalized.lastIndexOf('/', firstWildcard);
+            Path root = cut < 0 ? Paths.get(".") : Paths.get(normalized.substring(0, cut + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(cut + 1));
+            return walk(root, file -> matcher.matches(root.relativize(file)));
+        }
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) {
+            return walk(path, file -> file.getFileName().toString().endsWith(".minilang"));
+        }
+        List<Path> single = new ArrayList<>();
+        single.add(path);
+        return single;
+    }
+
+    private static boolean isGlob(String input) {
+        for (char c : "*?[{".toCharArray()) {
+            if (input.indexOf(c) >= 0) return true;
+        }
+        return false;
+    }
+
+    private static List<Path> walk(Path root, Predicate<Path> accept) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(root)) return files;
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile).filter(accept).sorted().forEach(files::add);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * BytecodeCompiler.java
+ * ----------------------
+ * Translates three-address code (a TacProgram) into register bytecode for the RegisterVM.
+ *
+ * - Variables, temporaries and constants each get a register of their own.
+ * - Labels disappear: a first pass computes the address of every label, the second
+ *   pass emits the instructions with jump targets filled in.
+ * - A comparison whose result is only used by the following `ifFalse` (it is dead once
+ *   the jump has read it) is fused with it into a single compare-and-branch instruction
+ *   (JLE/JGE/JNE/JEQ).
+ */
+
+public class BytecodeCompiler {
+
+    private final TacProgram tac;
+    private int tempBase;
+    private int constBase;
+    private boolean[] fused; // comparisons folded into the following jump
+
+    public BytecodeCompiler(TacProgram tac) {
+        this.tac = tac;
+    }
+
+    public BytecodeProgram compile() {
+        tempBase = tac.variableCount();
+        constBase = tempBase + tac.tempCount();
+        int registerCount = constBase + tac.constantCount();
+
+        int[] initial = new int[registerCount];
+        String[] names = new String[registerCount];
+        for (int i = 0; i < tac.variableCount(); i++) {
+            names[i] = tac.variableName(i);
+        }
+        for (int t = 1; t <= tac.tempCount(); t++) {
+            names[tempBase + t - 1] = "t" + t;
+        }
+        for (int c = 0; c < tac.constantCount(); c++) {
+            initial[constBase + c] = tac.constantAt(c);
+            names[constBase + c] = "#" + tac.constantAt(c);
+        }
+
+        findFusedComparisons();
+
+        // Pass 1: instruction addresses and label targets
+        int[] labelAddress = new int[tac.labelCount() + 1];
+        int pc = 0;
+        for (int i = 0; i < tac.size(); i++) {
+            int opcode = tac.opcode(i);
+            if (opcode == TacProgram.LABEL) {
+                labelAddress[TacProgram.index(tac.dest(i))] = pc;
+            } else if (!fused[i]) {
+                pc += BytecodeProgram.length(bytecodeFor(i));
+            }
+        }
+        int[] code = new int[pc + 1];
+
+        // Pass 2: emit
+        pc = 0;
+        for (int i = 0; i < tac.size(); i++) {
+            int opcode = tac.opcode(i);
+            if (opcode == TacProgram.LABEL || fused[i]) continue;
+            int op = bytecodeFor(i);
+            switch (op) {
+                case BytecodeProgram.MOV:
+                    code[pc] = op | (register(tac.dest(i)) << 8);
+                    code[pc + 1] = register(tac.src1(i));
+                    break;
+                case BytecodeProgram.PRINT:
+                    code[pc] = op | (register(tac.src1(i)) << 8);
+                    break;
+                case BytecodeProgram.JMP:
+                    code[pc] = op;
+                    code[pc + 1] = labelAddress[TacProgram.index(tac.dest(i))];
+                    break;
+                case BytecodeProgram.JZ:
+                    code[pc] = op | (register(tac.src1(i)) << 8);
+                    code[pc + 1] = labelAddress[TacProgram.index(tac.dest(i))];
+                    break;
+                case BytecodeProgram.JLE:
+                case BytecodeProgram.JGE:
+                case BytecodeProgram.JNE:
+                case BytecodeProgram.JEQ:
+                    code[pc] = op | (register(tac.src1(i - 1)) << 8);
+                    code[pc + 1] = register(tac.src2(i - 1));
+                    code[pc + 2] = labelAddress[TacProgram.index(tac.dest(i))];
+                    break;
+                default:
+                    code[pc] = op | (register(tac.dest(i)) << 8);
+                    code[pc + 1] = register(tac.src1(i));
+                    code[pc + 2] = register(tac.src2(i));
+            }
+            pc += BytecodeProgram.length(op);
+        }
+        code[pc] = BytecodeProgram.HALT;
+
+        return new BytecodeProgram(code, initial, names);
+    }
+
+    /** Marks comparisons `x = a op b` directly followed by `ifFalse x` where x is dead after the jump. */
+    private void findFusedComparisons() {
+        fused = new boolean[tac.size()];
+        Liveness liveness = null;
+        for (int i = 0; i + 1 < tac.size(); i++) {
+            int opcode = tac.opcode(i);
+            boolean comparison = opcode >= TacProgram.GT && opcode <= TacProgram.NE;
+            if (!comparison || tac.opcode(i + 1) != TacProgram.JUMP_IF_FALSE || tac.src1(i + 1) != tac.dest(i)) {
+                continue;
+            }
+            if (liveness == null) liveness = new Liveness(new ControlFlowGraph(tac));
+            int jumpBlock = liveness.cfg().blockOf(i + 1);
+            fused[i] = !liveness.liveOut(jumpBlock).get(tac.valueId(tac.dest(i)));
+        }
+    }
+
+    /** Bytecode opcode for TAC instruction i (which must not be a LABEL). */
+    private int bytecodeFor(int i) {
+        switch (tac.opcode(i)) {
+            case TacProgram.ADD: return BytecodeProgram.ADD;
+            case TacProgram.SUB: return BytecodeProgram.SUB;
+            case TacProgram.MUL: return BytecodeProgram.MUL;
+            case TacProgram.DIV: return BytecodeProgram.DIV;
+            case TacProgram.GT: return BytecodeProgram.GT;
+            case TacProgram.LT: return BytecodeProgram.LT;
+            case TacProgram.EQ: return BytecodeProgram.EQ;
+            case TacProgram.NE: return BytecodeProgram.NE;
+            case TacProgram.COPY: return BytecodeProgram.MOV;
+            case TacProgram.PRINT: return BytecodeProgram.PRINT;
+            case TacProgram.JUMP: return BytecodeProgram.JMP;
+            case TacProgram.JUMP_IF_FALSE:
+                if (i > 0 && fused[i - 1]) {
+                    switch (tac.opcode(i - 1)) {
+                        case TacProgram.GT: return BytecodeProgram.JLE;
+                        case TacProgram.LT: return BytecodeProgram.JGE;
+                        case TacProgram.EQ: return BytecodeProgram.JNE;
+                        default: return BytecodeProgram.JEQ;
+                    }
+                }
+                return BytecodeProgram.JZ;
+            default:
+                throw new IllegalArgumentException("No bytecode for TAC opcode " + tac.opcode(i));
+        }
+    }
+
+    private int register(int operand) {
+        switch (TacProgram.kind(operand)) {
+            case TacProgram.VAR: return TacProgram.index(operand);
+            case TacProgram.TEMP: return tempBase + TacProgram.index(operand) - 1;
+            case TacProgram.CONST: return constBase + TacProgram.index(operand);
+            default: throw new IllegalArgumentException("Operand is not a value: " + operand);
+        }
+    }
+}
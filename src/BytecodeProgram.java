@@ -0,0 +1,123 @@
+/**
+ * BytecodeProgram.java
+ * ---------------------
+ * Compact **register bytecode** for the RegisterVM, produced by the BytecodeCompiler.
+ *
+ * Encoding (everything lives in one int[]):
+ *   word 0:  opcode in the low 8 bits, operand A in the upper 24 bits
+ *   word 1+: further operands (registers or jump targets), one per word
+ *
+ *   MOV  A, B         rA = rB                          2 words
+ *   ADD  A, B, C      rA = rB + rC   (also SUB .. NE)  3 words
+ *   PRINT A           print rA                         1 word
+ *   JMP  T            goto T                           2 words
+ *   JZ   A, T         if rA == 0 goto T                2 words
+ *   JLE  A, B, T      if rA <= rB goto T               3 words  (fused "ifFalse a > b")
+ *   JGE  A, B, T      if rA >= rB goto T               3 words  (fused "ifFalse a < b")
+ *   JNE  A, B, T      if rA != rB goto T               3 words  (fused "ifFalse a == b")
+ *   JEQ  A, B, T      if rA == rB goto T               3 words  (fused "ifFalse a != b")
+ *   HALT                                               1 word
+ *
+ * Registers hold variables first, then temporaries, then constants. Constant registers
+ * are preloaded from `initialRegisters`, so no instruction needs an immediate operand.
+ */
+
+public class BytecodeProgram {
+
+    // === Opcodes ===
+    public static final int MOV = 0;
+    public static final int ADD = 1;
+    public static final int SUB = 2;
+    public static final int MUL = 3;
+    public static final int DIV = 4;
+    public static final int GT = 5;
+    public static final int LT = 6;
+    public static final int EQ = 7;
+    public static final int NE = 8;
+    public static final int PRINT = 9;
+    public static final int JMP = 10;
+    public static final int JZ = 11;
+    public static final int JLE = 12;
+    public static final int JGE = 13;
+    public static final int JNE = 14;
+    public static final int JEQ = 15;
+    public static final int HALT = 16;
+
+    static final String[] MNEMONICS = {
+            "MOV", "ADD", "SUB", "MUL", "DIV", "GT", "LT", "EQ", "NE",
+            "PRINT", "JMP", "JZ", "JLE", "JGE", "JNE", "JEQ", "HALT"
+    };
+
+    public final int[] code;
+    public final int[] initialRegisters;
+    private final String[] registerNames;
+
+    public BytecodeProgram(int[] code, int[] initialRegisters, String[] registerNames) {
+        this.code = code;
+        this.initialRegisters = initialRegisters;
+        this.registerNames = registerNames;
+    }
+
+    public int registerCount() {
+        return initialRegisters.length;
+    }
+
+    /** Number of words taken by the instruction with this opcode. */
+    public static int length(int opcode) {
+        switch (opcode) {
+            case PRINT:
+            case HALT:
+                return 1;
+            case MOV:
+            case JMP:
+            case JZ:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    /** Returns a readable listing: one instruction per line, prefixed with its address. */
+    public String disassemble() {
+        StringBuilder out = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            int word = code[pc];
+            int opcode = word & 0xFF;
+            int a = word >>> 8;
+            out.append(String.format("%04d  %-5s ", pc, MNEMONICS[opcode]));
+            switch (opcode) {
+                case MOV:
+                    out.append(register(a)).append(", ").append(register(code[pc + 1]));
+                    break;
+                case PRINT:
+                    out.append(register(a));
+                    break;
+                case JMP:
+                    out.append(code[pc + 1]);
+                    break;
+                case JZ:
+                    out.append(register(a)).append(", ").append(code[pc + 1]);
+                    break;
+                case JLE:
+                case JGE:
+                case JNE:
+                case JEQ:
+                    out.append(register(a)).append(", ").append(register(code[pc + 1])).append(", ").append(code[pc + 2]);
+                    break;
+                case HALT:
+                    break;
+                default:
+                    out.append(register(a)).append(", ").append(register(code[pc + 1]))
+                            .append(", ").append(register(code[pc + 2]));
+            }
+            out.append('\n');
+            pc += length(opcode);
+        }
+        return out.toString();
+    }
+
+    private String register(int index) {
+        return "r" + index + "(" + registerNames[index] + ")";
+    }
+}
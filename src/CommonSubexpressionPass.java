@@ -0,0 +1,103 @@
+/**
+ * CommonSubexpressionPass.java
+ * -----------------------------
+ * Local **common-subexpression elimination** by value numbering inside each basic block.
+ *
+ * Every binary operation is recorded under the key (opcode, left, right), with the
+ * operands of commutative operators (+, *, ==, !=) put in a fixed order. When the same
+ * key appears again and neither operand nor the holder of the earlier result has been
+ * reassigned in between, the operation is replaced by a copy of that result:
+ *
+ *   t1 = a * b            t1 = a * b
+ *   t2 = a * b    ->      t2 = t1
+ *
+ * CopyPropagationPass and DeadCodeEliminationPass then remove the copy.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CommonSubexpressionPass implements TacPass {
+
+    public String name() {
+        return "common-subexpression-elimination";
+    }
+
+    public boolean run(TacProgram program) {
+        int[] version = new int[program.valueCount()];
+        Map<Key, int[]> available = new HashMap<>(); // key -> {result, left version, right version, result version}
+        boolean changed = false;
+
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            if (opcode == TacProgram.LABEL || opcode == TacProgram.JUMP || opcode == TacProgram.JUMP_IF_FALSE) {
+                if (!available.isEmpty()) available = new HashMap<>();
+                continue;
+            }
+            if (!TacProgram.hasDest(opcode)) continue;
+
+            int dest = program.dest(i);
+            int destId = program.valueId(dest);
+            if (opcode == TacProgram.COPY) {
+                version[destId]++;
+                continue;
+            }
+
+            int left = program.src1(i);
+            int right = program.src2(i);
+            if (isCommutative(opcode) && left > right) {
+                int swap = left;
+                left = right;
+                right = swap;
+            }
+            Key key = new Key(opcode, left, right);
+            int leftVersion = versionOf(program, left, version);
+            int rightVersion = versionOf(program, right, version);
+            int[] earlier = available.get(key);
+            if (earlier != null && earlier[1] == leftVersion && earlier[2] == rightVersion
+                    && earlier[3] == versionOf(program, earlier[0], version)) {
+                program.set(i, TacProgram.COPY, dest, earlier[0], TacProgram.NONE);
+                version[destId]++;
+                changed = true;
+                continue;
+            }
+            version[destId]++;
+            available.put(key, new int[] {dest, leftVersion, rightVersion, version[destId]});
+        }
+        return changed;
+    }
+
+    private static boolean isCommutative(int opcode) {
+        return opcode == TacProgram.ADD || opcode == TacProgram.MUL
+                || opcode == TacProgram.EQ || opcode == TacProgram.NE;
+    }
+
+    private static int versionOf(TacProgram program, int operand, int[] version) {
+        int id = program.valueId(operand);
+        return id >= 0 ? version[id] : 0;
+    }
+
+    private static final class Key {
+        final int opcode;
+        final int left;
+        final int right;
+
+        Key(int opcode, int left, int right) {
+            this.opcode = opcode;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return opcode == key.opcode && left == key.left && right == key.right;
+        }
+
+        @Override
+        public int hashCode() {
+            return (opcode * 31 + left) * 31 + right;
+        }
+    }
+}
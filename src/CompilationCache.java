@@ -0,0 +1,371 @@
+/**
+ * CompilationCache.java
+ * ----------------------
+ * A **content-addressed on-disk cache** of compilation results, so an unchanged source
+ * file is not lexed, parsed, analyzed or translated again (see CompilerPipeline).
+ *
+ * Keys:
+ * - SHA-256 over the compiler fingerprint, the pipeline options (e.g. "optimize=true")
+ *   and the source bytes. The fingerprint hashes the compiler's own class files, so
+ *   any rebuilt compiler misses the old entries instead of returning stale code.
+ *
+ * Entries (one file per key, `<key>.entry` in the cache directory):
+ * - A header (magic, format version, payload length, CRC-32 of the payload) followed by
+ *   the payload: either the generated three-address code (TacProgram.writeBinary), in
+ *   which name resolution is already baked into the variables, or the diagnostics of a
+ *   file that failed, so a broken file fails again without being recompiled.
+ * - An entry that is truncated, corrupt or from another format version is a miss and
+ *   is deleted.
+ *
+ * Concurrent writers (threads of a BatchCompiler, or several compiler processes sharing
+ * one directory):
+ * - An entry is written to a unique temporary file in the cache directory and then
+ *   renamed over `<key>.entry` atomically, so readers see either the whole old entry,
+ *   the whole new one or none. Two writers of the same key write the same bytes, so it
+ *   does not matter which rename wins.
+ * - The cache is best effort: a failed read or write only costs a recompilation.
+ *
+ * Eviction:
+ * - Least recently used, by file modification time, which get() bumps on every hit.
+ * - When the entries written through this instance push the total past `maxBytes`, the
+ *   oldest entries are deleted until the cache is down to three quarters of the limit.
+ *   Temporary files left by crashed writers are removed at the same time.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class CompilationCache {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final int MAGIC = 0x4D4C4343; // "MLCC"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final byte KIND_CODE = 0;
+    private static final byte KIND_ERROR = 1;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static volatile byte[] fingerprint;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** A cached outcome: the code, or the diagnostics of a file that failed. */
+    public static final class Entry {
+        public final TacProgram code;                // null if the file failed
+        public final List<Diagnostic> diagnostics;   // null on success
+
+        private Entry(TacProgram code, List<Diagnostic> diagnostics) {
+            this.code = code;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    /** Opens (creating it if needed) a cache directory holding at most `maxBytes` of entries. */
+    public CompilationCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) throw new IllegalArgumentException("Cache Error: size limit must be positive.");
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        long total = 0;
+        for (EntryFile entry : listEntries()) total += entry.size;
+        totalBytes.set(total);
+    }
+
+    // === Keys ===
+
+    /** The cache key (64 hex digits) of a source file compiled with the given options. */
+    public String key(byte[] source, String options) {
+        MessageDigest digest = sha256();
+        digest.update(compilerFingerprint());
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source);
+        return hex(digest.digest());
+    }
+
+    /** SHA-256 of the class files the compiler was loaded from (a directory or a jar). */
+    static byte[] compilerFingerprint() {
+        byte[] result = fingerprint;
+        if (result != null) return result;
+        MessageDigest digest = sha256();
+        digest.update(Integer.toString(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+        try {
+            CodeSource source = CompilationCache.class.getProtectionDomain().getCodeSource();
+            Path location = Paths.get(source.getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                List<Path> classes = new ArrayList<>();
+                try (Stream<Path> paths = Files.walk(location)) {
+                    paths.filter(p -> p.toString().endsWith(".class")).sorted().forEach(classes::add);
+                }
+                for (Path file : classes) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // No readable code source: fall back to the bytes of this compiler's core classes
+            for (Class<?> type : new Class<?>[] {SyntaxAnalyzer.class, SemanticAnalyzer.class,
+                    IntermediateCodeGenerator.class, PassManager.class, CompilationCache.class}) {
+                try (InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+                    if (in != null) digest.update(in.readAllBytes());
+                } catch (IOException ignored) {
+                    // hash what is readable
+                }
+            }
+        }
+        fingerprint = result = digest.digest();
+        return result;
+    }
+
+    // === Lookup and store ===
+
+    /** The entry for a key, or null on a miss. A hit marks the entry as recently used. */
+    public Entry get(String key) {
+        Path file = entryFile(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) { // NoSuchFileException on a plain miss
+            misses.incrementAndGet();
+            return null;
+        }
+        Entry entry = decode(bytes);
+        if (entry == null) {
+            misses.incrementAndGet();
+            deleteQuietly(file);
+            return null;
+        }
+        hits.incrementAndGet();
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // evicted meanwhile, or read-only: the entry just ages
+        }
+        return entry;
+    }
+
+    public void putCode(String key, TacProgram code) {
+        put(key, KIND_CODE, code, null);
+    }
+
+    public void putErrors(String key, List<Diagnostic> diagnostics) {
+        put(key, KIND_ERROR, null, diagnostics);
+    }
+
+    private void put(String key, byte kind, TacProgram code, List<Diagnostic> diagnostics) {
+        Path target = entryFile(key);
+        Path temp = null;
+        try {
+            byte[] bytes = encode(kind, code, diagnostics);
+            temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            Files.write(temp, bytes);
+            // A concurrent miss on the same key may have stored it already: count only the difference
+            long replaced = sizeOrZero(target);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            if (totalBytes.addAndGet(bytes.length - replaced) > maxBytes) evict();
+        } catch (IOException ignored) {
+            // best effort: the next build compiles the file again
+        } finally {
+            if (temp != null) deleteQuietly(temp);
+        }
+    }
+
+    private static long sizeOrZero(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) { // NoSuchFileException: a new entry
+            return 0;
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long sizeInBytes() {
+        return totalBytes.get();
+    }
+
+    // === Entry format ===
+
+    private static byte[] encode(byte kind, TacProgram code, List<Diagnostic> diagnostics) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(kind);
+        if (kind == KIND_CODE) {
+            code.writeBinary(out);
+        } else {
+            out.writeInt(diagnostics.size());
+            for (Diagnostic diagnostic : diagnostics) {
+                out.writeUTF(diagnostic.message);
+                out.writeInt(diagnostic.offset);
+                out.writeInt(diagnostic.line);
+                out.writeInt(diagnostic.column);
+            }
+        }
+        out.flush();
+        byte[] body = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(HEADER_BYTES + body.length);
+        DataOutputStream header = new DataOutputStream(entry);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt(body.length);
+        header.writeInt((int) crc.getValue());
+        header.write(body);
+        header.flush();
+        return entry.toByteArray();
+    }
+
+    /** The entry stored in the bytes, or null if they are not a complete, intact entry. */
+    private static Entry decode(byte[] bytes) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (bytes.length < HEADER_BYTES || in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length != bytes.length - HEADER_BYTES) return null;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, HEADER_BYTES, length);
+            if ((int) crc.getValue() != checksum) return null;
+            byte kind = in.readByte();
+            if (kind == KIND_CODE) return new Entry(TacProgram.readBinary(in), null);
+            if (kind != KIND_ERROR) return null;
+            int count = in.readInt();
+            if (count < 1 || count > length) return null;
+            List<Diagnostic> diagnostics = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                diagnostics.add(new Diagnostic(in.readUTF(), in.readInt(), in.readInt(), in.readInt()));
+            }
+            return new Entry(null, diagnostics);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // === Eviction ===
+
+    private static final class EntryFile {
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        EntryFile(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /** Deletes the least recently used entries until the cache is at 3/4 of its limit. */
+    private synchronized void evict() {
+        if (totalBytes.get() <= maxBytes) return; // another thread got here first
+        List<EntryFile> entries = listEntries();
+        entries.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+        long total = 0;
+        for (EntryFile entry : entries) total += entry.size;
+        long lowWater = maxBytes / 4 * 3;
+        for (EntryFile entry : entries) {
+            if (total <= lowWater) break;
+            if (deleteQuietly(entry.path)) total -= entry.size;
+        }
+        totalBytes.set(total);
+    }
+
+    /** The entries on disk; stale temporary files are deleted on the way. */
+    private List<EntryFile> listEntries() {
+        List<EntryFile> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    long modified = attributes.lastModifiedTime().toMillis();
+                    if (name.endsWith(ENTRY_SUFFIX)) {
+                        entries.add(new EntryFile(file, attributes.size(), modified));
+                    } else if (name.endsWith(TEMP_SUFFIX) && now - modified > STALE_TEMP_MILLIS) {
+                        deleteQuietly(file);
+                    }
+                } catch (IOException ignored) {
+                    // deleted by another process meanwhile
+                }
+            }
+        } catch (IOException ignored) {
+            // an unreadable directory holds no entries
+        }
+        return entries;
+    }
+
+    // === Helpers ===
+
+    private Path entryFile(String key) {
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static boolean deleteQuietly(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return out.toString();
+    }
+}
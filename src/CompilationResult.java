@@ -0,0 +1,77 @@
+/**
+ * CompilationResult.java
+ * -----------------------
+ * Outcome of compiling one source file with a CompilerPipeline: the generated
+ * three-address code on success, or every error found in the file as a list of
+ * Diagnostics with their positions (e.g. "3:14: Syntax Error: ..."), together with the
+ * time the file took, whether it came from a CompilationCache and, if the pipeline
+ * records them, the CompilerMetrics of its phases.
+ *
+ * Results are plain values, so a BatchCompiler can collect them from many threads and
+ * report them in input order.
+ */
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+public class CompilationResult {
+
+    public final Path file;
+    public final TacProgram code;                // null if compilation failed
+    public final List<Diagnostic> diagnostics;   // empty on success
+    public final String error;                   // all diagnostics, one per line; null on success
+    public final long nanos;
+    public final boolean cached;
+    public final CompilerMetrics metrics;        // null unless the pipeline records metrics
+
+    private CompilationResult(Path file, TacProgram code, List<Diagnostic> diagnostics, long nanos, boolean cached) {
+        this(file, code, Collections.unmodifiableList(diagnostics),
+                diagnostics.isEmpty() ? null : Diagnostic.summary(diagnostics), nanos, cached, null);
+    }
+
+    private CompilationResult(Path file, TacProgram code, List<Diagnostic> diagnostics, String error,
+                              long nanos, boolean cached, CompilerMetrics metrics) {
+        this.file = file;
+        this.code = code;
+        this.diagnostics = diagnostics;
+        this.error = error;
+        this.nanos = nanos;
+        this.cached = cached;
+        this.metrics = metrics;
+    }
+
+    public static CompilationResult success(Path file, TacProgram code, long nanos) {
+        return new CompilationResult(file, code, Collections.emptyList(), nanos, false);
+    }
+
+    /** A failure with every error found in the file (at least one). */
+    public static CompilationResult failure(Path file, List<Diagnostic> diagnostics, long nanos) {
+        return new CompilationResult(file, null, diagnostics, nanos, false);
+    }
+
+    /** A failure with a single error that has no source position, e.g. an unreadable file. */
+    public static CompilationResult failure(Path file, String error, long nanos) {
+        return failure(file, Collections.singletonList(new Diagnostic(error, -1)), nanos);
+    }
+
+    /** A result replayed from a cache entry: the code, or the diagnostics it failed with. */
+    public static CompilationResult cached(Path file, TacProgram code, List<Diagnostic> diagnostics, long nanos) {
+        return new CompilationResult(file, code, code != null ? Collections.emptyList() : diagnostics, nanos, true);
+    }
+
+    /** This result with the metrics of the compilation that produced it. */
+    public CompilationResult withMetrics(CompilerMetrics metrics) {
+        return new CompilationResult(file, code, diagnostics, error, nanos, cached, metrics);
+    }
+
+    public boolean succeeded() {
+        return error == null;
+    }
+
+    /** The generated code; throws the compilation error if there is none. */
+    public TacProgram codeOrThrow() {
+        if (error != null) throw new RuntimeException(file + ": " + error);
+        return code;
+    }
+}
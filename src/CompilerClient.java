@@ -0,0 +1,76 @@
+/**
+ * CompilerClient.java
+ * --------------------
+ * Thin command-line client for a running CompilerDaemon: it forwards one compile or run
+ * request and prints the answer, so the work happens in the daemon's warm JVM.
+ *
+ * Usage: java CompilerClient [--port=N | --unix=PATH] [--optimize] [--run] [file]
+ *        java CompilerClient [--port=N | --unix=PATH] --ping | --shutdown
+ *
+ * - The source file defaults to `input.minilang`, like Main.
+ * - Without `--run`, the three-address code is printed; with it, the program output.
+ * - Errors are printed to stderr as `file:line:column: message`.
+ * - `--shutdown` is refused unless the daemon was started with `--allow-shutdown`.
+ *
+ * Exit status: 0 on success, 1 if the program has errors, 2 if the daemon cannot be
+ * reached or cannot serve the request.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompilerClient {
+
+    public static void main(String[] args) {
+        List<String> options = Arrays.asList(args);
+        String fileName = "input.minilang";
+        for (String option : options) {
+            if (!option.startsWith("--")) fileName = option;
+        }
+        byte command = options.contains("--ping") ? DaemonProtocol.PING
+                : options.contains("--shutdown") ? DaemonProtocol.SHUTDOWN
+                : options.contains("--run") ? DaemonProtocol.RUN : DaemonProtocol.COMPILE;
+        byte flags = options.contains("--optimize") ? DaemonProtocol.OPTIMIZE : 0;
+
+        byte[] source = new byte[0];
+        if (command == DaemonProtocol.COMPILE || command == DaemonProtocol.RUN) {
+            try {
+                source = Files.readAllBytes(Paths.get(fileName));
+            } catch (IOException e) {
+                System.err.println("File Read Error: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        SocketAddress address = DaemonProtocol.address(options);
+        DaemonProtocol.Response response;
+        try (SocketChannel channel = DaemonProtocol.connect(address)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            new DaemonProtocol.Request(command, flags, fileName, source).writeTo(out);
+            response = DaemonProtocol.Response.readFrom(in);
+        } catch (IOException e) {
+            System.err.println(" Daemon Error: cannot reach a daemon at " + address + " (" + e.getMessage()
+                    + "). Start one with: java CompilerDaemon");
+            System.exit(2);
+            return;
+        }
+
+        System.out.print(response.text);
+        if (!response.text.isEmpty() && !response.text.endsWith("\n")) System.out.println();
+        for (Diagnostic diagnostic : response.diagnostics) {
+            System.err.println(" " + fileName + (diagnostic.line > 0 ? ":" : ": ") + diagnostic);
+        }
+        System.exit(response.status == DaemonProtocol.OK ? 0 : response.status == DaemonProtocol.ERRORS ? 1 : 2);
+    }
+}
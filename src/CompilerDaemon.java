@@ -0,0 +1,324 @@
+/**
+ * CompilerDaemon.java
+ * --------------------
+ * A **resident compiler** that serves compile and run requests from a warm JVM, so a
+ * compile does not pay JVM start-up, class loading and interpreted execution of the
+ * lexer and parser every time (see CompilerClient for the command-line front end).
+ *
+ * Usage: java CompilerDaemon [--port=N | --unix=PATH] [--threads=N] [--cache=DIR] [--no-warmup]
+ *                             [--max-iterations=N] [--allow-shutdown]
+ *
+ * - Listens on the loopback interface only (port DaemonProtocol.DEFAULT_PORT unless
+ *   `--port` is given; `--port=0` picks a free one), or on a Unix-domain socket.
+ * - Every connection gets its own thread and may send any number of requests (see
+ *   DaemonProtocol). Compiling and running are limited to `--threads` requests at a
+ *   time (default: available processors); other connections wait for a permit.
+ * - COMPILE runs the CompilerPipeline on the source and returns the diagnostics or
+ *   the three-address code; RUN also executes the code on the RegisterVM and returns
+ *   the program output (capped at MAX_OUTPUT characters). A run may take at most
+ *   `--max-iterations` loop iterations (default DEFAULT_MAX_ITERATIONS); a program that
+ *   runs out gets an ERRORS response, so a non-terminating one cannot keep its permit.
+ * - `--cache=DIR` puts a CompilationCache behind the pipeline.
+ * - Before listening, the daemon compiles and runs a small program a few hundred times
+ *   so that the first requests already find the lexer, parser and passes JIT-compiled.
+ * - A SHUTDOWN request stops the daemon after answering, but only if it was started with
+ *   `--allow-shutdown`; otherwise any client could stop it, and the request FAILS while
+ *   the daemon keeps serving. Closing the daemon always stops it.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CompilerDaemon implements AutoCloseable {
+
+    public static final int MAX_OUTPUT = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_ITERATIONS = 1_000_000_000L;
+
+    private static final int WARMUP_ROUNDS = 300;
+    private static final String WARMUP_PROGRAM =
+            "int i; int s; i = 0; s = 0;\n"
+            + "while (i < 50) { if (i > 10) { s = s + i * 2; } else { s = s - 1; } i = i + 1; }\n"
+            + "print(s);\n";
+
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final CompilerPipeline plain;
+    private final CompilerPipeline optimizing;
+    private final int threads;
+    private final long maxIterations;
+    private final boolean allowShutdown;
+    private final Semaphore permits;
+    private final ExecutorService connections;
+    private final long startedAt = System.nanoTime();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong openConnections = new AtomicLong();
+
+    public CompilerDaemon(SocketAddress address, int threads, CompilationCache cache) throws IOException {
+        this(address, threads, cache, DEFAULT_MAX_ITERATIONS, false);
+    }
+
+    public CompilerDaemon(SocketAddress address, int threads, CompilationCache cache,
+            long maxIterations, boolean allowShutdown) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath()); // left by a daemon that died
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        this.address = server.getLocalAddress();
+        this.plain = new CompilerPipeline(false, cache);
+        this.optimizing = new CompilerPipeline(true, cache);
+        this.threads = threads;
+        this.maxIterations = maxIterations;
+        this.allowShutdown = allowShutdown;
+        this.permits = new Semaphore(threads);
+        this.connections = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "minilang-daemon-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) {
+        List<String> options = Arrays.asList(args);
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path cacheDirectory = null;
+        long maxIterations = DEFAULT_MAX_ITERATIONS;
+        for (String option : options) {
+            if (option.startsWith("--threads=")) threads = Integer.parseInt(option.substring("--threads=".length()));
+            if (option.startsWith("--cache=")) cacheDirectory = Paths.get(option.substring("--cache=".length()));
+            if (option.startsWith("--max-iterations=")) {
+                maxIterations = Long.parseLong(option.substring("--max-iterations=".length()));
+            }
+        }
+        if (threads < 1 || maxIterations < 0) {
+            System.err.println("Usage: java CompilerDaemon [--port=N | --unix=PATH] [--threads=N] [--cache=DIR] [--no-warmup]"
+                    + " [--max-iterations=N] [--allow-shutdown]");
+            System.exit(2);
+        }
+
+        try {
+            CompilationCache cache = cacheDirectory != null
+                    ? new CompilationCache(cacheDirectory, CompilationCache.DEFAULT_MAX_BYTES) : null;
+            CompilerDaemon daemon = new CompilerDaemon(DaemonProtocol.address(options), threads, cache,
+                    maxIterations, options.contains("--allow-shutdown"));
+            if (!options.contains("--no-warmup")) {
+                long nanos = daemon.warmUp();
+                System.out.printf(" Warm-up: %d compile+run rounds in %.0f ms%n", WARMUP_ROUNDS, nanos / 1e6);
+            }
+            System.out.println(" MiniLang daemon listening on " + daemon.address() + " with " + threads
+                    + " worker" + (threads == 1 ? "" : "s"));
+            daemon.serve();
+            System.out.println(" MiniLang daemon stopped after " + daemon.requests.get() + " requests.");
+        } catch (IOException e) {
+            System.err.println(" Daemon Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /** The bound address (with the actual port if it was 0). */
+    public SocketAddress address() {
+        return address;
+    }
+
+    /** Accepts connections until the daemon is closed. */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel connection = server.accept();
+                if (!(address instanceof UnixDomainSocketAddress)) {
+                    connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                connections.execute(() -> serve(connection));
+            }
+        } catch (ClosedChannelException e) {
+            // closed by close() or a SHUTDOWN request
+        } finally {
+            close();
+        }
+    }
+
+    /** Serves on a background thread, e.g. for a daemon embedded in a test. */
+    public Thread start() {
+        Thread thread = new Thread(() -> {
+            try {
+                serve();
+            } catch (IOException e) {
+                System.err.println(" Daemon Error: " + e.getMessage());
+            }
+        }, "minilang-daemon-accept");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdown();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        openConnections.incrementAndGet();
+        try (SocketChannel channel = connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            DaemonProtocol.Request request;
+            while ((request = DaemonProtocol.Request.readFrom(in)) != null) {
+                handle(request).writeTo(out);
+                if (request.command == DaemonProtocol.SHUTDOWN && allowShutdown) {
+                    close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away or sent garbage: drop the connection
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /** Serves one request; never throws. */
+    public DaemonProtocol.Response handle(DaemonProtocol.Request request) {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        switch (request.command) {
+            case DaemonProtocol.PING:
+                return response(DaemonProtocol.OK, start, Collections.emptyList(), statistics());
+            case DaemonProtocol.SHUTDOWN:
+                if (!allowShutdown) {
+                    return failed(start, "Daemon Error: shutdown is disabled (start the daemon with --allow-shutdown).");
+                }
+                return response(DaemonProtocol.OK, start, Collections.emptyList(), "shutting down");
+            case DaemonProtocol.COMPILE:
+            case DaemonProtocol.RUN:
+                break;
+            default:
+                return failed(start, "Daemon Error: unknown command " + request.command + ".");
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(start, "Daemon Error: interrupted.");
+        }
+        try {
+            CompilerPipeline pipeline = request.optimize() ? optimizing : plain;
+            CompilationResult result = pipeline.compile(sourcePath(request.name), request.source);
+            if (!result.succeeded()) {
+                return response(DaemonProtocol.ERRORS, start, result.diagnostics, "");
+            }
+            if (request.command == DaemonProtocol.COMPILE) {
+                return response(DaemonProtocol.OK, start, Collections.emptyList(), result.code.toString());
+            }
+            BoundedWriter output = new BoundedWriter(MAX_OUTPUT);
+            try {
+                new RegisterVM(new BytecodeCompiler(result.code).compile(), output, maxIterations).run();
+            } catch (RuntimeException e) {
+                List<Diagnostic> error = Collections.singletonList(new Diagnostic(String.valueOf(e.getMessage()), -1));
+                return response(DaemonProtocol.ERRORS, start, error, output.toString());
+            }
+            return response(DaemonProtocol.OK, start, Collections.emptyList(), output.toString());
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            return failed(start, "Daemon Error: " + e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static Path sourcePath(String name) {
+        try {
+            return Paths.get(name);
+        } catch (InvalidPathException e) {
+            return Paths.get("request.minilang");
+        }
+    }
+
+    private String statistics() {
+        return String.format("requests=%d connections=%d workers=%d uptime=%.1fs",
+                requests.get(), openConnections.get(), threads, (System.nanoTime() - startedAt) / 1e9);
+    }
+
+    /** Compiles and runs a small program repeatedly so the hot paths are JIT-compiled. */
+    long warmUp() {
+        long start = System.nanoTime();
+        byte[] source = WARMUP_PROGRAM.getBytes(StandardCharsets.UTF_8);
+        for (int k = 0; k < WARMUP_ROUNDS; k++) {
+            byte flags = (k % 2 == 0) ? DaemonProtocol.OPTIMIZE : 0;
+            handle(new DaemonProtocol.Request(DaemonProtocol.RUN, flags, "warmup.minilang", source));
+        }
+        requests.addAndGet(-WARMUP_ROUNDS);
+        return System.nanoTime() - start;
+    }
+
+    private static DaemonProtocol.Response response(byte status, long start, List<Diagnostic> diagnostics, String text) {
+        return new DaemonProtocol.Response(status, System.nanoTime() - start, diagnostics, text);
+    }
+
+    private static DaemonProtocol.Response failed(long start, String message) {
+        return response(DaemonProtocol.FAILED, start, Collections.singletonList(new Diagnostic(message, -1)), "");
+    }
+
+    /** Collects program output and fails the run once it exceeds `limit` characters. */
+    private static final class BoundedWriter extends Writer {
+        private final StringWriter buffer = new StringWriter();
+        private final int limit;
+        private int size;
+
+        BoundedWriter(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            if (size + length > limit) {
+                throw new RuntimeException("Runtime Error: Output exceeds " + limit + " characters.");
+            }
+            buffer.write(chars, offset, length);
+            size += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+    }
+}
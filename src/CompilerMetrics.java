@@ -0,0 +1,326 @@
+/**
+ * CompilerMetrics.java
+ * ---------------------
+ * Per-phase **measurements of one compilation**, to tell which phase is slow for a
+ * given input. For each phase it records:
+ *
+ *   lex        wall time, bytes allocated, tokens
+ *   parse      wall time, bytes allocated, AST nodes (with a StreamingLexer, includes lexing;
+ *              with an AstArena, its nodes)
+ *   semantic   wall time, bytes allocated, symbols (declared variable slots)
+ *   codegen    wall time, bytes allocated, TAC instructions
+ *   optimize   wall time, bytes allocated, TAC instructions after the passes
+ *
+ * Allocated bytes are those of the compiling thread (com.sun.management.ThreadMXBean), so
+ * compilations running on other threads do not count.
+ *
+ * Usage:
+ *
+ *   CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.PARSE);
+ *   Block program = parser.parse(diagnostics);
+ *   phase.end(phase.active() ? CompilerMetrics.countNodes(program) : 0);
+ *
+ * toJson() gives the machine-readable summary printed by `Main --stats` and written by
+ * `BatchCompiler --stats=FILE`.
+ *
+ * JFR: every phase is also committed as a `minilang.CompilerPhase` event whenever a
+ * flight recording has it enabled, recorded or not here, e.g.
+ *
+ *   java -XX:StartFlightRecording=filename=compile.jfr Main --optimize
+ *   jfr print --events minilang.CompilerPhase compile.jfr
+ *
+ * Overhead: without recording (OFF or unrecorded()) and with the event disabled, begin()
+ * returns the shared no-op Phase after one check; nothing is timed, counted or kept.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+public final class CompilerMetrics {
+
+    public enum Stage {
+        LEX("lex", "tokens"),
+        PARSE("parse", "astNodes"),
+        SEMANTIC("semantic", "symbols"),
+        CODEGEN("codegen", "instructions"),
+        OPTIMIZE("optimize", "instructions");
+
+        final String key;
+        final String unit; // what the count of the stage counts
+
+        Stage(String key, String unit) {
+            this.key = key;
+            this.unit = unit;
+        }
+    }
+
+    /** Records nothing; phases are only reported to JFR when it asks for them. */
+    public static final CompilerMetrics OFF = new CompilerMetrics(null, false);
+
+    private static final int STAGES = Stage.values().length;
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final String source;
+    private final boolean recording;
+    private final Map<String, Object> attributes;
+    private final long[] nanos;
+    private final long[] allocated;
+    private final long[] counts;
+    private final boolean[] ran;
+
+    private CompilerMetrics(String source, boolean recording) {
+        this.source = source;
+        this.recording = recording;
+        this.attributes = recording ? new LinkedHashMap<>() : null;
+        this.nanos = new long[recording ? STAGES : 0];
+        this.allocated = new long[recording ? STAGES : 0];
+        this.counts = new long[recording ? STAGES : 0];
+        this.ran = new boolean[recording ? STAGES : 0];
+    }
+
+    /** Metrics that record every phase of compiling `source` (a file name, used in JSON and JFR). */
+    public static CompilerMetrics record(String source) {
+        return new CompilerMetrics(source, true);
+    }
+
+    /** Metrics that record nothing but name `source` in the JFR events. */
+    public static CompilerMetrics unrecorded(String source) {
+        return new CompilerMetrics(source, false);
+    }
+
+    public boolean recording() {
+        return recording;
+    }
+
+    /** Starts timing a phase; call end() on the result when the phase is done. */
+    public Phase begin(Stage stage) {
+        if (!recording && !FlightRecorder.isInitialized()) return Phase.NONE;
+        PhaseEvent event = new PhaseEvent();
+        if (!recording && !event.isEnabled()) return Phase.NONE;
+        return new Phase(this, stage, event);
+    }
+
+    /** Adds a top-level field to the JSON summary, e.g. ("succeeded", true). */
+    public CompilerMetrics attribute(String name, Object value) {
+        if (recording) attributes.put(name, value);
+        return this;
+    }
+
+    public boolean ran(Stage stage) {
+        return recording && ran[stage.ordinal()];
+    }
+
+    public long nanos(Stage stage) {
+        return recording ? nanos[stage.ordinal()] : 0;
+    }
+
+    /** Bytes allocated by the phase, or -1 if the JVM cannot measure it. */
+    public long allocatedBytes(Stage stage) {
+        return recording ? allocated[stage.ordinal()] : 0;
+    }
+
+    public long count(Stage stage) {
+        return recording ? counts[stage.ordinal()] : 0;
+    }
+
+    public long totalNanos() {
+        long total = 0;
+        for (long phase : nanos) total += phase;
+        return total;
+    }
+
+    /**
+     * One JSON object, e.g.
+     * {"file":"input.minilang","succeeded":true,"totalNanos":812345,"phases":[
+     *   {"phase":"lex","nanos":301234,"allocatedBytes":52144,"tokens":1203}, ...]}
+     */
+    public String toJson() {
+        if (!recording) return "{}";
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"file\":");
+        string(json, source);
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            json.append(',');
+            string(json, attribute.getKey());
+            json.append(':');
+            Object value = attribute.getValue();
+            if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                string(json, String.valueOf(value));
+            }
+        }
+        json.append(",\"totalNanos\":").append(totalNanos()).append(",\"phases\":[");
+        boolean first = true;
+        for (Stage stage : Stage.values()) {
+            int i = stage.ordinal();
+            if (!ran[i]) continue;
+            if (!first) json.append(',');
+            first = false;
+            json.append("{\"phase\":\"").append(stage.key)
+                    .append("\",\"nanos\":").append(nanos[i])
+                    .append(",\"allocatedBytes\":").append(allocated[i])
+                    .append(",\"").append(stage.unit).append("\":").append(counts[i]).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void string(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /** Number of AST nodes below and including `block` (statements, blocks and expressions). */
+    public static long countNodes(Block block) {
+        long count = 1;
+        for (Statement statement : block.statements) count += countNodes(statement);
+        return count;
+    }
+
+    private static long countNodes(Statement statement) {
+        if (statement instanceof Block) return countNodes((Block) statement);
+        if (statement instanceof Assignment) return 1 + countNodes(((Assignment) statement).expression);
+        if (statement instanceof PrintStatement) return 1 + countNodes(((PrintStatement) statement).expression);
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            return 1 + countNodes(ifStatement.condition) + countNodes(ifStatement.thenBlock)
+                    + (ifStatement.elseBlock != null ? countNodes(ifStatement.elseBlock) : 0);
+        }
+        if (statement instanceof WhileStatement) {
+            WhileStatement whileStatement = (WhileStatement) statement;
+            return 1 + countNodes(whileStatement.condition) + countNodes(whileStatement.body);
+        }
+        return 1; // Declaration
+    }
+
+    /** Counts iteratively: down each left spine, with the right operands on an explicit stack. */
+    private static long countNodes(Expression expression) {
+        long count = 0;
+        ArrayDeque<Expression> rights = new ArrayDeque<>();
+        while (true) {
+            while (expression instanceof BinaryExpression) {
+                count++;
+                rights.push(((BinaryExpression) expression).right);
+                expression = ((BinaryExpression) expression).left;
+            }
+            count++; // the leaf
+            if (rights.isEmpty()) return count;
+            expression = rights.pop();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot;
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedSoFar() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /** One running phase. */
+    public static class Phase {
+        static final Phase NONE = new Phase(null, null, null);
+
+        private final CompilerMetrics metrics;
+        private final Stage stage;
+        private final PhaseEvent event;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Phase(CompilerMetrics metrics, Stage stage, PhaseEvent event) {
+            this.metrics = metrics;
+            this.stage = stage;
+            this.event = event;
+            if (metrics == null) {
+                this.startNanos = 0;
+                this.startAllocated = 0;
+                return;
+            }
+            if (event.isEnabled()) event.begin();
+            this.startAllocated = allocatedSoFar();
+            this.startNanos = System.nanoTime();
+        }
+
+        /** Whether end() records anything; skip computing expensive counts if not. */
+        public boolean active() {
+            return metrics != null;
+        }
+
+        /** Ends the phase; `count` is what it produced, in the unit of its Stage. */
+        public void end(long count) {
+            if (metrics == null) return;
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = startAllocated < 0 ? -1 : allocatedSoFar() - startAllocated;
+            if (metrics.recording) {
+                int i = stage.ordinal();
+                metrics.ran[i] = true;
+                metrics.nanos[i] += nanos;
+                metrics.allocated[i] = metrics.allocated[i] < 0 || allocated < 0 ? -1 : metrics.allocated[i] + allocated;
+                metrics.counts[i] = count;
+            }
+            if (event.shouldCommit()) {
+                event.source = metrics.source;
+                event.phase = stage.key;
+                event.count = count;
+                event.unit = stage.unit;
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("minilang.CompilerPhase")
+    @Label("MiniLang Compiler Phase")
+    @Category("MiniLang")
+    @Description("One phase of compiling a MiniLang program")
+    static class PhaseEvent extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Count")
+        @Description("Tokens, AST nodes, symbols or instructions produced, see Unit")
+        long count;
+
+        @Label("Unit")
+        String unit;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+}
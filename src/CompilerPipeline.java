@@ -0,0 +1,176 @@
+/**
+ * CompilerPipeline.java
+ * ----------------------
+ * Runs the whole front end on one source file and returns a CompilationResult:
+ *
+ *   StreamingLexer -> SyntaxAnalyzer -> SemanticAnalyzer -> IntermediateCodeGenerator
+ *   [-> PassManager.standard() with `optimize`]
+ *
+ * Every call builds its own lexer, parser, analyzer, code generator and pass manager,
+ * so calls share no mutable state and one pipeline can be used from many threads at
+ * once. Errors never escape: a lexical, syntax or semantic error, an unreadable file or
+ * a program whose statements nest too deeply (NESTED_TOO_DEEPLY) becomes a failed result.
+ *
+ * Errors are collected, not thrown: the lexer and the parser recover and report every
+ * lexical and syntax error in the file, and if there were none, the SemanticAnalyzer
+ * reports every semantic error. (Semantic analysis is skipped after syntax errors,
+ * since the statements dropped by the parser would cause spurious ones.) The source is
+ * only scanned for line numbers when a file fails.
+ *
+ * With a CompilationCache, the source bytes are read and hashed first. A hit returns the
+ * cached code (or error) without running any phase; a miss compiles those same bytes and
+ * stores the outcome. Unreadable files are never cached.
+ *
+ * With `metrics`, every result carries the CompilerMetrics of its phases (parse includes
+ * lexing here, since tokens are pulled from the StreamingLexer). The phases are reported
+ * as JFR events either way when a flight recording enables them.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompilerPipeline {
+
+    /**
+     * The error for a stack overflow in any phase. Expressions are walked iteratively
+     * everywhere, so only nested statements (if, while, blocks) can still cause one.
+     */
+    public static final String NESTED_TOO_DEEPLY = "Compilation Error: Statements are nested too deeply.";
+
+    private final boolean optimize;
+    private final CompilationCache cache; // null = no caching
+    private final boolean metrics;
+
+    public CompilerPipeline(boolean optimize) {
+        this(optimize, null);
+    }
+
+    public CompilerPipeline(boolean optimize, CompilationCache cache) {
+        this(optimize, cache, false);
+    }
+
+    public CompilerPipeline(boolean optimize, CompilationCache cache, boolean metrics) {
+        this.optimize = optimize;
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /** The options that change the generated code, as part of the cache key. */
+    private String options() {
+        return "optimize=" + optimize;
+    }
+
+    public CompilationResult compile(Path file) {
+        long start = System.nanoTime();
+        if (cache == null) {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            try (StreamingLexer lexer = StreamingLexer.open(file, diagnostics)) {
+                return compile(file, lexer, diagnostics, null, start);
+            } catch (IOException | UncheckedIOException e) {
+                return CompilationResult.failure(file, "File Read Error: " + e.getMessage(), System.nanoTime() - start);
+            }
+        }
+
+        byte[] source;
+        try {
+            source = Files.readAllBytes(file);
+        } catch (IOException e) {
+            return CompilationResult.failure(file, "File Read Error: " + e.getMessage(), System.nanoTime() - start);
+        }
+        return compile(file, source, start);
+    }
+
+    /**
+     * Compiles source text that is already in memory, e.g. sent to a CompilerDaemon;
+     * `name` only labels the result.
+     */
+    public CompilationResult compile(Path name, byte[] source) {
+        return compile(name, source, System.nanoTime());
+    }
+
+    private CompilationResult compile(Path file, byte[] source, long start) {
+        String key = null;
+        if (cache != null) {
+            key = cache.key(source, options());
+            CompilationCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                CompilationResult result = CompilationResult.cached(file, entry.code, entry.diagnostics,
+                        System.nanoTime() - start);
+                return metrics ? result.withMetrics(outcome(CompilerMetrics.record(file.toString()), result)) : result;
+            }
+        }
+
+        CompilationResult result;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        try (StreamingLexer lexer = StreamingLexer.wrap(source, diagnostics)) {
+            result = compile(file, lexer, diagnostics, source, start);
+        } catch (IOException | UncheckedIOException e) {
+            result = CompilationResult.failure(file, "File Read Error: " + e.getMessage(), System.nanoTime() - start);
+        }
+        if (cache == null) {
+            return result;
+        }
+        if (result.succeeded()) {
+            cache.putCode(key, result.code);
+        } else if (!result.error.startsWith("File Read Error: ")) {
+            cache.putErrors(key, result.diagnostics);
+        }
+        return result;
+    }
+
+    /** `source` is the file's content if it has been read already, otherwise null. */
+    private CompilationResult compile(Path file, StreamingLexer lexer, List<Diagnostic> diagnostics,
+                                      byte[] source, long start) throws IOException {
+        CompilerMetrics phases = metrics
+                ? CompilerMetrics.record(file.toString()) : CompilerMetrics.unrecorded(file.toString());
+        CompilationResult result = compile(file, lexer, diagnostics, source, start, phases);
+        return metrics ? result.withMetrics(outcome(phases, result)) : result;
+    }
+
+    private CompilerMetrics outcome(CompilerMetrics phases, CompilationResult result) {
+        return phases.attribute("optimize", optimize)
+                .attribute("succeeded", result.succeeded())
+                .attribute("errors", result.diagnostics.size())
+                .attribute("cached", result.cached);
+    }
+
+    private CompilationResult compile(Path file, StreamingLexer lexer, List<Diagnostic> diagnostics,
+                                      byte[] source, long start, CompilerMetrics phases) throws IOException {
+        try {
+            CompilerMetrics.Phase phase = phases.begin(CompilerMetrics.Stage.PARSE);
+            Block program = new SyntaxAnalyzer(lexer).parse(diagnostics);
+            phase.end(phase.active() ? CompilerMetrics.countNodes(program) : 0);
+            if (diagnostics.isEmpty()) {
+                phase = phases.begin(CompilerMetrics.Stage.SEMANTIC);
+                new SemanticAnalyzer().analyze(program, diagnostics);
+                phase.end(Math.max(program.slotCount, 0));
+            }
+            if (!diagnostics.isEmpty()) {
+                if (source == null) source = Files.readAllBytes(file);
+                List<Diagnostic> located = Diagnostic.locate(diagnostics, new String(source, StandardCharsets.UTF_8));
+                return CompilationResult.failure(file, located, System.nanoTime() - start);
+            }
+            phase = phases.begin(CompilerMetrics.Stage.CODEGEN);
+            TacProgram code = new IntermediateCodeGenerator(program).generate();
+            phase.end(code.size());
+            if (optimize) {
+                phase = phases.begin(CompilerMetrics.Stage.OPTIMIZE);
+                PassManager.standard().run(code);
+                phase.end(code.size());
+            }
+            return CompilationResult.success(file, code, System.nanoTime() - start);
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            return CompilationResult.failure(file, message, System.nanoTime() - start);
+        } catch (StackOverflowError e) {
+            return CompilationResult.failure(file, NESTED_TOO_DEEPLY, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * ConstantFoldingPass.java
+ * -------------------------
+ * Evaluates operations whose operands are known at compile time.
+ *
+ * Within each basic block it remembers which variables and temporaries currently hold a
+ * constant and substitutes that constant wherever they are read; `t1 = 2 * 3` becomes
+ * `t1 = 6` and a later `t2 = t1 + 1` becomes `t2 = 7`. Branches on a constant condition
+ * are folded too: `ifFalse 0 goto L` becomes `goto L` and `ifFalse 1 goto L` is dropped.
+ *
+ * Division by a constant zero is left alone so the program still fails at run time.
+ */
+
+public class ConstantFoldingPass implements TacPass {
+
+    public String name() {
+        return "constant-folding";
+    }
+
+    public boolean run(TacProgram program) {
+        int values = program.valueCount();
+        int[] constant = new int[values];  // operand of the known constant
+        int[] stamp = new int[values];     // equals blockStamp while constant[] is valid
+        int blockStamp = 1;
+        boolean changed = false;
+
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            if (opcode == TacProgram.LABEL) {
+                blockStamp++;
+                continue;
+            }
+            int dest = program.dest(i);
+            int src1 = substitute(program, program.src1(i), constant, stamp, blockStamp);
+            int src2 = substitute(program, program.src2(i), constant, stamp, blockStamp);
+            if (src1 != program.src1(i) || src2 != program.src2(i)) {
+                program.set(i, opcode, dest, src1, src2);
+                changed = true;
+            }
+
+            if (TacProgram.isBinary(opcode) && isConstant(src1) && isConstant(src2)) {
+                int right = program.constantValue(src2);
+                if (opcode != TacProgram.DIV || right != 0) {
+                    int value = fold(opcode, program.constantValue(src1), right);
+                    program.set(i, TacProgram.COPY, dest, program.constant(value), TacProgram.NONE);
+                    opcode = TacProgram.COPY;
+                    changed = true;
+                }
+            }
+
+            if (TacProgram.hasDest(opcode)) {
+                int id = program.valueId(dest);
+                if (opcode == TacProgram.COPY && isConstant(program.src1(i))) {
+                    constant[id] = program.src1(i);
+                    stamp[id] = blockStamp;
+                } else {
+                    stamp[id] = 0;
+                }
+            } else if (opcode == TacProgram.JUMP_IF_FALSE && isConstant(src1)) {
+                if (program.constantValue(src1) == 0) {
+                    program.set(i, TacProgram.JUMP, dest, TacProgram.NONE, TacProgram.NONE);
+                } else {
+                    program.remove(i);
+                }
+                changed = true;
+            }
+
+            opcode = program.opcode(i);
+            if (opcode == TacProgram.JUMP || opcode == TacProgram.JUMP_IF_FALSE) {
+                blockStamp++;
+            }
+        }
+        return changed;
+    }
+
+    private static int substitute(TacProgram program, int operand, int[] constant, int[] stamp, int blockStamp) {
+        int id = program.valueId(operand);
+        return id >= 0 && stamp[id] == blockStamp ? constant[id] : operand;
+    }
+
+    static boolean isConstant(int operand) {
+        return TacProgram.kind(operand) == TacProgram.CONST;
+    }
+
+    /** Result of a binary TAC opcode on two ints, with Java int semantics (the divisor must not be 0). */
+    static int fold(int opcode, int left, int right) {
+        switch (opcode) {
+            case TacProgram.ADD: return left + right;
+            case TacProgram.SUB: return left - right;
+            case TacProgram.MUL: return left * right;
+            case TacProgram.DIV: return left / right;
+            case TacProgram.GT: return left > right ? 1 : 0;
+            case TacProgram.LT: return left < right ? 1 : 0;
+            case TacProgram.EQ: return left == right ? 1 : 0;
+            case TacProgram.NE: return left != right ? 1 : 0;
+            default: throw new IllegalArgumentException("Not a binary opcode: " + opcode);
+        }
+    }
+}
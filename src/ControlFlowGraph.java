@@ -0,0 +1,145 @@
+/**
+ * ControlFlowGraph.java
+ * ----------------------
+ * Splits a TacProgram into **basic blocks** and links them by control flow.
+ *
+ * A block starts at instruction 0, at every LABEL and right after every jump, and runs
+ * up to (not including) the next block start. Successors:
+ * - `goto L`          -> the block starting at L
+ * - `ifFalse x goto L` -> the next block (condition true) and the block at L
+ * - anything else     -> the next block, unless this is the last block
+ *
+ * Block 0 is the entry. The graph is a snapshot: rebuild it after changing the program.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ControlFlowGraph {
+
+    private final TacProgram program;
+    private final int[] starts;           // first instruction of each block, plus program.size() at the end
+    private final int[] blockOfInstruction;
+    private final int[][] successors;
+    private final int[][] predecessors;
+
+    public ControlFlowGraph(TacProgram program) {
+        this.program = program;
+        int size = program.size();
+
+        // Label number -> instruction index of its LABEL
+        int[] labelAt = new int[program.labelCount() + 1];
+        Arrays.fill(labelAt, -1);
+        boolean[] leader = new boolean[size + 1];
+        leader[0] = true;
+        for (int i = 0; i < size; i++) {
+            int opcode = program.opcode(i);
+            if (opcode == TacProgram.LABEL) {
+                labelAt[TacProgram.index(program.dest(i))] = i;
+                leader[i] = true;
+            } else if (opcode == TacProgram.JUMP || opcode == TacProgram.JUMP_IF_FALSE) {
+                leader[i + 1] = true;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (leader[i]) count++;
+        }
+        starts = new int[count + 1];
+        blockOfInstruction = new int[size];
+        int block = -1;
+        for (int i = 0; i < size; i++) {
+            if (leader[i]) starts[++block] = i;
+            blockOfInstruction[i] = block;
+        }
+        starts[count] = size;
+
+        successors = new int[count][];
+        List<List<Integer>> incoming = new ArrayList<>(count);
+        for (int b = 0; b < count; b++) incoming.add(new ArrayList<>(2));
+        for (int b = 0; b < count; b++) {
+            int last = starts[b + 1] - 1;
+            int opcode = program.opcode(last);
+            int fallThrough = b + 1 < count ? b + 1 : -1;
+            if (opcode == TacProgram.JUMP) {
+                successors[b] = new int[] {targetBlock(labelAt, last)};
+            } else if (opcode == TacProgram.JUMP_IF_FALSE) {
+                int target = targetBlock(labelAt, last);
+                if (fallThrough == -1 || fallThrough == target) {
+                    successors[b] = new int[] {target};
+                } else {
+                    successors[b] = new int[] {fallThrough, target};
+                }
+            } else {
+                successors[b] = fallThrough == -1 ? new int[0] : new int[] {fallThrough};
+            }
+            for (int successor : successors[b]) incoming.get(successor).add(b);
+        }
+        predecessors = new int[count][];
+        for (int b = 0; b < count; b++) {
+            List<Integer> list = incoming.get(b);
+            predecessors[b] = new int[list.size()];
+            for (int k = 0; k < list.size(); k++) predecessors[b][k] = list.get(k);
+        }
+    }
+
+    private int targetBlock(int[] labelAt, int jump) {
+        int at = labelAt[TacProgram.index(program.dest(jump))];
+        if (at < 0) {
+            throw new IllegalStateException("Jump to undefined label " + program.operandToString(program.dest(jump)));
+        }
+        return blockOfInstruction[at];
+    }
+
+    public TacProgram program() {
+        return program;
+    }
+
+    public int blockCount() {
+        return successors.length;
+    }
+
+    /** Index of the first instruction of block b. */
+    public int blockStart(int b) {
+        return starts[b];
+    }
+
+    /** Index just past the last instruction of block b. */
+    public int blockEnd(int b) {
+        return starts[b + 1];
+    }
+
+    public int blockOf(int instruction) {
+        return blockOfInstruction[instruction];
+    }
+
+    public int[] successors(int b) {
+        return successors[b];
+    }
+
+    public int[] predecessors(int b) {
+        return predecessors[b];
+    }
+
+    /** Blocks reachable from the entry block. */
+    public boolean[] reachable() {
+        boolean[] seen = new boolean[blockCount()];
+        if (blockCount() == 0) return seen;
+        int[] work = new int[blockCount()];
+        int top = 0;
+        work[top++] = 0;
+        seen[0] = true;
+        while (top > 0) {
+            int b = work[--top];
+            for (int successor : successors[b]) {
+                if (!seen[successor]) {
+                    seen[successor] = true;
+                    work[top++] = successor;
+                }
+            }
+        }
+        return seen;
+    }
+}
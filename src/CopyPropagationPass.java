@@ -0,0 +1,106 @@
+/**
+ * CopyPropagationPass.java
+ * -------------------------
+ * Removes copies in two ways:
+ *
+ * 1. Temporary forwarding: `t1 = a - 1` directly followed by `a = t1`, where t1 is read
+ *    nowhere else, becomes the single instruction `a = a - 1`.
+ * 2. Forward propagation (per basic block): after `x = y`, later reads of x are
+ *    replaced by y as long as neither x nor y has been assigned again. A self-copy
+ *    `x = x` is dropped.
+ *
+ * Copies that become unused afterwards are left for DeadCodeEliminationPass.
+ */
+
+public class CopyPropagationPass implements TacPass {
+
+    public String name() {
+        return "copy-propagation";
+    }
+
+    public boolean run(TacProgram program) {
+        boolean changed = forwardTemporaries(program);
+        changed |= propagate(program);
+        return changed;
+    }
+
+    private static boolean propagate(TacProgram program) {
+        int values = program.valueCount();
+        int[] version = new int[values];       // bumped on every assignment
+        int[] source = new int[values];        // x -> operand it is a copy of
+        int[] sourceVersion = new int[values]; // version of that operand when the copy was made
+        int[] stamp = new int[values];         // equals blockStamp while source[] is valid
+        int blockStamp = 1;
+        boolean changed = false;
+
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            if (opcode == TacProgram.LABEL) {
+                blockStamp++;
+                continue;
+            }
+            int src1 = replacement(program, program.src1(i), version, source, sourceVersion, stamp, blockStamp);
+            int src2 = replacement(program, program.src2(i), version, source, sourceVersion, stamp, blockStamp);
+            if (src1 != program.src1(i) || src2 != program.src2(i)) {
+                program.set(i, opcode, program.dest(i), src1, src2);
+                changed = true;
+            }
+
+            if (TacProgram.hasDest(opcode)) {
+                int dest = program.dest(i);
+                if (opcode == TacProgram.COPY && src1 == dest) {
+                    program.remove(i);
+                    changed = true;
+                    continue;
+                }
+                int id = program.valueId(dest);
+                version[id]++;
+                stamp[id] = 0;
+                if (opcode == TacProgram.COPY) {
+                    int sourceId = program.valueId(src1);
+                    source[id] = src1;
+                    sourceVersion[id] = sourceId >= 0 ? version[sourceId] : 0;
+                    stamp[id] = blockStamp;
+                }
+            } else if (opcode == TacProgram.JUMP || opcode == TacProgram.JUMP_IF_FALSE) {
+                blockStamp++;
+            }
+        }
+        return changed;
+    }
+
+    private static int replacement(TacProgram program, int operand, int[] version, int[] source,
+                                   int[] sourceVersion, int[] stamp, int blockStamp) {
+        int id = program.valueId(operand);
+        if (id < 0 || stamp[id] != blockStamp) return operand;
+        int sourceId = program.valueId(source[id]);
+        if (sourceId >= 0 && version[sourceId] != sourceVersion[id]) return operand;
+        return source[id];
+    }
+
+    private static boolean forwardTemporaries(TacProgram program) {
+        int[] uses = new int[program.tempCount() + 1];
+        for (int i = 0; i < program.size(); i++) {
+            countTempUse(program.src1(i), uses);
+            countTempUse(program.src2(i), uses);
+        }
+        boolean changed = false;
+        for (int i = 0; i + 1 < program.size(); i++) {
+            int dest = program.dest(i);
+            if (TacProgram.hasDest(program.opcode(i)) && TacProgram.kind(dest) == TacProgram.TEMP
+                    && program.opcode(i + 1) == TacProgram.COPY && program.src1(i + 1) == dest
+                    && uses[TacProgram.index(dest)] == 1) {
+                program.set(i, program.opcode(i), program.dest(i + 1), program.src1(i), program.src2(i));
+                program.remove(i + 1);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static void countTempUse(int operand, int[] uses) {
+        if (TacProgram.kind(operand) == TacProgram.TEMP) {
+            uses[TacProgram.index(operand)]++;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * DaemonLoadTest.java
+ * --------------------
+ * Load generator for a CompilerDaemon: `clients` threads, each with its own persistent
+ * connection, send `requests` compile (or run) requests apiece, cycling through the input
+ * files, and the report gives the throughput and the latency distribution as the
+ * clients see it (request written to response read).
+ *
+ * Usage: java DaemonLoadTest [--port=N | --unix=PATH | --embedded] [--clients=N]
+ *            [--requests=N] [--warmup=N] [--run] [--optimize] input...
+ *
+ * - Inputs are files, directories, globs or @manifests, as for BatchCompiler.
+ * - `--embedded` starts a daemon on a free loopback port in this JVM (no warm-up of
+ *   its own; `--warmup` requests per client are sent and discarded first instead).
+ * - All clients start together once every connection is open.
+ *
+ * Example report:
+ *
+ *    Clients  Requests   Seconds   Requests/s   p50 ms   p90 ms   p99 ms   max ms
+ *          4      4000      1.92       2083.3    1.702    2.811    5.104   12.330
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DaemonLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = Arrays.asList(args);
+        int clients = 4;
+        int requests = 1000;
+        int warmup = 200;
+        List<Path> files = new ArrayList<>();
+        for (String option : options) {
+            if (option.startsWith("--clients=")) clients = Integer.parseInt(option.substring("--clients=".length()));
+            else if (option.startsWith("--requests=")) requests = Integer.parseInt(option.substring("--requests=".length()));
+            else if (option.startsWith("--warmup=")) warmup = Integer.parseInt(option.substring("--warmup=".length()));
+            else if (!option.startsWith("--")) files.addAll(BatchCompiler.expand(option));
+        }
+        if (files.isEmpty() || clients < 1 || requests < 1 || warmup < 0) {
+            System.err.println("Usage: java DaemonLoadTest [--port=N | --unix=PATH | --embedded] [--clients=N]"
+                    + " [--requests=N] [--warmup=N] [--run] [--optimize] input...");
+            System.exit(2);
+        }
+
+        List<DaemonProtocol.Request> work = new ArrayList<>(files.size());
+        byte command = options.contains("--run") ? DaemonProtocol.RUN : DaemonProtocol.COMPILE;
+        byte flags = options.contains("--optimize") ? DaemonProtocol.OPTIMIZE : 0;
+        for (Path file : files) {
+            work.add(new DaemonProtocol.Request(command, flags, file.toString(), Files.readAllBytes(file)));
+        }
+
+        CompilerDaemon embedded = null;
+        SocketAddress address;
+        if (options.contains("--embedded")) {
+            embedded = new CompilerDaemon(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    Runtime.getRuntime().availableProcessors(), null);
+            embedded.start();
+            address = embedded.address();
+        } else {
+            address = DaemonProtocol.address(options);
+        }
+
+        long[] latencies = new long[clients * requests];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        List<Throwable> errors = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            final int warmupRequests = warmup;
+            final int measuredRequests = requests;
+            Thread thread = new Thread(() -> {
+                try (SocketChannel channel = DaemonProtocol.connect(address)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+                    int next = client; // clients start at different files
+                    for (int i = 0; i < warmupRequests; i++) {
+                        work.get(next++ % work.size()).writeTo(out);
+                        DaemonProtocol.Response.readFrom(in);
+                    }
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < measuredRequests; i++) {
+                        long start = System.nanoTime();
+                        work.get(next++ % work.size()).writeTo(out);
+                        DaemonProtocol.Response response = DaemonProtocol.Response.readFrom(in);
+                        latencies[client * measuredRequests + i] = System.nanoTime() - start;
+                        if (response.status == DaemonProtocol.FAILED) failures.incrementAndGet();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                    ready.countDown();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + c);
+            thread.start();
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (embedded != null) embedded.close();
+
+        if (!errors.isEmpty()) {
+            System.err.println(" Daemon Error: " + errors.size() + " client(s) failed, e.g. " + errors.get(0)
+                    + " (is a daemon listening on " + address + "?)");
+            System.exit(2);
+        }
+
+        Arrays.sort(latencies);
+        int total = latencies.length;
+        System.out.printf(" %8s %9s %9s %12s %8s %8s %8s %8s%n",
+                "Clients", "Requests", "Seconds", "Requests/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        System.out.printf(" %8d %9d %9.2f %12.1f %8.3f %8.3f %8.3f %8.3f%n",
+                clients, total, elapsed / 1e9, total * 1e9 / elapsed,
+                percentile(latencies, 50) / 1e6, percentile(latencies, 90) / 1e6,
+                percentile(latencies, 99) / 1e6, latencies[total - 1] / 1e6);
+        if (failures.get() > 0) {
+            System.out.println(" " + failures.get() + " requests failed in the daemon.");
+        }
+    }
+
+    /** Nearest-rank percentile of sorted values. */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * DaemonProtocol.java
+ * --------------------
+ * The request/response format spoken between a CompilerDaemon and its clients
+ * (CompilerClient, DaemonLoadTest), and the socket address both sides agree on.
+ *
+ * Transport: a loopback TCP socket (`--port=N`, default DEFAULT_PORT) or a Unix-domain
+ * socket (`--unix=PATH`). A connection carries any number of requests, one at a time:
+ * the client writes a request and reads its response before sending the next.
+ *
+ * Request (DataOutput encoding, big-endian):
+ *   int    MAGIC
+ *   byte   command: COMPILE, RUN, PING or SHUTDOWN
+ *   byte   flags: OPTIMIZE
+ *   UTF    name of the source, used in diagnostics
+ *   int    length, then the source bytes (UTF-8)
+ *
+ * Response:
+ *   byte   status: OK, ERRORS (the program has compile or runtime errors) or FAILED
+ *          (the request could not be served)
+ *   long   nanoseconds the daemon spent on the request
+ *   int    number of diagnostics; each as UTF message, int offset, int line, int column
+ *   text   COMPILE: the three-address code; RUN: the program output; PING: daemon
+ *          statistics (text = int length, then UTF-8 bytes)
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class DaemonProtocol {
+
+    public static final int DEFAULT_PORT = 47320;
+    public static final int MAGIC = 0x4D4C4431; // "MLD1"
+    public static final int MAX_SOURCE_BYTES = 64 * 1024 * 1024;
+
+    // Commands
+    public static final byte COMPILE = 1;
+    public static final byte RUN = 2;
+    public static final byte PING = 3;
+    public static final byte SHUTDOWN = 4;
+
+    // Flags
+    public static final byte OPTIMIZE = 1;
+
+    // Status
+    public static final byte OK = 0;
+    public static final byte ERRORS = 1;
+    public static final byte FAILED = 2;
+
+    private DaemonProtocol() {
+    }
+
+    public static final class Request {
+        public final byte command;
+        public final byte flags;
+        public final String name;
+        public final byte[] source;
+
+        public Request(byte command, byte flags, String name, byte[] source) {
+            this.command = command;
+            this.flags = flags;
+            this.name = name;
+            this.source = source;
+        }
+
+        public boolean optimize() {
+            return (flags & OPTIMIZE) != 0;
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeByte(command);
+            out.writeByte(flags);
+            out.writeUTF(name);
+            out.writeInt(source.length);
+            out.write(source);
+            out.flush();
+        }
+
+        /** Reads the next request, or returns null if the client closed the connection. */
+        public static Request readFrom(DataInputStream in) throws IOException {
+            int magic;
+            try {
+                magic = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (magic != MAGIC) throw new IOException("Daemon Error: not a MiniLang daemon request.");
+            byte command = in.readByte();
+            byte flags = in.readByte();
+            String name = in.readUTF();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_SOURCE_BYTES) throw new IOException("Daemon Error: source too large.");
+            byte[] source = new byte[length];
+            in.readFully(source);
+            return new Request(command, flags, name, source);
+        }
+    }
+
+    public static final class Response {
+        public final byte status;
+        public final long nanos;
+        public final List<Diagnostic> diagnostics;
+        public final String text;
+
+        public Response(byte status, long nanos, List<Diagnostic> diagnostics, String text) {
+            this.status = status;
+            this.nanos = nanos;
+            this.diagnostics = diagnostics;
+            this.text = text;
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(status);
+            out.writeLong(nanos);
+            out.writeInt(diagnostics.size());
+            for (Diagnostic diagnostic : diagnostics) {
+                out.writeUTF(diagnostic.message);
+                out.writeInt(diagnostic.offset);
+                out.writeInt(diagnostic.line);
+                out.writeInt(diagnostic.column);
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.flush();
+        }
+
+        public static Response readFrom(DataInputStream in) throws IOException {
+            byte status = in.readByte();
+            long nanos = in.readLong();
+            int count = in.readInt();
+            List<Diagnostic> diagnostics = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                diagnostics.add(new Diagnostic(in.readUTF(), in.readInt(), in.readInt(), in.readInt()));
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Response(status, nanos, diagnostics, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    // === Addresses ===
+
+    /** The daemon address named by `--port=N` or `--unix=PATH` in args (default: loopback, DEFAULT_PORT). */
+    public static SocketAddress address(List<String> args) {
+        for (String arg : args) {
+            if (arg.startsWith("--unix=")) return UnixDomainSocketAddress.of(arg.substring("--unix=".length()));
+        }
+        int port = DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) port = Integer.parseInt(arg.substring("--port=".length()));
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    public static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        try {
+            channel.connect(address);
+            if (!(address instanceof UnixDomainSocketAddress)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * DeadCodeEliminationPass.java
+ * -----------------------------
+ * Deletes instructions that cannot affect the program's output:
+ *
+ * 1. Unreachable code: every basic block that cannot be reached from the entry.
+ * 2. Dead assignments: writes to a variable or temporary that is not live afterwards
+ *    (found with Liveness). A division is only deleted when its divisor is a non-zero
+ *    constant, because otherwise it may still stop the program with a runtime error.
+ * 3. Useless control flow: a `goto L` or `ifFalse x goto L` that jumps to the very next
+ *    instruction, and labels that no jump refers to any more.
+ */
+
+import java.util.BitSet;
+
+public class DeadCodeEliminationPass implements TacPass {
+
+    public String name() {
+        return "dead-code-elimination";
+    }
+
+    public boolean run(TacProgram program) {
+        boolean changed = false;
+        if (program.size() == 0) return false;
+
+        ControlFlowGraph cfg = new ControlFlowGraph(program);
+        Liveness liveness = new Liveness(cfg);
+        boolean[] reachable = cfg.reachable();
+
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            if (!reachable[b]) {
+                for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                    program.remove(i);
+                }
+                changed = true;
+                continue;
+            }
+            BitSet live = (BitSet) liveness.liveOut(b).clone();
+            for (int i = cfg.blockEnd(b) - 1; i >= cfg.blockStart(b); i--) {
+                int opcode = program.opcode(i);
+                if (TacProgram.hasDest(opcode)) {
+                    int id = program.valueId(program.dest(i));
+                    if (!live.get(id) && canRemove(program, i)) {
+                        program.remove(i);
+                        changed = true;
+                        continue;
+                    }
+                    live.clear(id);
+                }
+                markUse(program, program.src1(i), live);
+                markUse(program, program.src2(i), live);
+            }
+        }
+
+        changed |= removeUselessJumps(program);
+        return changed;
+    }
+
+    private static boolean canRemove(TacProgram program, int i) {
+        if (program.opcode(i) != TacProgram.DIV) return true;
+        int divisor = program.src2(i);
+        return ConstantFoldingPass.isConstant(divisor) && program.constantValue(divisor) != 0;
+    }
+
+    private static void markUse(TacProgram program, int operand, BitSet live) {
+        int id = program.valueId(operand);
+        if (id >= 0) live.set(id);
+    }
+
+    private static boolean removeUselessJumps(TacProgram program) {
+        boolean changed = false;
+        int size = program.size();
+        int[] references = new int[program.labelCount() + 1];
+
+        for (int i = 0; i < size; i++) {
+            int opcode = program.opcode(i);
+            if (opcode != TacProgram.JUMP && opcode != TacProgram.JUMP_IF_FALSE) continue;
+            // Jump to the next instruction, skipping NOPs and other labels
+            int target = program.dest(i);
+            for (int next = i + 1; next < size; next++) {
+                int nextOpcode = program.opcode(next);
+                if (nextOpcode == TacProgram.NOP) continue;
+                if (nextOpcode != TacProgram.LABEL) break;
+                if (program.dest(next) == target) {
+                    program.remove(i);
+                    changed = true;
+                    break;
+                }
+            }
+            if (program.opcode(i) != TacProgram.NOP) {
+                references[TacProgram.index(target)]++;
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (program.opcode(i) == TacProgram.LABEL && references[TacProgram.index(program.dest(i))] == 0) {
+                program.remove(i);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
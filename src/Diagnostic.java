@@ -0,0 +1,82 @@
+/**
+ * Diagnostic.java
+ * ----------------
+ * One compile error with its position in the source, e.g.
+ *
+ *   3:14: Syntax Error: Expected ';' after assignment. at token: 'print' (type=PRINT)
+ *
+ * The lexer, the SyntaxAnalyzer and the SemanticAnalyzer record diagnostics into a
+ * shared list instead of stopping at the first error, so one compile reports every
+ * error in a file (see SyntaxAnalyzer.parse(List) and SemanticAnalyzer.analyze(Block, List)).
+ *
+ * The phases only know source offsets. Line and column (both 1-based) are filled in by
+ * locate() from the source text, which callers do once, on the failure path.
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class Diagnostic {
+
+    public final String message; // starts with the phase, e.g. "Syntax Error: "
+    public final int offset;     // source offset, or -1 if unknown
+    public final int line;       // -1 until located
+    public final int column;     // -1 until located
+
+    public Diagnostic(String message, int offset) {
+        this(message, offset, -1, -1);
+    }
+
+    public Diagnostic(String message, int offset, int line, int column) {
+        this.message = message;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    /** Source order; diagnostics without a position come last. */
+    public static final Comparator<Diagnostic> BY_OFFSET =
+            Comparator.comparingInt(d -> d.offset < 0 ? Integer.MAX_VALUE : d.offset);
+
+    /** Copies of the diagnostics in source order, with line and column resolved against the source. */
+    public static List<Diagnostic> locate(List<Diagnostic> diagnostics, CharSequence source) {
+        List<Diagnostic> located = new ArrayList<>(diagnostics.size());
+        List<Diagnostic> sorted = new ArrayList<>(diagnostics);
+        sorted.sort(BY_OFFSET);
+        int line = 1;
+        int lineStart = 0;
+        int scanned = 0;
+        for (Diagnostic diagnostic : sorted) {
+            if (diagnostic.offset < 0 || diagnostic.offset > source.length()) {
+                located.add(diagnostic);
+                continue;
+            }
+            for (; scanned < diagnostic.offset; scanned++) {
+                if (source.charAt(scanned) == '\n') {
+                    line++;
+                    lineStart = scanned + 1;
+                }
+            }
+            located.add(new Diagnostic(diagnostic.message, diagnostic.offset, line, diagnostic.offset - lineStart + 1));
+        }
+        return located;
+    }
+
+    /** All diagnostics, one per line, e.g. as the message of a single exception. */
+    public static String summary(List<Diagnostic> diagnostics) {
+        StringBuilder out = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (out.length() > 0) out.append('\n');
+            out.append(diagnostic);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        if (line > 0) return line + ":" + column + ": " + message;
+        if (offset >= 0) return "offset " + offset + ": " + message;
+        return message;
+    }
+}
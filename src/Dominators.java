@@ -0,0 +1,170 @@
+/**
+ * Dominators.java
+ * ----------------
+ * **Dominator tree and dominance frontiers** of a ControlFlowGraph.
+ *
+ * Block d dominates block b if every path from the entry to b passes through d. The
+ * immediate dominators are computed with the iterative algorithm of Cooper, Harvey and
+ * Kennedy ("A Simple, Fast Dominance Algorithm"): blocks are numbered in reverse
+ * postorder and idom(b) is refined as the common ancestor of its processed predecessors
+ * until nothing changes.
+ *
+ * The dominance frontier of d holds the blocks where d's dominance ends: b is in DF(d)
+ * if d dominates a predecessor of b but does not strictly dominate b. These are the
+ * join points where SSA construction places phi nodes.
+ *
+ * Unreachable blocks have no immediate dominator (-1) and are ignored. The entry block
+ * must have no predecessors (SsaForm inserts an entry label when it would).
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Dominators {
+
+    private final ControlFlowGraph cfg;
+    private final int[] idom;
+    private final int[] reversePostorder;  // reachable blocks only
+    private final int[] rpoNumber;         // block -> position in reversePostorder, -1 if unreachable
+    private final int[][] children;
+    private final int[][] frontier;
+
+    public Dominators(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        int blocks = cfg.blockCount();
+        idom = new int[blocks];
+        rpoNumber = new int[blocks];
+        Arrays.fill(idom, -1);
+        Arrays.fill(rpoNumber, -1);
+        reversePostorder = computeReversePostorder();
+        for (int k = 0; k < reversePostorder.length; k++) {
+            rpoNumber[reversePostorder[k]] = k;
+        }
+
+        if (blocks > 0) {
+            idom[0] = 0;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int k = 1; k < reversePostorder.length; k++) {
+                    int b = reversePostorder[k];
+                    int newIdom = -1;
+                    for (int p : cfg.predecessors(b)) {
+                        if (idom[p] == -1) continue;
+                        newIdom = newIdom == -1 ? p : intersect(p, newIdom);
+                    }
+                    if (newIdom != idom[b]) {
+                        idom[b] = newIdom;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        List<List<Integer>> childLists = new ArrayList<>(blocks);
+        List<List<Integer>> frontierLists = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            childLists.add(new ArrayList<>());
+            frontierLists.add(new ArrayList<>());
+        }
+        for (int b : reversePostorder) {
+            if (b != 0) childLists.get(idom[b]).add(b);
+            int[] predecessors = cfg.predecessors(b);
+            if (predecessors.length < 2) continue;
+            for (int p : predecessors) {
+                if (idom[p] == -1) continue;
+                for (int runner = p; runner != idom[b]; runner = idom[runner]) {
+                    List<Integer> df = frontierLists.get(runner);
+                    if (df.isEmpty() || df.get(df.size() - 1).intValue() != b) df.add(b); // b's additions are consecutive
+                }
+            }
+        }
+        children = toArrays(childLists);
+        frontier = toArrays(frontierLists);
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (rpoNumber[a] > rpoNumber[b]) a = idom[a];
+            while (rpoNumber[b] > rpoNumber[a]) b = idom[b];
+        }
+        return a;
+    }
+
+    /** Depth-first postorder from the entry (iterative, so deep graphs do not overflow the stack), reversed. */
+    private int[] computeReversePostorder() {
+        int blocks = cfg.blockCount();
+        if (blocks == 0) return new int[0];
+        int[] order = new int[blocks];
+        int count = 0;
+        boolean[] visited = new boolean[blocks];
+        int[] stack = new int[blocks];
+        int[] nextSuccessor = new int[blocks];
+        int top = 0;
+        stack[top++] = 0;
+        visited[0] = true;
+        while (top > 0) {
+            int b = stack[top - 1];
+            int[] successors = cfg.successors(b);
+            if (nextSuccessor[b] < successors.length) {
+                int s = successors[nextSuccessor[b]++];
+                if (!visited[s]) {
+                    visited[s] = true;
+                    stack[top++] = s;
+                }
+            } else {
+                order[count++] = b;
+                top--;
+            }
+        }
+        int[] reversed = new int[count];
+        for (int k = 0; k < count; k++) reversed[k] = order[count - 1 - k];
+        return reversed;
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int b = 0; b < arrays.length; b++) {
+            List<Integer> list = lists.get(b);
+            arrays[b] = new int[list.size()];
+            for (int k = 0; k < list.size(); k++) arrays[b][k] = list.get(k);
+        }
+        return arrays;
+    }
+
+    public ControlFlowGraph cfg() {
+        return cfg;
+    }
+
+    /** Immediate dominator of b (the entry is its own), or -1 if b is unreachable. */
+    public int idom(int b) {
+        return idom[b];
+    }
+
+    /** Children of b in the dominator tree. */
+    public int[] children(int b) {
+        return children[b];
+    }
+
+    /** Dominance frontier of b. */
+    public int[] frontier(int b) {
+        return frontier[b];
+    }
+
+    /** Reachable blocks in reverse postorder (the entry first). */
+    public int[] reversePostorder() {
+        return reversePostorder;
+    }
+
+    public boolean isReachable(int b) {
+        return idom[b] != -1;
+    }
+
+    /** True if a dominates b (every block dominates itself). */
+    public boolean dominates(int a, int b) {
+        if (idom[b] == -1 || idom[a] == -1) return false;
+        while (rpoNumber[b] > rpoNumber[a]) b = idom[b];
+        return a == b;
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * ExpressionFactory.java
+ * -----------------------
+ * Creates the expression nodes (NumberLiteral, Variable, BinaryExpression) for the
+ * SyntaxAnalyzer. Two kinds:
+ *
+ * - plain(): a new node for every occurrence; the AST is a tree (the default).
+ * - hashConsing(): structurally identical expressions are interned, so every repeated
+ *   `a * b + c` in a program is one node and the AST becomes a DAG. Machine-generated
+ *   programs repeat subexpressions a lot, so the AST shrinks, and later stages get
+ *   common-subexpression identity for free: the IntermediateCodeGenerator can reuse
+ *   the value of a shared node (see IntermediateCodeGenerator.reuseShared). A
+ *   BinaryExpression handed out more than once is marked `shared`.
+ *
+ * Interning rules:
+ * - Numbers by value; binary expressions by operator and the identity of their
+ *   (already interned) operands.
+ * - Variables by name *and the declaration the name refers to*. SemanticAnalyzer
+ *   writes the resolved slot into every Variable, so `x` inside a block that declares
+ *   its own `x` must not share a node with the outer `x`. The parser reports every
+ *   declaration and block to the factory (declare, openScope, closeScope), which tracks
+ *   the current declaration of each name the same way SemanticAnalyzer does. Uses
+ *   before any declaration share one node per name; they are errors anyway.
+ *
+ * Consequences of sharing:
+ * - A shared node keeps the span of its first occurrence, so a semantic error in a
+ *   repeated expression points to that occurrence.
+ * - A shared node is visited once per occurrence by tree walks (SemanticAnalyzer,
+ *   Interpreter, JvmCompiler, CompilerMetrics.countNodes), which is correct for all of
+ *   them. ProgramImage and AstArena.from() store a DAG as the equivalent tree.
+ * - Do not combine with IncrementalParser, which moves the spans of reused nodes.
+ *
+ * A hash-consing factory belongs to one parse; it is not thread-safe.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExpressionFactory {
+
+    private static final ExpressionFactory PLAIN = new ExpressionFactory();
+
+    protected ExpressionFactory() {
+    }
+
+    /** A new node for every occurrence. */
+    public static ExpressionFactory plain() {
+        return PLAIN;
+    }
+
+    /** Interns structurally identical expressions; use one per parse. */
+    public static ExpressionFactory hashConsing() {
+        return new HashConsing();
+    }
+
+    public Expression number(int value, int start, int end) {
+        return spanned(new NumberLiteral(value), start, end);
+    }
+
+    public Expression variable(String name, int start, int end) {
+        return spanned(new Variable(name), start, end);
+    }
+
+    public Expression binary(Expression left, BinaryExpression.Operator operator, Expression right, int start, int end) {
+        return spanned(new BinaryExpression(left, operator, right), start, end);
+    }
+
+    /** A declaration of `name` has been parsed in the current scope. */
+    public void declare(String name) {
+    }
+
+    /** A `{ ... }` block starts; returns the mark to pass to closeScope(). */
+    public int openScope() {
+        return 0;
+    }
+
+    /** The block opened with openScope() has ended. */
+    public void closeScope(int mark) {
+    }
+
+    /** Nodes requested from the factory so far (0 for plain()). */
+    public long requested() {
+        return 0;
+    }
+
+    /** Distinct nodes created so far (0 for plain()). */
+    public int distinct() {
+        return 0;
+    }
+
+    static <T extends SpannedNode> T spanned(T node, int start, int end) {
+        node.setSpan(start, end);
+        return node;
+    }
+
+    /** The interning table: open addressing over the nodes, keyed by structure. */
+    private static final class HashConsing extends ExpressionFactory {
+        private Expression[] nodes = new Expression[1024];
+        private int[] hashes = new int[1024];
+        private int[] declarations = new int[1024]; // Variable: the declaration it refers to
+        private int size;
+        private long requested;
+
+        // Current declaration of each name (-1 = none); undo log of (name, previous) per block
+        private final Map<String, Integer> current = new HashMap<>();
+        private String[] undoNames = new String[16];
+        private int[] undoDeclarations = new int[16];
+        private int undoSize;
+        private int declarationCount;
+
+        @Override
+        public Expression number(int value, int start, int end) {
+            requested++;
+            int hash = mix(value * 31 + 1);
+            int mask = nodes.length - 1;
+            int slot = hash & mask;
+            for (Expression node; (node = nodes[slot]) != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && node instanceof NumberLiteral && ((NumberLiteral) node).value == value) {
+                    return node;
+                }
+            }
+            return add(slot, hash, -1, spanned(new NumberLiteral(value), start, end));
+        }
+
+        @Override
+        public Expression variable(String name, int start, int end) {
+            requested++;
+            int declaration = current.getOrDefault(name, -1);
+            int hash = mix((name.hashCode() * 31 + declaration) * 31 + 2);
+            int mask = nodes.length - 1;
+            int slot = hash & mask;
+            for (Expression node; (node = nodes[slot]) != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && declarations[slot] == declaration && node instanceof Variable
+                        && ((Variable) node).name.equals(name)) {
+                    return node;
+                }
+            }
+            return add(slot, hash, declaration, spanned(new Variable(name), start, end));
+        }
+
+        @Override
+        public Expression binary(Expression left, BinaryExpression.Operator operator, Expression right,
+                                 int start, int end) {
+            requested++;
+            int hash = mix(((System.identityHashCode(left) * 31 + System.identityHashCode(right)) * 31
+                    + operator.ordinal()) * 31 + 3);
+            int mask = nodes.length - 1;
+            int slot = hash & mask;
+            for (Expression node; (node = nodes[slot]) != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && node instanceof BinaryExpression) {
+                    BinaryExpression binary = (BinaryExpression) node;
+                    if (binary.operator == operator && binary.left == left && binary.right == right) {
+                        binary.shared = true;
+                        return node;
+                    }
+                }
+            }
+            return add(slot, hash, -1, spanned(new BinaryExpression(left, operator, right), start, end));
+        }
+
+        private Expression add(int slot, int hash, int declaration, Expression node) {
+            nodes[slot] = node;
+            hashes[slot] = hash;
+            declarations[slot] = declaration;
+            if (++size * 2 > nodes.length) rehash();
+            return node;
+        }
+
+        private void rehash() {
+            Expression[] oldNodes = nodes;
+            int[] oldHashes = hashes;
+            int[] oldDeclarations = declarations;
+            nodes = new Expression[oldNodes.length * 2];
+            hashes = new int[nodes.length];
+            declarations = new int[nodes.length];
+            int mask = nodes.length - 1;
+            for (int i = 0; i < oldNodes.length; i++) {
+                if (oldNodes[i] == null) continue;
+                int slot = oldHashes[i] & mask;
+                while (nodes[slot] != null) slot = (slot + 1) & mask;
+                nodes[slot] = oldNodes[i];
+                hashes[slot] = oldHashes[i];
+                declarations[slot] = oldDeclarations[i];
+            }
+        }
+
+        @Override
+        public void declare(String name) {
+            Integer previous = current.put(name, declarationCount++);
+            if (undoSize == undoNames.length) {
+                undoNames = Arrays.copyOf(undoNames, undoSize * 2);
+                undoDeclarations = Arrays.copyOf(undoDeclarations, undoSize * 2);
+            }
+            undoNames[undoSize] = name;
+            undoDeclarations[undoSize++] = previous != null ? previous : -1;
+        }
+
+        @Override
+        public int openScope() {
+            return undoSize;
+        }
+
+        @Override
+        public void closeScope(int mark) {
+            while (undoSize > mark) {
+                undoSize--;
+                if (undoDeclarations[undoSize] < 0) {
+                    current.remove(undoNames[undoSize]);
+                } else {
+                    current.put(undoNames[undoSize], undoDeclarations[undoSize]);
+                }
+                undoNames[undoSize] = null;
+            }
+        }
+
+        @Override
+        public long requested() {
+            return requested;
+        }
+
+        @Override
+        public int distinct() {
+            return size;
+        }
+
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
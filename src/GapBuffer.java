@@ -0,0 +1,109 @@
+/**
+ * GapBuffer.java
+ * ---------------
+ * Editable text kept in one char[] with a **gap** (unused space) at the last edit, as
+ * editors do: replacing text at the gap only writes the inserted characters, and moving
+ * the gap to the next edit only moves the characters in between. An edit therefore costs
+ * its own length plus its distance from the previous edit, not the length of the text.
+ *
+ *   array:  [ text before the gap | gap ... | text behind the gap ]
+ *            0                gapStart   gapEnd                array.length
+ *
+ * The IncrementalParser keeps its source in a GapBuffer. The text behind the gap is
+ * contiguous, so after moveGap(offset) a TokenScanner can scan it straight from the
+ * array, from gapEnd() on; its offsets are then larger by gapLength().
+ */
+
+import java.util.Arrays;
+
+public class GapBuffer implements CharSequence {
+
+    private static final int MIN_GAP = 256;
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    public GapBuffer(String text) {
+        chars = new char[text.length() + MIN_GAP];
+        text.getChars(0, text.length(), chars, 0);
+        gapStart = text.length();
+        gapEnd = chars.length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - gapLength();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index < gapStart ? index : index + gapLength()];
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (end <= gapStart) return new String(chars, start, end - start);
+        if (start >= gapStart) return new String(chars, start + gapLength(), end - start);
+        return new StringBuilder(end - start)
+                .append(chars, start, gapStart - start)
+                .append(chars, gapEnd, end - gapStart)
+                .toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+
+    /** Replaces `removedLength` characters at `offset` with `text`, leaving the gap behind the inserted text. */
+    public void replace(int offset, int removedLength, String text) {
+        moveGap(offset);
+        gapEnd += removedLength;
+        if (text.length() > gapLength()) grow(text.length());
+        text.getChars(0, text.length(), chars, gapStart);
+        gapStart += text.length();
+    }
+
+    /** Moves the gap to `offset`; only the characters between the old and new position move. */
+    public void moveGap(int offset) {
+        if (offset < gapStart) {
+            int count = gapStart - offset;
+            System.arraycopy(chars, offset, chars, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (offset > gapStart) {
+            int count = offset - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    /** The backing array: the text before the gap at [0, gapStart()), the rest from gapEnd(). */
+    public char[] array() {
+        return chars;
+    }
+
+    public int gapStart() {
+        return gapStart;
+    }
+
+    public int gapEnd() {
+        return gapEnd;
+    }
+
+    public int gapLength() {
+        return gapEnd - gapStart;
+    }
+
+    /** Makes the gap at least `needed` characters long (and at least as long as the text). */
+    private void grow(int needed) {
+        int tail = chars.length - gapEnd;
+        int capacity = Math.max(chars.length * 2, gapStart + needed + tail + MIN_GAP);
+        char[] grown = Arrays.copyOf(chars, capacity);
+        System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+        chars = grown;
+        gapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * IncrementalParser.java
+ * -----------------------
+ * Keeps the tokens and AST of a MiniLang source file up to date while the file is
+ * being edited, without re-lexing and re-parsing the whole file on every change.
+ *
+ * An edit is described by (offset, removed length, inserted text). For each edit:
+ *
+ * 1. Re-lexing: scanning restarts at the last token that begins before the edit and
+ *    stops as soon as it produces a token that lines up (same offset after the edit,
+ *    same type and length) with an old token behind the edit. Only the tokens in
+ *    between are replaced in the TokenStream.
+ *
+ * 2. Re-parsing: the AST is searched for the smallest `{ ... }` Block that strictly
+ *    contains the damaged region (the whole program if there is none). Inside that
+ *    Block, parsing restarts at the first statement touched by the damage and stops
+ *    once it reaches an old statement that lies entirely behind the edit. That
+ *    statement and all following ones are reused as they are.
+ *
+ * 3. Spans: tokens and AST nodes behind the edit keep their objects; only their
+ *    offsets are moved by the length difference of the edit.
+ *
+ * The text, the tokens and the spans each keep a gap at the last edit, so that neither
+ * step touches what lies behind the edit:
+ * - the text is a GapBuffer, and the re-lexing scans it in place behind its gap;
+ * - the tokens are a TokenGapBuffer, which moves all tokens behind the gap by
+ *   updating one shift;
+ * - AST nodes starting behind the gap store their span relative to one SpanShift
+ *   (`tail`), so moving all of them is one addition. Only the blocks and statements
+ *   that enclose the edit have their ends moved one by one.
+ * Moving a gap from one edit to the next converts what lies in between, so an edit
+ * costs the size of the damaged region plus its distance from the previous edit,
+ * not the size of the file. The first edit after a full parse moves the gaps from the
+ * end of the file.
+ *
+ * If the edit changes the block structure (e.g. a brace is inserted or removed), or
+ * the re-parsed region does not line up with the surrounding tree, the parser falls
+ * back to a full parse. If the edited source is not valid MiniLang, the error is
+ * thrown and the next edit starts from a full re-lex and parse.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IncrementalParser {
+
+    private final GapBuffer text;
+    private TokenGapBuffer tokens; // null after a lexical error
+    private Block program;         // null after a syntax error
+
+    // Nodes starting at or behind `gap` store their spans relative to `tail`
+    private SpanShift tail = new SpanShift();
+    private int gap = Integer.MAX_VALUE;
+
+    // Work done by the last edit
+    private int relexedTokens;
+    private int reparsedTokens;
+
+    public IncrementalParser(String source) {
+        this.text = new GapBuffer(source);
+        rebuild();
+    }
+
+    public Block program() {
+        return program;
+    }
+
+    public TokenGapBuffer tokens() {
+        return tokens;
+    }
+
+    public String source() {
+        return text.toString();
+    }
+
+    /** Number of tokens produced by re-lexing during the last edit. */
+    public int lastRelexedTokens() {
+        return relexedTokens;
+    }
+
+    /** Number of tokens consumed by re-parsing during the last edit. */
+    public int lastReparsedTokens() {
+        return reparsedTokens;
+    }
+
+    /**
+     * Applies a text edit and brings the tokens and AST up to date.
+     * Returns the updated program, or throws if the edited source has a lexical or syntax error.
+     */
+    public Block edit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > text.length()) {
+            throw new IllegalArgumentException("Edit out of range: offset " + offset + ", removed " + removedLength);
+        }
+        text.replace(offset, removedLength, insertedText);
+
+        if (tokens == null || program == null) {
+            return rebuild();
+        }
+
+        int delta = insertedText.length() - removedLength;
+        int oldEditEnd = offset + removedLength;
+        int newEditEnd = offset + insertedText.length();
+
+        // === 1. Re-lex the damaged region ===
+        int first = tokens.indexAt(offset) - 1;
+        int scanFrom = 0;
+        if (first >= 0) {
+            scanFrom = tokens.start(first);
+        } else {
+            first = 0;
+        }
+
+        int resync = tokens.indexAt(oldEditEnd);
+        TokenStream replacement = new TokenStream(tokens.names(), 16);
+        // The text from scanFrom on lies behind the gap, at array offsets larger by the gap length
+        text.moveGap(scanFrom);
+        int gapLength = text.gapLength();
+        TokenScanner scanner = new TokenScanner(text.array(), text.gapEnd(), text.array().length);
+        try {
+            LexicalAnalyzer.TokenType type;
+            while ((type = scanner.next()) != null) {
+                int start = (int) scanner.tokenStart() - gapLength;
+                if (start >= newEditEnd) {
+                    while (resync < tokens.size() && tokens.start(resync) + delta < start) resync++;
+                    if (resync < tokens.size() && tokens.start(resync) + delta == start
+                            && tokens.type(resync) == type && tokens.length(resync) == scanner.tokenLength()) {
+                        break; // lexer is back in step with the old tokens
+                    }
+                }
+                int value = 0;
+                if (type == LexicalAnalyzer.TokenType.IDENTIFIER) {
+                    value = scanner.internText(tokens.names());
+                } else if (type == LexicalAnalyzer.TokenType.NUMBER) {
+                    value = scanner.numberValue();
+                }
+                replacement.add(type, start, scanner.tokenLength(), value);
+            }
+            if (type == null) resync = tokens.size();
+        } catch (RuntimeException e) {
+            return rebuild(); // throws the error again, with its line counted over the whole text
+        }
+
+        // Damaged region in old offsets
+        int low = scanFrom;
+        int high = Math.max(oldEditEnd, resync > first ? tokens.end(resync - 1) : oldEditEnd);
+
+        tokens.replace(first, resync, replacement, delta);
+        relexedTokens = replacement.size();
+
+        // === 2. Re-parse the smallest enclosing block ===
+        try {
+            if (!reparse(low, high, delta)) {
+                program = parseAll();
+            }
+        } catch (RuntimeException e) {
+            program = null;
+            throw e;
+        }
+        return program;
+    }
+
+    /** Full re-lex and parse, used at start-up and to recover from errors. */
+    private Block rebuild() {
+        program = null;
+        tokens = null;
+        text.moveGap(text.length()); // the whole text in front of the gap, at its own offsets
+        tokens = new TokenGapBuffer(TokenStream.scan(new TokenScanner(text.array(), 0, text.length())), text);
+        relexedTokens = tokens.size();
+        program = parseAll();
+        return program;
+    }
+
+    private Block parseAll() {
+        TokenGapBuffer.Cursor cursor = tokens.cursor();
+        SyntaxAnalyzer parser = new SyntaxAnalyzer(cursor);
+        List<Statement> statements = new ArrayList<>();
+        while (cursor.index() < tokens.size()) {
+            statements.add(parser.parseNext());
+        }
+        reparsedTokens = tokens.size();
+        Block root = new Block(statements);
+        updateRootSpan(root);
+        tail = new SpanShift();
+        gap = Integer.MAX_VALUE; // all spans are absolute
+        return root;
+    }
+
+    /**
+     * Re-parses the statements damaged by an edit covering [low, high) in old offsets.
+     * Returns false if the change cannot be confined to one block.
+     */
+    private boolean reparse(int low, int high, int delta) {
+        moveSpanGap(high);
+
+        // Find the innermost block whose braces enclose the damage, remembering the path to it.
+        List<Block> path = new ArrayList<>();
+        List<Integer> pathIndexes = new ArrayList<>();
+        Block block = program;
+        while (true) {
+            List<Statement> statements = block.statements;
+            int i = lastStartingAtOrBefore(statements, low);
+            if (i >= 0) {
+                Statement statement = statements.get(i);
+                Block inner = null;
+                if (statement instanceof IfStatement) {
+                    IfStatement ifStatement = (IfStatement) statement;
+                    if (encloses(ifStatement.thenBlock, low, high)) inner = ifStatement.thenBlock;
+                    else if (ifStatement.elseBlock != null && encloses(ifStatement.elseBlock, low, high)) inner = ifStatement.elseBlock;
+                } else if (statement instanceof WhileStatement) {
+                    WhileStatement whileStatement = (WhileStatement) statement;
+                    if (encloses(whileStatement.body, low, high)) inner = whileStatement.body;
+                }
+                if (inner != null) {
+                    path.add(block);
+                    pathIndexes.add(i);
+                    block = inner;
+                    continue;
+                }
+            }
+            break;
+        }
+
+        List<Statement> statements = block.statements;
+        int firstDamaged = Math.max(lastStartingAtOrBefore(statements, low), 0);
+        while (firstDamaged < statements.size() && statements.get(firstDamaged).end() < low) firstDamaged++;
+
+        int startOffset = low;
+        if (firstDamaged < statements.size()) {
+            startOffset = Math.min(startOffset, statements.get(firstDamaged).start());
+        }
+        int startIndex = tokens.indexAt(startOffset);
+
+        int closeIndex = tokens.size();
+        if (block != program) {
+            closeIndex = tokens.indexAt(block.end() - 1 + delta);
+            if (closeIndex >= tokens.size() || tokens.type(closeIndex) != LexicalAnalyzer.TokenType.RBRACE) {
+                return false;
+            }
+        }
+
+        TokenGapBuffer.Cursor cursor = tokens.cursor(startIndex);
+        SyntaxAnalyzer parser = new SyntaxAnalyzer(cursor);
+        List<Statement> parsed = new ArrayList<>();
+        int reuse = firstDamaged;
+        try {
+            while (true) {
+                int at = cursor.index();
+                if (at == closeIndex) {
+                    reuse = statements.size();
+                    break;
+                }
+                if (at > closeIndex) return false;
+                int newOffset = tokens.start(at);
+                while (reuse < statements.size()
+                        && (statements.get(reuse).start() < high || statements.get(reuse).start() + delta < newOffset)) {
+                    reuse++;
+                }
+                if (reuse < statements.size() && statements.get(reuse).start() + delta == newOffset) {
+                    break; // the rest of the block is unchanged
+                }
+                parsed.add(parser.parseNext());
+            }
+        } catch (RuntimeException e) {
+            return false; // e.g. a brace was added or removed; let the full parse decide
+        }
+        reparsedTokens = cursor.index() - startIndex;
+
+        // Move everything behind the damage, and the ends of the nodes around it, then
+        // splice in the new statements.
+        tail.delta += delta;
+        for (int level = 0; level < path.size(); level++) {
+            ((SpannedNode) path.get(level).statements.get(pathIndexes.get(level))).end += delta;
+        }
+        for (int level = 1; level < path.size(); level++) {
+            path.get(level).end += delta;
+        }
+        if (block != program) block.end += delta;
+        statements.subList(firstDamaged, reuse).clear();
+        statements.addAll(firstDamaged, parsed);
+        gap = high + delta;
+        convert(parsed, gap, Integer.MAX_VALUE, gap); // new nodes behind the gap join the tail
+        updateRootSpan(program);
+        program.slotCount = -1; // the tree changed: names are resolved again on next use
+        return true;
+    }
+
+    /** Binary search over statements (ordered by offset): last one starting at or before `offset`. */
+    private static int lastStartingAtOrBefore(List<Statement> statements, int offset) {
+        int low = 0;
+        int high = statements.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (statements.get(mid).start() <= offset) low = mid + 1;
+            else high = mid;
+        }
+        return low - 1;
+    }
+
+    /** True if [low, high) lies strictly between the braces of the block. */
+    private static boolean encloses(Block block, int low, int high) {
+        return block.start() < low && high <= block.end() - 1;
+    }
+
+    private static void updateRootSpan(Block root) {
+        List<Statement> statements = root.statements;
+        if (statements.isEmpty()) {
+            root.setSpan(-1, -1);
+        } else {
+            root.setSpan(statements.get(0).start(), statements.get(statements.size() - 1).end());
+        }
+    }
+
+    /** Moves the span gap to `position`: the nodes starting at or behind it become relative to tail, the rest absolute. */
+    private void moveSpanGap(int position) {
+        if (position != gap) {
+            convert(program.statements, Math.min(position, gap), Math.max(position, gap), position);
+            gap = position;
+        }
+    }
+
+    /**
+     * Converts the nodes under `roots` that start in [low, high): relative to tail if they
+     * start at or behind `position`, absolute otherwise (iteratively: trees may be deep).
+     * Only subtrees overlapping [low, high) are visited.
+     */
+    private void convert(List<Statement> roots, int low, int high, int position) {
+        ArrayDeque<ASTNode> pending = new ArrayDeque<>();
+        pushOverlapping(roots, low, high, pending);
+        while (!pending.isEmpty()) {
+            ASTNode node = pending.pop();
+            int start = node.start();
+            if (start >= low && start < high) setRelative((SpannedNode) node, start >= position);
+            if (node instanceof Block) {
+                pushOverlapping(((Block) node).statements, low, high, pending);
+            } else if (node instanceof Assignment) {
+                pushOverlapping(((Assignment) node).expression, low, high, pending);
+            } else if (node instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) node;
+                pushOverlapping(ifStatement.condition, low, high, pending);
+                pushOverlapping(ifStatement.thenBlock, low, high, pending);
+                if (ifStatement.elseBlock != null) pushOverlapping(ifStatement.elseBlock, low, high, pending);
+            } else if (node instanceof WhileStatement) {
+                pushOverlapping(((WhileStatement) node).condition, low, high, pending);
+                pushOverlapping(((WhileStatement) node).body, low, high, pending);
+            } else if (node instanceof PrintStatement) {
+                pushOverlapping(((PrintStatement) node).expression, low, high, pending);
+            } else if (node instanceof BinaryExpression) {
+                pushOverlapping(((BinaryExpression) node).left, low, high, pending);
+                pushOverlapping(((BinaryExpression) node).right, low, high, pending);
+            }
+        }
+    }
+
+    /** Pushes the statements (ordered by offset) that overlap [low, high), found by binary search. */
+    private static void pushOverlapping(List<Statement> statements, int low, int high, ArrayDeque<ASTNode> pending) {
+        for (int i = Math.max(lastStartingAtOrBefore(statements, low), 0);
+                i < statements.size() && statements.get(i).start() < high; i++) {
+            pushOverlapping(statements.get(i), low, high, pending);
+        }
+    }
+
+    private static void pushOverlapping(ASTNode node, int low, int high, ArrayDeque<ASTNode> pending) {
+        if (node.start() < high && node.end() > low) pending.push(node);
+    }
+
+    private void setRelative(SpannedNode node, boolean relative) {
+        if ((node.shift != null) == relative) return;
+        int offset = relative ? -tail.delta : tail.delta;
+        node.start += offset;
+        node.end += offset;
+        node.shift = relative ? tail : null;
+    }
+}
@@ -3,130 +3,425 @@
  * IntermediateCodeGenerator.java
  * -------------------------------
  * This class performs **Intermediate Code Generation** for the MiniLang compiler.
- * It translates high-level assignment expressions into a lower-level,
- * three-address code (TAC) format suitable for further compilation or interpretation.
+ * It walks the AST (the Block returned by `SyntaxAnalyzer.parse`) and translates it into
+ * three-address code (TAC), collected in memory as a TacProgram.
  *
  *  Intermediate Code Generation: Translate to 3-address code
  *
  * Main Responsibilities:
- * - Detects assignment statements like: `x = a + b;`
- * - Converts expressions into simplified instructions using temporary variables.
- * - Generates intermediate representation (TAC) with helpful error diagnostics.
+ * - Variables: each slot resolved by the SemanticAnalyzer becomes one TAC variable.
+ * - Assignments: evaluates the expression tree into temporaries, respecting operator
+ *   precedence as parsed (`a + b * 2` computes `b * 2` first).
+ * - If/else and while: emits labels with conditional and unconditional jumps.
+ * - Print statements: emits `print` instructions.
  *
  *  Example Translation:
- *   Input:    x = a + b;
- *   Output:   t1 = a + b
- *             x = t1
+ *   Input:    while (a > 0) { a = a - 1; }
+ *   Output:   L1:
+ *             t1 = a > 0
+ *             ifFalse t1 goto L2
+ *             t2 = a - 1
+ *             a = t2
+ *             goto L1
+ *             L2:
  *
- *  Error Handling:
- * - Detects missing semicolons.
- * - Detects unexpected tokens in expressions.
- * - Detects assignment without right-hand expression.
+ * Nothing is printed here; use `TacProgram.writeTo` to output the generated code.
  *
- *  Limitations:
- * - No operator precedence (evaluates left to right).
- * - Handles basic binary expressions and assignments only.
+ * Incremental use (PipelinedFrontEnd): begin(), generateTopLevel() for each analyzed
+ * top-level statement in program order, then finish(). Gives the same code as generate().
+ *
+ * An analyzed AstArena can be translated instead of a Block (`new
+ * IntermediateCodeGenerator(arena).generate()`); the code is the same as for the tree.
+ *
+ * Shared expressions (`reuseShared`, for a DAG parsed with ExpressionFactory.hashConsing()):
+ * a BinaryExpression node that occurs more than once (`shared`) is computed once, and later
+ * occurrences reuse its temporary while that is still valid:
+ * - only within straight-line code: every label and jump forgets all reusable values;
+ * - only while none of the variables the expression reads has been assigned since
+ *   (each slot records the assignment count of its last assignment).
  */
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 public class IntermediateCodeGenerator {
-    private final List<LexicalAnalyzer.Token> tokens;
-    private int tempCount = 0;
-    private int index = 0;
+    private final Block program;
+    private final AstArena arena;
+    private TacProgram code;
+    private int[] variables; // TAC variable operand of each slot
+
+    // reuseShared: temporary of each expression computed in the current straight-line code
+    // (low 32 bits), with the assignment count at that point (high 32 bits)
+    private final boolean reuseShared;
+    private IdentityHashMap<BinaryExpression, Long> computed;
+    private int[] assignedAt; // assignment count at the last assignment to each slot
+    private int assignments;
+
+    // Explicit stacks of generateExpression() and unchangedSince(), reused across expressions
+    private BinaryExpression[] work = new BinaryExpression[16];
+    private boolean[] expanded = new boolean[16]; // the right operand of work[i] is being generated
+    private int[] operands = new int[17];         // never more than one per work entry, plus one
+    private Expression[] scan = new Expression[16];
+
+    public IntermediateCodeGenerator(Block program) {
+        this(program, false);
+    }
+
+    /** With `reuseShared`, expression nodes shared by a hash-consed AST are computed once where possible. */
+    public IntermediateCodeGenerator(Block program, boolean reuseShared) {
+        this.program = program;
+        this.arena = null;
+        this.reuseShared = reuseShared;
+    }
+
+    /** Translates an AstArena analyzed with SemanticAnalyzer.analyze(AstArena, List). */
+    public IntermediateCodeGenerator(AstArena arena) {
+        this.program = null;
+        this.arena = arena;
+        this.reuseShared = false;
+    }
+
+    /** For incremental use only: the program is fed in with generateTopLevel(). */
+    public IntermediateCodeGenerator() {
+        this((Block) null);
+    }
+
+    public TacProgram generate() {
+        code = new TacProgram();
+        if (arena != null) {
+            if (arena.slotCount() < 0) throw new IllegalStateException("The arena has not been analyzed.");
+            variables = new int[arena.slotCount()];
+            new ArenaWalk().statements(arena.root());
+            return code;
+        }
+        variables = new int[SemanticAnalyzer.ensureAnalyzed(program)];
+        if (reuseShared) {
+            computed = new IdentityHashMap<>();
+            assignedAt = new int[variables.length];
+            assignments = 0;
+        }
+        generateBlock(program);
+        computed = null;
+        return code;
+    }
+
+    public void begin() {
+        code = new TacProgram();
+        variables = new int[16];
+    }
+
+    /** Generates one top-level statement whose names have been resolved. */
+    public void generateTopLevel(Statement statement) {
+        generateStatement(statement);
+    }
 
-    public IntermediateCodeGenerator(List<LexicalAnalyzer.Token> tokens) {
-        this.tokens = tokens;
+    public TacProgram finish() {
+        return code;
     }
 
-    public void generate() {
-        while (index < tokens.size()) {
-            LexicalAnalyzer.Token token = tokens.get(index);
+    private void generateBlock(Block block) {
+        for (Statement statement : block.statements) {
+            generateStatement(statement);
+        }
+    }
+
+    private void generateStatement(Statement statement) {
+        if (statement instanceof Declaration) {
+            Declaration declaration = (Declaration) statement;
+            declare(declaration.slot, declaration.varName);
+        } else if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            int value = generateExpression(assignment.expression);
+            code.emit(TacProgram.COPY, variables[assignment.slot], value, TacProgram.NONE);
+            if (computed != null) assignedAt[assignment.slot] = ++assignments;
+        } else if (statement instanceof PrintStatement) {
+            int value = generateExpression(((PrintStatement) statement).expression);
+            code.emit(TacProgram.PRINT, TacProgram.NONE, value, TacProgram.NONE);
+        } else if (statement instanceof IfStatement) {
+            generateIf((IfStatement) statement);
+        } else if (statement instanceof WhileStatement) {
+            generateWhile((WhileStatement) statement);
+        } else if (statement instanceof Block) {
+            generateBlock((Block) statement);
+        }
+    }
+
+    /** Gives the slot a TAC variable; a name that shadows an outer one is printed as `name#slot`. */
+    private void declare(int slot, String name) {
+        if (slot >= variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(slot + 1, variables.length * 2));
+        }
+        int before = code.variableCount();
+        int variable = code.variable(name);
+        if (code.variableCount() == before) variable = code.variable(name + "#" + slot);
+        variables[slot] = variable;
+    }
+
+    private void generateIf(IfStatement statement) {
+        int elseLabel = beginIf(generateExpression(statement.condition));
+        generateBlock(statement.thenBlock);
+        if (statement.elseBlock != null) {
+            int endLabel = beginElse(elseLabel);
+            generateBlock(statement.elseBlock);
+            control(TacProgram.LABEL, endLabel);
+        } else {
+            control(TacProgram.LABEL, elseLabel);
+        }
+    }
 
-            // Check for assignment: IDENTIFIER = ...
-            if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER) {
-                if (index + 1 < tokens.size() && tokens.get(index + 1).type == LexicalAnalyzer.TokenType.ASSIGN) {
-                    String lhs = token.value;
-                    index += 2; // Skip IDENTIFIER and ASSIGN
+    /** Jumps to a new else label unless `condition` holds; returns the label. */
+    private int beginIf(int condition) {
+        int elseLabel = code.newLabel();
+        control(TacProgram.JUMP_IF_FALSE, elseLabel, condition);
+        return elseLabel;
+    }
+
+    /** Ends the then part and places the else label; returns the end label. */
+    private int beginElse(int elseLabel) {
+        int endLabel = code.newLabel();
+        control(TacProgram.JUMP, endLabel);
+        control(TacProgram.LABEL, elseLabel);
+        return endLabel;
+    }
 
-                    if (index >= tokens.size()) {
-                        System.err.println(" Error: Missing expression after '=' at token " + token.value);
-                        System.exit(1);
-                    }
+    private void generateWhile(WhileStatement statement) {
+        int startLabel = code.newLabel();
+        int endLabel = code.newLabel();
+        control(TacProgram.LABEL, startLabel);
+        int condition = generateExpression(statement.condition);
+        control(TacProgram.JUMP_IF_FALSE, endLabel, condition);
+        generateBlock(statement.body);
+        endWhile(startLabel, endLabel);
+    }
 
-                    String rhs = parseExpression();
+    private void endWhile(int startLabel, int endLabel) {
+        control(TacProgram.JUMP, startLabel);
+        control(TacProgram.LABEL, endLabel);
+    }
 
-                    // Final assignment
-                    System.out.println(lhs + " = " + rhs);
+    /**
+     * Emits code for an expression and returns the operand holding its value. The tree is
+     * walked in post-order on the explicit `work` stack rather than by recursion, so the
+     * depth of an expression is not limited by the native stack.
+     */
+    private int generateExpression(Expression expression) {
+        return expression instanceof BinaryExpression ? generateBinary((BinaryExpression) expression) : leaf(expression);
+    }
 
-                    // Expect semicolon
-                    if (index < tokens.size() && tokens.get(index).type == LexicalAnalyzer.TokenType.SEMICOLON) {
-                        index++; // Skip semicolon
-                    } else {
-                        System.err.println(" Error: Expected ';' after assignment to variable '" + lhs + "'.");
-                        System.exit(1);
-                    }
+    private int generateBinary(BinaryExpression expression) {
+        BinaryExpression[] work = this.work;
+        boolean[] expanded = this.expanded;
+        int[] operands = this.operands;
+        int top = 0;   // binary nodes on the work stack
+        int count = 0; // operands computed but not yet consumed
+        Expression next = expression;
+        while (true) {
+            // Descend the left spine: the left operand is generated before the right one
+            int value;
+            while (true) {
+                if (!(next instanceof BinaryExpression)) {
+                    value = leaf(next);
+                    break;
+                }
+                BinaryExpression binary = (BinaryExpression) next;
+                if (computed != null && (value = reusable(binary)) != TacProgram.NONE) break;
+                if (!(binary.left instanceof BinaryExpression) && !(binary.right instanceof BinaryExpression)) {
+                    value = binary(binary, leaf(binary.left), leaf(binary.right)); // the common case
+                    break;
+                }
+                if (top == work.length) {
+                    growWork();
+                    work = this.work;
+                    expanded = this.expanded;
+                    operands = this.operands;
+                }
+                work[top] = binary;
+                expanded[top++] = false;
+                next = binary.left;
+            }
+            operands[count++] = value;
+
+            // Ascend: finish every node whose right operand is a leaf or done, up to one whose
+            // right operand is still to be generated
+            while (true) {
+                if (top == 0) return operands[0];
+                BinaryExpression binary = work[top - 1];
+                if (expanded[top - 1]) {
+                    count--;
+                } else if (binary.right instanceof BinaryExpression) {
+                    expanded[top - 1] = true;
+                    next = binary.right;
+                    break;
                 } else {
-                    index++; // Not an assignment, skip
+                    operands[count] = leaf(binary.right);
                 }
-            } else {
-                index++; // Skip non-assignment tokens
+                top--;
+                operands[count - 1] = binary(binary, operands[count - 1], operands[count]);
             }
         }
     }
 
-    // Parses expressions like: a + b - c (left to right)
-    private String parseExpression() {
-        String left = parseTerm();
+    private void growWork() {
+        work = Arrays.copyOf(work, work.length * 2);
+        expanded = Arrays.copyOf(expanded, work.length);
+        operands = Arrays.copyOf(operands, Math.max(operands.length, work.length + 1));
+    }
 
-        while (index < tokens.size() && isOperator(tokens.get(index).type)) {
-            String op = tokens.get(index).value;
-            index++;
+    /** Emits the operation of `binary` on the given operands; returns the temporary. */
+    private int binary(BinaryExpression binary, int left, int right) {
+        int temp = binary(binary.operator, left, right);
+        if (computed != null && binary.shared) {
+            computed.put(binary, (long) assignments << 32 | (temp & 0xFFFFFFFFL));
+        }
+        return temp;
+    }
 
-            if (index >= tokens.size()) {
-                System.err.println(" Error: Missing operand after operator '" + op + "'.");
-                System.exit(1);
-            }
+    /** reuseShared: the operand still holding a shared expression's value, or TacProgram.NONE. */
+    private int reusable(BinaryExpression binary) {
+        if (!binary.shared) return TacProgram.NONE;
+        Long known = computed.get(binary);
+        if (known == null || !unchangedSince(binary, (int) (known >>> 32))) return TacProgram.NONE;
+        return (int) (long) known;
+    }
 
-            String right = parseTerm();
+    /** The operand of a NumberLiteral or a Variable. */
+    private int leaf(Expression expression) {
+        if (expression instanceof NumberLiteral) return code.constant(((NumberLiteral) expression).value);
+        return variables[((Variable) expression).slot];
+    }
 
-            String temp = newTemp();
-            System.out.println(temp + " = " + left + " " + op + " " + right);
-            left = temp;
+    /** Whether no variable read by the expression has been assigned after assignment number `count`. */
+    private boolean unchangedSince(BinaryExpression expression, int count) {
+        int top = 0;
+        scan[top++] = expression;
+        while (top > 0) {
+            Expression next = scan[--top];
+            if (next instanceof Variable) {
+                if (assignedAt[((Variable) next).slot] > count) return false;
+            } else if (next instanceof BinaryExpression) {
+                if (top + 2 > scan.length) scan = Arrays.copyOf(scan, scan.length * 2);
+                scan[top++] = ((BinaryExpression) next).left;
+                scan[top++] = ((BinaryExpression) next).right;
+            }
         }
+        return true;
+    }
+
+    /** Emits a label or a jump; values computed before it cannot be reused after it. */
+    private void control(int opcode, int label) {
+        control(opcode, label, TacProgram.NONE);
+    }
+
+    private void control(int opcode, int label, int condition) {
+        code.emit(opcode, label, condition, TacProgram.NONE);
+        if (computed != null && !computed.isEmpty()) computed.clear();
+    }
 
-        return left;
+    private int binary(BinaryExpression.Operator operator, int left, int right) {
+        int temp = code.newTemp();
+        code.emit(opcodeFor(operator), temp, left, right);
+        return temp;
     }
 
-    // Parse a single identifier or number
-    private String parseTerm() {
-        if (index >= tokens.size()) {
-            System.err.println(" Error: Unexpected end of expression.");
-            System.exit(1);
+    static int opcodeFor(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case PLUS: return TacProgram.ADD;
+            case MINUS: return TacProgram.SUB;
+            case MULT: return TacProgram.MUL;
+            case DIV: return TacProgram.DIV;
+            case GREATER: return TacProgram.GT;
+            case LESS: return TacProgram.LT;
+            case EQUAL: return TacProgram.EQ;
+            case NOTEQUAL: return TacProgram.NE;
+            default: throw new IllegalArgumentException("Unknown operator: " + operator);
         }
+    }
 
-        LexicalAnalyzer.Token token = tokens.get(index);
+    /** The same translation over an AstArena; expression visits return their operand. */
+    private final class ArenaWalk implements AstArena.Visitor {
 
-        if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER ||
-                token.type == LexicalAnalyzer.TokenType.NUMBER) {
-            index++;
-            return token.value;
-        } else {
-            System.err.println(" Error: Expected identifier or number, but found '" + token.value + "'.");
-            System.exit(1);
+        void statements(int block) {
+            int count = arena.statementCount(block);
+            for (int i = 0; i < count; i++) arena.accept(arena.statement(block, i), this);
         }
 
-        return null; // Unreachable
-    }
+        @Override
+        public int visitBlock(int node) {
+            statements(node);
+            return TacProgram.NONE;
+        }
 
-    private String newTemp() {
-        return "t" + (++tempCount);
-    }
+        @Override
+        public int visitDeclaration(int node) {
+            declare(arena.slot(node), arena.name(node));
+            return TacProgram.NONE;
+        }
+
+        @Override
+        public int visitAssignment(int node) {
+            int value = arena.accept(arena.expression(node), this);
+            code.emit(TacProgram.COPY, variables[arena.slot(node)], value, TacProgram.NONE);
+            return TacProgram.NONE;
+        }
+
+        @Override
+        public int visitIf(int node) {
+            int elseLabel = beginIf(arena.accept(arena.condition(node), this));
+            statements(arena.thenBlock(node));
+            if (arena.elseBlock(node) != AstArena.NONE) {
+                int endLabel = beginElse(elseLabel);
+                statements(arena.elseBlock(node));
+                control(TacProgram.LABEL, endLabel);
+            } else {
+                control(TacProgram.LABEL, elseLabel);
+            }
+            return TacProgram.NONE;
+        }
+
+        @Override
+        public int visitWhile(int node) {
+            int startLabel = code.newLabel();
+            int endLabel = code.newLabel();
+            control(TacProgram.LABEL, startLabel);
+            int condition = arena.accept(arena.condition(node), this);
+            control(TacProgram.JUMP_IF_FALSE, endLabel, condition);
+            statements(arena.body(node));
+            endWhile(startLabel, endLabel);
+            return TacProgram.NONE;
+        }
 
-    private boolean isOperator(LexicalAnalyzer.TokenType t) {
-        return t == LexicalAnalyzer.TokenType.PLUS ||
-                t == LexicalAnalyzer.TokenType.MINUS ||
-                t == LexicalAnalyzer.TokenType.MULT ||
-                t == LexicalAnalyzer.TokenType.DIV;
+        @Override
+        public int visitPrint(int node) {
+            int value = arena.accept(arena.expression(node), this);
+            code.emit(TacProgram.PRINT, TacProgram.NONE, value, TacProgram.NONE);
+            return TacProgram.NONE;
+        }
+
+        /** The subtree is stored in post-order, so it is evaluated front to back on the operand stack. */
+        @Override
+        public int visitBinary(int node) {
+            int count = 0;
+            for (int i = arena.firstOf(node); i <= node; i++) {
+                byte kind = arena.kind(i);
+                if (kind == AstArena.BINARY) {
+                    count--;
+                    operands[count - 1] = binary(arena.operator(i), operands[count - 1], operands[count]);
+                    continue;
+                }
+                if (count == operands.length) operands = Arrays.copyOf(operands, count * 2);
+                operands[count++] = kind == AstArena.VARIABLE ? variables[arena.slot(i)] : code.constant(arena.value(i));
+            }
+            return operands[0];
+        }
+
+        @Override
+        public int visitVariable(int node) {
+            return variables[arena.slot(node)];
+        }
+
+        @Override
+        public int visitNumber(int node) {
+            return code.constant(arena.value(node));
+        }
     }
 }
@@ -0,0 +1,172 @@
+/**
+ * Interpreter.java
+ * -----------------
+ * A **tree-walking interpreter** that executes a parsed MiniLang program (the Block
+ * returned by `SyntaxAnalyzer.parse`).
+ *
+ * Every variable lives at a fixed index of an int[] frame: the slot that the
+ * SemanticAnalyzer annotated on each Declaration, Assignment and Variable (the program
+ * is analyzed first if that has not happened yet). Statements and expressions are
+ * evaluated directly on the AST, reading and writing variables through their slots.
+ * No names are looked up while running.
+ *
+ * Semantics:
+ * - All variables are int and start at 0; `int x;` only declares x.
+ * - Comparisons yield 1 (true) or 0 (false); any non-zero condition is true.
+ * - Division by zero stops the program with a runtime error.
+ * - `print` writes one value per line through a buffered Writer, flushed at the end.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+public class Interpreter {
+
+    private final Block program;
+    private final Writer out;
+    private int[] frame;
+
+    // Explicit stacks of evaluate(), reused from one expression to the next
+    private BinaryExpression[] pending = new BinaryExpression[16];
+    private boolean[] rightStarted = new boolean[16];
+    private int[] values = new int[17];
+
+    public Interpreter(Block program, Writer out) {
+        this.program = program;
+        this.out = out;
+    }
+
+    public void run() throws IOException {
+        frame = new int[SemanticAnalyzer.ensureAnalyzed(program)];
+        try {
+            executeBlock(program);
+        } finally {
+            out.flush();
+        }
+    }
+
+    // === Execution ===
+
+    private void executeBlock(Block block) throws IOException {
+        for (Statement statement : block.statements) {
+            execute(statement);
+        }
+    }
+
+    private void execute(Statement statement) throws IOException {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            frame[assignment.slot] = evaluate(assignment.expression);
+        } else if (statement instanceof WhileStatement) {
+            WhileStatement whileStatement = (WhileStatement) statement;
+            while (evaluate(whileStatement.condition) != 0) {
+                executeBlock(whileStatement.body);
+            }
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            if (evaluate(ifStatement.condition) != 0) {
+                executeBlock(ifStatement.thenBlock);
+            } else if (ifStatement.elseBlock != null) {
+                executeBlock(ifStatement.elseBlock);
+            }
+        } else if (statement instanceof PrintStatement) {
+            out.write(Integer.toString(evaluate(((PrintStatement) statement).expression)));
+            out.write('\n');
+        } else if (statement instanceof Block) {
+            executeBlock((Block) statement);
+        }
+        // Declarations have no run-time effect: the frame starts zeroed.
+    }
+
+    /**
+     * Evaluates an expression. The tree is walked in post-order on explicit stacks (the
+     * binary nodes waiting for an operand, and the operand values), not by recursion, so
+     * any depth of nesting is fine.
+     */
+    private int evaluate(Expression expression) {
+        if (!(expression instanceof BinaryExpression)) return leaf(expression);
+        BinaryExpression root = (BinaryExpression) expression;
+        if (isSimple(root.left) && isSimple(root.right)) { // most expressions: no stacks needed
+            return apply(root.operator, simple(root.left), simple(root.right));
+        }
+        int top = 0;   // binary nodes on the stack
+        int count = 0; // operand values not yet consumed
+        Expression next = expression;
+        while (true) {
+            // Down the left spine: the left operand is evaluated before the right one
+            int value;
+            while (true) {
+                if (!(next instanceof BinaryExpression)) {
+                    value = leaf(next);
+                    break;
+                }
+                BinaryExpression binary = (BinaryExpression) next;
+                if (!(binary.left instanceof BinaryExpression) && !(binary.right instanceof BinaryExpression)) {
+                    value = apply(binary.operator, leaf(binary.left), leaf(binary.right)); // the common case
+                    break;
+                }
+                if (top == pending.length) {
+                    pending = Arrays.copyOf(pending, top * 2);
+                    rightStarted = Arrays.copyOf(rightStarted, top * 2);
+                    values = Arrays.copyOf(values, top * 2 + 1);
+                }
+                pending[top] = binary;
+                rightStarted[top++] = false;
+                next = binary.left;
+            }
+            values[count++] = value;
+
+            // Up again: apply every operator whose right operand is a leaf or done
+            while (true) {
+                if (top == 0) return values[0];
+                BinaryExpression binary = pending[top - 1];
+                if (rightStarted[top - 1]) {
+                    count--;
+                } else if (binary.right instanceof BinaryExpression) {
+                    rightStarted[top - 1] = true;
+                    next = binary.right;
+                    break;
+                } else {
+                    values[count] = leaf(binary.right);
+                }
+                top--;
+                values[count - 1] = apply(binary.operator, values[count - 1], values[count]);
+            }
+        }
+    }
+
+    /** A leaf, or a binary expression of two leaves. */
+    private static boolean isSimple(Expression expression) {
+        if (!(expression instanceof BinaryExpression)) return true;
+        BinaryExpression binary = (BinaryExpression) expression;
+        return !(binary.left instanceof BinaryExpression) && !(binary.right instanceof BinaryExpression);
+    }
+
+    private int simple(Expression expression) {
+        if (!(expression instanceof BinaryExpression)) return leaf(expression);
+        BinaryExpression binary = (BinaryExpression) expression;
+        return apply(binary.operator, leaf(binary.left), leaf(binary.right));
+    }
+
+    private int leaf(Expression expression) {
+        if (expression instanceof Variable) return frame[((Variable) expression).slot];
+        return ((NumberLiteral) expression).value;
+    }
+
+    private static int apply(BinaryExpression.Operator operator, int left, int right) {
+        switch (operator) {
+            case PLUS: return left + right;
+            case MINUS: return left - right;
+            case MULT: return left * right;
+            case DIV:
+                if (right == 0) throw new RuntimeException("Runtime Error: Division by zero.");
+                return left / right;
+            case GREATER: return left > right ? 1 : 0;
+            case LESS: return left < right ? 1 : 0;
+            case EQUAL: return left == right ? 1 : 0;
+            case NOTEQUAL: return left != right ? 1 : 0;
+            default: throw new IllegalStateException("Unknown operator: " + operator);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * JvmBackend.java
+ * ----------------
+ * Runs a MiniLang program as **JVM bytecode**: the class produced by JvmCompiler is
+ * defined as a hidden class next to this one and its static `run` method is invoked
+ * through a MethodHandle. From then on HotSpot interprets and JIT-compiles it like any
+ * other Java method.
+ *
+ * `print` calls an IntConsumer that writes to the given Writer; output is flushed at the
+ * end. Division by zero surfaces as the same runtime error the other backends report.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.IntConsumer;
+
+public class JvmBackend {
+
+    private final MethodHandle entry;
+    private final Writer out;
+
+    public JvmBackend(Block program, Writer out) {
+        this.entry = load(new JvmCompiler(program).compile());
+        this.out = out;
+    }
+
+    /** Defines the class file as a hidden class and returns a handle to its `run` method. */
+    static MethodHandle load(byte[] classFile) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return lookup.findStatic(lookup.lookupClass(), JvmCompiler.METHOD_NAME,
+                    MethodType.methodType(void.class, IntConsumer.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new RuntimeException("JVM Backend Error: Generated class was rejected: " + e, e);
+        }
+    }
+
+    public void run() throws IOException {
+        IntConsumer print = value -> {
+            try {
+                out.write(Integer.toString(value));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            entry.invokeExact(print);
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Runtime Error: Division by zero.");
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ * JvmCompiler.java
+ * -----------------
+ * Compiles a parsed MiniLang program (a Block) into a **JVM class file**, so HotSpot can
+ * JIT-compile MiniLang loops exactly like Java code. The class is built by hand (no
+ * bytecode library) and has a single method:
+ *
+ *     public static void run(java.util.function.IntConsumer print)
+ *
+ * Translation:
+ * - Each variable slot (see SemanticAnalyzer) becomes a JVM local (local 0 is the
+ *   print consumer), so shadowed names get locals of their own. All locals are
+ *   set to 0 on entry, so every branch target sees the same frame: locals are all int
+ *   and the operand stack is empty. The StackMapTable is therefore one full_frame
+ *   followed by same_frame entries.
+ * - `+ - * /` map to iadd/isub/imul/idiv. idiv throws ArithmeticException on zero,
+ *   which JvmBackend reports as the usual runtime error.
+ * - Comparisons used as a condition become if_icmp* jumps. Comparisons used as a value
+ *   are computed without branches, so jumps only happen between statements.
+ * - `while` loops become real backward branches.
+ *
+ * Branch offsets are 16 bits, so very large programs are rejected with an error.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class JvmCompiler {
+
+    /** Name of the generated class; it lives in the same (unnamed) package as the compiler. */
+    public static final String CLASS_NAME = "MiniLangProgram";
+    public static final String METHOD_NAME = "run";
+
+    // === JVM opcodes used by the compiler ===
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ISTORE = 0x36;
+    private static final int IADD = 0x60;
+    private static final int LSUB = 0x65;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IDIV = 0x6c;
+    private static final int INEG = 0x74;
+    private static final int LNEG = 0x75;
+    private static final int IUSHR = 0x7c;
+    private static final int LUSHR = 0x7d;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int I2L = 0x85;
+    private static final int L2I = 0x88;
+    private static final int DUP = 0x59;
+    private static final int IFEQ = 0x99;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int GOTO = 0xa7;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int WIDE = 0xc4;
+
+    private static final int MAX_BRANCH_OFFSET = Short.MAX_VALUE;
+
+    private final Block program;
+
+    // Constant pool
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    // Method body
+    private byte[] code = new byte[256];
+    private int length = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private final TreeSet<Integer> branchTargets = new TreeSet<>();
+
+    private int localCount; // one per variable slot
+    private int printMethod;
+
+    // Explicit stacks of compileExpression(): binary nodes waiting for an operand
+    private BinaryExpression[] pending = new BinaryExpression[16];
+    private boolean[] rightStarted = new boolean[16];
+
+    public JvmCompiler(Block program) {
+        this.program = program;
+    }
+
+    /** Returns the bytes of the generated class file. */
+    public byte[] compile() {
+        try {
+            int thisClass = classEntry(CLASS_NAME);
+            int superClass = classEntry("java/lang/Object");
+            int methodName = utf8(METHOD_NAME);
+            int methodDescriptor = utf8("(Ljava/util/function/IntConsumer;)V");
+            int codeName = utf8("Code");
+            int stackMapName = utf8("StackMapTable");
+            int consumerClass = classEntry("java/util/function/IntConsumer");
+            printMethod = interfaceMethodEntry(consumerClass, "accept", "(I)V");
+
+            localCount = SemanticAnalyzer.ensureAnalyzed(program);
+            for (int local = 1; local <= localCount; local++) {
+                emit(ICONST_0, 1);
+                emitLocal(ISTORE, local, -1);
+            }
+            compileBlock(program);
+            emit(RETURN, 0);
+            if (length > MAX_BRANCH_OFFSET) {
+                throw new RuntimeException("JVM Backend Error: Program is too large for the JVM backend ("
+                        + length + " bytes of bytecode).");
+            }
+            byte[] stackMap = stackMapTable();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + poolBytes.size() + 256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(55); // Java 11 class file, verified with StackMapTable frames
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(1); // methods
+            out.writeShort(0x0009); // ACC_PUBLIC | ACC_STATIC
+            out.writeShort(methodName);
+            out.writeShort(methodDescriptor);
+            out.writeShort(1); // method attributes: Code
+            out.writeShort(codeName);
+            int stackMapSize = stackMap.length == 0 ? 0 : 6 + stackMap.length;
+            out.writeInt(12 + length + stackMapSize);
+            out.writeShort(maxStack);
+            out.writeShort(1 + localCount);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0); // exception table
+            if (stackMap.length == 0) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(stackMapName);
+                out.writeInt(stackMap.length);
+                out.write(stackMap);
+            }
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen: writes go to memory
+        }
+    }
+
+    // === Locals ===
+
+    /** Local 0 holds the print consumer; variable slot n lives in local n + 1. */
+    private static int localOf(int slot) {
+        return slot + 1;
+    }
+
+    // === Statements ===
+
+    private void compileBlock(Block block) {
+        for (Statement statement : block.statements) {
+            compileStatement(statement);
+        }
+    }
+
+    private void compileStatement(Statement statement) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            int local = localOf(assignment.slot);
+            compileExpression(assignment.expression);
+            emitLocal(ISTORE, local, -1);
+        } else if (statement instanceof PrintStatement) {
+            emit(ALOAD_0, 1);
+            compileExpression(((PrintStatement) statement).expression);
+            emit(INVOKEINTERFACE, -2);
+            u2(printMethod);
+            u1(2); // argument slots including the receiver
+            u1(0);
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            int toElse = compileConditionJump(ifStatement.condition);
+            compileBlock(ifStatement.thenBlock);
+            if (ifStatement.elseBlock == null) {
+                patch(toElse, length);
+            } else {
+                int toEnd = jump(GOTO, 0);
+                patch(toElse, length);
+                compileBlock(ifStatement.elseBlock);
+                patch(toEnd, length);
+            }
+        } else if (statement instanceof WhileStatement) {
+            WhileStatement whileStatement = (WhileStatement) statement;
+            int start = length;
+            branchTargets.add(start);
+            int toEnd = compileConditionJump(whileStatement.condition);
+            compileBlock(whileStatement.body);
+            patch(jump(GOTO, 0), start);
+            patch(toEnd, length);
+        } else if (statement instanceof Block) {
+            compileBlock((Block) statement);
+        }
+        // Declarations only reserve a local, which is zeroed on entry.
+    }
+
+    /** Emits a jump taken when the condition is false; returns its address for patching. */
+    private int compileConditionJump(Expression condition) {
+        if (condition instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) condition;
+            int inverse = -1;
+            switch (binary.operator) {
+                case GREATER: inverse = IF_ICMPLE; break;
+                case LESS: inverse = IF_ICMPGE; break;
+                case EQUAL: inverse = IF_ICMPNE; break;
+                case NOTEQUAL: inverse = IF_ICMPEQ; break;
+                default: break;
+            }
+            if (inverse != -1) {
+                compileExpression(binary.left);
+                compileExpression(binary.right);
+                return jump(inverse, -2);
+            }
+        }
+        compileExpression(condition);
+        return jump(IFEQ, -1);
+    }
+
+    // === Expressions ===
+
+    /**
+     * Pushes the value of an expression. The tree is walked in post-order on explicit
+     * stacks rather than by recursion, so any depth of nesting is fine (the size limit of
+     * the method still applies).
+     */
+    private void compileExpression(Expression expression) {
+        int top = 0;
+        Expression next = expression;
+        while (true) {
+            // Down the left spine: the left operand is pushed first
+            while (next instanceof BinaryExpression) {
+                if (top == pending.length) {
+                    pending = Arrays.copyOf(pending, top * 2);
+                    rightStarted = Arrays.copyOf(rightStarted, top * 2);
+                }
+                pending[top] = (BinaryExpression) next;
+                rightStarted[top++] = false;
+                next = ((BinaryExpression) next).left;
+            }
+            if (next instanceof NumberLiteral) {
+                pushConstant(((NumberLiteral) next).value);
+            } else {
+                emitLocal(ILOAD, localOf(((Variable) next).slot), 1);
+            }
+
+            // Up again: an operand is complete; finish the operators whose right operand is
+            while (true) {
+                if (top == 0) return;
+                BinaryExpression binary = pending[top - 1];
+                if (isOrdering(binary.operator)) emit(I2L, 1); // each operand is widened as it is pushed
+                if (!rightStarted[top - 1]) {
+                    rightStarted[top - 1] = true;
+                    next = binary.right;
+                    break;
+                }
+                pending[--top] = null;
+                compileOperator(binary.operator);
+            }
+        }
+    }
+
+    private static boolean isOrdering(BinaryExpression.Operator operator) {
+        return operator == BinaryExpression.Operator.GREATER || operator == BinaryExpression.Operator.LESS;
+    }
+
+    /**
+     * With both operands on the stack, leaves the result. (a > b) and (a < b), whose operands
+     * were widened to long, are computed without branching: the sign bit of the difference,
+     * which cannot overflow in long.
+     */
+    private void compileOperator(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case PLUS: emit(IADD, -1); break;
+            case MINUS: emit(ISUB, -1); break;
+            case MULT: emit(IMUL, -1); break;
+            case DIV: emit(IDIV, -1); break;
+            case EQUAL: compileNotEqual(); emit(ICONST_1, 1); emit(IXOR, -1); break;
+            case NOTEQUAL: compileNotEqual(); break;
+            case GREATER:
+            case LESS:
+                emit(LSUB, -2);
+                if (operator == BinaryExpression.Operator.GREATER) emit(LNEG, 0); // b - a
+                emit(BIPUSH, 1);
+                u1(63);
+                emit(LUSHR, -1);
+                emit(L2I, -1);
+                break;
+            default: throw new IllegalStateException("Unknown operator: " + operator);
+        }
+    }
+
+    /** With a and b on the stack, leaves (a != b) as 1/0: ((x | -x) >>> 31) where x = a ^ b. */
+    private void compileNotEqual() {
+        emit(IXOR, -1);
+        emit(DUP, 1);
+        emit(INEG, 0);
+        emit(IOR, -1);
+        emit(BIPUSH, 1);
+        u1(31);
+        emit(IUSHR, -1);
+    }
+
+    private void pushConstant(int value) {
+        if (value >= -1 && value <= 5) {
+            emit(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(BIPUSH, 1);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emit(SIPUSH, 1);
+            u2(value);
+        } else {
+            emit(LDC_W, 1);
+            u2(integerEntry(value));
+        }
+    }
+
+    // === Code buffer ===
+
+    /** Appends an opcode and records its effect on the operand stack depth. */
+    private void emit(int opcode, int stackDelta) {
+        u1(opcode);
+        stack += stackDelta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void emitLocal(int opcode, int local, int stackDelta) {
+        if (local > 0xFF) {
+            u1(WIDE);
+            emit(opcode, stackDelta);
+            u2(local);
+        } else {
+            emit(opcode, stackDelta);
+            u1(local);
+        }
+    }
+
+    private int jump(int opcode, int stackDelta) {
+        int at = length;
+        emit(opcode, stackDelta);
+        u2(0);
+        return at;
+    }
+
+    private void patch(int jumpAt, int target) {
+        int offset = target - jumpAt;
+        code[jumpAt + 1] = (byte) (offset >> 8);
+        code[jumpAt + 2] = (byte) offset;
+        branchTargets.add(target);
+    }
+
+    private void u1(int value) {
+        if (length == code.length) code = Arrays.copyOf(code, length * 2);
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    /**
+     * Every branch target has the same frame (all locals int, empty stack), so the first
+     * entry is a full_frame and the rest are same_frame / same_frame_extended.
+     */
+    private byte[] stackMapTable() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int consumerClass = classEntry("java/util/function/IntConsumer");
+        out.writeShort(branchTargets.size());
+        int previous = -1;
+        for (int target : branchTargets) {
+            int delta = previous < 0 ? target : target - previous - 1;
+            if (previous < 0) {
+                out.writeByte(255); // full_frame
+                out.writeShort(delta);
+                out.writeShort(1 + localCount);
+                out.writeByte(7); // Object_variable_info
+                out.writeShort(consumerClass);
+                for (int i = 0; i < localCount; i++) out.writeByte(1); // Integer_variable_info
+                out.writeShort(0); // empty stack
+            } else if (delta < 64) {
+                out.writeByte(delta); // same_frame
+            } else {
+                out.writeByte(251); // same_frame_extended
+                out.writeShort(delta);
+            }
+            previous = target;
+        }
+        return branchTargets.isEmpty() ? new byte[0] : bytes.toByteArray();
+    }
+
+    // === Constant pool ===
+
+    private int utf8(String text) throws IOException {
+        Integer index = poolIndexes.get("U" + text);
+        if (index != null) return index;
+        pool.writeByte(1);
+        pool.writeUTF(text);
+        return addEntry("U" + text);
+    }
+
+    private int classEntry(String internalName) throws IOException {
+        Integer index = poolIndexes.get("C" + internalName);
+        if (index != null) return index;
+        int name = utf8(internalName);
+        pool.writeByte(7);
+        pool.writeShort(name);
+        return addEntry("C" + internalName);
+    }
+
+    private int interfaceMethodEntry(int owner, String name, String descriptor) throws IOException {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        pool.writeByte(12); // NameAndType
+        pool.writeShort(nameIndex);
+        pool.writeShort(descriptorIndex);
+        int nameAndType = addEntry("N" + name + descriptor);
+        pool.writeByte(11); // InterfaceMethodref
+        pool.writeShort(owner);
+        pool.writeShort(nameAndType);
+        return addEntry("I" + owner + name + descriptor);
+    }
+
+    private int integerEntry(int value) {
+        Integer index = poolIndexes.get("#" + value);
+        if (index != null) return index;
+        try {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return addEntry("#" + value);
+    }
+
+    private int addEntry(String key) {
+        if (poolCount == 0xFFFF) {
+            throw new RuntimeException("JVM Backend Error: Too many constants for the JVM backend.");
+        }
+        poolIndexes.put(key, poolCount);
+        return poolCount++;
+    }
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,14 +28,14 @@ import java.util.regex.Pattern;
  *
  * Workflow:
  * 1. Reads the MiniLang code from a file.
- * 2. Applies a pattern-matching technique to extract valid tokens.
+ * 2. Scans the input once, left to right, taking the longest match at each position.
  * 3. Filters out comments and whitespaces.
  * 4. Prints all recognized tokens with their types.
  * 5. Passes the tokens to a Syntax Analyzer for further processing.
  *
  * Classes:
  * - TokenType: Enum listing all possible token types.
- * - Token: Represents a token with a type and its matched string.
+ * - Token: Represents a token with a type, its matched string and its source offset.
  *
  * This Lexical Analyzer is typically the first stage of a compiler.
  */
@@ -56,10 +55,21 @@ public class LexicalAnalyzer {
     public static class Token {
         public final TokenType type;
         public final String value;
+        public final int start; // source offset, or -1 if unknown
 
         public Token(TokenType type, String value) {
+            this(type, value, -1);
+        }
+
+        public Token(TokenType type, String value, int start) {
             this.type = type;
             this.value = value;
+            this.start = start;
+        }
+
+        /** Source offset just past the token, or -1 if unknown. */
+        public int end() {
+            return start < 0 ? -1 : start + value.length();
         }
 
         @Override
@@ -78,6 +88,8 @@ public class LexicalAnalyzer {
         put(TokenType.PRINT, "\\bprint\\b");
         put(TokenType.IDENTIFIER, "[a-zA-Z_][a-zA-Z0-9_]*");
         put(TokenType.NUMBER, "\\b\\d+\\b");
+        put(TokenType.EQUAL, "==");       // before ASSIGN so '==' is not read as two '='
+        put(TokenType.NOTEQUAL, "!=");
         put(TokenType.ASSIGN, "=");
         put(TokenType.SEMICOLON, ";");
         put(TokenType.PLUS, "\\+");
@@ -86,31 +98,77 @@ public class LexicalAnalyzer {
         put(TokenType.DIV, "/");
         put(TokenType.GREATER, ">");
         put(TokenType.LESS, "<");
-        put(TokenType.EQUAL, "==");
-        put(TokenType.NOTEQUAL, "!=");
         put(TokenType.LPAREN, "\\(");
         put(TokenType.RPAREN, "\\)");
         put(TokenType.LBRACE, "\\{");
         put(TokenType.RBRACE, "\\}");
     }};
 
+    private static final Pattern combinedPattern = compileCombinedPattern();
+
+    /**
+     * Whether the entry points without a `regexScanner` argument use the original
+     * regex-based scanner instead of the DFA scanner. Read once from the system property:
+     * run with -Dminilang.regexLexer=true to cross-check the two implementations.
+     */
+    private static final boolean REGEX_SCANNER = Boolean.getBoolean("minilang.regexLexer");
+
     public static List<Token> tokenize(String input) {
+        return tokenize(input, REGEX_SCANNER);
+    }
+
+    /** Tokenizes with the regex scanner if `regexScanner`, otherwise with the DFA scanner. */
+    public static List<Token> tokenize(String input, boolean regexScanner) {
+        if (regexScanner) {
+            return tokenizeWithRegex(input);
+        }
         List<Token> tokens = new ArrayList<>();
-        StringBuilder masterPattern = new StringBuilder();
-        for (String pattern : tokenPatterns.values()) {
-            masterPattern.append("(" + pattern + ")|");
+        TokenScanner scanner = new TokenScanner(input);
+        TokenType type;
+        while ((type = scanner.next()) != null) {
+            tokens.add(new Token(type, scanner.tokenText(), (int) scanner.tokenStart()));
         }
-        masterPattern.setLength(masterPattern.length() - 1); // remove last |
-        Pattern combinedPattern = Pattern.compile(masterPattern.toString());
+        return tokens;
+    }
+
+    /** Tokenizes straight into the compact struct-of-arrays TokenStream. */
+    public static TokenStream tokenizeToStream(String input) {
+        if (REGEX_SCANNER) {
+            return TokenStream.of(tokenizeWithRegex(input), input);
+        }
+        return TokenStream.scan(new TokenScanner(input));
+    }
+
+    /** Like tokenizeToStream(String), recording lexical errors into `diagnostics` and skipping past them. */
+    public static TokenStream tokenizeToStream(String input, List<Diagnostic> diagnostics) {
+        return tokenizeToStream(input, diagnostics, REGEX_SCANNER);
+    }
+
+    /**
+     * Like tokenizeToStream(String, List) with an explicit choice of scanner. The regex
+     * scanner skips unknown characters silently, so it records no diagnostics.
+     */
+    public static TokenStream tokenizeToStream(String input, List<Diagnostic> diagnostics, boolean regexScanner) {
+        if (regexScanner) {
+            return TokenStream.of(tokenizeWithRegex(input), input);
+        }
+        TokenScanner scanner = new TokenScanner(input);
+        scanner.reportErrorsTo(diagnostics);
+        return TokenStream.scan(scanner);
+    }
+
+    /** Reference implementation: one combined regex, classified by the alternative that matched. */
+    public static List<Token> tokenizeWithRegex(String input) {
+        List<Token> tokens = new ArrayList<>();
+        TokenType[] types = tokenPatterns.keySet().toArray(new TokenType[0]);
 
         Matcher matcher = combinedPattern.matcher(input);
         while (matcher.find()) {
-            String match = matcher.group();
-            for (Map.Entry<TokenType, String> entry : tokenPatterns.entrySet()) {
-                if (match.matches(entry.getValue())) {
-                    TokenType type = entry.getKey();
+            for (int group = 1; group <= types.length; group++) {
+                if (matcher.start(group) != -1) {
+                    TokenType type = types[group - 1];
                     if (type != TokenType.WHITESPACE && type != TokenType.COMMENT) {
-                        tokens.add(new Token(type, match));
+                        tokens.add(new Token(type, matcher.group(), matcher.start()));
                     }
                     break;
                 }
@@ -119,6 +177,36 @@ public class LexicalAnalyzer {
         return tokens;
     }
 
+    private static Pattern compileCombinedPattern() {
+        StringBuilder masterPattern = new StringBuilder();
+        for (String pattern : tokenPatterns.values()) {
+            masterPattern.append("(" + pattern + ")|");
+        }
+        masterPattern.setLength(masterPattern.length() - 1); // remove last |
+        return Pattern.compile(masterPattern.toString());
+    }
+
+    /** Runs both scanners over the same input and reports the first token where they disagree. */
+    public static boolean compareScanners(String input) {
+        List<Token> dfa = tokenize(input, false);
+        List<Token> regex = tokenize(input, true);
+        int count = Math.min(dfa.size(), regex.size());
+        for (int i = 0; i < count; i++) {
+            Token a = dfa.get(i);
+            Token b = regex.get(i);
+            if (a.type != b.type || !a.value.equals(b.value)) {
+                System.err.println(" Scanner mismatch at token " + i + ": DFA " + a + " vs regex " + b);
+                return false;
+            }
+        }
+        if (dfa.size() != regex.size()) {
+            System.err.println(" Scanner mismatch: DFA produced " + dfa.size() + " tokens, regex produced " + regex.size());
+            return false;
+        }
+        System.out.println(" Scanners agree on " + count + " tokens.");
+        return true;
+    }
+
     public static void main(String[] args) {
         String fileName = "input.minilang";
         StringBuilder code = new StringBuilder();
@@ -134,17 +222,25 @@ public class LexicalAnalyzer {
             System.out.println("  Stages: Lexical ➤ Syntax ➤ Semantic ➤ Intermediate Code Generation");
             System.out.println("===========================================================\n");
 
+            if (args.length > 0 && args[0].equals("--compare-scanners")) {
+                compareScanners(code.toString());
+                return;
+            }
+
             // Lexical Analysis
             System.out.println(" Lexical Analysis:");
             List<Token> tokens = tokenize(code.toString());
+            OutputSink out = OutputSink.stdout();
             for (Token token : tokens) {
-                System.out.println(token);
+                out.append(token.toString()).append('\n');
             }
+            out.flush();
 
             // Syntax Analysis
             System.out.println("\n📐 Syntax Analysis:");
             SyntaxAnalyzer syntax = new SyntaxAnalyzer(tokens);
             syntax.parse();
+            System.out.println(" Syntax Analysis: Passed.");
 
         } catch (FileNotFoundException e) {
             System.err.println(" File not found: " + fileName);
@@ -0,0 +1,85 @@
+/**
+ * Liveness.java
+ * --------------
+ * Classic backward **liveness analysis** over a ControlFlowGraph.
+ *
+ * A value (variable or temporary, numbered by `TacProgram.valueId`) is live at a point
+ * if some path from there reads it before writing it. The analysis computes, for every
+ * basic block, the set of values live on entry and on exit:
+ *
+ *   liveOut(b) = union of liveIn(s) over successors s
+ *   liveIn(b)  = uses(b) + (liveOut(b) - defs(b))
+ *
+ * iterated to a fixpoint, visiting blocks in reverse order so most programs converge in
+ * two or three rounds. Sets are BitSets indexed by value id.
+ */
+
+import java.util.BitSet;
+
+public class Liveness {
+
+    private final ControlFlowGraph cfg;
+    private final BitSet[] liveIn;
+    private final BitSet[] liveOut;
+
+    public Liveness(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        TacProgram program = cfg.program();
+        int blocks = cfg.blockCount();
+        BitSet[] uses = new BitSet[blocks];
+        BitSet[] defs = new BitSet[blocks];
+        liveIn = new BitSet[blocks];
+        liveOut = new BitSet[blocks];
+        for (int b = 0; b < blocks; b++) {
+            uses[b] = new BitSet();
+            defs[b] = new BitSet();
+            liveIn[b] = new BitSet();
+            liveOut[b] = new BitSet();
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                addUse(program, program.src1(i), uses[b], defs[b]);
+                addUse(program, program.src2(i), uses[b], defs[b]);
+                if (TacProgram.hasDest(program.opcode(i))) {
+                    int dest = program.valueId(program.dest(i));
+                    if (dest >= 0) defs[b].set(dest);
+                }
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = blocks - 1; b >= 0; b--) {
+                BitSet out = liveOut[b];
+                for (int successor : cfg.successors(b)) {
+                    out.or(liveIn[successor]);
+                }
+                BitSet in = (BitSet) out.clone();
+                in.andNot(defs[b]);
+                in.or(uses[b]);
+                if (!in.equals(liveIn[b])) {
+                    liveIn[b] = in;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static void addUse(TacProgram program, int operand, BitSet uses, BitSet defs) {
+        int id = program.valueId(operand);
+        if (id >= 0 && !defs.get(id)) uses.set(id);
+    }
+
+    public ControlFlowGraph cfg() {
+        return cfg;
+    }
+
+    /** Values live on entry to block b (do not modify). */
+    public BitSet liveIn(int b) {
+        return liveIn[b];
+    }
+
+    /** Values live on exit from block b (do not modify). */
+    public BitSet liveOut(int b) {
+        return liveOut[b];
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * LoopInvariantCodeMotionPass.java
+ * ---------------------------------
+ * **Loop-invariant code motion**: computations inside a loop whose operands do not
+ * change while the loop runs are moved into a preheader, so they run once instead of
+ * once per iteration.
+ *
+ *   L1:                           t3 = n * 4
+ *   t1 = i < 10                   L1:
+ *   ifFalse t1 goto L2            t1 = i < 10
+ *   t3 = n * 4          ->        ifFalse t1 goto L2
+ *   t4 = i + t3                   t4 = i + t3
+ *   ...                           ...
+ *
+ * An instruction `d = a op b` (or `d = a`) in loop L is moved when:
+ * - each operand is a constant, is not assigned anywhere in L, or is the result of
+ *   another instruction that is being moved;
+ * - d is assigned only there in L and is not live on entry to the header, so every
+ *   read of d inside the loop sees this assignment;
+ * - wherever d is still read after leaving the loop, the instruction's block dominates
+ *   the block the loop is left from (a loop that runs zero times must not change d);
+ * - it cannot fail: a division is only moved if its divisor is a non-zero constant.
+ *
+ * Loops are handled innermost first, all on one snapshot of the graph, dominators and
+ * liveness. Code moved out of an inner loop is recorded for that loop's preheader, which
+ * lies in the outer loop in front of the inner header, so the outer loop sees it there
+ * and may move it further out. The recorded code is inserted in one rebuild of the
+ * program at the end. Moving a computation earlier only shortens the ranges where its
+ * value is live, so the snapshot's liveness stays a safe over-approximation.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class LoopInvariantCodeMotionPass implements TacPass {
+
+    public String name() {
+        return "loop-invariant-code-motion";
+    }
+
+    public boolean run(TacProgram program) {
+        if (program.size() == 0) return false;
+        Hoisting hoisting = new Hoisting(program);
+        for (NaturalLoops.Loop loop : hoisting.loops.loops()) {
+            hoisting.hoist(loop);
+        }
+        return hoisting.apply();
+    }
+
+    /** The state of one run: the snapshot, where each instruction has been moved, and scratch space. */
+    private static final class Hoisting {
+        final TacProgram program;
+        final NaturalLoops loops;
+        final ControlFlowGraph cfg;
+        final Dominators dominators;
+        final Liveness liveness;
+
+        final int[] movedTo;                 // per instruction: the preheader it was moved to, or -1
+        final int[] preheaderOf;             // per block: the preheader in front of it, or -1
+        final List<Preheader> preheaders = new ArrayList<>();
+
+        // Scratch space for one loop, cleared again after use
+        final int[] definitions;             // assignments of each value inside the loop
+        final BitSet moved;
+        final List<int[]> exits = new ArrayList<>(); // {exit block, successor outside the loop}
+
+        Hoisting(TacProgram program) {
+            this.program = program;
+            this.loops = new NaturalLoops(new Dominators(new ControlFlowGraph(program)));
+            this.cfg = loops.cfg();
+            this.dominators = loops.dominators();
+            this.liveness = new Liveness(cfg);
+            this.movedTo = new int[program.size()];
+            Arrays.fill(movedTo, -1);
+            this.preheaderOf = new int[cfg.blockCount()];
+            Arrays.fill(preheaderOf, -1);
+            this.definitions = new int[program.valueCount()];
+            this.moved = new BitSet(program.valueCount());
+        }
+
+        /** Moves the loop's invariant code (including code already moved out of inner loops) to its preheader. */
+        void hoist(NaturalLoops.Loop loop) {
+            List<Integer> order = findInvariant(loop);
+            for (int i : order) moved.clear(program.valueId(program.dest(i)));
+            exits.clear();
+            for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+                for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                    if (TacProgram.hasDest(program.opcode(i))) definitions[program.valueId(program.dest(i))] = 0;
+                }
+            }
+            if (order.isEmpty()) return;
+
+            List<Integer> outsideJumps = loops.outsideJumps(loop);
+            if (outsideJumps == null) return;
+            Preheader preheader = new Preheader();
+            if (!outsideJumps.isEmpty()) {
+                preheader.label = program.newLabel();
+                for (int jump : outsideJumps) {
+                    program.set(jump, program.opcode(jump), preheader.label, program.src1(jump), program.src2(jump));
+                }
+            }
+            int index = preheaders.size();
+            for (int i : order) {
+                movedTo[i] = index;
+                preheader.code.add(i);
+            }
+            preheaders.add(preheader);
+            preheaderOf[loop.header] = index;
+        }
+
+        /** Instructions of the loop that can be moved out, in an order that respects their dependencies. */
+        private List<Integer> findInvariant(NaturalLoops.Loop loop) {
+            // Code moved to the preheader of an inner loop is still inside this one
+            for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+                for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                    if (!TacProgram.hasDest(program.opcode(i))) continue;
+                    definitions[program.valueId(program.dest(i))]++;
+                }
+                for (int s : cfg.successors(b)) {
+                    if (loops.isExit(loop, b, s)) exits.add(new int[] {b, s});
+                }
+            }
+
+            BitSet liveAtHeader = liveness.liveIn(loop.header);
+            List<Integer> order = new ArrayList<>();
+            boolean found = true;
+            while (found) {
+                found = false;
+                for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+                    // A preheader runs right before its header and dominates what the header dominates
+                    int p = preheaderOf[b];
+                    if (p >= 0) {
+                        for (int i : preheaders.get(p).code) {
+                            if (movedTo[i] == p && canMove(i, b, liveAtHeader)) {
+                                order.add(i);
+                                found = true;
+                            }
+                        }
+                    }
+                    for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                        if (movedTo[i] < 0 && canMove(i, b, liveAtHeader)) {
+                            order.add(i);
+                            found = true;
+                        }
+                    }
+                }
+            }
+            return order;
+        }
+
+        /** True if instruction i, which runs in block b of the loop, can be moved out now; marks its value moved. */
+        private boolean canMove(int i, int b, BitSet liveAtHeader) {
+            int opcode = program.opcode(i);
+            if (!TacProgram.hasDest(opcode)) return false;
+            int id = program.valueId(program.dest(i));
+            if (moved.get(id) || definitions[id] != 1 || liveAtHeader.get(id)) return false;
+            if (!isInvariant(program.src1(i))) return false;
+            if (opcode != TacProgram.COPY && !isInvariant(program.src2(i))) return false;
+            if (opcode == TacProgram.DIV && !isNonZeroConstant(program.src2(i))) return false;
+            if (!safeAtExits(id, b)) return false;
+            moved.set(id);
+            return true;
+        }
+
+        private boolean isInvariant(int operand) {
+            int id = program.valueId(operand);
+            return id < 0 || definitions[id] == 0 || moved.get(id);
+        }
+
+        private boolean isNonZeroConstant(int operand) {
+            return TacProgram.kind(operand) == TacProgram.CONST && program.constantValue(operand) != 0;
+        }
+
+        /** d may only be computed early if a loop left without running its block does not observe it. */
+        private boolean safeAtExits(int id, int block) {
+            for (int[] exit : exits) {
+                if (liveness.liveIn(exit[1]).get(id) && !dominators.dominates(block, exit[0])) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Rebuilds the program with every preheader in front of its header and the moved
+         * instructions taken out of their loops; returns false if nothing was moved.
+         */
+        boolean apply() {
+            if (preheaders.isEmpty()) return false;
+            int size = program.size();
+            int[] code = new int[4 * size];
+            for (int i = 0; i < size; i++) {
+                code[4 * i] = program.opcode(i);
+                code[4 * i + 1] = program.dest(i);
+                code[4 * i + 2] = program.src1(i);
+                code[4 * i + 3] = program.src2(i);
+            }
+            program.clearInstructions();
+            for (int b = 0; b < cfg.blockCount(); b++) {
+                int p = preheaderOf[b];
+                if (p >= 0) {
+                    Preheader preheader = preheaders.get(p);
+                    if (preheader.label != TacProgram.NONE) {
+                        program.emit(TacProgram.LABEL, preheader.label, TacProgram.NONE, TacProgram.NONE);
+                    }
+                    for (int i : preheader.code) {
+                        if (movedTo[i] == p) emit(code, i);
+                    }
+                }
+                for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                    if (movedTo[i] < 0) emit(code, i);
+                }
+            }
+            return true;
+        }
+
+        private void emit(int[] code, int i) {
+            program.emit(code[4 * i], code[4 * i + 1], code[4 * i + 2], code[4 * i + 3]);
+        }
+    }
+
+    /** Code to run once in front of a loop header, behind a new label if jumps were redirected to it. */
+    private static final class Preheader {
+        int label = TacProgram.NONE;
+        final List<Integer> code = new ArrayList<>();
+    }
+}
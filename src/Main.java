@@ -13,24 +13,89 @@
  *    - Passes the token list to `SyntaxAnalyzer` to check for grammatical structure.
  *
  * 3. **Semantic Analysis**:
- *    - Ensures the code has meaningful logic (e.g., variables are declared before use).
+ *    - Ensures the code has meaningful logic (e.g., variables are declared before use)
+ *      and resolves every variable to a slot for the later stages.
  *
  * 4. **Intermediate Code Generation**:
- *    - Translates the token stream into intermediate code for further processing or optimization.
+ *    - Translates the AST into three-address code for further processing or optimization.
  *
- * If any stage encounters an error, it prints an appropriate error message.
+ * If any stage encounters errors, it prints every one of them with its line and
+ * column (the lexer and parser recover and keep going, see SyntaxAnalyzer) and exits
+ * with status 1.
  *
  * Expected Input:
  * - A file named `input.minilang` must be present in the same directory.
  *
  * Output:
  * - Token list, syntax status, semantic check, and generated intermediate code.
+ *
+ * Options:
+ * - `--stream`: parse straight from a memory-mapped StreamingLexer instead of reading
+ *   the whole file and token list into memory first. The token dump is skipped in
+ *   this mode.
+ * - `--pipelined`: like `--stream`, but lex, parse and check plus generate code for the
+ *   top-level statements on three threads at once (PipelinedFrontEnd). The `--stats`
+ *   parse phase then covers the whole front end.
+ * - `--arena`: like `--stream`, but parse into a flat AstArena and analyze and translate
+ *   it there; node objects are only built if a backend or `--save-image` needs them.
+ * - `--dag`: parse with a hash-consing ExpressionFactory, so repeated expressions are one
+ *   shared node, and compute each shared expression once where its value can be reused
+ *   (in the default and `--stream` modes).
+ * - `--optimize`: run the TAC optimization passes (PassManager.standard) before printing
+ *   the code and report the instruction counts per pass. The VM runs the optimized code.
+ * - `--ssa`: print the (optimized) code in SSA form, with phi nodes, per basic block.
+ * - `--regalloc`: map temporaries onto a minimal set of registers (RegisterAllocator);
+ *   `--regalloc=all` also allocates user variables, `--max-registers=N` caps the
+ *   register count and spills the rest to memory.
+ * - `--run` / `--run=tree`: after code generation, execute the program with the Interpreter.
+ * - `--run=vm`: compile the three-address code to register bytecode and run it on the RegisterVM.
+ * - `--run=jvm`: compile the AST to a JVM class (JvmCompiler) and run it as a hidden class.
+ * - `--disasm`: print the register bytecode listing.
+ * - `--check-backends`: run the Interpreter, the RegisterVM and the JVM backend and compare their output.
+ * - `--save-image=FILE`: write the resolved AST and the final code to a ProgramImage.
+ * - `--image=FILE`: load a ProgramImage instead of compiling `input.minilang`, print its
+ *   code and run it with the options above.
+ * - `--emit=tokens,tac` (default), `--emit=tac`, `--emit=tokens` or `--emit=none`: which
+ *   artifacts to print. Without `tokens`, the token dump is skipped entirely.
+ * - `--out=FILE`: write the emitted artifacts to FILE instead of stdout.
+ * - `--stats` / `--stats=FILE`: measure every phase (CompilerMetrics: time, allocated
+ *   bytes, tokens, AST nodes, symbols, instructions) and print the JSON summary to stderr
+ *   or write it to FILE, also when compilation fails. Phases are reported as JFR events
+ *   whenever a flight recording enables `minilang.CompilerPhase`, with or without this.
  */
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Main {
+
+    // --stats: where the JSON summary goes ("" = stderr); null = no summary
+    private static String statsTarget;
+    private static CompilerMetrics metrics = CompilerMetrics.OFF;
+
+    // --emit and --out: the sink of each artifact (OutputSink.discard() if not emitted)
+    private static boolean dag; // --dag: hash-consed expressions
+    private static boolean emitTokens = true;
+    private static boolean emitCode = true;
+    private static OutputSink tokenSink;
+    private static OutputSink codeSink;
+    private static final OutputSink errors = OutputSink.stderr();
+
+    // Options of the steps after code generation (compileBackEnd), the same in every mode
+    private static boolean optimize;
+    private static boolean printSsa;
+    private static Boolean allocateVariables; // null = no allocation, otherwise whether user variables are allocated too
+    private static int maxRegisters;
+    private static String saveImage;          // null = no image
+    private static String runMode;            // "tree", "vm" or "jvm"; null = no run
+    private static boolean disassemble;
+    private static boolean checkBackends;
+
     public static void main(String[] args) {
         System.out.println("\n==================== MiniLang Compiler ====================");
         System.out.println(" Ensure 'input.minilang' is in the current directory.");
@@ -38,38 +103,379 @@ public class Main {
         System.out.println("===========================================================\n");
 
         String fileName = "input.minilang";
-        StringBuilder codeBuffer = new StringBuilder();
 
+        List<String> options = Arrays.asList(args);
+        runMode = options.contains("--run") || options.contains("--run=tree") ? "tree"
+                : options.contains("--run=vm") ? "vm"
+                : options.contains("--run=jvm") ? "jvm" : null;
+        optimize = options.contains("--optimize");
+        dag = options.contains("--dag");
+        printSsa = options.contains("--ssa");
+        for (String option : options) {
+            if (option.startsWith("--max-registers=")) {
+                maxRegisters = Integer.parseInt(option.substring("--max-registers=".length()));
+            }
+        }
+        allocateVariables = options.contains("--regalloc=all") ? Boolean.TRUE
+                : options.contains("--regalloc") || maxRegisters > 0 ? Boolean.FALSE : null;
+        disassemble = options.contains("--disasm");
+        checkBackends = options.contains("--check-backends");
+        String loadImage = null;
+        for (String option : options) {
+            if (option.startsWith("--save-image=")) saveImage = option.substring("--save-image=".length());
+            if (option.startsWith("--image=")) loadImage = option.substring("--image=".length());
+            if (option.equals("--stats")) statsTarget = "";
+            if (option.startsWith("--stats=")) statsTarget = option.substring("--stats=".length());
+            if (option.startsWith("--emit=")) emit(option.substring("--emit=".length()));
+        }
+        OutputSink output = OutputSink.stdout();
+        for (String option : options) {
+            if (!option.startsWith("--out=")) continue;
+            try {
+                output = OutputSink.file(Paths.get(option.substring("--out=".length())));
+            } catch (IOException e) {
+                System.err.println("File Write Error: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+        tokenSink = emitTokens ? output : OutputSink.discard();
+        codeSink = emitCode ? output : OutputSink.discard();
+        if (statsTarget != null) {
+            metrics = CompilerMetrics.record(fileName)
+                    .attribute("mode", options.contains("--pipelined") ? "pipelined"
+                            : options.contains("--arena") ? "arena"
+                            : options.contains("--stream") ? "stream" : "memory")
+                    .attribute("optimize", optimize)
+                    .attribute("dag", dag);
+        } else {
+            metrics = CompilerMetrics.unrecorded(fileName);
+        }
+
+        // Every mode reports the errors that stop it here, once
+        try {
+            if (loadImage != null) {
+                runImage(loadImage);
+            } else if (options.contains("--pipelined")) {
+                compilePipelined(fileName);
+            } else if (options.contains("--arena")) {
+                compileArena(fileName);
+            } else if (options.contains("--stream")) {
+                compileStreaming(fileName);
+            } else {
+                compile(fileName);
+            }
+        } catch (IOException e) {
+            System.err.println("File Read Error: " + e.getMessage());
+            System.exit(1);
+        } catch (RuntimeException e) {
+            System.err.println(" Compilation Error: " + e.getMessage());
+            System.exit(1);
+        } catch (StackOverflowError e) {
+            System.err.println(" " + CompilerPipeline.NESTED_TOO_DEEPLY);
+            System.exit(1);
+        }
+    }
+
+    /** Reads the whole file, then lexes it into a TokenStream and parses that. */
+    private static void compile(String fileName) throws IOException {
+        StringBuilder codeBuffer = new StringBuilder();
         try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 codeBuffer.append(line).append("\n");
             }
-        } catch (IOException e) {
-            System.err.println("File Read Error: " + e.getMessage());
-            return;
         }
 
-        try {
-            System.out.println(" Lexical Analysis:");
-            List<LexicalAnalyzer.Token> tokens = LexicalAnalyzer.tokenize(codeBuffer.toString());
-            tokens.forEach(System.out::println);
+        String source = codeBuffer.toString();
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        System.out.println(" Lexical Analysis:");
+        CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.LEX);
+        TokenStream tokens = LexicalAnalyzer.tokenizeToStream(source, diagnostics);
+        phase.end(tokens.size());
+        if (!tokenSink.discards()) {
+            tokens.writeTo(tokenSink);
+            tokenSink.flush();
+        } else {
+            System.out.println(" " + tokens.size() + " tokens (dump skipped).");
+        }
+
+        System.out.println("\n Syntax Analysis:");
+        phase = metrics.begin(CompilerMetrics.Stage.PARSE);
+        ExpressionFactory expressions = expressionFactory();
+        SyntaxAnalyzer parser = new SyntaxAnalyzer(tokens.cursor(), expressions);
+        Block program = parser.parse(diagnostics);
+        phase.end(phase.active() ? CompilerMetrics.countNodes(program) : 0);
+        exitOnErrors(diagnostics, source);
+        System.out.println(" Syntax Analysis: Passed.");
+        printDag(expressions);
+
+        System.out.println("\n Semantic Analysis:");
+        analyze(program, diagnostics);
+        exitOnErrors(diagnostics, source);
+        System.out.println(" Semantic Analysis with Type Checking: Passed.");
+
+        System.out.println("\n  Intermediate Code Generation:");
+        compileBackEnd(program, generate(program), "Compilation completed successfully!");
+    }
 
-            System.out.println("\n Syntax Analysis:");
-            SyntaxAnalyzer parser = new SyntaxAnalyzer(tokens);
-            parser.parse();
+    /** Syntax analysis with tokens pulled lazily from the memory-mapped source file. */
+    private static void compileStreaming(String fileName) throws IOException {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        try (StreamingLexer lexer = StreamingLexer.open(Paths.get(fileName), diagnostics)) {
+            System.out.println(" Syntax Analysis (streaming):");
+            CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.PARSE);
+            ExpressionFactory expressions = expressionFactory();
+            SyntaxAnalyzer parser = new SyntaxAnalyzer(lexer, expressions);
+            Block program = parser.parse(diagnostics);
+            phase.end(phase.active() ? CompilerMetrics.countNodes(program) : 0);
+            exitOnErrorsIn(fileName, diagnostics);
+            System.out.println(" Syntax Analysis: Passed.");
+            System.out.println(" Parsed " + program.statements.size() + " top-level statements.");
+            printDag(expressions);
 
             System.out.println("\n Semantic Analysis:");
-            SemanticAnalyzer semanticAnalyzer = new SemanticAnalyzer();
-            semanticAnalyzer.analyze(tokens);
+            analyze(program, diagnostics);
+            exitOnErrorsIn(fileName, diagnostics);
+            System.out.println(" Semantic Analysis with Type Checking: Passed.");
 
             System.out.println("\n  Intermediate Code Generation:");
-            IntermediateCodeGenerator icg = new IntermediateCodeGenerator(tokens);
-            icg.generate();
+            compileBackEnd(program, generate(program), "Streaming mode: the token dump was skipped.");
+        }
+    }
 
-            System.out.println("\n Compilation completed successfully!");
-        } catch (Exception e) {
-            System.err.println(" Compilation Error: " + e.getMessage());
+    /** Streaming syntax analysis into an AstArena; the later phases walk the arena. */
+    private static void compileArena(String fileName) throws IOException {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        try (StreamingLexer lexer = StreamingLexer.open(Paths.get(fileName), diagnostics)) {
+            System.out.println(" Syntax Analysis (arena):");
+            CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.PARSE);
+            AstArena arena = AstArena.parse(lexer, diagnostics, (int) Math.min(Files.size(Paths.get(fileName)) / 4, 1 << 26));
+            phase.end(arena.size());
+            exitOnErrorsIn(fileName, diagnostics);
+            System.out.println(" Syntax Analysis: Passed.");
+            System.out.println(" Parsed " + arena.statementCount(arena.root()) + " top-level statements into "
+                    + arena.size() + " arena nodes.");
+
+            System.out.println("\n Semantic Analysis:");
+            phase = metrics.begin(CompilerMetrics.Stage.SEMANTIC);
+            new SemanticAnalyzer().analyze(arena, diagnostics);
+            phase.end(Math.max(arena.slotCount(), 0));
+            exitOnErrorsIn(fileName, diagnostics);
+            System.out.println(" Semantic Analysis with Type Checking: Passed.");
+
+            System.out.println("\n  Intermediate Code Generation:");
+            phase = metrics.begin(CompilerMetrics.Stage.CODEGEN);
+            TacProgram tac = new IntermediateCodeGenerator(arena).generate();
+            phase.end(tac.size());
+            Block program = runMode != null || checkBackends || saveImage != null ? arena.toBlock() : null;
+            compileBackEnd(program, tac, "Arena mode: the token dump was skipped.");
+        }
+    }
+
+    /** Lexing, parsing and semantic analysis plus code generation on three threads. */
+    private static void compilePipelined(String fileName) throws IOException {
+        System.out.println(" Lexical, Syntax and Semantic Analysis (pipelined):");
+        CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.PARSE);
+        PipelinedFrontEnd.Result result = PipelinedFrontEnd.compile(Paths.get(fileName));
+        phase.end(phase.active() && result.program != null ? CompilerMetrics.countNodes(result.program) : 0);
+        exitOnErrorsIn(fileName, result.diagnostics);
+        System.out.println(" Syntax Analysis: Passed.");
+        System.out.println(" Semantic Analysis with Type Checking: Passed.");
+        System.out.println(" Compiled " + result.program.statements.size() + " top-level statements.");
+
+        System.out.println("\n  Intermediate Code Generation:");
+        compileBackEnd(result.program, result.code, "Pipelined mode: the token dump was skipped.");
+    }
+
+    /**
+     * Everything after code generation, the same in every mode: optimization, the SSA
+     * listing, register allocation, the code and reports, the image and the backends.
+     * `program` may be null if neither a backend nor the image needs the AST.
+     */
+    private static void compileBackEnd(Block program, TacProgram tac, String done) throws IOException {
+        PassManager passes = optimize ? optimize(tac) : null;
+        writeStats(true, 0);
+        if (printSsa) {
+            System.out.println("\n SSA Form:");
+            SsaForm ssa = new SsaForm(tac);
+            System.out.print(ssa);
+            ssa.discard();
+        }
+        RegisterAllocator allocator = allocateVariables != null
+                ? allocate(tac, allocateVariables, maxRegisters) : null;
+        printCode(tac);
+        printReports(passes, allocator);
+        saveImage(saveImage, program, tac);
+        System.out.println("\n " + done);
+
+        runBackends(program, tac);
+    }
+
+    /** Prints every diagnostic with its line and column and exits, if there are any. */
+    private static void exitOnErrors(List<Diagnostic> diagnostics, CharSequence source) throws IOException {
+        if (diagnostics.isEmpty()) return;
+        writeStats(false, diagnostics.size());
+        tokenSink.flush();
+        for (Diagnostic diagnostic : Diagnostic.locate(diagnostics, source)) {
+            errors.append(' ').append(diagnostic.toString()).append('\n');
         }
+        errors.append(' ').append(Integer.toString(diagnostics.size()))
+                .append(diagnostics.size() == 1 ? " error.\n" : " errors.\n");
+        errors.flush();
+        System.exit(1);
+    }
+
+    /** --emit=tokens,tac | tac | tokens | none */
+    private static void emit(String artifacts) {
+        emitTokens = false;
+        emitCode = false;
+        for (String artifact : artifacts.split(",")) {
+            if (artifact.equals("tokens")) {
+                emitTokens = true;
+            } else if (artifact.equals("tac")) {
+                emitCode = true;
+            } else if (!artifact.equals("none")) {
+                System.err.println("Usage: --emit=tokens,tac | tac | tokens | none (got '" + artifact + "')");
+                System.exit(2);
+            }
+        }
+    }
+
+    /** Streaming mode: the source is only read for line numbers once there are errors. */
+    private static void exitOnErrorsIn(String fileName, List<Diagnostic> diagnostics) throws IOException {
+        if (diagnostics.isEmpty()) return;
+        exitOnErrors(diagnostics, new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8));
+    }
+
+    /** Loads a precompiled ProgramImage; only the sections the chosen backends need are decoded. */
+    private static void runImage(String fileName) throws IOException {
+        ProgramImage image = ProgramImage.open(Paths.get(fileName));
+        System.out.println(" Program Image: " + fileName);
+        boolean needsAst = checkBackends || "tree".equals(runMode) || "jvm".equals(runMode) || !image.hasCode();
+        Block program = needsAst ? image.ast() : null;
+        TacProgram tac = image.hasCode() ? image.code() : new IntermediateCodeGenerator(program).generate();
+        printCode(tac);
+        System.out.println("\n Loaded from the image: no source was compiled.");
+
+        runBackends(program, tac);
+    }
+
+    private static void saveImage(String fileName, Block program, TacProgram tac) throws IOException {
+        if (fileName == null) return;
+        ProgramImage.write(Paths.get(fileName), program, tac);
+        System.out.println("\n Program image written to " + fileName + ".");
+    }
+
+    private static void analyze(Block program, List<Diagnostic> diagnostics) {
+        CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.SEMANTIC);
+        new SemanticAnalyzer().analyze(program, diagnostics);
+        phase.end(Math.max(program.slotCount, 0));
+    }
+
+    private static ExpressionFactory expressionFactory() {
+        return dag ? ExpressionFactory.hashConsing() : ExpressionFactory.plain();
+    }
+
+    private static void printDag(ExpressionFactory expressions) {
+        if (dag) {
+            System.out.println(" Expression DAG: " + expressions.distinct() + " distinct nodes for "
+                    + expressions.requested() + " expressions.");
+        }
+    }
+
+    private static TacProgram generate(Block program) {
+        CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.CODEGEN);
+        TacProgram tac = new IntermediateCodeGenerator(program, dag).generate();
+        phase.end(tac.size());
+        return tac;
+    }
+
+    private static PassManager optimize(TacProgram tac) {
+        CompilerMetrics.Phase phase = metrics.begin(CompilerMetrics.Stage.OPTIMIZE);
+        PassManager passes = PassManager.standard();
+        passes.run(tac);
+        phase.end(tac.size());
+        return passes;
+    }
+
+    /** --stats: prints or writes the JSON summary of the phases that ran. */
+    private static void writeStats(boolean succeeded, int errors) {
+        if (statsTarget == null) return;
+        String json = metrics.attribute("succeeded", succeeded).attribute("errors", errors).toJson();
+        if (statsTarget.isEmpty()) {
+            System.err.println(json);
+            return;
+        }
+        try {
+            Files.write(Paths.get(statsTarget), (json + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("File Write Error: " + e.getMessage());
+        }
+    }
+
+    private static RegisterAllocator allocate(TacProgram tac, boolean includeVariables, int maxRegisters) {
+        RegisterAllocator allocator = new RegisterAllocator(tac, includeVariables, maxRegisters);
+        allocator.allocate();
+        return allocator;
+    }
+
+    private static void printReports(PassManager passes, RegisterAllocator allocator) {
+        if (passes != null) {
+            System.out.println("\n Optimization:");
+            System.out.print(passes.report());
+        }
+        if (allocator != null) {
+            System.out.println("\n Register Allocation:");
+            System.out.print(allocator.report());
+        }
+    }
+
+    private static void runBackends(Block program, TacProgram tac) throws IOException {
+        BytecodeProgram bytecode = null;
+        if (disassemble || checkBackends || "vm".equals(runMode)) {
+            bytecode = new BytecodeCompiler(tac).compile();
+        }
+        if (disassemble) {
+            System.out.println("\n Register Bytecode:");
+            System.out.print(bytecode.disassemble());
+        }
+        if (checkBackends) {
+            checkBackends(program, bytecode);
+        }
+        if (runMode != null) {
+            System.out.println("\n Execution (" + runMode + "):");
+            Writer out = OutputSink.stdout();
+            if (runMode.equals("vm")) {
+                new RegisterVM(bytecode, out).run();
+            } else if (runMode.equals("jvm")) {
+                new JvmBackend(program, out).run();
+            } else {
+                new Interpreter(program, out).run();
+            }
+        }
+    }
+
+    /** Runs the program on every backend and compares the output with the interpreter's. */
+    private static void checkBackends(Block program, BytecodeProgram bytecode) throws IOException {
+        StringWriter tree = new StringWriter();
+        StringWriter vm = new StringWriter();
+        StringWriter jvm = new StringWriter();
+        new Interpreter(program, tree).run();
+        new RegisterVM(bytecode, vm).run();
+        new JvmBackend(program, jvm).run();
+        if (!tree.toString().equals(vm.toString())) {
+            throw new RuntimeException("Backend Check: interpreter and VM output differ.");
+        }
+        if (!tree.toString().equals(jvm.toString())) {
+            throw new RuntimeException("Backend Check: interpreter and JVM backend output differ.");
+        }
+        System.out.println("\n Backend Check: Passed (interpreter, VM and JVM output match).");
+    }
+
+    /** Writes the generated code to the output sink, unless --emit leaves it out. */
+    private static void printCode(TacProgram tac) throws IOException {
+        if (codeSink.discards()) return;
+        tac.writeTo(codeSink);
+        codeSink.flush();
     }
-}
\ No newline at end of file
+}
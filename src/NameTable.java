@@ -0,0 +1,117 @@
+/**
+ * NameTable.java
+ * ---------------
+ * Interning table for identifier names. Every distinct name is stored once and
+ * given a dense integer ID (0, 1, 2, ...), so later phases can refer to names by
+ * ID and compare them with `==` instead of String equality.
+ *
+ * Names can be interned straight from a character buffer, which lets the lexer
+ * look up an identifier without allocating a String for each occurrence.
+ */
+
+import java.util.Arrays;
+
+public class NameTable {
+
+    private String[] names = new String[16];
+    private int[] hashes = new int[16];
+    private int size = 0;
+
+    // Open-addressing hash table of (id + 1); 0 marks an empty slot.
+    private int[] slots = new int[32];
+
+    /** Returns the ID of the name in chars[offset..offset+length), adding it if it is new. */
+    public int intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], chars, offset, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(new String(chars, offset, length), hash, slot);
+    }
+
+    /** Returns the ID of the given name, adding it if it is new. */
+    public int intern(String name) {
+        int hash = name.hashCode(); // same polynomial as above
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(name, hash, slot);
+    }
+
+    /** Returns the ID of the name, or -1 if it has never been interned. */
+    public int find(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * NaturalLoops.java
+ * ------------------
+ * **Natural-loop detection** on a ControlFlowGraph, using its Dominators.
+ *
+ * An edge n -> h is a back edge if h dominates n. The natural loop of that edge is h
+ * plus every block that can reach n without passing through h; back edges sharing a
+ * header are merged into one loop. For a `while` statement the header is the block
+ * that starts at the loop label and evaluates the condition:
+ *
+ *   L1:                       <- header
+ *   t1 = i < 10
+ *   ifFalse t1 goto L2        <- exit edge
+ *   ...body...
+ *   goto L1                   <- back edge
+ *   L2:
+ *
+ * Loops are listed innermost first (a nested loop has fewer blocks than the loop
+ * around it). Like the graph, the result is a snapshot: rebuild it after changing the
+ * program.
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+public class NaturalLoops {
+
+    /** One natural loop: its header and the set of blocks in its body (header included). */
+    public static final class Loop {
+        public final int header;
+        public final BitSet blocks;
+
+        Loop(int header, BitSet blocks) {
+            this.header = header;
+            this.blocks = blocks;
+        }
+
+        public boolean contains(int block) {
+            return blocks.get(block);
+        }
+    }
+
+    private final ControlFlowGraph cfg;
+    private final Dominators dominators;
+    private final List<Loop> loops = new ArrayList<>();
+
+    public NaturalLoops(Dominators dominators) {
+        this.dominators = dominators;
+        this.cfg = dominators.cfg();
+        int blocks = cfg.blockCount();
+        BitSet[] bodyOf = new BitSet[blocks];
+        int[] stack = new int[blocks];
+
+        for (int n : dominators.reversePostorder()) {
+            for (int h : cfg.successors(n)) {
+                if (!dominators.dominates(h, n)) continue;
+                BitSet body = bodyOf[h];
+                if (body == null) {
+                    body = bodyOf[h] = new BitSet(blocks);
+                    body.set(h);
+                }
+                // Walk predecessors backwards from the latch until the header is reached
+                int top = 0;
+                if (!body.get(n)) {
+                    body.set(n);
+                    stack[top++] = n;
+                }
+                while (top > 0) {
+                    int b = stack[--top];
+                    for (int p : cfg.predecessors(b)) {
+                        if (!body.get(p) && dominators.isReachable(p)) {
+                            body.set(p);
+                            stack[top++] = p;
+                        }
+                    }
+                }
+            }
+        }
+        for (int h = 0; h < blocks; h++) {
+            if (bodyOf[h] != null) loops.add(new Loop(h, bodyOf[h]));
+        }
+        loops.sort(Comparator.comparingInt((Loop loop) -> loop.blocks.cardinality()).thenComparingInt(loop -> loop.header));
+    }
+
+    public ControlFlowGraph cfg() {
+        return cfg;
+    }
+
+    public Dominators dominators() {
+        return dominators;
+    }
+
+    /** All loops, innermost first. */
+    public List<Loop> loops() {
+        return loops;
+    }
+
+    /** True if the edge from -> to leaves the loop. */
+    public boolean isExit(Loop loop, int from, int to) {
+        return loop.contains(from) && !loop.contains(to);
+    }
+
+    /**
+     * Prepares a preheader for the loop and returns the instruction index where code
+     * that must run once before the loop is to be inserted, or -1 if the layout does not
+     * allow it.
+     *
+     * The code goes directly in front of the header, so it runs when the header is
+     * entered by falling through from the block above. Jumps from outside the loop that
+     * target the header label are redirected to a new label placed in front of the
+     * inserted code. If the block above the header belongs to the loop, entering the
+     * header by fall-through would be a back edge, and -1 is returned. After inserting,
+     * this object and the graph are out of date.
+     */
+    public int preparePreheader(Loop loop) {
+        TacProgram program = cfg.program();
+        int position = cfg.blockStart(loop.header);
+        List<Integer> outsideJumps = outsideJumps(loop);
+        if (outsideJumps == null) return -1;
+        if (!outsideJumps.isEmpty()) {
+            int preheaderLabel = program.newLabel();
+            for (int jump : outsideJumps) {
+                program.set(jump, program.opcode(jump), preheaderLabel, program.src1(jump), program.src2(jump));
+            }
+            program.insert(position, TacProgram.LABEL, preheaderLabel, TacProgram.NONE, TacProgram.NONE);
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * The jumps from outside the loop to its header label, which a preheader in front of
+     * the header must take over, or null if the loop cannot have one (see
+     * preparePreheader). Does not change the program.
+     */
+    public List<Integer> outsideJumps(Loop loop) {
+        TacProgram program = cfg.program();
+        int position = cfg.blockStart(loop.header);
+        if (loop.header > 0) {
+            int above = loop.header - 1;
+            int last = cfg.blockEnd(above) - 1;
+            boolean fallsThrough = program.opcode(last) != TacProgram.JUMP;
+            if (fallsThrough && loop.contains(above)) return null;
+        }
+
+        List<Integer> outsideJumps = new ArrayList<>();
+        for (int p : cfg.predecessors(loop.header)) {
+            if (loop.contains(p)) continue;
+            int last = cfg.blockEnd(p) - 1;
+            int opcode = program.opcode(last);
+            if ((opcode == TacProgram.JUMP || opcode == TacProgram.JUMP_IF_FALSE)
+                    && program.opcode(position) == TacProgram.LABEL
+                    && program.dest(last) == program.dest(position)) {
+                outsideJumps.add(last);
+            }
+        }
+        return outsideJumps;
+    }
+}
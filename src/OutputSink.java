@@ -0,0 +1,266 @@
+/**
+ * OutputSink.java
+ * ----------------
+ * Destination for the compiler's **textual output**: the token dump, diagnostics, the
+ * three-address code and program output. Every producer writes to a Writer, so a sink
+ * plugs in wherever a Writer is taken (e.g. TacProgram.writeTo, TokenStream.writeTo).
+ *
+ *   OutputSink.stdout(), stderr()   the process's standard streams
+ *   OutputSink.file(path)           a file, written through a FileChannel
+ *   OutputSink.channel(channel)     any WritableByteChannel, e.g. a socket or a pipe
+ *   OutputSink.memory()             collected in memory; read with toString()
+ *   OutputSink.discard()            dropped; producers check discards() and skip the work
+ *
+ * The channel-backed sinks encode into a 64 KB buffer and only write it when it is full,
+ * on flush() or on close(). Unlike System.out (a synchronized PrintStream that flushes
+ * every println), no write takes a lock or makes a system call. Whoever mixes a sink
+ * with System.out on the same stream must flush() the sink before printing again.
+ *
+ * Sinks are not thread-safe. Closing stdout() or stderr() flushes them but leaves the
+ * standard stream open; like System.out, they drop output silently once the stream
+ * fails (e.g. a closed pipe in `java Main | head`) instead of failing the compile.
+ */
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public abstract class OutputSink extends Writer {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final OutputSink DISCARD = new Discard();
+
+    public static OutputSink stdout() {
+        return new ChannelSink(new FileOutputStream(FileDescriptor.out).getChannel(), false);
+    }
+
+    public static OutputSink stderr() {
+        return new ChannelSink(new FileOutputStream(FileDescriptor.err).getChannel(), false);
+    }
+
+    /** Creates or truncates the file. */
+    public static OutputSink file(Path path) throws IOException {
+        return new ChannelSink(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), true);
+    }
+
+    /** Writes to the channel, and closes it when the sink is closed. */
+    public static OutputSink channel(WritableByteChannel channel) {
+        return new ChannelSink(channel, true);
+    }
+
+    public static OutputSink memory() {
+        return new Memory();
+    }
+
+    public static OutputSink discard() {
+        return DISCARD;
+    }
+
+    /** True if everything written is dropped, so producers can skip formatting it. */
+    public boolean discards() {
+        return false;
+    }
+
+    // Writer's String and single-char writes take a lock; the sinks need none.
+
+    @Override
+    public void write(int c) throws IOException {
+        write(new char[] {(char) c}, 0, 1);
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        append(text, offset, offset + length);
+    }
+
+    @Override
+    public OutputSink append(CharSequence text) throws IOException {
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public abstract OutputSink append(CharSequence text, int start, int end) throws IOException;
+
+    @Override
+    public OutputSink append(char c) throws IOException {
+        write(c);
+        return this;
+    }
+
+    /** Buffered UTF-8 output to a byte channel. */
+    private static final class ChannelSink extends OutputSink {
+        private final WritableByteChannel channel;
+        private final boolean closeChannel; // false for the standard streams
+        private boolean broken;             // a standard stream failed; output is dropped
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE / 2);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private boolean closed;
+
+        ChannelSink(WritableByteChannel channel, boolean closeChannel) {
+            this.channel = channel;
+            this.closeChannel = closeChannel;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (!chars.hasRemaining()) encode(false);
+            chars.put((char) c);
+        }
+
+        @Override
+        public void write(char[] text, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!chars.hasRemaining()) encode(false);
+                int n = Math.min(length, chars.remaining());
+                chars.put(text, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public OutputSink append(CharSequence text, int start, int end) throws IOException {
+            if (text instanceof String) {
+                String string = (String) text;
+                while (start < end) {
+                    if (!chars.hasRemaining()) encode(false);
+                    int n = Math.min(end - start, chars.remaining());
+                    string.getChars(start, start + n, chars.array(), chars.arrayOffset() + chars.position());
+                    chars.position(chars.position() + n);
+                    start += n;
+                }
+            } else {
+                while (start < end) {
+                    if (!chars.hasRemaining()) encode(false);
+                    chars.put(text.charAt(start++));
+                }
+            }
+            return this;
+        }
+
+        /** Encodes the buffered chars and writes the bytes; keeps a trailing half surrogate pair. */
+        private void encode(boolean endOfInput) throws IOException {
+            if (closed) throw new IOException("Output Error: sink is closed.");
+            chars.flip();
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    drain();
+                } else {
+                    break;
+                }
+            }
+            if (endOfInput) {
+                while (encoder.flush(bytes).isOverflow()) drain();
+                encoder.reset();
+            }
+            chars.compact();
+            drain();
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            try {
+                while (bytes.hasRemaining() && !broken) channel.write(bytes);
+            } catch (IOException e) {
+                if (closeChannel) throw e;
+                broken = true;
+            } finally {
+                bytes.clear();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            encode(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            try {
+                encode(true);
+            } finally {
+                closed = true;
+                if (closeChannel) channel.close();
+            }
+        }
+    }
+
+    private static final class Memory extends OutputSink {
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void write(int c) {
+            text.append((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            text.append(chars, offset, length);
+        }
+
+        @Override
+        public OutputSink append(CharSequence chars, int start, int end) {
+            text.append(chars, start, end);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    private static final class Discard extends OutputSink {
+        @Override
+        public boolean discards() {
+            return true;
+        }
+
+        @Override
+        public void write(int c) {
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+        }
+
+        @Override
+        public OutputSink append(CharSequence chars, int start, int end) {
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
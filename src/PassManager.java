@@ -0,0 +1,82 @@
+/**
+ * PassManager.java
+ * -----------------
+ * Runs a pipeline of TacPass optimizations over a TacProgram **until a fixpoint**: the
+ * passes are applied in order, round after round, until a full round changes nothing
+ * (or MAX_ROUNDS is reached, as a guard against passes that undo each other).
+ *
+ * After each pass the program is compacted and the instruction count is recorded, so
+ * report() can show what every pass contributed:
+ *
+ *   round 1  constant-folding                       24 -> 20
+ *   round 1  dead-code-elimination                  20 -> 12
+ *   Total: 24 -> 12 instructions in 2 rounds
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PassManager {
+
+    public static final int MAX_ROUNDS = 16;
+
+    private final List<TacPass> passes = new ArrayList<>();
+    private final StringBuilder log = new StringBuilder();
+    private int initialSize;
+    private int finalSize;
+    private int rounds;
+
+    public PassManager add(TacPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    /** The default pipeline used by `--optimize`. */
+    public static PassManager standard() {
+        return standard(true);
+    }
+
+    /** The default pipeline, optionally without the loop passes (the baseline for LoopBenchmark). */
+    public static PassManager standard(boolean loopOptimizations) {
+        PassManager manager = new PassManager()
+                .add(new SparseConditionalConstantPass())
+                .add(new ConstantFoldingPass())
+                .add(new AlgebraicSimplificationPass())
+                .add(new CopyPropagationPass())
+                .add(new CommonSubexpressionPass());
+        if (loopOptimizations) {
+            manager.add(new LoopInvariantCodeMotionPass())
+                    .add(new StrengthReductionPass());
+        }
+        return manager.add(new DeadCodeEliminationPass());
+    }
+
+    /** Optimizes the program in place and returns the number of rounds that were run. */
+    public int run(TacProgram program) {
+        log.setLength(0);
+        initialSize = program.size();
+        rounds = 0;
+        boolean changed = true;
+        while (changed && rounds < MAX_ROUNDS) {
+            changed = false;
+            rounds++;
+            for (TacPass pass : passes) {
+                int before = program.size();
+                boolean passChanged = pass.run(program);
+                program.compact();
+                if (passChanged) {
+                    changed = true;
+                    log.append(String.format(" round %d  %-34s %6d -> %d%n", rounds, pass.name(), before, program.size()));
+                }
+            }
+        }
+        finalSize = program.size();
+        return rounds;
+    }
+
+    /** Per-pass instruction counts for every pass that changed something, plus the total. */
+    public String report() {
+        return log + String.format(" Total: %d -> %d instructions in %d round%s%n",
+                initialSize, finalSize, rounds, rounds == 1 ? "" : "s");
+    }
+}
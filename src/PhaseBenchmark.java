@@ -0,0 +1,185 @@
+/**
+ * PhaseBenchmark.java
+ * --------------------
+ * Throughput and allocation benchmark for each **compiler phase** and for the whole
+ * pipeline, on programs from the ProgramGenerator.
+ *
+ * Benchmarks (each takes the output of the previous phase, prepared once, as input):
+ *
+ *   tokenize   LexicalAnalyzer.tokenize          source -> List<Token>
+ *   scan       LexicalAnalyzer.tokenizeToStream  source -> TokenStream (used by the pipeline)
+ *   parse      SyntaxAnalyzer.parse              TokenStream -> Block
+ *   analyze    SemanticAnalyzer.analyze          Block (re-analyzed every time)
+ *   generate   IntermediateCodeGenerator.generate  Block -> TacProgram
+ *   parse-dag       SyntaxAnalyzer.parse, hash-consing  TokenStream -> Block (a DAG)
+ *   generate-dag    IntermediateCodeGenerator.generate, reusing shared nodes  DAG -> TacProgram
+ *   arena-parse     AstArena.parse              TokenStream -> AstArena
+ *   arena-analyze   SemanticAnalyzer.analyze    AstArena (re-analyzed every time)
+ *   arena-generate  IntermediateCodeGenerator.generate  AstArena -> TacProgram
+ *   pipeline   CompilerPipeline.compile          source bytes -> TacProgram, unoptimized
+ *   optimize   CompilerPipeline.compile          source bytes -> TacProgram, --optimize
+ *
+ * Method (in the manner of JMH): per benchmark, `warmup` iterations are run and
+ * discarded, then `iterations` are measured. Each iteration calls the operation in a
+ * loop for `time` milliseconds. Results feed a sink so the JIT cannot drop the work.
+ * The report gives the mean ops/s with a 99.9% confidence half-width, and the bytes
+ * allocated per operation and the allocation rate, read from the thread's allocation
+ * counter (what `-prof gc` reports as gc.alloc.rate.norm and gc.alloc.rate).
+ *
+ * Usage: java PhaseBenchmark [--seed=N] [--statements=N] [--depth=N] [--expressions=N]
+ *            [--warmup=N] [--iterations=N] [--time=MS] [benchmark...]
+ *
+ * Run with a fixed heap (e.g. -Xms1g -Xmx1g) so runs can be compared.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class PhaseBenchmark {
+
+    // t-distribution quantiles for a 99.9% two-sided interval, by degrees of freedom 1..10
+    private static final double[] T_999 = {636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59};
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        long seed = 1;
+        int statements = 500;
+        int depth = 3;
+        int expressions = 3;
+        int warmup = 5;
+        int iterations = 5;
+        int time = 1000;
+        List<String> selected = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+            else if (arg.startsWith("--statements=")) statements = Integer.parseInt(arg.substring("--statements=".length()));
+            else if (arg.startsWith("--depth=")) depth = Integer.parseInt(arg.substring("--depth=".length()));
+            else if (arg.startsWith("--expressions=")) expressions = Integer.parseInt(arg.substring("--expressions=".length()));
+            else if (arg.startsWith("--warmup=")) warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            else if (arg.startsWith("--iterations=")) iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            else if (arg.startsWith("--time=")) time = Integer.parseInt(arg.substring("--time=".length()));
+            else selected.add(arg);
+        }
+
+        String source = new ProgramGenerator(seed, statements, depth, expressions).generate();
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        TokenStream tokens = LexicalAnalyzer.tokenizeToStream(source);
+        Block program = new SyntaxAnalyzer(tokens).parse();
+        new SemanticAnalyzer().analyze(program);
+        AstArena arena = AstArena.from(program);
+        Block dag = new SyntaxAnalyzer(tokens.cursor(), ExpressionFactory.hashConsing()).parse();
+        new SemanticAnalyzer().analyze(dag);
+        CompilerPipeline plain = new CompilerPipeline(false);
+        CompilerPipeline optimizing = new CompilerPipeline(true);
+
+        Map<String, Supplier<Object>> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("tokenize", () -> LexicalAnalyzer.tokenize(source));
+        benchmarks.put("scan", () -> LexicalAnalyzer.tokenizeToStream(source));
+        benchmarks.put("parse", () -> new SyntaxAnalyzer(tokens).parse());
+        benchmarks.put("analyze", () -> {
+            new SemanticAnalyzer().analyze(program);
+            return program.slotCount;
+        });
+        benchmarks.put("generate", () -> new IntermediateCodeGenerator(program).generate());
+        benchmarks.put("parse-dag", () -> new SyntaxAnalyzer(tokens.cursor(), ExpressionFactory.hashConsing()).parse());
+        benchmarks.put("generate-dag", () -> new IntermediateCodeGenerator(dag, true).generate());
+        benchmarks.put("arena-parse", () -> AstArena.parse(tokens.cursor(), new ArrayList<>(), tokens.size()));
+        benchmarks.put("arena-analyze", () -> {
+            new SemanticAnalyzer().analyze(arena, new ArrayList<>());
+            return arena.slotCount();
+        });
+        benchmarks.put("arena-generate", () -> new IntermediateCodeGenerator(arena).generate());
+        benchmarks.put("pipeline", () -> compiled(plain.compile(Paths.get("generated.minilang"), bytes)));
+        benchmarks.put("optimize", () -> compiled(optimizing.compile(Paths.get("generated.minilang"), bytes)));
+        for (String name : selected) {
+            if (!benchmarks.containsKey(name)) {
+                System.err.println("Unknown benchmark '" + name + "'; choose from " + benchmarks.keySet());
+                System.exit(2);
+            }
+        }
+
+        System.out.printf(" Program: seed=%d statements=%d depth=%d expressions=%d -> %d bytes, %d tokens%n",
+                seed, statements, depth, expressions, bytes.length, tokens.size());
+        System.out.printf(" %d warm-up and %d measured iterations of %d ms each%n%n", warmup, iterations, time);
+        System.out.printf(" %-14s %14s %12s %14s %12s%n", "Benchmark", "ops/s", "+- (99.9%)", "B/op", "MB/s alloc");
+        for (Map.Entry<String, Supplier<Object>> benchmark : benchmarks.entrySet()) {
+            if (selected.isEmpty() || selected.contains(benchmark.getKey())) {
+                measure(benchmark.getKey(), benchmark.getValue(), warmup, iterations, time);
+            }
+        }
+    }
+
+    private static Object compiled(CompilationResult result) {
+        if (!result.succeeded()) throw new IllegalStateException("Generated program failed: " + result.error);
+        return result.code;
+    }
+
+    private static void measure(String name, Supplier<Object> operation, int warmup, int iterations, int time) {
+        for (int i = 0; i < warmup; i++) {
+            iteration(operation, time);
+        }
+        double[] opsPerSecond = new double[iterations];
+        long operations = 0;
+        long allocated = 0;
+        long elapsed = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] result = iteration(operation, time);
+            opsPerSecond[i] = result[0] * 1e9 / result[1];
+            operations += result[0];
+            elapsed += result[1];
+            allocated += result[2];
+        }
+
+        double mean = Arrays.stream(opsPerSecond).average().orElse(0);
+        double error = Double.NaN;
+        if (iterations > 1) {
+            double variance = 0;
+            for (double value : opsPerSecond) variance += (value - mean) * (value - mean);
+            variance /= iterations - 1;
+            double t = T_999[Math.min(iterations - 1, T_999.length) - 1];
+            error = t * Math.sqrt(variance / iterations);
+        }
+        System.out.printf(" %-14s %14.1f %12.1f %14d %12.1f%n", name, mean, error,
+                allocated < 0 ? -1 : allocated / operations,
+                allocated < 0 ? Double.NaN : allocated * 1e9 / elapsed / (1024 * 1024));
+    }
+
+    /** Runs the operation for `time` ms; returns {operations, nanoseconds, bytes allocated or -1}. */
+    private static long[] iteration(Supplier<Object> operation, int time) {
+        long deadline = System.nanoTime() + time * 1_000_000L;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long operations = 0;
+        int hash = 0;
+        long now;
+        do {
+            hash += System.identityHashCode(operation.get());
+            operations++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocatedAfter = allocatedBytes();
+        sink += hash;
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new long[] {operations, now - start, allocated};
+    }
+
+    /** Bytes allocated by this thread so far, or -1 if the JVM cannot tell. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
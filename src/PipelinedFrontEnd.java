@@ -0,0 +1,301 @@
+/**
+ * PipelinedFrontEnd.java
+ * -----------------------
+ * Runs the front end as a **pipeline of three threads** instead of one phase after the
+ * other, so that on a multi-core machine lexing, parsing and semantic analysis plus code
+ * generation of one large file overlap:
+ *
+ *   lexer thread    StreamingLexer -> batches of BATCH_SIZE tokens
+ *                        | SpscRing<TokenBatch> (TOKEN_RING batches)
+ *   parser thread   SyntaxAnalyzer, reading the batches through a TokenCursor
+ *                        | SpscRing<Statement>  (STATEMENT_RING top-level statements)
+ *   calling thread  SemanticAnalyzer.analyzeTopLevel + IntermediateCodeGenerator.generateTopLevel
+ *
+ * Each top-level statement is analyzed and compiled as soon as the parser completes it.
+ * The result (program, code and diagnostics) is the same as running the phases in turn:
+ * - Identifier names travel as interned Strings inside the batches, so the lexer's
+ *   NameTable never crosses threads.
+ * - Lexical and syntax errors are collected by their own threads and merged in source
+ *   order at the end. As in CompilerPipeline, semantic errors are only reported if there
+ *   were none: once the lexer or parser records an error, the last stage only drains
+ *   the statements.
+ * - Back-pressure: the rings are bounded, so a fast lexer waits for the parser and a
+ *   fast parser for code generation; memory stays bounded by the ring sizes.
+ * - Failures: an exception in the lexer thread reaches the parser through the token ring
+ *   (SpscRing.fail), one in the parser reaches the calling thread through the statement
+ *   ring, and one in the calling thread cancels both rings so the other threads stop.
+ *   compile() rethrows the first failure after every thread has finished.
+ *
+ * Used by `Main --pipelined`. On one core the threads just take turns, at a small cost.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class PipelinedFrontEnd {
+
+    public static final int BATCH_SIZE = 1024;
+    public static final int TOKEN_RING = 64;
+    public static final int STATEMENT_RING = 1024;
+
+    /** What the front end produced: the code, or the diagnostics (not yet located). */
+    public static final class Result {
+        public final Block program;              // null if the parser failed outright
+        public final TacProgram code;            // null if there were errors
+        public final List<Diagnostic> diagnostics;
+
+        Result(Block program, TacProgram code, List<Diagnostic> diagnostics) {
+            this.program = program;
+            this.code = code;
+            this.diagnostics = diagnostics;
+        }
+
+        public boolean succeeded() {
+            return diagnostics.isEmpty();
+        }
+    }
+
+    private final List<Diagnostic> lexical = new ArrayList<>();   // lexer thread only
+    private final List<Diagnostic> syntax = new ArrayList<>();    // parser thread only
+    private final List<Diagnostic> semantic = new ArrayList<>();  // calling thread only
+    private final SpscRing<TokenBatch> tokens = new SpscRing<>(TOKEN_RING);
+    private final SpscRing<TokenBatch> recycled = new SpscRing<>(TOKEN_RING); // parser -> lexer
+    private final SpscRing<Statement> statements = new SpscRing<>(STATEMENT_RING);
+    private volatile boolean frontEndFailed; // the lexer or parser recorded an error
+    private volatile Block program;          // set by the parser thread before it closes `statements`
+
+    private PipelinedFrontEnd() {
+    }
+
+    /** Compiles a file read through a memory-mapped StreamingLexer. */
+    public static Result compile(Path file) throws IOException {
+        PipelinedFrontEnd frontEnd = new PipelinedFrontEnd();
+        return frontEnd.run(StreamingLexer.open(file, frontEnd.lexical));
+    }
+
+    /** Compiles source bytes already in memory. */
+    public static Result compile(byte[] source) {
+        PipelinedFrontEnd frontEnd = new PipelinedFrontEnd();
+        return frontEnd.run(StreamingLexer.wrap(source, frontEnd.lexical));
+    }
+
+    private Result run(StreamingLexer lexer) {
+        Thread lexerThread = new Thread(() -> lex(lexer), "minilang-lexer");
+        Thread parserThread = new Thread(this::parse, "minilang-parser");
+        lexerThread.setDaemon(true);
+        parserThread.setDaemon(true);
+        lexerThread.start();
+        parserThread.start();
+
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        IntermediateCodeGenerator generator = new IntermediateCodeGenerator();
+        analyzer.begin(semantic);
+        generator.begin();
+        try {
+            Statement statement;
+            while ((statement = statements.take()) != null) {
+                if (frontEndFailed) continue; // the result is the lexical and syntax errors
+                analyzer.analyzeTopLevel(statement);
+                if (semantic.isEmpty()) generator.generateTopLevel(statement);
+            }
+        } catch (RuntimeException | Error e) {
+            statements.cancel();
+            tokens.cancel();
+            join(lexerThread);
+            join(parserThread);
+            throw e;
+        }
+        join(lexerThread);
+        join(parserThread);
+
+        List<Diagnostic> errors = new ArrayList<>(lexical);
+        errors.addAll(syntax);
+        if (!errors.isEmpty()) {
+            errors.sort(Diagnostic.BY_OFFSET);
+            return new Result(program, null, errors);
+        }
+        analyzer.finish(program);
+        if (!semantic.isEmpty()) return new Result(program, null, semantic);
+        return new Result(program, generator.finish(), errors);
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // === Lexer stage ===
+
+    private void lex(StreamingLexer lexer) {
+        try (StreamingLexer source = lexer) {
+            TokenBatch batch = batch();
+            LexicalAnalyzer.TokenType type;
+            while ((type = source.peekType()) != null) {
+                int start = source.peekStart();
+                source.advance();
+                int end = source.end();
+                int number = type == LexicalAnalyzer.TokenType.NUMBER ? source.number() : 0;
+                String text = type == LexicalAnalyzer.TokenType.IDENTIFIER ? source.text()
+                        : type == LexicalAnalyzer.TokenType.NUMBER && end - start != TokenScanner.decimalLength(number)
+                        ? source.text() : null; // a number written other than as its value, e.g. `007`
+                batch.add(type, start, end, text, number);
+                if (!lexical.isEmpty()) frontEndFailed = true;
+                if (batch.size == BATCH_SIZE) {
+                    tokens.put(batch);
+                    batch = batch();
+                }
+            }
+            if (!lexical.isEmpty()) frontEndFailed = true;
+            if (batch.size > 0) tokens.put(batch);
+            tokens.close();
+        } catch (CancellationException e) {
+            // the parser stopped: nobody needs the rest of the tokens
+        } catch (IOException e) {
+            tokens.fail(new UncheckedIOException(e));
+        } catch (RuntimeException | Error e) {
+            tokens.fail(e);
+        }
+    }
+
+    /** A batch the parser has finished with, or a new one. */
+    private TokenBatch batch() {
+        TokenBatch batch = recycled.poll();
+        if (batch == null) return new TokenBatch();
+        batch.size = 0;
+        return batch;
+    }
+
+    // === Parser stage ===
+
+    private void parse() {
+        try {
+            BatchCursor cursor = new BatchCursor();
+            SyntaxAnalyzer parser = new SyntaxAnalyzer(cursor);
+            Block parsed;
+            try {
+                parsed = parser.parse(syntax, statement -> {
+                    if (!syntax.isEmpty()) frontEndFailed = true;
+                    statements.put(statement);
+                });
+            } catch (StackOverflowError e) {
+                syntax.add(new Diagnostic(CompilerPipeline.NESTED_TOO_DEEPLY, -1));
+                parsed = null;
+            }
+            if (!syntax.isEmpty()) frontEndFailed = true;
+            tokens.cancel(); // the parser may stop early (too many errors)
+            program = parsed;
+            statements.close();
+        } catch (CancellationException e) {
+            tokens.cancel();
+        } catch (RuntimeException | Error e) {
+            tokens.cancel();
+            statements.fail(e);
+        }
+    }
+
+    /** Up to BATCH_SIZE scanned tokens, as parallel arrays. */
+    private static final class TokenBatch {
+        final LexicalAnalyzer.TokenType[] types = new LexicalAnalyzer.TokenType[BATCH_SIZE];
+        final int[] starts = new int[BATCH_SIZE];
+        final int[] ends = new int[BATCH_SIZE];
+        final int[] numbers = new int[BATCH_SIZE];
+        // Identifier names (interned by the lexer), and number lexemes that are not just the value
+        final String[] names = new String[BATCH_SIZE];
+        int size;
+
+        void add(LexicalAnalyzer.TokenType type, int start, int end, String name, int number) {
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = end;
+            names[size] = name;
+            numbers[size] = number;
+            size++;
+        }
+    }
+
+    /** The parser's view of the token ring. Finished batches go back to the lexer for reuse. */
+    private final class BatchCursor implements TokenCursor {
+        private TokenBatch batch;
+        private int index;
+        private boolean exhausted;
+
+        // The token consumed last; copied so its batch can be recycled
+        private String previousText;
+        private int previousNumber;
+        private int previousEnd = -1;
+
+        /** Makes sure `batch[index]` is the next token; false at the end of input. */
+        private boolean fill() {
+            if (batch != null && index < batch.size) return true;
+            if (exhausted) return false;
+            if (batch != null) recycled.offer(batch);
+            batch = tokens.take();
+            index = 0;
+            if (batch == null) {
+                exhausted = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public LexicalAnalyzer.TokenType peekType() {
+            return fill() ? batch.types[index] : null;
+        }
+
+        @Override
+        public LexicalAnalyzer.Token peek() {
+            if (!fill()) return null;
+            LexicalAnalyzer.TokenType type = batch.types[index];
+            String text = type == LexicalAnalyzer.TokenType.IDENTIFIER ? batch.names[index]
+                    : type == LexicalAnalyzer.TokenType.NUMBER
+                    ? (batch.names[index] != null ? batch.names[index] : Integer.toString(batch.numbers[index]))
+                    : TokenStream.fixedText(type);
+            return new LexicalAnalyzer.Token(type, text, batch.starts[index]);
+        }
+
+        @Override
+        public void advance() {
+            if (!fill()) return;
+            LexicalAnalyzer.TokenType type = batch.types[index];
+            previousText = type == LexicalAnalyzer.TokenType.IDENTIFIER || type == LexicalAnalyzer.TokenType.NUMBER
+                    ? batch.names[index] : TokenStream.fixedText(type);
+            previousNumber = batch.numbers[index];
+            previousEnd = batch.ends[index];
+            index++;
+        }
+
+        @Override
+        public String text() {
+            if (previousText == null) previousText = Integer.toString(previousNumber); // NUMBER
+            return previousText;
+        }
+
+        @Override
+        public int number() {
+            return previousNumber;
+        }
+
+        @Override
+        public int peekStart() {
+            return fill() ? batch.starts[index] : -1;
+        }
+
+        @Override
+        public int end() {
+            return previousEnd;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * ProgramGenerator.java
+ * ----------------------
+ * Seeded generator of **valid MiniLang programs** for benchmarks and stress tests. The
+ * same seed and settings always give the same program.
+ *
+ * Settings:
+ * - `statements`: statements at the top level (nested blocks add more on top)
+ * - `depth`: maximum nesting of if/else and while blocks
+ * - `expressions`: maximum nesting of binary operators in one expression
+ *
+ * Every program passes the SemanticAnalyzer and terminates when run:
+ * - Globals `v0..v7` are declared first. Blocks may declare locals (`t0`, `t1`, ...) that
+ *   are only used after their declaration, inside that block.
+ * - Every while loop counts a fresh counter (`k0`, `k1`, ...) down from a literal of at
+ *   most MAX_TRIPS, and nothing else assigns the counter.
+ * - Division is by a non-zero literal only. Comparisons appear as conditions or, in
+ *   parentheses, as operands; they are never chained (they are non-associative).
+ * Arithmetic may overflow, which MiniLang defines as 32-bit wrap-around.
+ *
+ * Usage: java ProgramGenerator [--seed=N] [--statements=N] [--depth=N] [--expressions=N]
+ *            [--count=N --out=DIR]
+ *
+ * Without `--out`, one program is printed. With it, `count` programs (seeds seed,
+ * seed+1, ...) are written to DIR/gen_<seed>.minilang.
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ProgramGenerator {
+
+    public static final int GLOBALS = 8;
+    public static final int MAX_TRIPS = 6;
+
+    private static final String[] ARITHMETIC = {"+", "-", "*", "+", "-", "*", "/"};
+    private static final String[] COMPARISONS = {">", "<", "==", "!="};
+
+    private final long seed;
+    private final int statements;
+    private final int depth;
+    private final int expressions;
+
+    private Random random;
+    private StringBuilder out;
+    private List<String> readable;   // names that may be read here (globals, locals, counters)
+    private List<String> assignable; // names that may be assigned here (not loop counters)
+    private int locals;
+    private int counters;
+
+    public ProgramGenerator(long seed, int statements, int depth, int expressions) {
+        if (statements < 0 || depth < 0 || expressions < 0) {
+            throw new IllegalArgumentException("Generator settings must not be negative.");
+        }
+        this.seed = seed;
+        this.statements = statements;
+        this.depth = depth;
+        this.expressions = expressions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        int statements = 50;
+        int depth = 3;
+        int expressions = 3;
+        int count = 1;
+        Path directory = null;
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+            else if (arg.startsWith("--statements=")) statements = Integer.parseInt(arg.substring("--statements=".length()));
+            else if (arg.startsWith("--depth=")) depth = Integer.parseInt(arg.substring("--depth=".length()));
+            else if (arg.startsWith("--expressions=")) expressions = Integer.parseInt(arg.substring("--expressions=".length()));
+            else if (arg.startsWith("--count=")) count = Integer.parseInt(arg.substring("--count=".length()));
+            else if (arg.startsWith("--out=")) directory = Paths.get(arg.substring("--out=".length()));
+            else {
+                System.err.println("Usage: java ProgramGenerator [--seed=N] [--statements=N] [--depth=N]"
+                        + " [--expressions=N] [--count=N --out=DIR]");
+                System.exit(2);
+            }
+        }
+
+        if (directory == null) {
+            System.out.print(new ProgramGenerator(seed, statements, depth, expressions).generate());
+            return;
+        }
+        Files.createDirectories(directory);
+        for (int i = 0; i < count; i++) {
+            String program = new ProgramGenerator(seed + i, statements, depth, expressions).generate();
+            Files.write(directory.resolve("gen_" + (seed + i) + ".minilang"), program.getBytes(StandardCharsets.UTF_8));
+        }
+        System.out.println(" Wrote " + count + " programs to " + directory);
+    }
+
+    public String generate() {
+        random = new Random(seed);
+        out = new StringBuilder(statements * 48);
+        readable = new ArrayList<>();
+        assignable = new ArrayList<>();
+        locals = 0;
+        counters = 0;
+
+        out.append("// seed=").append(seed).append(" statements=").append(statements)
+                .append(" depth=").append(depth).append(" expressions=").append(expressions).append('\n');
+        for (int i = 0; i < GLOBALS; i++) {
+            String name = "v" + i;
+            out.append("int ").append(name).append(";\n");
+            readable.add(name);
+            assignable.add(name);
+        }
+        for (int i = 0; i < statements; i++) {
+            statement(0);
+        }
+        return out.toString();
+    }
+
+    // === Statements ===
+
+    private void statement(int level) {
+        int choice = random.nextInt(100);
+        if (level < depth && choice < 12) {
+            ifStatement(level);
+        } else if (level < depth && choice < 22) {
+            whileStatement(level);
+        } else if (level > 0 && choice < 30) {
+            String name = "t" + locals++;
+            indent(level).append("int ").append(name).append(";\n");
+            readable.add(name);
+            assignable.add(name);
+        } else if (choice < 85) {
+            indent(level).append(pick(assignable)).append(" = ").append(expression(expressions)).append(";\n");
+        } else {
+            indent(level).append("print(").append(expression(expressions)).append(");\n");
+        }
+    }
+
+    private void ifStatement(int level) {
+        indent(level).append("if (").append(condition()).append(") ");
+        block(level);
+        if (random.nextBoolean()) {
+            out.setLength(out.length() - 1); // "} else {" on one line
+            out.append(" else ");
+            block(level);
+        }
+    }
+
+    private void whileStatement(int level) {
+        String counter = "k" + counters++;
+        indent(level).append("int ").append(counter).append(";\n");
+        indent(level).append(counter).append(" = ").append(random.nextInt(MAX_TRIPS + 1)).append(";\n");
+        indent(level).append("while (").append(counter).append(" > 0) {\n");
+        readable.add(counter);
+        int size = body(level + 1);
+        indent(level + 1).append(counter).append(" = ").append(counter).append(" - 1;\n");
+        indent(level).append("}\n");
+        drop(size);
+    }
+
+    private void block(int level) {
+        out.append("{\n");
+        int size = body(level + 1);
+        indent(level).append("}\n");
+        drop(size);
+    }
+
+    /** One to four statements; returns the size of `readable` before them, for drop(). */
+    private int body(int level) {
+        int mark = readable.size();
+        int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            statement(level);
+        }
+        return mark;
+    }
+
+    /** Forgets the names declared in a block that just ended. */
+    private void drop(int mark) {
+        while (readable.size() > mark) {
+            String name = readable.remove(readable.size() - 1);
+            assignable.remove(name);
+        }
+    }
+
+    // === Expressions ===
+
+    private String condition() {
+        return expression(expressions - 1) + " " + COMPARISONS[random.nextInt(COMPARISONS.length)] + " "
+                + expression(expressions - 1);
+    }
+
+    private String expression(int budget) {
+        if (budget <= 0 || random.nextInt(100) < 30) {
+            return operand();
+        }
+        if (random.nextInt(100) < 10) {
+            return "(" + condition() + ")";
+        }
+        String operator = ARITHMETIC[random.nextInt(ARITHMETIC.length)];
+        if (operator.equals("/")) {
+            return "(" + expression(budget - 1) + " / " + (1 + random.nextInt(9)) + ")";
+        }
+        String left = expression(budget - 1);
+        String right = expression(budget - 1);
+        // Leave out the parentheses sometimes so that precedence and associativity get exercised
+        return random.nextBoolean() ? "(" + left + " " + operator + " " + right + ")" : left + " " + operator + " " + right;
+    }
+
+    private String operand() {
+        return random.nextInt(100) < 55 ? pick(readable) : Integer.toString(random.nextInt(100));
+    }
+
+    private String pick(List<String> names) {
+        return names.get(random.nextInt(names.size()));
+    }
+
+    private StringBuilder indent(int level) {
+        for (int i = 0; i < level; i++) out.append("    ");
+        return out;
+    }
+}
@@ -0,0 +1,614 @@
+/**
+ * ProgramImage.java
+ * ------------------
+ * A **versioned binary file format** for a compiled program: the resolved AST (the node
+ * types of ASTNode.java) and/or its three-address code. A precompiled program can be
+ * loaded without lexing, parsing or analyzing any source, e.g. on another machine.
+ *
+ * Layout (all fixed-width integers big-endian):
+ *
+ *   header         magic "MLIM" (int), format version (short), section count (short)
+ *   section index  per section: id (int), offset (int), length (int)
+ *   sections       STRINGS, then AST and/or TAC
+ *
+ * Inside the sections every number is a varint (7 bits per byte, low bits first);
+ * signed values (literals, constants) are zigzag-encoded first.
+ *
+ * - STRINGS: count, then each name as its UTF-8 length and bytes. Every name in the AST
+ *   and the TAC is stored once and referred to by its index.
+ * - AST: the program Block. A node is a tag byte, its span (start + 1, 0 if unknown, and
+ *   length) and its fields: names as string indexes, resolved slots as slot + 1 (0 if
+ *   unresolved), literal values, operator ordinals, child nodes. A Block stores its slot
+ *   count + 1, its statement count, the encoded length of every statement and then the
+ *   statements, so any statement can be found without decoding the ones before it.
+ * - TAC: variable names (string indexes), constant pool, temporary and label counts and
+ *   the quadruples: opcode byte and three operands, each as (index << 3 | kind).
+ *
+ * Loading: open() maps the file read-only and checks the header and the section index.
+ * ast() returns the program Block at once, but the statements of every Block are
+ * decoded only when they are first accessed (and then kept); names are decoded from the
+ * string table on first use. The decoded statement lists are read-only. A loaded AST
+ * keeps its slots, so the backends use it without running the SemanticAnalyzer again.
+ * code() decodes the whole TAC section into a new TacProgram.
+ *
+ * write() builds the sections in memory and writes them with one gathering write to a
+ * FileChannel. A malformed image fails with a RuntimeException ("Image Error: ...").
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+public class ProgramImage {
+
+    public static final short FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x4D4C494D; // "MLIM"
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 12;
+
+    // Section ids
+    private static final int STRINGS = 1;
+    private static final int AST = 2;
+    private static final int TAC = 3;
+
+    // Node tags
+    private static final int BLOCK = 1;
+    private static final int DECLARATION = 2;
+    private static final int ASSIGNMENT = 3;
+    private static final int IF = 4;
+    private static final int IF_ELSE = 5;
+    private static final int WHILE = 6;
+    private static final int PRINT = 7;
+    private static final int BINARY = 8;
+    private static final int VARIABLE = 9;
+    private static final int NUMBER = 10;
+
+    private static final BinaryExpression.Operator[] OPERATORS = BinaryExpression.Operator.values();
+
+    private final ByteBuffer image;
+    private final int[] stringOffsets; // absolute offset of each string's length prefix
+    private final String[] strings;    // decoded on first use
+    private final int astOffset;       // -1 if absent
+    private final int tacOffset;       // -1 if absent
+
+    private ProgramImage(ByteBuffer image) {
+        this.image = image;
+        if (image.limit() < HEADER_BYTES || image.getInt(0) != MAGIC) {
+            throw error("not a MiniLang program image");
+        }
+        short version = image.getShort(4);
+        if (version != FORMAT_VERSION) {
+            throw error("unsupported format version " + version + " (expected " + FORMAT_VERSION + ")");
+        }
+        int sectionCount = image.getShort(6);
+        if (HEADER_BYTES + sectionCount * INDEX_ENTRY_BYTES > image.limit()) throw error("truncated section index");
+        int strings = -1, ast = -1, tac = -1;
+        for (int s = 0; s < sectionCount; s++) {
+            int entry = HEADER_BYTES + s * INDEX_ENTRY_BYTES;
+            int id = image.getInt(entry);
+            int offset = image.getInt(entry + 4);
+            int length = image.getInt(entry + 8);
+            if (offset < 0 || length < 0 || offset > image.limit() - length) throw error("section " + id + " out of bounds");
+            if (id == STRINGS) strings = offset;
+            else if (id == AST) ast = offset;
+            else if (id == TAC) tac = offset;
+            // unknown sections are skipped, so newer writers can add some
+        }
+        if (strings < 0) throw error("missing string table");
+        this.astOffset = ast;
+        this.tacOffset = tac;
+
+        Cursor in = new Cursor(image, strings);
+        int count = in.varint();
+        this.stringOffsets = new int[count];
+        this.strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            stringOffsets[i] = in.position;
+            int length = in.varint();
+            if (length < 0 || length > image.limit() - in.position) throw error("truncated string table");
+            in.position += length;
+        }
+    }
+
+    // === Loading ===
+
+    /** Maps an image file; the mapping stays valid after the channel is closed. */
+    public static ProgramImage open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw error("file too large");
+            return new ProgramImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public boolean hasAst() {
+        return astOffset >= 0;
+    }
+
+    public boolean hasCode() {
+        return tacOffset >= 0;
+    }
+
+    /** The program Block; its statements are decoded lazily. */
+    public Block ast() {
+        if (astOffset < 0) throw error("the image has no AST section");
+        Cursor in = new Cursor(image, astOffset);
+        if (in.u8() != BLOCK) throw error("the AST does not start with a block");
+        return readBlock(in);
+    }
+
+    /** The three-address code, decoded into a new TacProgram. */
+    public TacProgram code() {
+        if (tacOffset < 0) throw error("the image has no TAC section");
+        Cursor in = new Cursor(image, tacOffset);
+        TacProgram code = new TacProgram();
+        int variableCount = in.varint();
+        for (int v = 0; v < variableCount; v++) code.variable(string(in.varint()));
+        int constantCount = in.varint();
+        for (int c = 0; c < constantCount; c++) code.constant(in.zigzag());
+        code.setTempCount(in.varint());
+        code.setLabelCount(in.varint());
+        int size = in.varint();
+        for (int i = 0; i < size; i++) {
+            int opcode = in.u8();
+            code.emit(opcode, readOperand(in), readOperand(in), readOperand(in));
+        }
+        return code;
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= strings.length) throw error("string index " + index + " out of range");
+        String value = strings[index];
+        if (value == null) {
+            Cursor in = new Cursor(image, stringOffsets[index]);
+            int length = in.varint();
+            byte[] bytes = new byte[length];
+            image.get(in.position, bytes);
+            strings[index] = value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static int readOperand(Cursor in) {
+        int encoded = in.varint();
+        int index = encoded >>> 3;
+        switch (encoded & 7) {
+            case TacProgram.NONE: return 0;
+            case TacProgram.VAR: return TacProgram.var(index);
+            case TacProgram.TEMP: return TacProgram.temp(index);
+            case TacProgram.LABEL_REF: return TacProgram.label(index);
+            case TacProgram.CONST: return TacProgram.constantOperand(index);
+            default: throw error("bad operand kind " + (encoded & 7));
+        }
+    }
+
+    // === AST decoding ===
+
+    /** A Block whose tag has been read; only the statement length table is decoded. */
+    private Block readBlock(Cursor in) {
+        int start = in.position - 1;
+        int spanStart = in.varint() - 1;
+        int spanLength = in.varint();
+        int slotCount = in.varint() - 1;
+        int count = in.varint();
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) offsets[i + 1] = offsets[i] + in.varint();
+        int body = in.position;
+        for (int i = 0; i <= count; i++) offsets[i] += body;
+        if (offsets[count] < body || offsets[count] > image.limit()) throw error("block at offset " + start + " is truncated");
+        in.position = offsets[count];
+
+        Block block = new Block(new LazyStatements(offsets));
+        block.slotCount = slotCount;
+        setSpan(block, spanStart, spanLength);
+        return block;
+    }
+
+    /** Statements of one block, decoded on first access. */
+    private final class LazyStatements extends AbstractList<Statement> implements RandomAccess {
+        private final int[] offsets;
+        private final Statement[] decoded;
+
+        LazyStatements(int[] offsets) {
+            this.offsets = offsets;
+            this.decoded = new Statement[offsets.length - 1];
+        }
+
+        @Override
+        public Statement get(int i) {
+            Statement statement = decoded[i];
+            if (statement == null) {
+                Cursor in = new Cursor(image, offsets[i]);
+                statement = readStatement(in);
+                if (in.position != offsets[i + 1]) throw error("statement at offset " + offsets[i] + " has a bad length");
+                decoded[i] = statement;
+            }
+            return statement;
+        }
+
+        @Override
+        public int size() {
+            return decoded.length;
+        }
+    }
+
+    private Statement readStatement(Cursor in) {
+        int tag = in.u8();
+        if (tag == BLOCK) return readBlock(in);
+        int spanStart = in.varint() - 1;
+        int spanLength = in.varint();
+        SpannedNode node;
+        switch (tag) {
+            case DECLARATION: {
+                Declaration declaration = new Declaration(string(in.varint()));
+                declaration.slot = in.varint() - 1;
+                node = declaration;
+                break;
+            }
+            case ASSIGNMENT: {
+                String name = string(in.varint());
+                int slot = in.varint() - 1;
+                Assignment assignment = new Assignment(name, readExpression(in));
+                assignment.slot = slot;
+                node = assignment;
+                break;
+            }
+            case IF:
+            case IF_ELSE: {
+                Expression condition = readExpression(in);
+                Block thenBlock = readNestedBlock(in);
+                Block elseBlock = tag == IF_ELSE ? readNestedBlock(in) : null;
+                node = new IfStatement(condition, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Expression condition = readExpression(in);
+                node = new WhileStatement(condition, readNestedBlock(in));
+                break;
+            }
+            case PRINT:
+                node = new PrintStatement(readExpression(in));
+                break;
+            default:
+                throw error("bad statement tag " + tag + " at offset " + (in.position - 1));
+        }
+        setSpan(node, spanStart, spanLength);
+        return (Statement) node;
+    }
+
+    private Block readNestedBlock(Cursor in) {
+        if (in.u8() != BLOCK) throw error("expected a block at offset " + (in.position - 1));
+        return readBlock(in);
+    }
+
+    /** Reads an expression in pre-order without recursion: binary nodes wait on a stack for their operands. */
+    private Expression readExpression(Cursor in) {
+        int[] operators = new int[8];
+        int[] starts = new int[8];
+        int[] lengths = new int[8];
+        Expression[] lefts = new Expression[8]; // null while the left operand is being read
+        int top = 0;
+        while (true) {
+            int tag = in.u8();
+            int spanStart = in.varint() - 1;
+            int spanLength = in.varint();
+            SpannedNode node;
+            switch (tag) {
+                case BINARY: {
+                    int operator = in.u8();
+                    if (operator >= OPERATORS.length) throw error("bad operator " + operator);
+                    if (top == operators.length) {
+                        operators = Arrays.copyOf(operators, top * 2);
+                        starts = Arrays.copyOf(starts, top * 2);
+                        lengths = Arrays.copyOf(lengths, top * 2);
+                        lefts = Arrays.copyOf(lefts, top * 2);
+                    }
+                    operators[top] = operator;
+                    starts[top] = spanStart;
+                    lengths[top++] = spanLength;
+                    continue;
+                }
+                case VARIABLE: {
+                    Variable variable = new Variable(string(in.varint()));
+                    variable.slot = in.varint() - 1;
+                    node = variable;
+                    break;
+                }
+                case NUMBER:
+                    node = new NumberLiteral(in.zigzag());
+                    break;
+                default:
+                    throw error("bad expression tag " + tag + " at offset " + (in.position - 1));
+            }
+            setSpan(node, spanStart, spanLength);
+
+            // Up again: complete every binary node whose right operand this was
+            Expression done = (Expression) node;
+            while (true) {
+                if (top == 0) return done;
+                if (lefts[top - 1] == null) {
+                    lefts[top - 1] = done;
+                    break;
+                }
+                top--;
+                BinaryExpression binary = new BinaryExpression(lefts[top], OPERATORS[operators[top]], done);
+                lefts[top] = null;
+                setSpan(binary, starts[top], lengths[top]);
+                done = binary;
+            }
+        }
+    }
+
+    private static void setSpan(SpannedNode node, int start, int length) {
+        if (start >= 0) node.setSpan(start, start + length);
+    }
+
+    // === Writing ===
+
+    /** Writes an image with the AST and/or the code (either may be null). */
+    public static void write(Path file, Block program, TacProgram code) throws IOException {
+        Writer writer = new Writer();
+        Encoder ast = program != null ? writer.block(program) : null;
+        Encoder tac = code != null ? writer.tac(code) : null;
+        Encoder strings = writer.stringTable();
+
+        List<Encoder> sections = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        sections.add(strings);
+        ids.add(STRINGS);
+        if (ast != null) {
+            sections.add(ast);
+            ids.add(AST);
+        }
+        if (tac != null) {
+            sections.add(tac);
+            ids.add(TAC);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + sections.size() * INDEX_ENTRY_BYTES);
+        header.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) sections.size());
+        ByteBuffer[] buffers = new ByteBuffer[sections.size() + 1];
+        buffers[0] = header;
+        int offset = header.capacity();
+        for (int s = 0; s < sections.size(); s++) {
+            Encoder section = sections.get(s);
+            header.putInt(ids.get(s)).putInt(offset).putInt(section.size);
+            buffers[s + 1] = ByteBuffer.wrap(section.bytes, 0, section.size);
+            offset += section.size;
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long remaining = offset;
+            while (remaining > 0) remaining -= channel.write(buffers);
+        }
+    }
+
+    /** Encodes the sections of one image, collecting the names into a string table. */
+    private static final class Writer {
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final ArrayDeque<Expression> pending = new ArrayDeque<>(); // expression()
+
+        int string(String value) {
+            Integer index = stringIndexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                stringIndexes.put(value, index);
+            }
+            return index;
+        }
+
+        Encoder stringTable() {
+            Encoder out = new Encoder();
+            out.varint(strings.size());
+            for (String value : strings) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.varint(bytes.length);
+                out.bytes(bytes, bytes.length);
+            }
+            return out;
+        }
+
+        Encoder block(Block block) {
+            Encoder[] children = new Encoder[block.statements.size()];
+            for (int i = 0; i < children.length; i++) children[i] = statement(block.statements.get(i));
+            Encoder out = new Encoder();
+            out.u8(BLOCK);
+            span(out, block);
+            out.varint(block.slotCount + 1);
+            out.varint(children.length);
+            for (Encoder child : children) out.varint(child.size);
+            for (Encoder child : children) out.bytes(child.bytes, child.size);
+            return out;
+        }
+
+        Encoder statement(Statement statement) {
+            if (statement instanceof Block) return block((Block) statement);
+            Encoder out = new Encoder();
+            if (statement instanceof Declaration) {
+                Declaration declaration = (Declaration) statement;
+                out.u8(DECLARATION);
+                span(out, declaration);
+                out.varint(string(declaration.varName));
+                out.varint(declaration.slot + 1);
+            } else if (statement instanceof Assignment) {
+                Assignment assignment = (Assignment) statement;
+                out.u8(ASSIGNMENT);
+                span(out, assignment);
+                out.varint(string(assignment.varName));
+                out.varint(assignment.slot + 1);
+                expression(out, assignment.expression);
+            } else if (statement instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) statement;
+                out.u8(ifStatement.elseBlock != null ? IF_ELSE : IF);
+                span(out, ifStatement);
+                expression(out, ifStatement.condition);
+                append(out, block(ifStatement.thenBlock));
+                if (ifStatement.elseBlock != null) append(out, block(ifStatement.elseBlock));
+            } else if (statement instanceof WhileStatement) {
+                WhileStatement whileStatement = (WhileStatement) statement;
+                out.u8(WHILE);
+                span(out, whileStatement);
+                expression(out, whileStatement.condition);
+                append(out, block(whileStatement.body));
+            } else if (statement instanceof PrintStatement) {
+                out.u8(PRINT);
+                span(out, statement);
+                expression(out, ((PrintStatement) statement).expression);
+            } else {
+                throw error("cannot encode " + statement.getClass().getSimpleName());
+            }
+            return out;
+        }
+
+        /** Writes an expression in pre-order, from an explicit stack rather than by recursion. */
+        void expression(Encoder out, Expression expression) {
+            pending.push(expression);
+            while (!pending.isEmpty()) {
+                Expression next = pending.pop();
+                if (next instanceof BinaryExpression) {
+                    BinaryExpression binary = (BinaryExpression) next;
+                    out.u8(BINARY);
+                    span(out, binary);
+                    out.u8(binary.operator.ordinal());
+                    pending.push(binary.right);
+                    pending.push(binary.left);
+                } else if (next instanceof Variable) {
+                    Variable variable = (Variable) next;
+                    out.u8(VARIABLE);
+                    span(out, variable);
+                    out.varint(string(variable.name));
+                    out.varint(variable.slot + 1);
+                } else if (next instanceof NumberLiteral) {
+                    out.u8(NUMBER);
+                    span(out, next);
+                    out.zigzag(((NumberLiteral) next).value);
+                } else {
+                    pending.clear();
+                    throw error("cannot encode " + next.getClass().getSimpleName());
+                }
+            }
+        }
+
+        Encoder tac(TacProgram code) {
+            Encoder out = new Encoder();
+            out.varint(code.variableCount());
+            for (int v = 0; v < code.variableCount(); v++) out.varint(string(code.variableName(v)));
+            out.varint(code.constantCount());
+            for (int c = 0; c < code.constantCount(); c++) out.zigzag(code.constantAt(c));
+            out.varint(code.tempCount());
+            out.varint(code.labelCount());
+            out.varint(code.size());
+            for (int i = 0; i < code.size(); i++) {
+                out.u8(code.opcode(i));
+                operand(out, code.dest(i));
+                operand(out, code.src1(i));
+                operand(out, code.src2(i));
+            }
+            return out;
+        }
+
+        private static void operand(Encoder out, int operand) {
+            out.varint(TacProgram.index(operand) << 3 | TacProgram.kind(operand));
+        }
+
+        private static void span(Encoder out, ASTNode node) {
+            if (node.start() < 0) {
+                out.varint(0);
+                out.varint(0);
+            } else {
+                out.varint(node.start() + 1);
+                out.varint(node.end() - node.start());
+            }
+        }
+
+        private static void append(Encoder out, Encoder child) {
+            out.bytes(child.bytes, child.size);
+        }
+    }
+
+    // === Varints ===
+
+    /** A growable byte array with varint writes. */
+    private static final class Encoder {
+        byte[] bytes = new byte[32];
+        int size;
+
+        void u8(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void zigzag(int value) {
+            varint((value << 1) ^ (value >> 31));
+        }
+
+        void bytes(byte[] source, int length) {
+            ensure(length);
+            System.arraycopy(source, 0, bytes, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    /** A read position in the mapped image; reads use absolute offsets, so cursors are independent. */
+    private static final class Cursor {
+        final ByteBuffer buffer;
+        int position;
+
+        Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int u8() {
+            if (position >= buffer.limit()) throw error("unexpected end of image");
+            return buffer.get(position++) & 0xFF;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = u8();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw error("malformed varint at offset " + position);
+        }
+
+        int zigzag() {
+            int encoded = varint();
+            return (encoded >>> 1) ^ -(encoded & 1);
+        }
+    }
+
+    private static RuntimeException error(String message) {
+        return new RuntimeException("Image Error: " + message + ".");
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * RegisterAllocator.java
+ * -----------------------
+ * **Linear-scan register allocation** for three-address code.
+ *
+ * The IntermediateCodeGenerator hands out a fresh temporary for every operation, so a
+ * large program can use tens of thousands of them even though only a few are alive at
+ * any moment. This allocator maps temporaries (and optionally user variables) onto as
+ * few registers as possible and rewrites the program so that the temporaries t1..tR
+ * *are* the registers. Backends then only need storage for R registers.
+ *
+ * Steps:
+ * 1. Liveness gives, per basic block, the values live on entry and exit. Together with
+ *    every read and write this yields one live interval [start, end] per value over the
+ *    instruction order.
+ * 2. Intervals are visited by start. Registers of intervals that have ended are
+ *    recycled; an instruction may reuse a register read by the same instruction for
+ *    its result, because operands are read before the result is written.
+ * 3. If a register cap is set and no register is free, the interval that ends last is
+ *    spilled: a spilled temporary is kept in a memory slot, a variable named [sN];
+ *    a spilled user variable simply stays in memory.
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+public class RegisterAllocator {
+
+    private final TacProgram program;
+    private final boolean includeVariables;
+    private final int maxRegisters; // 0 = no limit
+
+    private int tempsBefore;
+    private int variablesBefore;
+    private int registersUsed;
+    private int spilled;
+
+    public RegisterAllocator(TacProgram program, boolean includeVariables, int maxRegisters) {
+        this.program = program;
+        this.includeVariables = includeVariables;
+        this.maxRegisters = maxRegisters;
+    }
+
+    /** Allocates registers and rewrites the program in place. */
+    public void allocate() {
+        tempsBefore = program.tempCount();
+        variablesBefore = program.variableCount();
+        int values = program.valueCount();
+        int[] start = new int[values];
+        int[] end = new int[values];
+        Arrays.fill(start, Integer.MAX_VALUE);
+        Arrays.fill(end, -1);
+        computeIntervals(start, end);
+
+        // Values taking part in allocation, ordered by start
+        Integer[] order = new Integer[values];
+        int count = 0;
+        for (int id = 0; id < values; id++) {
+            if (end[id] >= 0 && (includeVariables || id >= variablesBefore)) order[count++] = id;
+        }
+        Arrays.sort(order, 0, count, Comparator.comparingInt((Integer id) -> start[id]).thenComparingInt(id -> id));
+
+        int[] register = new int[values];
+        Arrays.fill(register, -1);
+        TreeSet<Integer> active = new TreeSet<>(Comparator.comparingInt((Integer id) -> end[id]).thenComparingInt(id -> id));
+        int[] free = new int[Math.max(count, 1)];
+        int freeCount = 0;
+        int nextRegister = 0;
+        spilled = 0;
+
+        for (int k = 0; k < count; k++) {
+            int id = order[k];
+            while (!active.isEmpty() && end[active.first()] <= start[id]) {
+                free[freeCount++] = register[active.pollFirst()];
+            }
+            if (freeCount > 0) {
+                register[id] = free[--freeCount];
+            } else if (maxRegisters == 0 || nextRegister < maxRegisters) {
+                register[id] = nextRegister++;
+            } else {
+                int victim = active.last();
+                if (end[victim] > end[id]) {
+                    register[id] = register[victim];
+                    register[victim] = -1;
+                    active.remove(victim);
+                } else {
+                    spilled++;
+                    continue;
+                }
+                spilled++;
+            }
+            active.add(id);
+        }
+        registersUsed = nextRegister;
+
+        rewrite(register, end);
+    }
+
+    /** Live interval of every value over the linear instruction order. */
+    private void computeIntervals(int[] start, int[] end) {
+        ControlFlowGraph cfg = new ControlFlowGraph(program);
+        Liveness liveness = new Liveness(cfg);
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            int first = cfg.blockStart(b);
+            int last = cfg.blockEnd(b) - 1;
+            for (int id = liveness.liveIn(b).nextSetBit(0); id >= 0; id = liveness.liveIn(b).nextSetBit(id + 1)) {
+                extend(id, first, start, end);
+            }
+            for (int id = liveness.liveOut(b).nextSetBit(0); id >= 0; id = liveness.liveOut(b).nextSetBit(id + 1)) {
+                extend(id, last, start, end);
+            }
+        }
+        for (int i = 0; i < program.size(); i++) {
+            if (TacProgram.hasDest(program.opcode(i))) extendOperand(program.dest(i), i, start, end);
+            extendOperand(program.src1(i), i, start, end);
+            extendOperand(program.src2(i), i, start, end);
+        }
+    }
+
+    private void extendOperand(int operand, int position, int[] start, int[] end) {
+        int id = program.valueId(operand);
+        if (id >= 0) extend(id, position, start, end);
+    }
+
+    private static void extend(int id, int position, int[] start, int[] end) {
+        if (position < start[id]) start[id] = position;
+        if (position > end[id]) end[id] = position;
+    }
+
+    /** Replaces every allocated value by its register (temporary r+1) and spilled temporaries by memory slots. */
+    private void rewrite(int[] register, int[] end) {
+        int[] operandFor = new int[register.length];
+        int slots = 0;
+        for (int id = 0; id < register.length; id++) {
+            boolean variable = id < variablesBefore;
+            if (register[id] >= 0) {
+                operandFor[id] = TacProgram.temp(register[id] + 1);
+            } else if (variable) {
+                operandFor[id] = TacProgram.var(id);
+            } else if (end[id] >= 0) {
+                operandFor[id] = program.variable("[s" + (++slots) + "]");
+            }
+        }
+        for (int i = 0; i < program.size(); i++) {
+            int dest = TacProgram.hasDest(program.opcode(i)) ? map(program.dest(i), operandFor) : program.dest(i);
+            program.set(i, program.opcode(i), dest, map(program.src1(i), operandFor), map(program.src2(i), operandFor));
+        }
+        program.setTempCount(registersUsed);
+        program.removeUnusedVariables();
+    }
+
+    /** Maps a value operand to its new operand. Value ids are taken from before any [sN] slot was added. */
+    private int map(int operand, int[] operandFor) {
+        switch (TacProgram.kind(operand)) {
+            case TacProgram.VAR: return operandFor[TacProgram.index(operand)];
+            case TacProgram.TEMP: return operandFor[variablesBefore + TacProgram.index(operand) - 1];
+            default: return operand;
+        }
+    }
+
+    public int tempsBefore() {
+        return tempsBefore;
+    }
+
+    public int registersUsed() {
+        return registersUsed;
+    }
+
+    public int spilled() {
+        return spilled;
+    }
+
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(" Temporaries before: ").append(tempsBefore);
+        if (includeVariables) out.append(" (+ ").append(variablesBefore).append(" variables)");
+        out.append('\n');
+        out.append(" Registers used:     ").append(registersUsed);
+        if (maxRegisters > 0) out.append(" (limit ").append(maxRegisters).append(')');
+        out.append('\n');
+        out.append(" Spilled to memory:  ").append(spilled).append('\n');
+        return out.toString();
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * RegisterVM.java
+ * ----------------
+ * Executes a BytecodeProgram. The whole program runs in one dispatch loop over the
+ * int[] code, with all registers in a single int[] and no allocation per instruction.
+ *
+ * Semantics match the Interpreter: comparisons yield 1 or 0, division by zero is a
+ * runtime error, and `print` output goes through a buffered Writer.
+ *
+ * An optional budget bounds the number of backward jumps taken, i.e. loop iterations:
+ * straight-line code is bounded by the program size, so a program that runs out of
+ * budget is stopped with a runtime error instead of running forever (CompilerDaemon).
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+public class RegisterVM {
+
+    private final BytecodeProgram program;
+    private final Writer out;
+    private final long maxBackwardJumps;
+
+    public RegisterVM(BytecodeProgram program, Writer out) {
+        this(program, out, Long.MAX_VALUE);
+    }
+
+    /** A VM that stops the program after `maxBackwardJumps` loop iterations. */
+    public RegisterVM(BytecodeProgram program, Writer out, long maxBackwardJumps) {
+        this.program = program;
+        this.out = out;
+        this.maxBackwardJumps = maxBackwardJumps;
+    }
+
+    public void run() throws IOException {
+        final int[] code = program.code;
+        final int[] r = program.initialRegisters.clone();
+        long budget = maxBackwardJumps;
+        int pc = 0;
+        int target;
+        try {
+            while (true) {
+                int word = code[pc];
+                switch (word & 0xFF) {
+                    case BytecodeProgram.MOV:
+                        r[word >>> 8] = r[code[pc + 1]];
+                        pc += 2;
+                        break;
+                    case BytecodeProgram.ADD:
+                        r[word >>> 8] = r[code[pc + 1]] + r[code[pc + 2]];
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.SUB:
+                        r[word >>> 8] = r[code[pc + 1]] - r[code[pc + 2]];
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.MUL:
+                        r[word >>> 8] = r[code[pc + 1]] * r[code[pc + 2]];
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.DIV: {
+                        int divisor = r[code[pc + 2]];
+                        if (divisor == 0) throw new RuntimeException("Runtime Error: Division by zero.");
+                        r[word >>> 8] = r[code[pc + 1]] / divisor;
+                        pc += 3;
+                        break;
+                    }
+                    case BytecodeProgram.GT:
+                        r[word >>> 8] = r[code[pc + 1]] > r[code[pc + 2]] ? 1 : 0;
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.LT:
+                        r[word >>> 8] = r[code[pc + 1]] < r[code[pc + 2]] ? 1 : 0;
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.EQ:
+                        r[word >>> 8] = r[code[pc + 1]] == r[code[pc + 2]] ? 1 : 0;
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.NE:
+                        r[word >>> 8] = r[code[pc + 1]] != r[code[pc + 2]] ? 1 : 0;
+                        pc += 3;
+                        break;
+                    case BytecodeProgram.PRINT:
+                        out.write(Integer.toString(r[word >>> 8]));
+                        out.write('\n');
+                        pc += 1;
+                        break;
+                    // Jumps: `target` is where control goes; a backward one uses up budget
+                    case BytecodeProgram.JMP:
+                        target = code[pc + 1];
+                        if (target <= pc && --budget < 0) throw outOfBudget();
+                        pc = target;
+                        break;
+                    case BytecodeProgram.JZ:
+                        target = r[word >>> 8] == 0 ? code[pc + 1] : pc + 2;
+                        if (target <= pc && --budget < 0) throw outOfBudget();
+                        pc = target;
+                        break;
+                    case BytecodeProgram.JLE:
+                        target = r[word >>> 8] <= r[code[pc + 1]] ? code[pc + 2] : pc + 3;
+                        if (target <= pc && --budget < 0) throw outOfBudget();
+                        pc = target;
+                        break;
+                    case BytecodeProgram.JGE:
+                        target = r[word >>> 8] >= r[code[pc + 1]] ? code[pc + 2] : pc + 3;
+                        if (target <= pc && --budget < 0) throw outOfBudget();
+                        pc = target;
+                        break;
+                    case BytecodeProgram.JNE:
+                        target = r[word >>> 8] != r[code[pc + 1]] ? code[pc + 2] : pc + 3;
+                        if (target <= pc && --budget < 0) throw outOfBudget();
+                        pc = target;
+                        break;
+                    case BytecodeProgram.JEQ:
+                        target = r[word >>> 8] == r[code[pc + 1]] ? code[pc + 2] : pc + 3;
+                        if (target <= pc && --budget < 0) throw outOfBudget();
+                        pc = target;
+                        break;
+                    case BytecodeProgram.HALT:
+                        return;
+                    default:
+                        throw new IllegalStateException("Bad opcode " + (word & 0xFF) + " at " + pc);
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private RuntimeException outOfBudget() {
+        return new RuntimeException("Runtime Error: Program did not finish within " + maxBackwardJumps
+                + " loop iterations.");
+    }
+}
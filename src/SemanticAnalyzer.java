@@ -2,103 +2,324 @@
  * SemanticAnalyzer.java
  * ----------------------
  * This class performs **Semantic Analysis** for the MiniLang compiler.
- * It verifies the semantic and type correctness of the program after syntax analysis.
+ * It walks the AST returned by `SyntaxAnalyzer.parse` once and resolves every name.
  *
  * Responsibilities:
- * - Tracks variable declarations using a symbol table.
- * - Detects duplicate variable declarations (e.g., `int x; int x;`).
- * - Ensures variables are not used before being declared (e.g., `y = 10;`).
- * - Checks type consistency in assignments (e.g., `int x; x = "hello";` triggers an error).
- * - Verifies type compatibility when assigning variables to other variables (e.g., `x = y;`).
- * error handling
+ * - Tracks variable declarations per scope: the program and every `{ ... }` block
+ *   (if/else branches, while bodies, nested blocks) open a new scope.
+ * - Detects duplicate declarations in the same scope (e.g., `int x; int x;`). A
+ *   declaration in an inner block may shadow an outer one.
+ * - Ensures every variable is declared before it is used: assignment targets and every
+ *   Variable in every expression, including both sides of each operator.
+ * - Type checking: MiniLang has only `int`, so every well-formed expression is int.
+ *
+ * Resolution:
+ * - Names are interned into dense integer IDs (NameTable). The scope chain is an array
+ *   indexed by name ID holding the slot the name currently refers to; an undo log
+ *   restores the outer bindings when a block ends. No string maps are involved.
+ * - Every Declaration gets its own slot (0, 1, 2, ... in program order), and every
+ *   Assignment and Variable is annotated with the slot of the declaration it refers to.
+ *   The program Block records the total in `slotCount`. Later phases (Interpreter,
+ *   JvmCompiler, IntermediateCodeGenerator) use the slots and never look names up.
+ * - All slots start at 0 when the program starts; a declaration does not reset its slot.
  *
  * Output:
- * - Prints a success message if semantic checks pass.
- * - Otherwise, prints a detailed error with token context and terminates the program.
+ * - Nothing on success (the caller reports it).
+ * - analyze(Block, List) records every error as a Diagnostic ("Semantic Error: ...",
+ *   naming the offending variable, at the offset of the offending node) and keeps
+ *   going: an undeclared name stays unresolved, a duplicate declaration still gets its
+ *   own slot. `slotCount` is only set if there was no error.
+ * - analyze(Block) throws one RuntimeException listing all errors instead. Nothing is
+ *   printed and the process keeps running, so one bad file does not stop a batch (see
+ *   BatchCompiler).
+ * - analyze(AstArena, List) does the same for a flat AstArena, writing the slots into
+ *   the arena. It uses the arena's name IDs, so it interns nothing.
  */
-import java.util.HashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class SemanticAnalyzer {
 
-    private final Map<String, String> symbolTable = new HashMap<>();
+    private final NameTable names = new NameTable();
 
-    public void analyze(List<LexicalAnalyzer.Token> tokens) {
-        for (int i = 0; i < tokens.size(); i++) {
-            LexicalAnalyzer.Token token = tokens.get(i);
+    // Scope chain: slot currently bound to each name ID (-1 = not declared)
+    private int[] binding = new int[16];
 
-            // Variable Declaration
-            if (token.type == LexicalAnalyzer.TokenType.INT) {
-                if (i + 1 >= tokens.size()) {
-                    error("Expected variable name after 'int'.", token);
-                }
+    // Scope depth at which each slot was declared
+    private int[] slotDepth = new int[16];
+    private int slotCount;
+    private int depth;
 
-                LexicalAnalyzer.Token next = tokens.get(i + 1);
-                if (next.type != LexicalAnalyzer.TokenType.IDENTIFIER) {
-                    error("Expected variable name after 'int'.", next);
-                }
+    // Undo log of bindings replaced in the current scopes: (name ID, previous slot) pairs
+    private int[] undo = new int[32];
+    private int undoSize;
 
-                String varName = next.value;
-                if (symbolTable.containsKey(varName)) {
-                    error("Variable '" + varName + "' already declared.", next);
-                }
+    private List<Diagnostic> diagnostics;
+    private int mark; // size of `diagnostics` at begin()
 
-                symbolTable.put(varName, "int");
-                i++; // Skip identifier
-            }
+    private Expression[] pending = new Expression[16]; // work stack of analyzeExpression()
+
+    public void analyze(Block program) {
+        List<Diagnostic> errors = new ArrayList<>();
+        analyze(program, errors);
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(Diagnostic.summary(errors));
+        }
+    }
+
+    /** Analyzes the whole program, recording every error into `diagnostics`. */
+    public void analyze(Block program, List<Diagnostic> diagnostics) {
+        begin(diagnostics);
+        try {
+            analyzeStatements(program);
+        } catch (RuntimeException | Error e) {
+            this.diagnostics = null;
+            throw e;
+        }
+        finish(program);
+    }
+
+    /** Analyzes a program stored in an AstArena; the slot count is set unless there was an error. */
+    public void analyze(AstArena arena, List<Diagnostic> diagnostics) {
+        begin(diagnostics);
+        try {
+            ensureNames(arena.names().size());
+            new ArenaWalk(arena).statements(arena.root());
+        } catch (RuntimeException | Error e) {
+            this.diagnostics = null;
+            throw e;
+        }
+        if (diagnostics.size() == mark) arena.setSlotCount(slotCount);
+        this.diagnostics = null;
+    }
+
+    /**
+     * Incremental use, one top-level statement at a time as the parser completes them
+     * (see PipelinedFrontEnd): begin(), analyzeTopLevel() for each statement in program
+     * order, then finish() with the whole program. Same result as analyze(Block, List).
+     */
+    public void begin(List<Diagnostic> diagnostics) {
+        Arrays.fill(binding, -1);
+        slotCount = 0;
+        depth = 0;
+        undoSize = 0;
+        this.diagnostics = diagnostics;
+        this.mark = diagnostics.size();
+    }
+
+    public void analyzeTopLevel(Statement statement) {
+        analyzeStatement(statement);
+    }
+
+    /** Sets the program's slotCount unless an error was recorded since begin(). */
+    public void finish(Block program) {
+        if (diagnostics.size() == mark) program.slotCount = slotCount;
+        diagnostics = null;
+    }
 
-            // Variable Usage or Assignment
-            else if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER) {
-                String varName = token.value;
-
-                if (!symbolTable.containsKey(varName)) {
-                    error("Variable '" + varName + "' used before declaration.", token);
-                }
-
-                // Assignment
-                if (i + 1 < tokens.size() && tokens.get(i + 1).type == LexicalAnalyzer.TokenType.ASSIGN) {
-                    if (i + 2 >= tokens.size()) {
-                        error("Expected value after '=' in assignment to '" + varName + "'.", tokens.get(i + 1));
-                    }
-
-                    LexicalAnalyzer.Token valueToken = tokens.get(i + 2);
-                    String expectedType = symbolTable.get(varName);
-
-                    switch (valueToken.type) {
-                        case NUMBER:
-                            if (!"int".equals(expectedType)) {
-                                error("Cannot assign 'int' to variable '" + varName + "' of type '" + expectedType + "'.", valueToken);
-                            }
-                            break;
-
-                        case IDENTIFIER:
-                            String rightVar = valueToken.value;
-                            if (!symbolTable.containsKey(rightVar)) {
-                                error("Variable '" + rightVar + "' used before declaration.", valueToken);
-                            }
-                            if (!symbolTable.get(rightVar).equals(expectedType)) {
-                                error("Type mismatch: Cannot assign '" + symbolTable.get(rightVar) +
-                                        "' to '" + expectedType + "' in '" + varName + " = " + rightVar + "'.", valueToken);
-                            }
-                            break;
-
-                        default:
-                            error("Unsupported assignment value type: " + valueToken.type, valueToken);
-                    }
-
-                    i += 2; // Skip over '=' and assigned value
-                }
+    /** Analyzes the program unless it has been analyzed already; returns its slot count. */
+    public static int ensureAnalyzed(Block program) {
+        if (program.slotCount < 0) new SemanticAnalyzer().analyze(program);
+        return program.slotCount;
+    }
+
+    private void analyzeStatements(Block block) {
+        for (Statement statement : block.statements) {
+            analyzeStatement(statement);
+        }
+    }
+
+    /** A nested block: its declarations are dropped again at the closing brace. */
+    private void analyzeScope(Block block) {
+        int mark = openScope();
+        analyzeStatements(block);
+        closeScope(mark);
+    }
+
+    private int openScope() {
+        depth++;
+        return undoSize;
+    }
+
+    private void closeScope(int mark) {
+        depth--;
+        while (undoSize > mark) {
+            undoSize -= 2;
+            binding[undo[undoSize]] = undo[undoSize + 1];
+        }
+    }
+
+    private void analyzeStatement(Statement statement) {
+        if (statement instanceof Declaration) {
+            Declaration declaration = (Declaration) statement;
+            declaration.slot = declare(nameId(declaration.varName), declaration.varName, declaration.start());
+        } else if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            assignment.slot = lookup(nameId(assignment.varName), assignment.varName, assignment.start());
+            analyzeExpression(assignment.expression);
+        } else if (statement instanceof PrintStatement) {
+            analyzeExpression(((PrintStatement) statement).expression);
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            analyzeExpression(ifStatement.condition);
+            analyzeScope(ifStatement.thenBlock);
+            if (ifStatement.elseBlock != null) analyzeScope(ifStatement.elseBlock);
+        } else if (statement instanceof WhileStatement) {
+            WhileStatement whileStatement = (WhileStatement) statement;
+            analyzeExpression(whileStatement.condition);
+            analyzeScope(whileStatement.body);
+        } else if (statement instanceof Block) {
+            analyzeScope((Block) statement);
+        }
+    }
+
+    /**
+     * Resolves the variables of an expression left to right. The right operands still to
+     * visit wait on the explicit `pending` stack rather than the native one, so any depth
+     * of nesting is fine.
+     */
+    private void analyzeExpression(Expression expression) {
+        Expression next = expression;
+        int top = 0;
+        while (true) {
+            // Down the left spine; the right operands wait on the stack
+            while (next instanceof BinaryExpression) {
+                if (top == pending.length) pending = Arrays.copyOf(pending, top * 2);
+                pending[top++] = ((BinaryExpression) next).right;
+                next = ((BinaryExpression) next).left;
+            }
+            if (next instanceof Variable) {
+                Variable variable = (Variable) next;
+                variable.slot = lookup(nameId(variable.name), variable.name, variable.start());
+            } else if (!(next instanceof NumberLiteral)) {
+                error("Unsupported expression type: " + next.getClass().getSimpleName(), next.start());
             }
+            if (top == 0) return;
+            next = pending[--top];
+        }
+    }
+
+    private int declare(int id, String name, int offset) {
+        int previous = binding[id];
+        if (previous >= 0 && slotDepth[previous] == depth) {
+            error("Variable '" + name + "' already declared.", offset);
+        }
+        if (slotCount == slotDepth.length) slotDepth = Arrays.copyOf(slotDepth, slotCount * 2);
+        int slot = slotCount++;
+        slotDepth[slot] = depth;
+        if (depth > 0) {
+            if (undoSize + 2 > undo.length) undo = Arrays.copyOf(undo, undo.length * 2);
+            undo[undoSize++] = id;
+            undo[undoSize++] = previous;
+        }
+        binding[id] = slot;
+        return slot;
+    }
+
+    private int lookup(int id, String name, int offset) {
+        int slot = binding[id];
+        if (slot < 0) {
+            error("Variable '" + name + "' used before declaration.", offset);
+        }
+        return slot;
+    }
+
+    private int nameId(String name) {
+        int id = names.intern(name);
+        ensureNames(id + 1);
+        return id;
+    }
+
+    private void ensureNames(int count) {
+        if (count > binding.length) {
+            int oldLength = binding.length;
+            binding = Arrays.copyOf(binding, Math.max(count, oldLength * 2));
+            Arrays.fill(binding, oldLength, binding.length, -1);
         }
+    }
 
-        System.out.println(" Semantic Analysis with Type Checking: Passed.");
+    /** Utility: Records an error at the offending node and carries on */
+    private void error(String message, int offset) {
+        diagnostics.add(new Diagnostic("Semantic Error: " + message, offset));
     }
 
-    /** Utility: Print error message and exit */
-    private void error(String message, LexicalAnalyzer.Token token) {
-        System.err.println(" Semantic Error: " + message);
-        System.err.println("   → Offending token: '" + token.value + "' (type=" + token.type + ")");
-        System.exit(1);
+    /** The same checks over an AstArena; names are the arena's IDs. */
+    private final class ArenaWalk implements AstArena.Visitor {
+        private final AstArena arena;
+
+        ArenaWalk(AstArena arena) {
+            this.arena = arena;
+        }
+
+        void statements(int block) {
+            int count = arena.statementCount(block);
+            for (int i = 0; i < count; i++) arena.accept(arena.statement(block, i), this);
+        }
+
+        private void scope(int block) {
+            int mark = openScope();
+            statements(block);
+            closeScope(mark);
+        }
+
+        @Override
+        public int visitBlock(int node) {
+            scope(node);
+            return 0;
+        }
+
+        @Override
+        public int visitDeclaration(int node) {
+            arena.setSlot(node, declare(arena.nameId(node), arena.name(node), arena.start(node)));
+            return 0;
+        }
+
+        @Override
+        public int visitAssignment(int node) {
+            arena.setSlot(node, lookup(arena.nameId(node), arena.name(node), arena.start(node)));
+            return arena.accept(arena.expression(node), this);
+        }
+
+        @Override
+        public int visitIf(int node) {
+            arena.accept(arena.condition(node), this);
+            scope(arena.thenBlock(node));
+            if (arena.elseBlock(node) != AstArena.NONE) scope(arena.elseBlock(node));
+            return 0;
+        }
+
+        @Override
+        public int visitWhile(int node) {
+            arena.accept(arena.condition(node), this);
+            scope(arena.body(node));
+            return 0;
+        }
+
+        @Override
+        public int visitPrint(int node) {
+            return arena.accept(arena.expression(node), this);
+        }
+
+        /** The operands of a binary node precede it in post-order, so its variables are scanned in place. */
+        @Override
+        public int visitBinary(int node) {
+            for (int i = arena.firstOf(node); i < node; i++) {
+                if (arena.kind(i) == AstArena.VARIABLE) visitVariable(i);
+            }
+            return 0;
+        }
+
+        @Override
+        public int visitVariable(int node) {
+            arena.setSlot(node, lookup(arena.nameId(node), arena.name(node), arena.start(node)));
+            return 0;
+        }
+
+        @Override
+        public int visitNumber(int node) {
+            return 0;
+        }
     }
 }
@@ -0,0 +1,342 @@
+/**
+ * SparseConditionalConstantPass.java
+ * -----------------------------------
+ * **Sparse conditional constant propagation** (Wegman and Zadeck) on the SSA form.
+ *
+ * Every SSA value starts as "undefined" and can only move down the lattice
+ * undefined -> constant c -> not constant. At the same time only control-flow edges that
+ * can actually be taken are followed: a block is analysed once an edge into it becomes
+ * executable, and a conditional jump marks just one edge when its condition is a
+ * constant. Phis merge only the arguments arriving over executable edges. Because values
+ * and reachability are discovered together, constants flow through branches that are
+ * known to go one way, e.g.
+ *
+ *   a = 5; b = 3;
+ *   if (a > b) { print(a); } else { print(b); }     ->     print 5
+ *
+ * Afterwards constant values are substituted, decided branches become plain jumps (or
+ * disappear), blocks that can never run are deleted, and the program is translated back
+ * out of SSA. The copies and assignments left behind are cleaned up by the other passes.
+ *
+ * Variables start at 0 and division by zero is never folded.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SparseConditionalConstantPass implements TacPass {
+
+    private static final byte UNDEFINED = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte VARYING = 2;
+
+    private SsaForm ssa;
+    private byte[] state;
+    private int[] constant;
+    private boolean[] blockExecutable;
+    private boolean[][] edgeExecutable;   // aligned with ssa.successors[b]
+
+    // Use lists in compressed form: uses of v are useSites[useStart[v] .. useStart[v + 1])
+    // A site i >= 0 is instruction i; ~(b * PHI_STRIDE + k) is phi k of block b.
+    private int[] useStart;
+    private int[] useSites;
+    private int phiStride;
+
+    private int[] flowWork = new int[64];   // pairs (block, successor index)
+    private int flowSize;
+    private int[] valueWork = new int[64];
+    private int valueSize;
+
+    public String name() {
+        return "sparse-conditional-constants";
+    }
+
+    public boolean run(TacProgram program) {
+        if (program.size() == 0) return false;
+        ssa = new SsaForm(program);
+        analyze();
+        boolean changed = apply();
+        if (changed) {
+            ssa.writeBack();
+        } else {
+            ssa.discard();
+        }
+        ssa = null;
+        return changed;
+    }
+
+    // === Analysis ===
+
+    private void analyze() {
+        int values = ssa.valueCount();
+        state = new byte[values];
+        constant = new int[values];
+        for (int v = 0; v < values; v++) {
+            if (ssa.isEntryValue(v)) state[v] = CONSTANT; // holds 0
+        }
+        int blocks = ssa.cfg.blockCount();
+        blockExecutable = new boolean[blocks];
+        edgeExecutable = new boolean[blocks][];
+        for (int b = 0; b < blocks; b++) edgeExecutable[b] = new boolean[ssa.successors[b].length];
+        buildUses();
+        if (blocks == 0) return;
+
+        flowSize = 0;
+        valueSize = 0;
+        blockExecutable[0] = true;
+        visitBlock(0);
+        while (flowSize > 0 || valueSize > 0) {
+            while (flowSize > 0) {
+                flowSize -= 2;
+                int from = flowWork[flowSize];
+                int s = ssa.successors[from][flowWork[flowSize + 1]];
+                List<SsaForm.Phi> phis = ssa.phis.get(s);
+                for (int k = 0; k < phis.size(); k++) visitPhi(s, phis.get(k));
+                if (!blockExecutable[s]) {
+                    blockExecutable[s] = true;
+                    visitBlock(s);
+                }
+            }
+            while (valueSize > 0 && flowSize == 0) {
+                int v = valueWork[--valueSize];
+                for (int u = useStart[v]; u < useStart[v + 1]; u++) {
+                    int site = useSites[u];
+                    if (site >= 0) {
+                        if (blockExecutable[ssa.cfg.blockOf(site)]) visitInstruction(site);
+                    } else {
+                        int b = ~site / phiStride;
+                        if (blockExecutable[b]) visitPhi(b, ssa.phis.get(b).get(~site % phiStride));
+                    }
+                }
+            }
+        }
+    }
+
+    private void buildUses() {
+        int values = ssa.valueCount();
+        int blocks = ssa.cfg.blockCount();
+        phiStride = 1;
+        for (int b = 0; b < blocks; b++) phiStride = Math.max(phiStride, ssa.phis.get(b).size());
+        useStart = new int[values + 1];
+        // Count, then fill
+        for (int pass = 0; pass < 2; pass++) {
+            int[] fill = pass == 1 ? useStart.clone() : null;
+            for (int i = 0; i < ssa.opcode.length; i++) {
+                if (ssa.removedBlock[ssa.cfg.blockOf(i)]) continue;
+                addUse(ssa.src1[i], i, fill);
+                addUse(ssa.src2[i], i, fill);
+            }
+            for (int b = 0; b < blocks; b++) {
+                if (ssa.removedBlock[b]) continue;
+                List<SsaForm.Phi> phis = ssa.phis.get(b);
+                for (int k = 0; k < phis.size(); k++) {
+                    for (int arg : phis.get(k).args) addUse(arg, ~(b * phiStride + k), fill);
+                }
+            }
+            if (pass == 0) {
+                int total = 0;
+                for (int v = 0; v <= values; v++) {
+                    int count = useStart[v];
+                    useStart[v] = total;
+                    total += count;
+                }
+                useSites = new int[total];
+            }
+        }
+    }
+
+    private void addUse(int operand, int site, int[] fill) {
+        int v = SsaForm.value(operand);
+        if (v < 0) return;
+        if (fill == null) {
+            useStart[v]++;
+        } else {
+            useSites[fill[v]++] = site;
+        }
+    }
+
+    private void visitBlock(int b) {
+        for (int i = ssa.cfg.blockStart(b); i < ssa.cfg.blockEnd(b); i++) visitInstruction(i);
+    }
+
+    private void visitInstruction(int i) {
+        int opcode = ssa.opcode[i];
+        int b = ssa.cfg.blockOf(i);
+        if (TacProgram.isBinary(opcode)) {
+            evaluateBinary(i);
+        } else if (opcode == TacProgram.COPY) {
+            int source = ssa.src1[i];
+            int v = SsaForm.value(source);
+            if (v < 0) {
+                update(SsaForm.value(ssa.dest[i]), CONSTANT, ssa.program.constantValue(source));
+            } else {
+                update(SsaForm.value(ssa.dest[i]), state[v], constant[v]);
+            }
+        } else if (opcode == TacProgram.JUMP_IF_FALSE) {
+            int[] out = ssa.successors[b];
+            byte conditionState = stateOf(ssa.src1[i]);
+            if (conditionState == CONSTANT && out.length == 2) {
+                markEdge(b, valueOf(ssa.src1[i]) == 0 ? 1 : 0); // [fall-through, target]
+            } else if (conditionState != UNDEFINED) {
+                for (int k = 0; k < out.length; k++) markEdge(b, k);
+            }
+            return;
+        } else if (opcode == TacProgram.JUMP) {
+            markEdge(b, 0);
+            return;
+        }
+        if (i == ssa.cfg.blockEnd(b) - 1) {
+            for (int k = 0; k < ssa.successors[b].length; k++) markEdge(b, k);
+        }
+    }
+
+    private void evaluateBinary(int i) {
+        int opcode = ssa.opcode[i];
+        int dest = SsaForm.value(ssa.dest[i]);
+        byte left = stateOf(ssa.src1[i]);
+        byte right = stateOf(ssa.src2[i]);
+        if (opcode == TacProgram.MUL
+                && ((left == CONSTANT && valueOf(ssa.src1[i]) == 0) || (right == CONSTANT && valueOf(ssa.src2[i]) == 0))) {
+            update(dest, CONSTANT, 0);
+        } else if (left == VARYING || right == VARYING) {
+            update(dest, VARYING, 0);
+        } else if (left == CONSTANT && right == CONSTANT) {
+            int divisor = valueOf(ssa.src2[i]);
+            if (opcode == TacProgram.DIV && divisor == 0) {
+                update(dest, VARYING, 0);
+            } else {
+                update(dest, CONSTANT, ConstantFoldingPass.fold(opcode, valueOf(ssa.src1[i]), divisor));
+            }
+        }
+    }
+
+    private void visitPhi(int b, SsaForm.Phi phi) {
+        byte merged = UNDEFINED;
+        int value = 0;
+        int[] predecessors = ssa.predecessors[b];
+        for (int j = 0; j < phi.args.length && merged != VARYING; j++) {
+            if (!isEdgeExecutable(predecessors[j], b)) continue;
+            byte argState = stateOf(phi.args[j]);
+            if (argState == UNDEFINED) continue;
+            if (argState == VARYING) {
+                merged = VARYING;
+            } else if (merged == UNDEFINED) {
+                merged = CONSTANT;
+                value = valueOf(phi.args[j]);
+            } else if (value != valueOf(phi.args[j])) {
+                merged = VARYING;
+            }
+        }
+        update(phi.dest, merged, value);
+    }
+
+    private boolean isEdgeExecutable(int from, int to) {
+        int[] out = ssa.successors[from];
+        for (int k = 0; k < out.length; k++) {
+            if (out[k] == to) return edgeExecutable[from][k];
+        }
+        return false;
+    }
+
+    private void markEdge(int b, int k) {
+        if (edgeExecutable[b][k]) return;
+        edgeExecutable[b][k] = true;
+        if (flowSize + 2 > flowWork.length) flowWork = Arrays.copyOf(flowWork, flowWork.length * 2);
+        flowWork[flowSize++] = b;
+        flowWork[flowSize++] = k;
+    }
+
+    /** Lowers v to the given lattice element; queues its uses if that changed anything. */
+    private void update(int v, byte newState, int newConstant) {
+        if (newState == UNDEFINED || state[v] == VARYING) return;
+        if (state[v] == CONSTANT) {
+            if (newState == CONSTANT && constant[v] == newConstant) return;
+            newState = VARYING;
+        }
+        state[v] = newState;
+        constant[v] = newConstant;
+        if (valueSize == valueWork.length) valueWork = Arrays.copyOf(valueWork, valueSize * 2);
+        valueWork[valueSize++] = v;
+    }
+
+    private byte stateOf(int operand) {
+        int v = SsaForm.value(operand);
+        if (v >= 0) return state[v];
+        return TacProgram.kind(operand) == TacProgram.CONST ? CONSTANT : VARYING;
+    }
+
+    private int valueOf(int operand) {
+        int v = SsaForm.value(operand);
+        return v >= 0 ? constant[v] : ssa.program.constantValue(operand);
+    }
+
+    // === Rewriting ===
+
+    private boolean apply() {
+        TacProgram program = ssa.program;
+        boolean changed = false;
+        int blocks = ssa.cfg.blockCount();
+
+        for (int b = 0; b < blocks; b++) {
+            if (ssa.removedBlock[b]) continue;
+            if (!blockExecutable[b]) {
+                ssa.removedBlock[b] = true;
+                changed = true;
+            }
+        }
+        for (int b = 0; b < blocks; b++) {
+            int[] out = ssa.successors[b].clone();
+            boolean[] executable = edgeExecutable[b];
+            for (int k = 0; k < out.length; k++) {
+                if (ssa.removedBlock[b] || !executable[k]) ssa.removeEdge(b, out[k]);
+            }
+        }
+
+        for (int b = 0; b < blocks; b++) {
+            if (ssa.removedBlock[b]) continue;
+            List<SsaForm.Phi> phis = ssa.phis.get(b);
+            for (int k = phis.size() - 1; k >= 0; k--) {
+                SsaForm.Phi phi = phis.get(k);
+                if (state[phi.dest] == CONSTANT) {
+                    phis.remove(k);
+                    changed = true;
+                    continue;
+                }
+                for (int j = 0; j < phi.args.length; j++) {
+                    // An entry version already holds its value (0): keeping the name saves an edge copy
+                    int v = SsaForm.value(phi.args[j]);
+                    if (v < 0 || !ssa.isEntryValue(v)) phi.args[j] = substitute(program, phi.args[j]);
+                }
+            }
+            for (int i = ssa.cfg.blockStart(b); i < ssa.cfg.blockEnd(b); i++) {
+                int opcode = ssa.opcode[i];
+                int s1 = substitute(program, ssa.src1[i]);
+                int s2 = substitute(program, ssa.src2[i]);
+                if (s1 != ssa.src1[i] || s2 != ssa.src2[i]) {
+                    ssa.src1[i] = s1;
+                    ssa.src2[i] = s2;
+                    changed = true;
+                }
+                if (TacProgram.hasDest(opcode)) {
+                    int v = SsaForm.value(ssa.dest[i]);
+                    if (state[v] == CONSTANT && !(opcode == TacProgram.COPY && TacProgram.kind(s1) == TacProgram.CONST)) {
+                        ssa.opcode[i] = TacProgram.COPY;
+                        ssa.src1[i] = program.constant(constant[v]);
+                        ssa.src2[i] = TacProgram.NONE;
+                        changed = true;
+                    }
+                } else if (opcode == TacProgram.JUMP_IF_FALSE && TacProgram.kind(s1) == TacProgram.CONST) {
+                    ssa.opcode[i] = program.constantValue(s1) == 0 ? TacProgram.JUMP : TacProgram.NOP;
+                    ssa.src1[i] = TacProgram.NONE;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private int substitute(TacProgram program, int operand) {
+        int v = SsaForm.value(operand);
+        return v >= 0 && state[v] == CONSTANT ? program.constant(constant[v]) : operand;
+    }
+}
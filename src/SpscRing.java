@@ -0,0 +1,153 @@
+/**
+ * SpscRing.java
+ * --------------
+ * A bounded, lock-free **single-producer / single-consumer ring buffer** connecting two
+ * stages of the PipelinedFrontEnd (lexer -> parser, parser -> semantic/codegen).
+ *
+ * - Exactly one thread calls put()/offer() and exactly one thread calls take()/poll().
+ * - The producer publishes a slot with an ordered write of `tail`; the consumer frees it
+ *   with an ordered write of `head`. Neither side ever takes a lock.
+ * - Back-pressure: put() waits while the ring is full, take() while it is empty. A waiting
+ *   side spins briefly, then yields, then parks for a short while; the other side unparks
+ *   it after making progress. Parks are bounded, so a missed wake-up only costs latency.
+ * - End of stream: the producer calls close(); take() returns null once the ring is
+ *   drained. A failing producer calls fail(error) instead, and take() throws the error
+ *   after the elements put before it.
+ * - Cancellation: a failing consumer calls cancel(); a producer blocked in put() (or
+ *   calling it later) gets a CancellationException, so it stops instead of waiting forever.
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public final class SpscRing<T> {
+
+    private static final int SPINS = 64;
+    private static final int YIELDS = 16;
+    private static final long PARK_NANOS = 100_000;
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next slot to take; written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next slot to fill; written by the producer
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+
+    /** `capacity` is rounded up to a power of two. */
+    public SpscRing(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Ring capacity must be positive.");
+        this.slots = new Object[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = slots.length - 1;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    // === Producer side ===
+
+    /** Adds an element, waiting while the ring is full. */
+    public void put(T element) {
+        long t = tail.get();
+        int idle = 0;
+        while (t - head.get() == slots.length) {
+            if (cancelled) throw new CancellationException("Consumer stopped.");
+            idle = idle(idle, true);
+        }
+        if (cancelled) throw new CancellationException("Consumer stopped.");
+        publish(t, element);
+    }
+
+    /** Adds an element if there is room; never waits. */
+    public boolean offer(T element) {
+        long t = tail.get();
+        if (t - head.get() == slots.length || cancelled) return false;
+        publish(t, element);
+        return true;
+    }
+
+    private void publish(long t, T element) {
+        slots[(int) t & mask] = element;
+        tail.lazySet(t + 1); // ordered: the slot is visible before the new tail
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /** Ends the stream normally. */
+    public void close() {
+        closed = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /** Ends the stream with an error, thrown by take() after the remaining elements. */
+    public void fail(Throwable error) {
+        failure = error;
+        close();
+    }
+
+    // === Consumer side ===
+
+    /** Removes the next element, waiting while the ring is empty; null at the end of the stream. */
+    public T take() {
+        long h = head.get();
+        int idle = 0;
+        while (h == tail.get()) {
+            if (closed) {
+                if (h != tail.get()) break; // put just before close
+                Throwable error = failure;
+                if (error instanceof RuntimeException) throw (RuntimeException) error;
+                if (error instanceof Error) throw (Error) error;
+                if (error != null) throw new RuntimeException(error);
+                return null;
+            }
+            idle = idle(idle, false);
+        }
+        return consume(h);
+    }
+
+    /** Removes the next element if there is one; never waits. */
+    public T poll() {
+        long h = head.get();
+        return h == tail.get() ? null : consume(h);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T consume(long h) {
+        int index = (int) h & mask;
+        T element = (T) slots[index];
+        slots[index] = null;
+        head.lazySet(h + 1);
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+        return element;
+    }
+
+    /** Tells the producer that nothing more will be taken. */
+    public void cancel() {
+        cancelled = true;
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+    }
+
+    // === Waiting ===
+
+    private int idle(int idle, boolean producer) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            Thread self = Thread.currentThread();
+            if (producer) waitingProducer = self; else waitingConsumer = self;
+            LockSupport.parkNanos(this, PARK_NANOS);
+            if (producer) waitingProducer = null; else waitingConsumer = null;
+        }
+        return idle + 1;
+    }
+}
@@ -0,0 +1,507 @@
+/**
+ * SsaForm.java
+ * -------------
+ * **Static single assignment** view of a TacProgram: every variable and temporary is
+ * split into versions that are each assigned exactly once, and phi nodes merge versions
+ * where control flow joins:
+ *
+ *   L1:                              L1:
+ *   t1 = a > 0                       a.2 = phi(a.1, a.3)
+ *   ifFalse t1 goto L2      ->       t1.1 = a.2 > 0
+ *   a = a - 1                        ifFalse t1.1 goto L2
+ *   goto L1                          a.3 = a.2 - 1
+ *                                    goto L1
+ *
+ * Construction (Cytron et al.):
+ * 1. Basic blocks, dominator tree and dominance frontiers (ControlFlowGraph, Dominators).
+ * 2. Phi placement: for every value, phis go into the iterated dominance frontier of the
+ *    blocks that assign it, but only where the value is live on entry ("pruned" SSA).
+ * 3. Renaming: a walk over the dominator tree gives each assignment a new version and
+ *    rewrites every read to the version that reaches it. Reads with no assignment on
+ *    the way see the entry version, which holds 0 (variables start at 0).
+ *
+ * The instructions are copied, so optimizations (SparseConditionalConstantPass)
+ * can rewrite this form freely. Inside it an SSA value v is written as the operand
+ * TacProgram.temp(v + 1); constants and labels keep their TacProgram encoding.
+ *
+ * writeBack() translates out of SSA into the original TacProgram: every version is
+ * renamed back to its original variable or temporary, and each phi becomes copies on
+ * the incoming edges (critical edges are split, parallel copies are ordered so no value
+ * is overwritten before it is read). Renaming back is valid because the optimizations
+ * only substitute constants and delete code, so versions of one value never overlap.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SsaForm {
+
+    /** A phi node: dest = phi(args[0], args[1], ...), one argument per predecessor of its block. */
+    static final class Phi {
+        final int origin;  // original value id
+        int dest;          // SSA value
+        int[] args;        // operands, aligned with predecessors(block)
+
+        Phi(int origin, int predecessors) {
+            this.origin = origin;
+            this.args = new int[predecessors];
+        }
+    }
+
+    final TacProgram program;
+    private final boolean insertedEntry;
+    final ControlFlowGraph cfg;
+    final Dominators dominators;
+    private final int variableCount;   // original variables; origins >= this are temporaries
+
+    // Instructions, renamed
+    final int[] opcode;
+    final int[] dest;
+    final int[] src1;
+    final int[] src2;
+
+    // Blocks (edges can be removed by optimizations)
+    final boolean[] removedBlock;
+    final int[][] predecessors;
+    final int[][] successors;
+    final List<List<Phi>> phis;
+
+    // SSA values
+    private int valueCount = 0;
+    private int[] origin = new int[256];
+    private int[] version = new int[256];
+    private int[] definedIn = new int[256];  // block of the definition, -1 for entry versions
+    private final int[] entryValue;
+    private final int[] versionCounter;
+
+    public SsaForm(TacProgram program) {
+        this.program = program;
+        insertedEntry = program.size() > 0 && new ControlFlowGraph(program).predecessors(0).length > 0;
+        if (insertedEntry) {
+            // The entry block must not be a loop header: give the program its own entry block
+            program.insert(0, TacProgram.LABEL, program.newLabel(), TacProgram.NONE, TacProgram.NONE);
+        }
+        this.cfg = new ControlFlowGraph(program);
+        this.dominators = new Dominators(cfg);
+        this.variableCount = program.variableCount();
+
+        int size = program.size();
+        opcode = new int[size];
+        dest = new int[size];
+        src1 = new int[size];
+        src2 = new int[size];
+        for (int i = 0; i < size; i++) {
+            opcode[i] = program.opcode(i);
+            dest[i] = program.dest(i);
+            src1[i] = program.src1(i);
+            src2[i] = program.src2(i);
+        }
+
+        int blocks = cfg.blockCount();
+        removedBlock = new boolean[blocks];
+        predecessors = new int[blocks][];
+        successors = new int[blocks][];
+        phis = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            predecessors[b] = cfg.predecessors(b).clone();
+            successors[b] = cfg.successors(b).clone();
+            phis.add(new ArrayList<>(0));
+            removedBlock[b] = !dominators.isReachable(b);
+        }
+        for (int b = 0; b < blocks; b++) {
+            if (!removedBlock[b]) continue;
+            for (int s : successors[b].clone()) removeEdge(b, s);
+        }
+
+        int origins = program.valueCount();
+        entryValue = new int[origins];
+        versionCounter = new int[origins];
+        for (int o = 0; o < origins; o++) {
+            entryValue[o] = newValue(o, -1);
+        }
+        placePhis(origins);
+        rename(origins);
+    }
+
+    // === Construction ===
+
+    private int newValue(int originId, int block) {
+        if (valueCount == origin.length) {
+            origin = Arrays.copyOf(origin, valueCount * 2);
+            version = Arrays.copyOf(version, valueCount * 2);
+            definedIn = Arrays.copyOf(definedIn, valueCount * 2);
+        }
+        origin[valueCount] = originId;
+        version[valueCount] = block < 0 ? 0 : ++versionCounter[originId];
+        definedIn[valueCount] = block;
+        return valueCount++;
+    }
+
+    private void placePhis(int origins) {
+        int blocks = cfg.blockCount();
+        Liveness liveness = new Liveness(cfg);
+
+        // Blocks assigning each value
+        List<List<Integer>> defSites = new ArrayList<>(origins);
+        for (int o = 0; o < origins; o++) defSites.add(null);
+        for (int b = 0; b < blocks; b++) {
+            if (removedBlock[b]) continue;
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                if (!TacProgram.hasDest(opcode[i])) continue;
+                int o = program.valueId(dest[i]);
+                List<Integer> sites = defSites.get(o);
+                if (sites == null) defSites.set(o, sites = new ArrayList<>(2));
+                if (sites.isEmpty() || sites.get(sites.size() - 1).intValue() != b) sites.add(b);
+            }
+        }
+
+        int[] hasPhi = new int[blocks];   // == o + 1 once block has a phi for o
+        int[] queued = new int[blocks];   // == o + 1 once block was queued for o
+        int[] work = new int[blocks];
+        for (int o = 0; o < origins; o++) {
+            List<Integer> sites = defSites.get(o);
+            if (sites == null) continue;
+            int top = 0;
+            for (int b : sites) {
+                queued[b] = o + 1;
+                work[top++] = b;
+            }
+            while (top > 0) {
+                int b = work[--top];
+                for (int d : dominators.frontier(b)) {
+                    if (hasPhi[d] == o + 1 || !liveness.liveIn(d).get(o)) continue;
+                    hasPhi[d] = o + 1;
+                    phis.get(d).add(new Phi(o, predecessors[d].length));
+                    if (queued[d] != o + 1) {
+                        queued[d] = o + 1;
+                        work[top++] = d;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Renames along the dominator tree without recursion; an undo log restores the current versions. */
+    private void rename(int origins) {
+        if (cfg.blockCount() == 0) return;
+        int[] current = entryValue.clone();
+        int[] undoOrigin = new int[64];
+        int[] undoValue = new int[64];
+        int undoSize = 0;
+        int[] mark = new int[cfg.blockCount()];
+
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry < 0) {
+                int b = ~entry;
+                while (undoSize > mark[b]) {
+                    undoSize--;
+                    current[undoOrigin[undoSize]] = undoValue[undoSize];
+                }
+                continue;
+            }
+            int b = entry;
+            mark[b] = undoSize;
+
+            for (Phi phi : phis.get(b)) {
+                if (undoSize == undoOrigin.length) {
+                    undoOrigin = Arrays.copyOf(undoOrigin, undoSize * 2);
+                    undoValue = Arrays.copyOf(undoValue, undoSize * 2);
+                }
+                undoOrigin[undoSize] = phi.origin;
+                undoValue[undoSize++] = current[phi.origin];
+                phi.dest = newValue(phi.origin, b);
+                current[phi.origin] = phi.dest;
+            }
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                src1[i] = renameUse(src1[i], current);
+                src2[i] = renameUse(src2[i], current);
+                if (TacProgram.hasDest(opcode[i])) {
+                    int o = program.valueId(dest[i]);
+                    if (undoSize == undoOrigin.length) {
+                        undoOrigin = Arrays.copyOf(undoOrigin, undoSize * 2);
+                        undoValue = Arrays.copyOf(undoValue, undoSize * 2);
+                    }
+                    undoOrigin[undoSize] = o;
+                    undoValue[undoSize++] = current[o];
+                    current[o] = newValue(o, b);
+                    dest[i] = operand(current[o]);
+                }
+            }
+            for (int s : successors[b]) {
+                int j = predecessorIndex(s, b);
+                for (Phi phi : phis.get(s)) {
+                    phi.args[j] = operand(current[phi.origin]);
+                }
+            }
+
+            int[] children = dominators.children(b);
+            if (top + 1 + children.length > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + 1 + children.length));
+            }
+            stack[top++] = ~b;
+            for (int k = children.length - 1; k >= 0; k--) stack[top++] = children[k];
+        }
+    }
+
+    private int renameUse(int operand, int[] current) {
+        int o = program.valueId(operand);
+        return o >= 0 ? operand(current[o]) : operand;
+    }
+
+    // === SSA values ===
+
+    /** Operand encoding of SSA value v inside this form. */
+    static int operand(int value) {
+        return TacProgram.temp(value + 1);
+    }
+
+    /** SSA value of an operand, or -1 for constants, labels and unused operands. */
+    static int value(int operand) {
+        return TacProgram.kind(operand) == TacProgram.TEMP ? TacProgram.index(operand) - 1 : -1;
+    }
+
+    public int valueCount() {
+        return valueCount;
+    }
+
+    /** Original value id (TacProgram.valueId numbering) that SSA value v is a version of. */
+    public int origin(int value) {
+        return origin[value];
+    }
+
+    /** True for the implicit version every value has on entry (it holds 0). */
+    public boolean isEntryValue(int value) {
+        return definedIn[value] < 0;
+    }
+
+    /** Block that defines v, or -1 for entry versions. */
+    public int definingBlock(int value) {
+        return definedIn[value];
+    }
+
+    int predecessorIndex(int block, int predecessor) {
+        int[] list = predecessors[block];
+        for (int j = 0; j < list.length; j++) {
+            if (list[j] == predecessor) return j;
+        }
+        throw new IllegalStateException("B" + predecessor + " is not a predecessor of B" + block);
+    }
+
+    /** Deletes the edge from -> to, dropping the matching phi arguments. */
+    void removeEdge(int from, int to) {
+        int j = predecessorIndex(to, from);
+        predecessors[to] = without(predecessors[to], j);
+        for (Phi phi : phis.get(to)) {
+            phi.args = without(phi.args, j);
+        }
+        int[] out = successors[from];
+        for (int k = 0; k < out.length; k++) {
+            if (out[k] == to) {
+                successors[from] = without(out, k);
+                break;
+            }
+        }
+    }
+
+    private static int[] without(int[] array, int index) {
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    // === Out of SSA ===
+
+    /** Original operand (variable or temporary) for SSA operand x; constants and labels are unchanged. */
+    private int originalOperand(int operand) {
+        int v = value(operand);
+        if (v < 0) return operand;
+        int o = origin[v];
+        return o < variableCount ? TacProgram.var(o) : TacProgram.temp(o - variableCount + 1);
+    }
+
+    /** Leaves the program as it was before construction (undoes the entry label, if one was added). */
+    public void discard() {
+        if (insertedEntry) {
+            program.remove(0);
+            program.compact();
+        }
+    }
+
+    /** Replaces the instructions of the program with this form translated out of SSA. */
+    public void writeBack() {
+        int blocks = cfg.blockCount();
+        List<int[]> splitBlocks = new ArrayList<>(); // {label of new block, from, to}
+        program.clearInstructions();
+
+        for (int b = 0; b < blocks; b++) {
+            if (removedBlock[b]) continue;
+            int last = cfg.blockEnd(b) - 1;
+            int terminator = opcode[last];
+            boolean hasTerminator = terminator == TacProgram.JUMP || terminator == TacProgram.JUMP_IF_FALSE;
+            int bodyEnd = hasTerminator ? last : last + 1;
+            for (int i = cfg.blockStart(b); i < bodyEnd; i++) {
+                if (opcode[i] == TacProgram.NOP) continue;
+                int d = TacProgram.hasDest(opcode[i]) ? originalOperand(dest[i]) : dest[i];
+                program.emit(opcode[i], d, originalOperand(src1[i]), originalOperand(src2[i]));
+            }
+
+            int[] out = successors[b];
+            if (terminator == TacProgram.JUMP) {
+                emitCopies(b, out[0]);
+                program.emit(TacProgram.JUMP, dest[last], TacProgram.NONE, TacProgram.NONE);
+            } else if (terminator == TacProgram.JUMP_IF_FALSE && out.length == 2) {
+                int fallThrough = out[0];
+                int target = out[1];
+                int jumpLabel = dest[last];
+                if (hasCopies(b, target)) {
+                    jumpLabel = program.newLabel();
+                    splitBlocks.add(new int[] {jumpLabel, b, target});
+                }
+                program.emit(TacProgram.JUMP_IF_FALSE, jumpLabel, originalOperand(src1[last]), TacProgram.NONE);
+                emitCopies(b, fallThrough);
+            } else if (out.length == 1) {
+                // Plain fall-through, or a conditional jump whose both edges lead to the same block
+                emitCopies(b, out[0]);
+            }
+        }
+
+        if (!splitBlocks.isEmpty()) {
+            int exit = program.newLabel();
+            program.emit(TacProgram.JUMP, exit, TacProgram.NONE, TacProgram.NONE);
+            for (int[] split : splitBlocks) {
+                program.emit(TacProgram.LABEL, split[0], TacProgram.NONE, TacProgram.NONE);
+                emitCopies(split[1], split[2]);
+                program.emit(TacProgram.JUMP, blockLabel(split[2]), TacProgram.NONE, TacProgram.NONE);
+            }
+            program.emit(TacProgram.LABEL, exit, TacProgram.NONE, TacProgram.NONE);
+        }
+    }
+
+    private int blockLabel(int b) {
+        int first = cfg.blockStart(b);
+        if (opcode[first] != TacProgram.LABEL) throw new IllegalStateException("B" + b + " has no label");
+        return dest[first];
+    }
+
+    private boolean hasCopies(int from, int to) {
+        int j = predecessorIndex(to, from);
+        for (Phi phi : phis.get(to)) {
+            int target = originalOperand(operand(phi.dest));
+            if (originalOperand(phi.args[j]) != target) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Emits the copies for the phis of `to` along the edge from -> to. They happen "in
+     * parallel": a copy is emitted only once no other pending copy still reads its target,
+     * and a cycle (a = b, b = a) is broken with a fresh temporary.
+     */
+    private void emitCopies(int from, int to) {
+        List<Phi> list = phis.get(to);
+        if (list.isEmpty()) return;
+        int j = predecessorIndex(to, from);
+        List<int[]> pending = new ArrayList<>(); // {dest, src}
+        for (Phi phi : list) {
+            int target = originalOperand(operand(phi.dest));
+            int source = originalOperand(phi.args[j]);
+            if (target != source) pending.add(new int[] {target, source});
+        }
+        while (!pending.isEmpty()) {
+            boolean emitted = false;
+            for (int k = 0; k < pending.size(); k++) {
+                int target = pending.get(k)[0];
+                boolean stillRead = false;
+                for (int[] other : pending) {
+                    if (other != pending.get(k) && other[1] == target) {
+                        stillRead = true;
+                        break;
+                    }
+                }
+                if (!stillRead) {
+                    int[] copy = pending.remove(k);
+                    program.emit(TacProgram.COPY, copy[0], copy[1], TacProgram.NONE);
+                    emitted = true;
+                    break;
+                }
+            }
+            if (!emitted) {
+                int[] copy = pending.get(0);
+                int saved = program.newTemp();
+                program.emit(TacProgram.COPY, saved, copy[0], TacProgram.NONE);
+                for (int[] other : pending) {
+                    if (other[1] == copy[0]) other[1] = saved;
+                }
+            }
+        }
+    }
+
+    // === Printing ===
+
+    private String valueName(int operand) {
+        int v = value(operand);
+        if (v < 0) return program.operandToString(operand);
+        int o = origin[v];
+        String name = o < variableCount ? program.variableName(o) : "t" + (o - variableCount + 1);
+        return name + "." + version[v];
+    }
+
+    /** Block-by-block listing with phi nodes, e.g. "a.2 = phi(a.1 [B0], a.3 [B2])". */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            if (removedBlock[b]) continue;
+            out.append("B").append(b).append(':');
+            if (predecessors[b].length > 0) {
+                out.append("  ; from");
+                for (int p : predecessors[b]) out.append(" B").append(p);
+            }
+            out.append('\n');
+            for (Phi phi : phis.get(b)) {
+                out.append("  ").append(valueName(operand(phi.dest))).append(" = phi(");
+                for (int j = 0; j < phi.args.length; j++) {
+                    if (j > 0) out.append(", ");
+                    out.append(valueName(phi.args[j])).append(" [B").append(predecessors[b][j]).append(']');
+                }
+                out.append(")\n");
+            }
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                if (opcode[i] == TacProgram.NOP) continue;
+                out.append("  ");
+                appendInstruction(i, out);
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private void appendInstruction(int i, StringBuilder out) {
+        switch (opcode[i]) {
+            case TacProgram.COPY:
+                out.append(valueName(dest[i])).append(" = ").append(valueName(src1[i]));
+                break;
+            case TacProgram.PRINT:
+                out.append("print ").append(valueName(src1[i]));
+                break;
+            case TacProgram.LABEL:
+                out.append(program.operandToString(dest[i])).append(':');
+                break;
+            case TacProgram.JUMP:
+                out.append("goto ").append(program.operandToString(dest[i]));
+                break;
+            case TacProgram.JUMP_IF_FALSE:
+                out.append("ifFalse ").append(valueName(src1[i])).append(" goto ").append(program.operandToString(dest[i]));
+                break;
+            default:
+                out.append(valueName(dest[i])).append(" = ").append(valueName(src1[i])).append(' ')
+                        .append(TacProgram.operatorText(opcode[i])).append(' ').append(valueName(src2[i]));
+        }
+    }
+}
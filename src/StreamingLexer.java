@@ -0,0 +1,288 @@
+/**
+ * StreamingLexer.java
+ * --------------------
+ * A **streaming** front end for the Lexical Analyzer. Instead of reading the whole
+ * source into a String and tokenizing it up front, it scans tokens lazily, one at a
+ * time, as the SyntaxAnalyzer asks for them.
+ *
+ * Input sources:
+ * - open(Path): the file is memory-mapped through a FileChannel, region by region,
+ *   and decoded as UTF-8 straight into the scanner's character window.
+ * - wrap(byte[]): an in-memory copy of a source file, decoded exactly like a mapped one
+ *   (used when the bytes have been read already, e.g. to hash them for a cache key).
+ * - StreamingLexer(Reader): characters are read into the same fixed-size window.
+ *
+ * The working set is the character window (grown only if a single token is longer
+ * than the window) plus one token of lookahead and the table of distinct names,
+ * independent of the source size.
+ *
+ * Usage:
+ *   try (StreamingLexer lexer = StreamingLexer.open(Paths.get("input.minilang"))) {
+ *       Block program = new SyntaxAnalyzer(lexer).parse();
+ *   }
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public class StreamingLexer extends TokenScanner implements TokenCursor, AutoCloseable {
+
+    public static final int DEFAULT_WINDOW = 64 * 1024;
+    private static final long MAP_REGION = 16L * 1024 * 1024;
+
+    // Reader input
+    private final Reader reader;
+
+    // Memory-mapped (or in-memory) input
+    private final FileChannel channel;
+    private final long fileSize;
+    private final CharsetDecoder decoder;
+    private long regionStart = 0;
+    private ByteBuffer region;
+
+    private boolean endOfInput = false;
+
+    // One token of lookahead
+    private LexicalAnalyzer.TokenType nextType;
+    private LexicalAnalyzer.Token nextToken;
+
+    // The token consumed last
+    private final NameTable names = new NameTable();
+    private String previousText;
+    private int previousNumber;
+    private int previousEnd = -1;
+
+    public StreamingLexer(Reader reader) {
+        this(reader, DEFAULT_WINDOW);
+    }
+
+    public StreamingLexer(Reader reader, int windowSize) {
+        super(windowSize);
+        this.reader = reader;
+        this.channel = null;
+        this.fileSize = 0;
+        this.decoder = null;
+        nextType = next();
+    }
+
+    private StreamingLexer(FileChannel channel, int windowSize, List<Diagnostic> diagnostics) throws IOException {
+        super(windowSize);
+        this.reader = null;
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.decoder = utf8Decoder();
+        if (diagnostics != null) reportErrorsTo(diagnostics);
+        nextType = next();
+    }
+
+    private StreamingLexer(ByteBuffer source, int windowSize, List<Diagnostic> diagnostics) {
+        super(windowSize);
+        this.reader = null;
+        this.channel = null;
+        this.fileSize = source.remaining();
+        this.decoder = utf8Decoder();
+        this.region = source; // the only region
+        if (diagnostics != null) reportErrorsTo(diagnostics);
+        nextType = next();
+    }
+
+    private static CharsetDecoder utf8Decoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /** Streams source bytes already in memory, with the same UTF-8 checks as open(). */
+    public static StreamingLexer wrap(byte[] source) {
+        return wrap(source, null);
+    }
+
+    /** Like wrap(byte[]), recording lexical errors into `diagnostics` instead of throwing. */
+    public static StreamingLexer wrap(byte[] source, List<Diagnostic> diagnostics) {
+        return new StreamingLexer(ByteBuffer.wrap(source), DEFAULT_WINDOW, diagnostics);
+    }
+
+    /** Opens a source file for streaming through a read-only memory mapping. */
+    public static StreamingLexer open(Path file) throws IOException {
+        return open(file, DEFAULT_WINDOW, null);
+    }
+
+    /** Like open(Path), recording lexical errors into `diagnostics` instead of throwing. */
+    public static StreamingLexer open(Path file, List<Diagnostic> diagnostics) throws IOException {
+        return open(file, DEFAULT_WINDOW, diagnostics);
+    }
+
+    public static StreamingLexer open(Path file, int windowSize) throws IOException {
+        return open(file, windowSize, null);
+    }
+
+    private static StreamingLexer open(Path file, int windowSize, List<Diagnostic> diagnostics) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new StreamingLexer(channel, windowSize, diagnostics);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Only a window of the input is held, so there is no whole input to return. */
+    @Override
+    public char[] input() {
+        return null;
+    }
+
+    // === TokenCursor ===
+
+    @Override
+    public LexicalAnalyzer.TokenType peekType() {
+        return nextType;
+    }
+
+    @Override
+    public LexicalAnalyzer.Token peek() {
+        if (nextType != null && nextToken == null) {
+            nextToken = new LexicalAnalyzer.Token(nextType, tokenText(), (int) tokenStart());
+        }
+        return nextToken;
+    }
+
+    @Override
+    public void advance() {
+        if (nextType == LexicalAnalyzer.TokenType.IDENTIFIER) {
+            previousText = names.name(internText(names));
+        } else if (nextType == LexicalAnalyzer.TokenType.NUMBER) {
+            previousNumber = numberValue();
+            previousText = tokenLength() == decimalLength(previousNumber) ? null : tokenText(); // e.g. `007`
+        } else {
+            previousText = TokenStream.fixedText(nextType);
+        }
+        previousEnd = (int) tokenStart() + tokenLength();
+        nextToken = null;
+        nextType = next();
+    }
+
+    @Override
+    public String text() {
+        return previousText != null ? previousText : Integer.toString(previousNumber);
+    }
+
+    @Override
+    public int number() {
+        return previousNumber;
+    }
+
+    @Override
+    public int peekStart() {
+        return nextType == null ? -1 : (int) tokenStart();
+    }
+
+    @Override
+    public int end() {
+        return previousEnd;
+    }
+
+    /** Names seen so far; each identifier is interned once however often it occurs. */
+    public NameTable names() {
+        return names;
+    }
+
+    // === Window management ===
+
+    @Override
+    protected boolean refill(int keepFrom) {
+        if (endOfInput) return false;
+
+        if (keepFrom == 0 && limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2); // a single token fills the window
+        } else if (keepFrom > 0) {
+            compact(keepFrom);
+        }
+
+        int read;
+        try {
+            read = (decoder != null) ? decodeMapped() : readChars();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lexical Error: cannot read source", e);
+        }
+        if (read <= 0) {
+            endOfInput = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private int readChars() throws IOException {
+        int total = 0;
+        while (limit + total < buffer.length) {
+            int n = reader.read(buffer, limit + total, buffer.length - limit - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    /** Decodes mapped bytes into the free part of the window, mapping further regions as needed. */
+    private int decodeMapped() throws IOException {
+        CharBuffer out = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+        while (out.hasRemaining()) {
+            if (region == null || !region.hasRemaining()) {
+                if (!mapNextRegion()) break;
+            }
+            boolean lastRegion = regionStart + region.limit() == fileSize;
+            CoderResult result = decoder.decode(region, out, lastRegion);
+            if (result.isError()) {
+                throwCodingError(result);
+            }
+            if (result.isUnderflow() && region.hasRemaining()) {
+                // A multi-byte character is split across the region boundary: remap from it.
+                if (!mapNextRegion()) break;
+            }
+        }
+        if (!out.hasRemaining() || region == null) {
+            return out.position() - limit;
+        }
+        CoderResult result = decoder.flush(out);
+        if (result.isError()) {
+            throwCodingError(result);
+        }
+        return out.position() - limit;
+    }
+
+    private boolean mapNextRegion() throws IOException {
+        long next = (region == null) ? 0 : regionStart + region.position();
+        if (next >= fileSize || channel == null) return false;
+        regionStart = next;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(MAP_REGION, fileSize - next));
+        return true;
+    }
+
+    private void throwCodingError(CoderResult result) {
+        try {
+            result.throwException();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Lexical Error: source is not valid UTF-8", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        if (channel != null) channel.close();
+        if (reader != null) reader.close();
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * StrengthReductionPass.java
+ * ---------------------------
+ * **Strength reduction** of multiplications by loop induction variables.
+ *
+ * A basic induction variable of a loop is a value i whose only assignment inside the
+ * loop is `i = i + c` or `i = i - c` with a constant step c (e.g. `a = a - 1`). A
+ * product `t = i * k`, where k is a constant or is not assigned in the loop, then
+ * changes by the fixed amount c * k per iteration, so it can be kept in a new
+ * temporary s that is updated by an addition instead of recomputed by a multiplication:
+ *
+ *                                 s = i * 4
+ *   L1:                           L1:
+ *   ...                           ...
+ *   t2 = i * 4          ->        t2 = s
+ *   ...                           ...
+ *   i = i + 1                     i = i + 1
+ *                                 s = s + 4
+ *   goto L1                       goto L1
+ *
+ * s is set once in the loop preheader and updated right after every change of i, so it
+ * equals i * k wherever i is read. Arithmetic wraps around on overflow in both forms,
+ * so the results are identical. Copy propagation then replaces t2 by s.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StrengthReductionPass implements TacPass {
+
+    public String name() {
+        return "strength-reduction";
+    }
+
+    public boolean run(TacProgram program) {
+        boolean changed = false;
+        boolean reduced = true;
+        while (reduced && program.size() > 0) {
+            reduced = false;
+            NaturalLoops loops = new NaturalLoops(new Dominators(new ControlFlowGraph(program)));
+            for (NaturalLoops.Loop loop : loops.loops()) {
+                if (reduce(program, loops, loop)) {
+                    reduced = changed = true;
+                    break; // the graph is out of date; start over
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean reduce(TacProgram program, NaturalLoops loops, NaturalLoops.Loop loop) {
+        ControlFlowGraph cfg = loops.cfg();
+        int values = program.valueCount();
+        int[] definitions = new int[values];
+        int[] update = new int[values]; // index of the only assignment in the loop
+        for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                if (!TacProgram.hasDest(program.opcode(i))) continue;
+                int id = program.valueId(program.dest(i));
+                definitions[id]++;
+                update[id] = i;
+            }
+        }
+
+        // Products i * k grouped by (i, k); each group shares one reduced temporary
+        Map<Long, List<Integer>> groups = new HashMap<>();
+        for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                if (program.opcode(i) != TacProgram.MUL) continue;
+                int induction = program.src1(i);
+                int factor = program.src2(i);
+                if (!isInductionVariable(program, induction, definitions, update)
+                        || !isLoopInvariant(program, factor, definitions)) {
+                    induction = program.src2(i);
+                    factor = program.src1(i);
+                    if (!isInductionVariable(program, induction, definitions, update)
+                            || !isLoopInvariant(program, factor, definitions)) continue;
+                }
+                long key = ((long) induction << 32) | (factor & 0xFFFFFFFFL);
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        if (groups.isEmpty()) return false;
+
+        int headerStart = cfg.blockStart(loop.header);
+        int position = loops.preparePreheader(loop);
+        if (position < 0) return false;
+        int shift = position - headerStart;
+
+        // Preheader code, and the step added after each update of an induction variable
+        List<int[]> preheader = new ArrayList<>();
+        List<int[]> steps = new ArrayList<>(); // {update index, opcode, s, step operand}
+        for (Map.Entry<Long, List<Integer>> group : groups.entrySet()) {
+            int induction = (int) (group.getKey() >> 32);
+            int factor = (int) (long) group.getKey();
+            int u = update[program.valueId(induction)];
+            if (u >= headerStart) u += shift;
+            int constantStep = TacProgram.kind(program.src1(u)) == TacProgram.CONST ? program.src1(u) : program.src2(u);
+            int stepOpcode = program.opcode(u);
+
+            int reducedTemp = program.newTemp();
+            preheader.add(new int[] {TacProgram.MUL, reducedTemp, induction, factor});
+            int step;
+            if (TacProgram.kind(factor) == TacProgram.CONST) {
+                step = program.constant(program.constantValue(constantStep) * program.constantValue(factor));
+            } else if (program.constantValue(constantStep) == 1) {
+                step = factor;
+            } else {
+                step = program.newTemp();
+                preheader.add(new int[] {TacProgram.MUL, step, factor, constantStep});
+            }
+            steps.add(new int[] {u, stepOpcode, reducedTemp, step});
+            for (int i : group.getValue()) {
+                if (i >= headerStart) i += shift;
+                program.set(i, TacProgram.COPY, program.dest(i), reducedTemp, TacProgram.NONE);
+            }
+        }
+
+        for (int k = preheader.size() - 1; k >= 0; k--) {
+            int[] code = preheader.get(k);
+            program.insert(position, code[0], code[1], code[2], code[3]);
+        }
+        // Steps are inserted from the bottom up so the recorded indices stay valid
+        steps.sort((x, y) -> Integer.compare(y[0], x[0]));
+        for (int[] step : steps) {
+            int u = step[0] >= position ? step[0] + preheader.size() : step[0];
+            program.insert(u + 1, step[1], step[2], step[2], step[3]);
+        }
+        return true;
+    }
+
+    /** True for i with a single assignment `i = i + c`, `i = c + i` or `i = i - c` in the loop. */
+    private static boolean isInductionVariable(TacProgram program, int operand, int[] definitions, int[] update) {
+        int id = program.valueId(operand);
+        if (id < 0 || definitions[id] != 1) return false;
+        int u = update[id];
+        int opcode = program.opcode(u);
+        int a = program.src1(u);
+        int b = program.src2(u);
+        if (opcode == TacProgram.ADD) {
+            return (a == operand && TacProgram.kind(b) == TacProgram.CONST)
+                    || (b == operand && TacProgram.kind(a) == TacProgram.CONST);
+        }
+        return opcode == TacProgram.SUB && a == operand && TacProgram.kind(b) == TacProgram.CONST;
+    }
+
+    private static boolean isLoopInvariant(TacProgram program, int operand, int[] definitions) {
+        int id = program.valueId(operand);
+        return TacProgram.kind(operand) == TacProgram.CONST || (id >= 0 && definitions[id] == 0);
+    }
+}
@@ -2,9 +2,10 @@
  * SyntaxAnalyzer.java
  * --------------------
  * This class performs **Syntax Analysis** (Parsing) for the MiniLang compiler.
- * It uses recursive descent parsing in a SimpleParser style to verify whether
- * the input sequence of tokens (from the Lexical Analyzer) forms a syntactically
- * valid MiniLang program.
+ * It uses recursive descent parsing in a SimpleParser style for statements, and
+ * precedence climbing over explicit stacks for expressions, to verify whether the
+ * input sequence of tokens (from the Lexical Analyzer) forms a syntactically valid
+ * MiniLang program.
  *
  * Supported Statements:
  * - Variable Declaration: e.g., int x;
@@ -14,72 +15,223 @@
  * - Print Statements
  *
  * Supported Expressions:
- * - Arithmetic: +, -, *, /
- * - Comparisons: >, <, ==, !=
+ * - Arithmetic: +, -, *, / (left associative; * and / bind tighter than + and -)
+ * - Comparisons: >, <, ==, != (at most one per parenthesized level, e.g. `(a < b) == c`)
+ * - Parentheses nested to any depth: expression parsing does not recurse, and neither
+ *   does any later phase that walks expressions (see tests/deep). Statements and blocks
+ *   are parsed recursively, so their nesting is bounded by the thread stack
+ *   (CompilerPipeline.NESTED_TOO_DEEPLY).
  *
  * Key Features:
- * - Reports syntax errors with precise line-level diagnostics.
- * - Gracefully handles malformed input with proper error messages.
+ * - Reports every syntax error in one pass (panic-mode recovery): parse(List) records
+ *   each error as a Diagnostic with its source offset, skips to the end of the broken
+ *   statement (past the next ';' at the same nesting level, past a balanced '{ ... }'
+ *   block, or up to the '}' of the enclosing block or the next statement keyword) and
+ *   carries on. The broken statement is left out of the AST. After MAX_ERRORS errors
+ *   the parse stops.
+ * - parse() does the same and then throws one RuntimeException listing all errors.
+ * - parseNext() (used by IncrementalParser) does not recover: it throws the first
+ *   error as a RuntimeException ("Syntax Error: ...").
  * - Builds an internal AST (Abstract Syntax Tree) for valid MiniLang code.
+ * - Records the source span (start/end offset) of every AST node.
+ * - Reads tokens through a TokenCursor, so it can parse from a token list or
+ *   directly from a StreamingLexer without materializing all tokens.
+ * - Creates expression nodes through an ExpressionFactory: a tree by default, or with
+ *   ExpressionFactory.hashConsing() a DAG in which identical expressions are shared.
  */
 
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 
 public class SyntaxAnalyzer {
 
-    private final List<LexicalAnalyzer.Token> tokens;
-    private int currentIndex = 0;
+    public static final int MAX_ERRORS = 100;
+
+    private final TokenCursor tokens;
+    private final ExpressionFactory expressions;
+    private List<Diagnostic> diagnostics; // null = no recovery: the first error throws
+    private int errorCount;
+    private int consumed; // tokens consumed so far, so that recovery always makes progress
+
+    // parseExpression: operands with the start offset of each (including its '('), pending
+    // operators, and per open '(' three ints (see pushGroup)
+    private Expression[] operands = new Expression[16];
+    private int[] operandStarts = new int[16];
+    private int operandCount;
+    private BinaryExpression.Operator[] operators = new BinaryExpression.Operator[16];
+    private int operatorCount;
+    private int[] groups = new int[24];
+    private int groupCount;
+
+    /** Unwinds to the statement being parsed after an error has been recorded. */
+    private static final class ParseError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final boolean fatal; // too many errors: stop parsing
+
+        ParseError(boolean fatal) {
+            super(null, null, false, false);
+            this.fatal = fatal;
+        }
+    }
 
     public SyntaxAnalyzer(List<LexicalAnalyzer.Token> tokens) {
+        this(new TokenCursor.ListCursor(tokens));
+    }
+
+    public SyntaxAnalyzer(TokenStream tokens) {
+        this(tokens.cursor());
+    }
+
+    /** Parses tokens pulled one at a time from a cursor, e.g. a StreamingLexer. */
+    public SyntaxAnalyzer(TokenCursor tokens) {
+        this(tokens, ExpressionFactory.plain());
+    }
+
+    /** As SyntaxAnalyzer(TokenCursor), creating expression nodes through `expressions`. */
+    public SyntaxAnalyzer(TokenCursor tokens, ExpressionFactory expressions) {
         this.tokens = tokens;
+        this.expressions = expressions;
     }
 
-    /** Entry point: Parses the entire token list and returns a Block of statements */
+    /** Entry point: Parses the entire token list and returns a Block of statements; throws listing every syntax error */
     public Block parse() {
+        List<Diagnostic> errors = new ArrayList<>();
+        Block program = parse(errors);
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(Diagnostic.summary(errors));
+        }
+        return program;
+    }
+
+    /**
+     * Parses the entire token list, recording every error into `diagnostics` instead of
+     * throwing. Returns the program without the statements that failed to parse.
+     */
+    public Block parse(List<Diagnostic> diagnostics) {
+        return parse(diagnostics, null);
+    }
+
+    /**
+     * As parse(List), and hands every top-level statement to `completed` as soon as it
+     * has been parsed, so later stages can start on it (see PipelinedFrontEnd).
+     */
+    public Block parse(List<Diagnostic> diagnostics, Consumer<Statement> completed) {
+        int start = tokens.peekStart();
         List<Statement> statements = new ArrayList<>();
-        while (!isAtEnd()) {
-            try {
-                statements.add(parseStatement());
-            } catch (RuntimeException e) {
-                System.err.println("Error while parsing statement: " + e.getMessage());
-                System.exit(1);
+        parseEach(diagnostics, completed == null ? statements::add : statement -> {
+            statements.add(statement);
+            completed.accept(statement);
+        });
+        return span(new Block(statements), start);
+    }
+
+    /**
+     * As parse(List), but only hands every top-level statement to `completed` and keeps
+     * none of them, so a caller that converts them (see AstArena.parse) lets them go.
+     */
+    public void parseEach(List<Diagnostic> diagnostics, Consumer<Statement> completed) {
+        this.diagnostics = diagnostics;
+        this.errorCount = 0;
+        int mark = diagnostics.size();
+        try {
+            while (!isAtEnd()) {
+                Statement statement = parseStatement();
+                if (statement != null) completed.accept(statement);
             }
+        } catch (ParseError e) {
+            // too many errors: the message has been recorded
+        } catch (UncheckedIOException e) {
+            throw e; // the source cannot be read: not a compile error
+        } catch (CancellationException e) {
+            throw e; // a later stage has stopped (PipelinedFrontEnd): not a compile error
+        } catch (RuntimeException e) {
+            // A lexical error from a cursor that cannot skip it (see TokenScanner.reportErrorsTo)
+            diagnostics.add(new Diagnostic(e.getMessage() != null ? e.getMessage() : e.toString(), tokens.peekStart()));
+        } finally {
+            this.diagnostics = null;
         }
-        System.out.println(" Syntax Analysis: Passed.");
-        return new Block(statements);
+        // Lexical errors are recorded one token ahead of the parser
+        diagnostics.subList(mark, diagnostics.size()).sort(Diagnostic.BY_OFFSET);
     }
 
+    /** Parses a single statement at the cursor (used by IncrementalParser to re-parse a region); throws on a syntax error. */
+    public Statement parseNext() {
+        return parseStatement();
+    }
+
+    /** Parses one statement; with recovery on, returns null for a statement that failed to parse. */
     private Statement parseStatement() {
+        int start = tokens.peekStart();
+        int consumedBefore = consumed;
         try {
             if (match(LexicalAnalyzer.TokenType.INT)) {
-                return parseDeclaration();
+                return span(parseDeclaration(), start);
             } else if (check(LexicalAnalyzer.TokenType.IDENTIFIER)) {
-                return parseAssignment();
+                return span(parseAssignment(), start);
             } else if (match(LexicalAnalyzer.TokenType.IF)) {
-                return parseIfStatement();
+                return span(parseIfStatement(), start);
             } else if (match(LexicalAnalyzer.TokenType.WHILE)) {
-                return parseWhileStatement();
+                return span(parseWhileStatement(), start);
             } else if (match(LexicalAnalyzer.TokenType.PRINT)) {
-                return parsePrintStatement();
+                return span(parsePrintStatement(), start);
             } else {
                 error("Expected a valid statement.");
                 return null;
             }
-        } catch (RuntimeException e) {
-            error("Invalid statement format.");
+        } catch (ParseError e) {
+            if (e.fatal) throw e;
+            if (consumed == consumedBefore) advance(); // e.g. a stray '}' or 'else'
+            synchronize();
             return null;
         }
     }
 
+    /**
+     * Panic mode: skips the rest of a broken statement. Stops after a ';' or after a
+     * balanced '{ ... }' block (and its 'else' part) at the statement's own level, or
+     * before the '}' of the enclosing block or a keyword that starts a new statement.
+     */
+    private void synchronize() {
+        int depth = 0;
+        while (!isAtEnd()) {
+            LexicalAnalyzer.TokenType type = tokens.peekType();
+            if (type == LexicalAnalyzer.TokenType.LBRACE) {
+                depth++;
+            } else if (type == LexicalAnalyzer.TokenType.RBRACE) {
+                if (depth == 0) return;
+                advance();
+                if (--depth == 0 && !check(LexicalAnalyzer.TokenType.ELSE)) return;
+                continue;
+            } else if (depth == 0) {
+                if (type == LexicalAnalyzer.TokenType.SEMICOLON) {
+                    advance();
+                    return;
+                }
+                if (type == LexicalAnalyzer.TokenType.INT || type == LexicalAnalyzer.TokenType.IF
+                        || type == LexicalAnalyzer.TokenType.WHILE || type == LexicalAnalyzer.TokenType.PRINT) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+
     private Declaration parseDeclaration() {
-        String varName = consume(LexicalAnalyzer.TokenType.IDENTIFIER, "Expected variable name after 'int'.").value;
+        consume(LexicalAnalyzer.TokenType.IDENTIFIER, "Expected variable name after 'int'.");
+        String varName = tokens.text();
         consume(LexicalAnalyzer.TokenType.SEMICOLON, "Expected ';' after declaration.");
+        expressions.declare(varName);
         return new Declaration(varName);
     }
 
     private Assignment parseAssignment() {
-        String varName = consume(LexicalAnalyzer.TokenType.IDENTIFIER, "Expected variable name.").value;
+        consume(LexicalAnalyzer.TokenType.IDENTIFIER, "Expected variable name.");
+        String varName = tokens.text();
         consume(LexicalAnalyzer.TokenType.ASSIGN, "Expected '=' in assignment.");
         Expression expr = parseExpression();
         consume(LexicalAnalyzer.TokenType.SEMICOLON, "Expected ';' after assignment.");
@@ -115,75 +267,166 @@ public class SyntaxAnalyzer {
     }
 
     private Block parseBlock() {
+        int start = tokens.peekStart();
         consume(LexicalAnalyzer.TokenType.LBRACE, "Expected '{' to start block.");
         List<Statement> statements = new ArrayList<>();
-        while (!check(LexicalAnalyzer.TokenType.RBRACE) && !isAtEnd()) {
-            statements.add(parseStatement());
+        int scope = expressions.openScope();
+        try {
+            while (!check(LexicalAnalyzer.TokenType.RBRACE) && !isAtEnd()) {
+                Statement statement = parseStatement();
+                if (statement != null) statements.add(statement);
+            }
+        } finally {
+            expressions.closeScope(scope);
         }
         consume(LexicalAnalyzer.TokenType.RBRACE, "Expected '}' to close block.");
-        return new Block(statements);
+        return span(new Block(statements), start);
     }
 
-    /** Parses arithmetic or comparison expressions */
+    /**
+     * Parses an arithmetic or comparison expression by precedence climbing over explicit
+     * stacks instead of one recursive call per precedence level and per parenthesis:
+     *
+     *   comparison  arithmetic [ ('>' | '<' | '==' | '!=') arithmetic ]   (not associative)
+     *   arithmetic  term { ('+' | '-') term }                             (left associative)
+     *   term        factor { ('*' | '/') factor }                         (left associative)
+     *   factor      NUMBER | IDENTIFIER | '(' comparison ')'
+     *
+     * Operands wait on `operands`, operators on `operators`; an operator is applied as soon
+     * as the next one does not bind tighter. Every open '(' pushes a group that remembers
+     * where its operators start, so nesting depth only costs stack entries. The trees,
+     * spans and errors are those of the recursive grammar above, and the nodes are
+     * created in the same order (which ExpressionFactory.hashConsing() relies on).
+     */
     private Expression parseExpression() {
-        Expression left = parseArithmetic();
-        if (match(LexicalAnalyzer.TokenType.GREATER)) {
-            return new BinaryExpression(left, BinaryExpression.Operator.GREATER, parseArithmetic());
-        } else if (match(LexicalAnalyzer.TokenType.LESS)) {
-            return new BinaryExpression(left, BinaryExpression.Operator.LESS, parseArithmetic());
-        } else if (match(LexicalAnalyzer.TokenType.EQUAL)) {
-            return new BinaryExpression(left, BinaryExpression.Operator.EQUAL, parseArithmetic());
-        } else if (match(LexicalAnalyzer.TokenType.NOTEQUAL)) {
-            return new BinaryExpression(left, BinaryExpression.Operator.NOTEQUAL, parseArithmetic());
-        }
-        return left;
-    }
-
-    private Expression parseArithmetic() {
-        Expression expr = parseTerm();
-        while (true) {
-            if (match(LexicalAnalyzer.TokenType.PLUS)) {
-                expr = new BinaryExpression(expr, BinaryExpression.Operator.PLUS, parseTerm());
-            } else if (match(LexicalAnalyzer.TokenType.MINUS)) {
-                expr = new BinaryExpression(expr, BinaryExpression.Operator.MINUS, parseTerm());
-            } else {
-                break;
+        operandCount = 0;
+        operatorCount = 0;
+        groupCount = 0;
+        int base = 0;               // first operator of the innermost group
+        boolean comparison = false; // the innermost group has its comparison already
+        try {
+            while (true) {
+                int start = tokens.peekStart();
+                if (match(LexicalAnalyzer.TokenType.LPAREN)) {
+                    pushGroup(base, start, comparison);
+                    base = operatorCount;
+                    comparison = false;
+                    continue;
+                }
+                if (match(LexicalAnalyzer.TokenType.NUMBER)) {
+                    pushOperand(expressions.number(tokens.number(), start, tokens.end()), start);
+                } else if (match(LexicalAnalyzer.TokenType.IDENTIFIER)) {
+                    pushOperand(expressions.variable(tokens.text(), start, tokens.end()), start);
+                } else {
+                    error("Expected number, variable, or '(' expression ')'.");
+                }
+
+                // After an operand: an operator, a ')' closing a group, or the end of the expression
+                while (true) {
+                    BinaryExpression.Operator operator = operatorAt(tokens.peekType());
+                    int precedence = operator != null ? precedence(operator) : 0;
+                    if (operator != null && !(precedence == COMPARISON && comparison)) {
+                        while (operatorCount > base && precedence(operators[operatorCount - 1]) >= precedence) reduce();
+                        advance();
+                        pushOperator(operator);
+                        if (precedence == COMPARISON) comparison = true;
+                        break;
+                    }
+                    while (operatorCount > base) reduce();
+                    if (groupCount == 0) return operands[--operandCount];
+                    consume(LexicalAnalyzer.TokenType.RPAREN, "Expected ')' after expression.");
+                    groupCount--;
+                    base = groups[3 * groupCount];
+                    operandStarts[operandCount - 1] = groups[3 * groupCount + 1]; // from the '('
+                    comparison = groups[3 * groupCount + 2] != 0;
+                }
             }
+        } finally {
+            Arrays.fill(operands, 0, operandCount, null);
+            operandCount = 0;
+            operatorCount = 0;
+            groupCount = 0;
         }
-        return expr;
     }
 
-    private Expression parseTerm() {
-        Expression expr = parseFactor();
-        while (true) {
-            if (match(LexicalAnalyzer.TokenType.MULT)) {
-                expr = new BinaryExpression(expr, BinaryExpression.Operator.MULT, parseFactor());
-            } else if (match(LexicalAnalyzer.TokenType.DIV)) {
-                expr = new BinaryExpression(expr, BinaryExpression.Operator.DIV, parseFactor());
-            } else {
-                break;
-            }
+    // Precedence levels; all binary operators but the comparisons are left associative
+    private static final int COMPARISON = 1;
+    private static final int ADDITIVE = 2;
+    private static final int MULTIPLICATIVE = 3;
+
+    private static BinaryExpression.Operator operatorAt(LexicalAnalyzer.TokenType type) {
+        if (type == null) return null;
+        switch (type) {
+            case PLUS: return BinaryExpression.Operator.PLUS;
+            case MINUS: return BinaryExpression.Operator.MINUS;
+            case MULT: return BinaryExpression.Operator.MULT;
+            case DIV: return BinaryExpression.Operator.DIV;
+            case GREATER: return BinaryExpression.Operator.GREATER;
+            case LESS: return BinaryExpression.Operator.LESS;
+            case EQUAL: return BinaryExpression.Operator.EQUAL;
+            case NOTEQUAL: return BinaryExpression.Operator.NOTEQUAL;
+            default: return null;
         }
-        return expr;
     }
 
-    private Expression parseFactor() {
-        if (match(LexicalAnalyzer.TokenType.NUMBER)) {
-            return new NumberLiteral(Integer.parseInt(previous().value));
-        } else if (match(LexicalAnalyzer.TokenType.IDENTIFIER)) {
-            return new Variable(previous().value);
-        } else if (match(LexicalAnalyzer.TokenType.LPAREN)) {
-            Expression expr = parseExpression();
-            consume(LexicalAnalyzer.TokenType.RPAREN, "Expected ')' after expression.");
-            return expr;
-        } else {
-            error("Expected number, variable, or '(' expression ')'.");
-            return null;
+    private static int precedence(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case MULT:
+            case DIV:
+                return MULTIPLICATIVE;
+            case PLUS:
+            case MINUS:
+                return ADDITIVE;
+            default:
+                return COMPARISON;
+        }
+    }
+
+    /** Applies the topmost operator to the two topmost operands; the node starts where its left operand does. */
+    private void reduce() {
+        BinaryExpression.Operator operator = operators[--operatorCount];
+        Expression right = operands[--operandCount];
+        operands[operandCount] = null;
+        Expression left = operands[operandCount - 1];
+        operands[operandCount - 1] = binary(left, operator, right, operandStarts[operandCount - 1]);
+    }
+
+    private void pushOperand(Expression operand, int start) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+            operandStarts = Arrays.copyOf(operandStarts, operandCount * 2);
         }
+        operands[operandCount] = operand;
+        operandStarts[operandCount++] = start;
+    }
+
+    private void pushOperator(BinaryExpression.Operator operator) {
+        if (operatorCount == operators.length) operators = Arrays.copyOf(operators, operatorCount * 2);
+        operators[operatorCount++] = operator;
+    }
+
+    /** An open '(': the enclosing group's operator base, the '(' offset and whether the enclosing group has its comparison. */
+    private void pushGroup(int base, int start, boolean comparison) {
+        if (3 * groupCount + 3 > groups.length) groups = Arrays.copyOf(groups, groups.length * 2);
+        groups[3 * groupCount] = base;
+        groups[3 * groupCount + 1] = start;
+        groups[3 * groupCount + 2] = comparison ? 1 : 0;
+        groupCount++;
     }
 
     // === Utility Methods ===
 
+    /** Records the node's source span: from `start` to the end of the last consumed token. */
+    private <T extends SpannedNode> T span(T node, int start) {
+        node.setSpan(start, tokens.end());
+        return node;
+    }
+
+    /** A binary node from `start` to the end of the right operand (just parsed). */
+    private Expression binary(Expression left, BinaryExpression.Operator operator, Expression right, int start) {
+        return expressions.binary(left, operator, right, start, tokens.end());
+    }
+
     private boolean match(LexicalAnalyzer.TokenType type) {
         if (check(type)) {
             advance();
@@ -192,36 +435,44 @@ public class SyntaxAnalyzer {
         return false;
     }
 
-    private LexicalAnalyzer.Token consume(LexicalAnalyzer.TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(LexicalAnalyzer.TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
         error(message);
-        return null;
     }
 
     private boolean check(LexicalAnalyzer.TokenType type) {
-        return !isAtEnd() && peek().type == type;
+        return tokens.peekType() == type;
     }
 
     private LexicalAnalyzer.Token peek() {
-        return tokens.get(currentIndex);
-    }
-
-    private LexicalAnalyzer.Token advance() {
-        if (!isAtEnd()) currentIndex++;
-        return previous();
+        return tokens.peek();
     }
 
-    private LexicalAnalyzer.Token previous() {
-        return tokens.get(currentIndex - 1);
+    private void advance() {
+        if (!isAtEnd()) {
+            tokens.advance();
+            consumed++;
+        }
     }
 
     private boolean isAtEnd() {
-        return currentIndex >= tokens.size();
+        return tokens.peekType() == null;
     }
 
     private void error(String message) {
         LexicalAnalyzer.Token token = isAtEnd() ? null : peek();
         String positionInfo = (token != null) ? " at token: '" + token.value + "' (type=" + token.type + ")" : " at end of input";
-        throw new RuntimeException("Syntax Error: " + message + positionInfo);
+        if (diagnostics == null) {
+            throw new RuntimeException("Syntax Error: " + message + positionInfo);
+        }
+        diagnostics.add(new Diagnostic("Syntax Error: " + message + positionInfo, token != null ? token.start : tokens.end()));
+        if (++errorCount >= MAX_ERRORS) {
+            diagnostics.add(new Diagnostic("Syntax Error: Too many errors, parsing stopped.", -1));
+            throw new ParseError(true);
+        }
+        throw new ParseError(false);
     }
 }
@@ -0,0 +1,17 @@
+/**
+ * TacPass.java
+ * -------------
+ * One **optimization pass** over three-address code. Passes rewrite the TacProgram in
+ * place (deleted instructions become NOPs) and are chained by the PassManager, which
+ * compacts the program after each pass and repeats the whole pipeline until no pass
+ * reports a change.
+ */
+
+public interface TacPass {
+
+    /** Short name used in the optimization report, e.g. "constant-folding". */
+    String name();
+
+    /** Runs the pass once over the whole program; returns true if anything changed. */
+    boolean run(TacProgram program);
+}
@@ -0,0 +1,453 @@
+/**
+ * TacProgram.java
+ * ----------------
+ * In-memory **three-address code (TAC)** produced by the IntermediateCodeGenerator.
+ *
+ * The program is a flat list of quadruples (opcode, dest, src1, src2) stored in four
+ * parallel int arrays, so later stages can walk or rewrite it without re-parsing text.
+ *
+ * Instructions:
+ *   ADD .. NE       dest = src1 op src2       (comparisons produce 1 or 0)
+ *   COPY            dest = src1
+ *   PRINT           print src1
+ *   LABEL           dest:                     (dest is a label operand)
+ *   JUMP            goto dest
+ *   JUMP_IF_FALSE   ifFalse src1 goto dest
+ *   NOP             (removed by an optimization pass; dropped by compact())
+ *
+ * Operands are encoded as ints: the kind (variable, temporary, constant, label) in the
+ * top bits and an index in the low 28 bits. Variables index the name table, temporaries
+ * are numbered t1, t2, ..., constants index the constant pool and labels are L1, L2, ...
+ * An operand of 0 means "unused".
+ *
+ * Optimization passes rewrite instructions in place with set() and delete them by
+ * turning them into NOPs, then call compact() once to close the gaps.
+ *
+ * writeTo() serializes the whole program in one pass to any Writer or Appendable.
+ * writeBinary() and readBinary() store it exactly (name table, constant pool, counters
+ * and quadruples), e.g. for the CompilationCache.
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TacProgram {
+
+    // === Opcodes ===
+    public static final int ADD = 0;
+    public static final int SUB = 1;
+    public static final int MUL = 2;
+    public static final int DIV = 3;
+    public static final int GT = 4;
+    public static final int LT = 5;
+    public static final int EQ = 6;
+    public static final int NE = 7;
+    public static final int COPY = 8;
+    public static final int PRINT = 9;
+    public static final int LABEL = 10;
+    public static final int JUMP = 11;
+    public static final int JUMP_IF_FALSE = 12;
+    public static final int NOP = 13;
+
+    private static final String[] OPERATOR_TEXT = {"+", "-", "*", "/", ">", "<", "==", "!="};
+
+    // === Operand kinds ===
+    public static final int NONE = 0;
+    public static final int VAR = 1;
+    public static final int TEMP = 2;
+    public static final int CONST = 3;
+    public static final int LABEL_REF = 4;
+
+    private static final int KIND_SHIFT = 28;
+    private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+
+    private int[] opcodes = new int[64];
+    private int[] dests = new int[64];
+    private int[] src1s = new int[64];
+    private int[] src2s = new int[64];
+    private int size = 0;
+
+    private final List<String> variables = new ArrayList<>();
+    private final Map<String, Integer> variableIndexes = new HashMap<>();
+    private int[] constants = new int[16];
+    private int constantCount = 0;
+    private final Map<Integer, Integer> constantIndexes = new HashMap<>();
+    private int tempCount = 0;
+    private int labelCount = 0;
+
+    // === Operand encoding ===
+
+    public static int kind(int operand) {
+        return operand >>> KIND_SHIFT;
+    }
+
+    public static int index(int operand) {
+        return operand & INDEX_MASK;
+    }
+
+    public static int temp(int number) {
+        return (TEMP << KIND_SHIFT) | number;
+    }
+
+    public static int label(int number) {
+        return (LABEL_REF << KIND_SHIFT) | number;
+    }
+
+    public static int var(int index) {
+        return (VAR << KIND_SHIFT) | index;
+    }
+
+    /** The operand of the constant pool entry at `index` (see constant(int) to add one). */
+    public static int constantOperand(int index) {
+        return (CONST << KIND_SHIFT) | index;
+    }
+
+    /** Returns the operand of the named variable, adding it to the name table if needed. */
+    public int variable(String name) {
+        Integer index = variableIndexes.get(name);
+        if (index == null) {
+            index = variables.size();
+            variables.add(name);
+            variableIndexes.put(name, index);
+        }
+        return var(index);
+    }
+
+    /** Returns the operand for an integer constant (constants are pooled). */
+    public int constant(int value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            index = constantCount;
+            constants[constantCount++] = value;
+            constantIndexes.put(value, index);
+        }
+        return constantOperand(index);
+    }
+
+    public int newTemp() {
+        return temp(++tempCount);
+    }
+
+    public int newLabel() {
+        return label(++labelCount);
+    }
+
+    /** Sets the number of temporaries, e.g. after a register allocator has renumbered them. */
+    public void setTempCount(int count) {
+        tempCount = count;
+    }
+
+    /** Sets the number of labels, e.g. when the code is loaded from a ProgramImage. */
+    public void setLabelCount(int count) {
+        labelCount = count;
+    }
+
+    /**
+     * Drops variables that no instruction refers to any more and renumbers the rest,
+     * keeping their order. Returns how many variables were dropped.
+     */
+    public int removeUnusedVariables() {
+        int[] newIndex = new int[variables.size()];
+        Arrays.fill(newIndex, -1);
+        for (int i = 0; i < size; i++) {
+            markVariable(dests[i], newIndex);
+            markVariable(src1s[i], newIndex);
+            markVariable(src2s[i], newIndex);
+        }
+        List<String> kept = new ArrayList<>();
+        for (int v = 0; v < newIndex.length; v++) {
+            if (newIndex[v] == 0) {
+                newIndex[v] = kept.size();
+                kept.add(variables.get(v));
+            }
+        }
+        int removed = variables.size() - kept.size();
+        if (removed == 0) return 0;
+        for (int i = 0; i < size; i++) {
+            dests[i] = renumberVariable(dests[i], newIndex);
+            src1s[i] = renumberVariable(src1s[i], newIndex);
+            src2s[i] = renumberVariable(src2s[i], newIndex);
+        }
+        variables.clear();
+        variableIndexes.clear();
+        for (String name : kept) {
+            variableIndexes.put(name, variables.size());
+            variables.add(name);
+        }
+        return removed;
+    }
+
+    private static void markVariable(int operand, int[] newIndex) {
+        if (kind(operand) == VAR) newIndex[index(operand)] = 0;
+    }
+
+    private static int renumberVariable(int operand, int[] newIndex) {
+        return kind(operand) == VAR ? var(newIndex[index(operand)]) : operand;
+    }
+
+    // === Building ===
+
+    public void emit(int opcode, int dest, int src1, int src2) {
+        if (size == opcodes.length) {
+            int capacity = size * 2;
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            dests = Arrays.copyOf(dests, capacity);
+            src1s = Arrays.copyOf(src1s, capacity);
+            src2s = Arrays.copyOf(src2s, capacity);
+        }
+        opcodes[size] = opcode;
+        dests[size] = dest;
+        src1s[size] = src1;
+        src2s[size] = src2;
+        size++;
+    }
+
+    /** Overwrites instruction i. */
+    public void set(int i, int opcode, int dest, int src1, int src2) {
+        opcodes[i] = opcode;
+        dests[i] = dest;
+        src1s[i] = src1;
+        src2s[i] = src2;
+    }
+
+    /** Inserts an instruction before instruction i (O(n): shifts the rest of the program). */
+    public void insert(int i, int opcode, int dest, int src1, int src2) {
+        emit(NOP, NONE, NONE, NONE);
+        System.arraycopy(opcodes, i, opcodes, i + 1, size - 1 - i);
+        System.arraycopy(dests, i, dests, i + 1, size - 1 - i);
+        System.arraycopy(src1s, i, src1s, i + 1, size - 1 - i);
+        System.arraycopy(src2s, i, src2s, i + 1, size - 1 - i);
+        set(i, opcode, dest, src1, src2);
+    }
+
+    /**
+     * Removes all instructions but keeps the name table, constant pool and temporary and
+     * label counters, so a pass can re-emit the program with the same operands.
+     */
+    public void clearInstructions() {
+        size = 0;
+    }
+
+    /** Turns instruction i into a NOP. */
+    public void remove(int i) {
+        set(i, NOP, NONE, NONE, NONE);
+    }
+
+    /** Drops all NOPs, keeping the order of the remaining instructions; returns how many were dropped. */
+    public int compact() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (opcodes[i] == NOP) continue;
+            opcodes[kept] = opcodes[i];
+            dests[kept] = dests[i];
+            src1s[kept] = src1s[i];
+            src2s[kept] = src2s[i];
+            kept++;
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    // === Accessors ===
+
+    public int size() {
+        return size;
+    }
+
+    public int opcode(int i) {
+        return opcodes[i];
+    }
+
+    public int dest(int i) {
+        return dests[i];
+    }
+
+    public int src1(int i) {
+        return src1s[i];
+    }
+
+    public int src2(int i) {
+        return src2s[i];
+    }
+
+    /** Value of a CONST operand. */
+    public int constantValue(int operand) {
+        return constants[index(operand)];
+    }
+
+    /** Number of entries in the constant pool. */
+    public int constantCount() {
+        return constantCount;
+    }
+
+    /** Value of constant-pool entry `index`. */
+    public int constantAt(int index) {
+        return constants[index];
+    }
+
+    public String variableName(int index) {
+        return variables.get(index);
+    }
+
+    public int variableCount() {
+        return variables.size();
+    }
+
+    /** Highest temporary number in use (temporaries are t1..tN). */
+    public int tempCount() {
+        return tempCount;
+    }
+
+    public int labelCount() {
+        return labelCount;
+    }
+
+    /** Source text of a binary opcode's operator, e.g. "+" for ADD. */
+    public static String operatorText(int opcode) {
+        return OPERATOR_TEXT[opcode];
+    }
+
+    public static boolean isBinary(int opcode) {
+        return opcode <= NE;
+    }
+
+    /** True for instructions that write their dest operand (binary operations and COPY). */
+    public static boolean hasDest(int opcode) {
+        return opcode <= COPY;
+    }
+
+    /**
+     * Dense number of a variable or temporary operand, for analyses that keep one entry
+     * per value: variables come first (0 .. V-1), then temporaries (t1 is V).
+     * Returns -1 for constants, labels and unused operands.
+     */
+    public int valueId(int operand) {
+        switch (kind(operand)) {
+            case VAR: return index(operand);
+            case TEMP: return variables.size() + index(operand) - 1;
+            default: return -1;
+        }
+    }
+
+    /** Number of distinct value ids: variables plus temporaries. */
+    public int valueCount() {
+        return variables.size() + tempCount;
+    }
+
+    // === Serialization ===
+
+    public String operandToString(int operand) {
+        switch (kind(operand)) {
+            case VAR:
+                return variables.get(index(operand));
+            case TEMP:
+                return "t" + index(operand);
+            case CONST:
+                return Integer.toString(constants[index(operand)]);
+            case LABEL_REF:
+                return "L" + index(operand);
+            default:
+                return "_";
+        }
+    }
+
+    /** Appends instruction i in text form (without a line break). */
+    public void appendInstruction(int i, StringBuilder out) {
+        int opcode = opcodes[i];
+        if (isBinary(opcode)) {
+            out.append(operandToString(dests[i])).append(" = ")
+                    .append(operandToString(src1s[i])).append(' ').append(OPERATOR_TEXT[opcode]).append(' ')
+                    .append(operandToString(src2s[i]));
+            return;
+        }
+        switch (opcode) {
+            case COPY:
+                out.append(operandToString(dests[i])).append(" = ").append(operandToString(src1s[i]));
+                break;
+            case PRINT:
+                out.append("print ").append(operandToString(src1s[i]));
+                break;
+            case LABEL:
+                out.append(operandToString(dests[i])).append(':');
+                break;
+            case JUMP:
+                out.append("goto ").append(operandToString(dests[i]));
+                break;
+            case JUMP_IF_FALSE:
+                out.append("ifFalse ").append(operandToString(src1s[i])).append(" goto ").append(operandToString(dests[i]));
+                break;
+            case NOP:
+                out.append("nop");
+                break;
+            default:
+                out.append("?").append(opcode);
+        }
+    }
+
+    /** Writes the whole program, one instruction per line, in 8 KB chunks. */
+    public void writeTo(Writer out) throws IOException {
+        StringBuilder chunk = new StringBuilder(8192);
+        for (int i = 0; i < size; i++) {
+            appendInstruction(i, chunk);
+            chunk.append('\n');
+            if (chunk.length() >= 8000) {
+                out.append(chunk);
+                chunk.setLength(0);
+            }
+        }
+        out.append(chunk);
+    }
+
+    /** Writes the program in a compact binary form that readBinary() restores exactly. */
+    public void writeBinary(DataOutput out) throws IOException {
+        out.writeInt(variables.size());
+        for (String name : variables) out.writeUTF(name);
+        out.writeInt(constantCount);
+        for (int c = 0; c < constantCount; c++) out.writeInt(constants[c]);
+        out.writeInt(tempCount);
+        out.writeInt(labelCount);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(opcodes[i]);
+            out.writeInt(dests[i]);
+            out.writeInt(src1s[i]);
+            out.writeInt(src2s[i]);
+        }
+    }
+
+    public static TacProgram readBinary(DataInput in) throws IOException {
+        TacProgram program = new TacProgram();
+        int variableCount = in.readInt();
+        for (int v = 0; v < variableCount; v++) program.variable(in.readUTF());
+        int constantCount = in.readInt();
+        for (int c = 0; c < constantCount; c++) program.constant(in.readInt());
+        program.tempCount = in.readInt();
+        program.labelCount = in.readInt();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            program.emit(in.readByte(), in.readInt(), in.readInt(), in.readInt());
+        }
+        return program;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            appendInstruction(i, out);
+            out.append('\n');
+        }
+        return out.toString();
+    }
+}
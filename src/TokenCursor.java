@@ -0,0 +1,86 @@
+/**
+ * TokenCursor.java
+ * -----------------
+ * Pull-based access to a sequence of tokens, as consumed by the SyntaxAnalyzer.
+ *
+ * A cursor only exposes the next token, so the tokens do not have to be held in memory
+ * all at once. Once a token has been consumed, its identifier name or number value is
+ * available through text() and number(), so the parser never needs a Token object
+ * except to describe an error. Source offsets are exposed so that the parser can record
+ * node spans. Implementations:
+ * - ListCursor: walks a token list produced by `LexicalAnalyzer.tokenize`.
+ * - TokenStream.cursor(): walks a compact TokenStream.
+ * - StreamingLexer: scans tokens lazily from a file or Reader.
+ */
+
+import java.util.List;
+
+public interface TokenCursor {
+
+    /** Returns the type of the next token without consuming it, or null at end of input. */
+    LexicalAnalyzer.TokenType peekType();
+
+    /** Returns the next token without consuming it, or null at end of input. */
+    LexicalAnalyzer.Token peek();
+
+    /** Consumes the next token. */
+    void advance();
+
+    /** Text of the most recently consumed token (identifier names are interned). */
+    String text();
+
+    /** Value of the most recently consumed NUMBER token. */
+    int number();
+
+    /** Source offset of the next token, or -1 at end of input or if unknown. */
+    int peekStart();
+
+    /** Source offset just past the most recently consumed token, or -1 if unknown. */
+    int end();
+
+    /** Cursor over an already materialized token list. */
+    class ListCursor implements TokenCursor {
+        private final List<LexicalAnalyzer.Token> tokens;
+        private int index = 0;
+        private LexicalAnalyzer.Token previous;
+
+        public ListCursor(List<LexicalAnalyzer.Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public LexicalAnalyzer.TokenType peekType() {
+            return index < tokens.size() ? tokens.get(index).type : null;
+        }
+
+        @Override
+        public LexicalAnalyzer.Token peek() {
+            return index < tokens.size() ? tokens.get(index) : null;
+        }
+
+        @Override
+        public void advance() {
+            previous = tokens.get(index++);
+        }
+
+        @Override
+        public String text() {
+            return previous.value;
+        }
+
+        @Override
+        public int number() {
+            return Integer.parseInt(previous.value);
+        }
+
+        @Override
+        public int peekStart() {
+            return index < tokens.size() ? tokens.get(index).start : -1;
+        }
+
+        @Override
+        public int end() {
+            return previous == null ? -1 : previous.end();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * TokenGapBuffer.java
+ * --------------------
+ * The tokens of a text that is being edited (see IncrementalParser). Like a TokenStream
+ * it keeps each token's type, start offset, length and value in parallel arrays, but
+ * with a **gap** at the last edit, so that replacing the tokens of an edit neither
+ * copies nor renumbers the tokens behind it.
+ *
+ * - Array slots [gapStart, gapEnd) are unused: token i is in slot i before the gap and
+ *   in slot i + gap length behind it.
+ * - The start offsets stored behind the gap leave out the length changes of the edits
+ *   made since the tokens went there; `tailShift` is their sum. An edit adds its length
+ *   change to tailShift instead of to every following token.
+ * - Moving the gap converts the offsets of the tokens it passes, so an edit costs the
+ *   tokens it replaces plus its distance (in tokens) from the previous edit.
+ *
+ * The SyntaxAnalyzer reads the tokens through cursor(), as from a TokenStream. NUMBER
+ * text is sliced from the source the offsets refer to.
+ */
+
+import java.util.Arrays;
+
+public class TokenGapBuffer {
+
+    private static final LexicalAnalyzer.TokenType[] TYPES = LexicalAnalyzer.TokenType.values();
+    private static final int MIN_GAP = 64;
+
+    private final NameTable names;
+    private final CharSequence source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] values;
+    private int gapStart;
+    private int gapEnd;
+    private int tailShift;
+
+    /** Copies the tokens of `tokens`, whose offsets refer to `source`; the gap starts behind the last one. */
+    public TokenGapBuffer(TokenStream tokens, CharSequence source) {
+        this.names = tokens.names();
+        this.source = source;
+        int size = tokens.size();
+        int capacity = size + MIN_GAP;
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            set(i, tokens, i);
+        }
+        gapStart = size;
+        gapEnd = capacity;
+    }
+
+    // === Accessors ===
+
+    public int size() {
+        return types.length - (gapEnd - gapStart);
+    }
+
+    public NameTable names() {
+        return names;
+    }
+
+    public LexicalAnalyzer.TokenType type(int index) {
+        return TYPES[types[slot(index)]];
+    }
+
+    public int start(int index) {
+        return index < gapStart ? starts[index] : starts[index + gapEnd - gapStart] + tailShift;
+    }
+
+    public int length(int index) {
+        return lengths[slot(index)];
+    }
+
+    public int end(int index) {
+        return start(index) + length(index);
+    }
+
+    /** Index of the first token starting at or after the given source offset (size() if none). */
+    public int indexAt(int offset) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (start(mid) < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /** Parsed value of a NUMBER token, or the NameTable ID of an IDENTIFIER. */
+    public int value(int index) {
+        return values[slot(index)];
+    }
+
+    /** Returns the token text; identifier names are the interned Strings, numbers their lexemes. */
+    public String text(int index) {
+        LexicalAnalyzer.TokenType type = type(index);
+        if (type == LexicalAnalyzer.TokenType.IDENTIFIER) return names.name(value(index));
+        if (type == LexicalAnalyzer.TokenType.NUMBER) return source.subSequence(start(index), end(index)).toString();
+        return TokenStream.fixedText(type);
+    }
+
+    /** Materializes one token as a Token object (for diagnostics and printing). */
+    public LexicalAnalyzer.Token token(int index) {
+        return new LexicalAnalyzer.Token(type(index), text(index), start(index));
+    }
+
+    private int slot(int index) {
+        return index < gapStart ? index : index + gapEnd - gapStart;
+    }
+
+    // === Editing ===
+
+    /**
+     * Replaces tokens [from, to) with the tokens of `replacement` (which must share this
+     * buffer's NameTable) and moves the start offsets of the following tokens by `delta`.
+     */
+    public void replace(int from, int to, TokenStream replacement, int delta) {
+        moveGap(to);
+        gapStart = from;
+        int count = replacement.size();
+        if (count > gapEnd - gapStart) grow(count);
+        for (int k = 0; k < count; k++) {
+            set(gapStart + k, replacement, k);
+        }
+        gapStart += count;
+        tailShift += delta;
+    }
+
+    /** Moves the gap in front of token `index`, converting the offsets of the tokens it passes. */
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int count = gapStart - index;
+            int to = gapEnd - count;
+            System.arraycopy(types, index, types, to, count);
+            System.arraycopy(starts, index, starts, to, count);
+            System.arraycopy(lengths, index, lengths, to, count);
+            System.arraycopy(values, index, values, to, count);
+            for (int i = to; i < gapEnd; i++) starts[i] -= tailShift;
+            gapStart = index;
+            gapEnd = to;
+        } else if (index > gapStart) {
+            int count = index - gapStart;
+            System.arraycopy(types, gapEnd, types, gapStart, count);
+            System.arraycopy(starts, gapEnd, starts, gapStart, count);
+            System.arraycopy(lengths, gapEnd, lengths, gapStart, count);
+            System.arraycopy(values, gapEnd, values, gapStart, count);
+            for (int i = gapStart; i < index; i++) starts[i] += tailShift;
+            gapStart = index;
+            gapEnd += count;
+        }
+    }
+
+    /** Makes the gap at least `needed` slots long (and at least as long as the buffer). */
+    private void grow(int needed) {
+        int tail = types.length - gapEnd;
+        int capacity = Math.max(types.length * 2, gapStart + needed + tail + MIN_GAP);
+        int to = capacity - tail;
+        types = moveTail(Arrays.copyOf(types, capacity), tail, to);
+        starts = moveTail(Arrays.copyOf(starts, capacity), tail, to);
+        lengths = moveTail(Arrays.copyOf(lengths, capacity), tail, to);
+        values = moveTail(Arrays.copyOf(values, capacity), tail, to);
+        gapEnd = to;
+    }
+
+    private <T> T moveTail(T array, int tail, int to) {
+        System.arraycopy(array, gapEnd, array, to, tail);
+        return array;
+    }
+
+    private void set(int slot, TokenStream tokens, int index) {
+        types[slot] = (byte) tokens.type(index).ordinal();
+        starts[slot] = tokens.start(index);
+        lengths[slot] = tokens.length(index);
+        values[slot] = tokens.number(index);
+    }
+
+    // === Reading ===
+
+    public Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    /** Cursor positioned at the given token index. */
+    public Cursor cursor(int index) {
+        return new Cursor(index);
+    }
+
+    /** Cursor for the SyntaxAnalyzer that reads straight from the arrays. */
+    public class Cursor implements TokenCursor {
+        private int index;
+
+        private Cursor(int index) {
+            this.index = index;
+        }
+
+        /** Index of the next token in the buffer. */
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public LexicalAnalyzer.TokenType peekType() {
+            return index < size() ? type(index) : null;
+        }
+
+        @Override
+        public LexicalAnalyzer.Token peek() {
+            return index < size() ? token(index) : null;
+        }
+
+        @Override
+        public void advance() {
+            index++;
+        }
+
+        @Override
+        public String text() {
+            return TokenGapBuffer.this.text(index - 1);
+        }
+
+        @Override
+        public int number() {
+            return value(index - 1);
+        }
+
+        @Override
+        public int peekStart() {
+            return index < size() ? start(index) : -1;
+        }
+
+        @Override
+        public int end() {
+            return index > 0 ? TokenGapBuffer.this.end(index - 1) : -1;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/**
+ * TokenScanner.java
+ * ------------------
+ * This class is the **table-driven DFA scanner** behind `LexicalAnalyzer.tokenize`.
+ * It recognizes the same tokens as the regular expressions in `LexicalAnalyzer`,
+ * but does so in a single linear pass over the input with no regex matching.
+ *
+ * How it works:
+ * - Every character is mapped to a character class through a 128-entry lookup table.
+ * - A transition table (state x character class) drives the automaton.
+ * - The scanner follows the longest match (maximal munch), so `==` is read as EQUAL
+ *   rather than two ASSIGN tokens.
+ * - Identifiers are checked against the keywords `int`, `if`, `else`, `while` and
+ *   `print` with a switch on length and characters, without allocating a String.
+ * - Whitespace and `//` comments are skipped.
+ * - The input is held in a character window; subclasses such as StreamingLexer
+ *   refill it so that files larger than memory can be scanned.
+ *
+ * Usage:
+ *   TokenScanner scanner = new TokenScanner(code);
+ *   while (scanner.next() != null) { ... scanner.tokenType() / scanner.tokenText() ... }
+ *
+ * tokenText() must be read before the next call to next(), since the window may move.
+ *
+ * Errors: by default an unexpected character or an out-of-range literal throws a
+ * RuntimeException ("Lexical Error: ..."). After reportErrorsTo(list), the scanner
+ * records a Diagnostic instead, skips the character (or reads the literal as 0) and
+ * carries on, so the parser can report every error in one pass.
+ */
+
+import java.util.List;
+
+public class TokenScanner {
+
+    // === Character classes ===
+    private static final int C_OTHER = 0;
+    private static final int C_SPACE = 1;
+    private static final int C_NEWLINE = 2;
+    private static final int C_LETTER = 3;
+    private static final int C_DIGIT = 4;
+    private static final int C_SLASH = 5;
+    private static final int C_EQUALS = 6;
+    private static final int C_BANG = 7;
+    private static final int C_SEMICOLON = 8;
+    private static final int C_PLUS = 9;
+    private static final int C_MINUS = 10;
+    private static final int C_STAR = 11;
+    private static final int C_GREATER = 12;
+    private static final int C_LESS = 13;
+    private static final int C_LPAREN = 14;
+    private static final int C_RPAREN = 15;
+    private static final int C_LBRACE = 16;
+    private static final int C_RBRACE = 17;
+    private static final int CLASS_COUNT = 18;
+
+    // === DFA states ===
+    private static final int DEAD = -1;
+    private static final int S_START = 0;
+    private static final int S_SPACE = 1;
+    private static final int S_IDENTIFIER = 2;
+    private static final int S_NUMBER = 3;
+    private static final int S_SLASH = 4;
+    private static final int S_COMMENT = 5;
+    private static final int S_ASSIGN = 6;
+    private static final int S_EQUAL = 7;
+    private static final int S_BANG = 8;
+    private static final int S_NOTEQUAL = 9;
+    private static final int S_SEMICOLON = 10;
+    private static final int S_PLUS = 11;
+    private static final int S_MINUS = 12;
+    private static final int S_MULT = 13;
+    private static final int S_GREATER = 14;
+    private static final int S_LESS = 15;
+    private static final int S_LPAREN = 16;
+    private static final int S_RPAREN = 17;
+    private static final int S_LBRACE = 18;
+    private static final int S_RBRACE = 19;
+    private static final int STATE_COUNT = 20;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    private static final byte[][] TRANSITIONS = new byte[STATE_COUNT][CLASS_COUNT];
+    private static final LexicalAnalyzer.TokenType[] ACCEPTS = new LexicalAnalyzer.TokenType[STATE_COUNT];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = C_LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = C_LETTER;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = C_DIGIT;
+        CHAR_CLASS['_'] = C_LETTER;
+        CHAR_CLASS[' '] = C_SPACE;
+        CHAR_CLASS['\t'] = C_SPACE;
+        CHAR_CLASS[0x0B] = C_SPACE;
+        CHAR_CLASS['\f'] = C_SPACE;
+        CHAR_CLASS['\n'] = C_NEWLINE;
+        CHAR_CLASS['\r'] = C_NEWLINE;
+        CHAR_CLASS['/'] = C_SLASH;
+        CHAR_CLASS['='] = C_EQUALS;
+        CHAR_CLASS['!'] = C_BANG;
+        CHAR_CLASS[';'] = C_SEMICOLON;
+        CHAR_CLASS['+'] = C_PLUS;
+        CHAR_CLASS['-'] = C_MINUS;
+        CHAR_CLASS['*'] = C_STAR;
+        CHAR_CLASS['>'] = C_GREATER;
+        CHAR_CLASS['<'] = C_LESS;
+        CHAR_CLASS['('] = C_LPAREN;
+        CHAR_CLASS[')'] = C_RPAREN;
+        CHAR_CLASS['{'] = C_LBRACE;
+        CHAR_CLASS['}'] = C_RBRACE;
+
+        for (byte[] row : TRANSITIONS) {
+            java.util.Arrays.fill(row, (byte) DEAD);
+        }
+
+        // From the start state
+        TRANSITIONS[S_START][C_SPACE] = S_SPACE;
+        TRANSITIONS[S_START][C_NEWLINE] = S_SPACE;
+        TRANSITIONS[S_START][C_LETTER] = S_IDENTIFIER;
+        TRANSITIONS[S_START][C_DIGIT] = S_NUMBER;
+        TRANSITIONS[S_START][C_SLASH] = S_SLASH;
+        TRANSITIONS[S_START][C_EQUALS] = S_ASSIGN;
+        TRANSITIONS[S_START][C_BANG] = S_BANG;
+        TRANSITIONS[S_START][C_SEMICOLON] = S_SEMICOLON;
+        TRANSITIONS[S_START][C_PLUS] = S_PLUS;
+        TRANSITIONS[S_START][C_MINUS] = S_MINUS;
+        TRANSITIONS[S_START][C_STAR] = S_MULT;
+        TRANSITIONS[S_START][C_GREATER] = S_GREATER;
+        TRANSITIONS[S_START][C_LESS] = S_LESS;
+        TRANSITIONS[S_START][C_LPAREN] = S_LPAREN;
+        TRANSITIONS[S_START][C_RPAREN] = S_RPAREN;
+        TRANSITIONS[S_START][C_LBRACE] = S_LBRACE;
+        TRANSITIONS[S_START][C_RBRACE] = S_RBRACE;
+
+        // Multi-character tokens
+        TRANSITIONS[S_SPACE][C_SPACE] = S_SPACE;
+        TRANSITIONS[S_SPACE][C_NEWLINE] = S_SPACE;
+        TRANSITIONS[S_IDENTIFIER][C_LETTER] = S_IDENTIFIER;
+        TRANSITIONS[S_IDENTIFIER][C_DIGIT] = S_IDENTIFIER;
+        TRANSITIONS[S_NUMBER][C_DIGIT] = S_NUMBER;
+        TRANSITIONS[S_SLASH][C_SLASH] = S_COMMENT;
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            if (c != C_NEWLINE) TRANSITIONS[S_COMMENT][c] = S_COMMENT;
+        }
+        TRANSITIONS[S_ASSIGN][C_EQUALS] = S_EQUAL;
+        TRANSITIONS[S_BANG][C_EQUALS] = S_NOTEQUAL;
+
+        ACCEPTS[S_SPACE] = LexicalAnalyzer.TokenType.WHITESPACE;
+        ACCEPTS[S_IDENTIFIER] = LexicalAnalyzer.TokenType.IDENTIFIER;
+        ACCEPTS[S_NUMBER] = LexicalAnalyzer.TokenType.NUMBER;
+        ACCEPTS[S_SLASH] = LexicalAnalyzer.TokenType.DIV;
+        ACCEPTS[S_COMMENT] = LexicalAnalyzer.TokenType.COMMENT;
+        ACCEPTS[S_ASSIGN] = LexicalAnalyzer.TokenType.ASSIGN;
+        ACCEPTS[S_EQUAL] = LexicalAnalyzer.TokenType.EQUAL;
+        ACCEPTS[S_NOTEQUAL] = LexicalAnalyzer.TokenType.NOTEQUAL;
+        ACCEPTS[S_SEMICOLON] = LexicalAnalyzer.TokenType.SEMICOLON;
+        ACCEPTS[S_PLUS] = LexicalAnalyzer.TokenType.PLUS;
+        ACCEPTS[S_MINUS] = LexicalAnalyzer.TokenType.MINUS;
+        ACCEPTS[S_MULT] = LexicalAnalyzer.TokenType.MULT;
+        ACCEPTS[S_GREATER] = LexicalAnalyzer.TokenType.GREATER;
+        ACCEPTS[S_LESS] = LexicalAnalyzer.TokenType.LESS;
+        ACCEPTS[S_LPAREN] = LexicalAnalyzer.TokenType.LPAREN;
+        ACCEPTS[S_RPAREN] = LexicalAnalyzer.TokenType.RPAREN;
+        ACCEPTS[S_LBRACE] = LexicalAnalyzer.TokenType.LBRACE;
+        ACCEPTS[S_RBRACE] = LexicalAnalyzer.TokenType.RBRACE;
+    }
+
+    // Window over the input: buffer[0..limit) holds the characters starting at offset `base`.
+    protected char[] buffer;
+    protected int limit;
+    protected long base = 0;
+    private int position = 0;
+    private int discardedLines = 0;
+
+    private LexicalAnalyzer.TokenType tokenType;
+    private int tokenStart;
+    private int tokenEnd;
+
+    private List<Diagnostic> diagnostics; // null = throw on the first error
+
+    public TokenScanner(String input) {
+        this.buffer = input.toCharArray();
+        this.limit = buffer.length;
+    }
+
+    /** Scans input[from..limit) in place; offsets are reported relative to the start of input. */
+    public TokenScanner(char[] input, int from, int limit) {
+        this.buffer = input;
+        this.position = from;
+        this.limit = limit;
+    }
+
+    /** For subclasses that feed the scanner through {@link #refill(int)}. */
+    protected TokenScanner(int windowSize) {
+        this.buffer = new char[windowSize];
+        this.limit = 0;
+    }
+
+    /**
+     * The whole input, indexed by token offset, or null if the scanner only holds a window
+     * of it (StreamingLexer).
+     */
+    public char[] input() {
+        return buffer;
+    }
+
+    /** Records lexical errors into `diagnostics` and keeps scanning instead of throwing. */
+    public void reportErrorsTo(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Scans the next significant token (whitespace and comments are skipped).
+     * Returns its type, or null once the end of the input has been reached.
+     */
+    public LexicalAnalyzer.TokenType next() {
+        while (true) {
+            if (position == limit && !more(position)) break;
+            int start = position;
+            int state = S_START;
+            int lastAccept = DEAD;
+            int lastAcceptEnd = start;
+            int i = start;
+
+            while (true) {
+                if (i == limit) {
+                    long oldBase = base;
+                    boolean read = more(start);
+                    int shift = (int) (base - oldBase);
+                    start -= shift;
+                    i -= shift;
+                    lastAcceptEnd -= shift;
+                    if (!read) break;
+                }
+                char c = buffer[i];
+                int next = TRANSITIONS[state][c < 128 ? CHAR_CLASS[c] : C_OTHER];
+                if (next == DEAD) break;
+                state = next;
+                i++;
+                if (ACCEPTS[state] != null) {
+                    lastAccept = state;
+                    lastAcceptEnd = i;
+                }
+            }
+
+            if (lastAccept == DEAD) {
+                if (diagnostics == null) error(start);
+                diagnostics.add(new Diagnostic("Lexical Error: Unexpected character '" + buffer[start] + "'.",
+                        (int) (base + start)));
+                position = start + 1;
+                continue;
+            }
+
+            position = lastAcceptEnd;
+            LexicalAnalyzer.TokenType type = ACCEPTS[lastAccept];
+            if (type == LexicalAnalyzer.TokenType.WHITESPACE || type == LexicalAnalyzer.TokenType.COMMENT) {
+                continue;
+            }
+            if (type == LexicalAnalyzer.TokenType.IDENTIFIER) {
+                type = keyword(start, lastAcceptEnd - start);
+            }
+            tokenType = type;
+            tokenStart = start;
+            tokenEnd = lastAcceptEnd;
+            return type;
+        }
+        tokenType = null;
+        tokenStart = tokenEnd = limit;
+        return null;
+    }
+
+    /**
+     * Called when the scanner runs out of buffered characters. A streaming subclass calls
+     * compact(keepFrom), reads more input behind the kept characters and returns true;
+     * false means end of input.
+     */
+    protected boolean refill(int keepFrom) {
+        return false;
+    }
+
+    /** Drops buffer[0..keepFrom) from the window, moving the rest to the front. */
+    protected void compact(int keepFrom) {
+        for (int i = 0; i < keepFrom; i++) {
+            if (buffer[i] == '\n') discardedLines++;
+        }
+        System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom);
+        limit -= keepFrom;
+        base += keepFrom;
+    }
+
+    private boolean more(int keepFrom) {
+        long oldBase = base;
+        boolean read = refill(keepFrom);
+        position -= (int) (base - oldBase);
+        return read;
+    }
+
+    public LexicalAnalyzer.TokenType tokenType() {
+        return tokenType;
+    }
+
+    /** Offset of the current token in the input. */
+    public long tokenStart() {
+        return base + tokenStart;
+    }
+
+    public int tokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+    /** Returns the lexeme of the current token. */
+    public String tokenText() {
+        return new String(buffer, tokenStart, tokenEnd - tokenStart);
+    }
+
+    /** Interns the current IDENTIFIER token's text without creating a String for it. */
+    public int internText(NameTable names) {
+        return names.intern(buffer, tokenStart, tokenEnd - tokenStart);
+    }
+
+    /** Parses the current NUMBER token's digits. */
+    public int numberValue() {
+        int value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            int digit = buffer[i] - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                if (diagnostics != null) {
+                    diagnostics.add(new Diagnostic("Lexical Error: Integer literal '" + tokenText() + "' is out of range.",
+                            (int) tokenStart()));
+                    return 0;
+                }
+                throw new RuntimeException("Lexical Error: Integer literal '" + tokenText() + "' is out of range");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Characters of `value` in decimal. A NUMBER lexeme of another length is not the plain
+     * decimal value (leading zeros, or an out-of-range literal read as 0).
+     */
+    static int decimalLength(int value) {
+        int length = 1;
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    /** Keyword lookup on the raw characters: a switch on length, then on the first letter. */
+    private LexicalAnalyzer.TokenType keyword(int start, int length) {
+        char[] b = buffer;
+        switch (length) {
+            case 2:
+                if (b[start] == 'i' && b[start + 1] == 'f') return LexicalAnalyzer.TokenType.IF;
+                break;
+            case 3:
+                if (b[start] == 'i' && b[start + 1] == 'n' && b[start + 2] == 't') return LexicalAnalyzer.TokenType.INT;
+                break;
+            case 4:
+                if (b[start] == 'e' && b[start + 1] == 'l' && b[start + 2] == 's' && b[start + 3] == 'e') {
+                    return LexicalAnalyzer.TokenType.ELSE;
+                }
+                break;
+            case 5:
+                if (b[start] == 'w') {
+                    if (b[start + 1] == 'h' && b[start + 2] == 'i' && b[start + 3] == 'l' && b[start + 4] == 'e') {
+                        return LexicalAnalyzer.TokenType.WHILE;
+                    }
+                } else if (b[start] == 'p') {
+                    if (b[start + 1] == 'r' && b[start + 2] == 'i' && b[start + 3] == 'n' && b[start + 4] == 't') {
+                        return LexicalAnalyzer.TokenType.PRINT;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        return LexicalAnalyzer.TokenType.IDENTIFIER;
+    }
+
+    private void error(int offset) {
+        int line = 1 + discardedLines;
+        for (int i = 0; i < offset; i++) {
+            if (buffer[i] == '\n') line++;
+        }
+        throw new RuntimeException("Lexical Error: Unexpected character '" + buffer[offset] + "' at line " + line);
+    }
+}
@@ -0,0 +1,309 @@
+/**
+ * TokenStream.java
+ * -----------------
+ * A compact, **struct-of-arrays** representation of the token sequence.
+ *
+ * Instead of one Token object (plus a String) per token, the stream keeps:
+ * - types:   the TokenType ordinal of each token, in a byte[]
+ * - starts:  the source offset of each token, in an int[]
+ * - lengths: the source length of each token, in an int[]
+ * - values:  the NameTable ID for identifiers, or the parsed value for numbers
+ *
+ * Identifier names are interned in a NameTable, so each distinct name is stored once.
+ * Keywords and symbols have fixed text and store nothing beyond their type. The text of
+ * a number is its lexeme, sliced from the source by offset and length (so `007` stays
+ * `007`); only a stream without a source (see setSource) rebuilds it from the value.
+ *
+ * The SyntaxAnalyzer reads a stream through cursor() without allocating per token;
+ * the later stages work on the AST it builds. writeTo() dumps the tokens as text.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+public class TokenStream {
+
+    private static final LexicalAnalyzer.TokenType[] TYPES = LexicalAnalyzer.TokenType.values();
+    private static final String[] FIXED_TEXT = new String[TYPES.length];
+
+    static {
+        FIXED_TEXT[LexicalAnalyzer.TokenType.INT.ordinal()] = "int";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.IF.ordinal()] = "if";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.ELSE.ordinal()] = "else";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.WHILE.ordinal()] = "while";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.PRINT.ordinal()] = "print";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.ASSIGN.ordinal()] = "=";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.SEMICOLON.ordinal()] = ";";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.PLUS.ordinal()] = "+";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.MINUS.ordinal()] = "-";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.MULT.ordinal()] = "*";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.DIV.ordinal()] = "/";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.GREATER.ordinal()] = ">";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.LESS.ordinal()] = "<";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.EQUAL.ordinal()] = "==";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.NOTEQUAL.ordinal()] = "!=";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.LPAREN.ordinal()] = "(";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.RPAREN.ordinal()] = ")";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.LBRACE.ordinal()] = "{";
+        FIXED_TEXT[LexicalAnalyzer.TokenType.RBRACE.ordinal()] = "}";
+    }
+
+    private final NameTable names;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] values;
+    private int size = 0;
+    private char[] source; // the characters the offsets refer to; null = unknown
+
+    public TokenStream(NameTable names) {
+        this(names, 64);
+    }
+
+    public TokenStream(NameTable names, int capacity) {
+        this.names = names;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.values = new int[capacity];
+    }
+
+    /** Runs a scanner to the end of its input, collecting every token into a new stream. */
+    public static TokenStream scan(TokenScanner scanner) {
+        NameTable names = new NameTable();
+        TokenStream stream = new TokenStream(names);
+        stream.source = scanner.input();
+        LexicalAnalyzer.TokenType type;
+        while ((type = scanner.next()) != null) {
+            int value = 0;
+            if (type == LexicalAnalyzer.TokenType.IDENTIFIER) {
+                value = scanner.internText(names);
+            } else if (type == LexicalAnalyzer.TokenType.NUMBER) {
+                value = scanner.numberValue();
+            }
+            stream.add(type, (int) scanner.tokenStart(), scanner.tokenLength(), value);
+        }
+        return stream;
+    }
+
+    /** Converts a token list (e.g. from the regex scanner) of `source` into a stream. */
+    public static TokenStream of(List<LexicalAnalyzer.Token> tokens, String source) {
+        TokenStream stream = new TokenStream(new NameTable(), Math.max(tokens.size(), 1));
+        stream.source = source.toCharArray();
+        for (LexicalAnalyzer.Token token : tokens) {
+            int value = 0;
+            if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER) {
+                value = stream.names.intern(token.value);
+            } else if (token.type == LexicalAnalyzer.TokenType.NUMBER) {
+                value = Integer.parseInt(token.value);
+            }
+            stream.add(token.type, token.start, token.value.length(), value);
+        }
+        return stream;
+    }
+
+    public void add(LexicalAnalyzer.TokenType type, int start, int length, int value) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        values[size] = value;
+        size++;
+    }
+
+    /** Sets the characters the token offsets refer to, e.g. after the source has been edited in place. */
+    public void setSource(char[] source) {
+        this.source = source;
+    }
+
+    // === Accessors ===
+
+    public int size() {
+        return size;
+    }
+
+    public NameTable names() {
+        return names;
+    }
+
+    public LexicalAnalyzer.TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int end(int index) {
+        return starts[index] + lengths[index];
+    }
+
+    /** Index of the first token starting at or after the given source offset (size() if none). */
+    public int indexAt(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /** NameTable ID of an IDENTIFIER token. */
+    public int nameId(int index) {
+        return values[index];
+    }
+
+    /** Parsed value of a NUMBER token. */
+    public int number(int index) {
+        return values[index];
+    }
+
+    /** Returns the token text; identifier names are the interned Strings, numbers their lexemes. */
+    public String text(int index) {
+        LexicalAnalyzer.TokenType type = type(index);
+        if (type == LexicalAnalyzer.TokenType.IDENTIFIER) return names.name(values[index]);
+        if (type == LexicalAnalyzer.TokenType.NUMBER) {
+            return source != null ? new String(source, starts[index], lengths[index]) : Integer.toString(values[index]);
+        }
+        return FIXED_TEXT[types[index]];
+    }
+
+    /** Writes every token as `[TYPE : text]`, one per line, in 8 KB chunks. */
+    public void writeTo(Writer out) throws IOException {
+        StringBuilder chunk = new StringBuilder(8192);
+        for (int i = 0; i < size; i++) {
+            LexicalAnalyzer.TokenType type = TYPES[types[i]];
+            chunk.append('[').append(type.name()).append(" : ");
+            if (type == LexicalAnalyzer.TokenType.IDENTIFIER) {
+                chunk.append(names.name(values[i]));
+            } else if (type == LexicalAnalyzer.TokenType.NUMBER && source != null) {
+                chunk.append(source, starts[i], lengths[i]);
+            } else if (type == LexicalAnalyzer.TokenType.NUMBER) {
+                chunk.append(values[i]);
+            } else {
+                chunk.append(FIXED_TEXT[types[i]]);
+            }
+            chunk.append("]\n");
+            if (chunk.length() >= 8000) {
+                out.append(chunk);
+                chunk.setLength(0);
+            }
+        }
+        out.append(chunk);
+    }
+
+    /** Materializes one token as a Token object (for diagnostics and printing). */
+    public LexicalAnalyzer.Token token(int index) {
+        return new LexicalAnalyzer.Token(type(index), text(index), starts[index]);
+    }
+
+    /** Text of a keyword or symbol token type, or null for identifiers and numbers. */
+    public static String fixedText(LexicalAnalyzer.TokenType type) {
+        return FIXED_TEXT[type.ordinal()];
+    }
+
+    /**
+     * Replaces tokens [from, to) with the tokens of `replacement` (which must share this
+     * stream's NameTable) and moves the start offsets of the following tokens by `delta`.
+     */
+    public void replace(int from, int to, TokenStream replacement, int delta) {
+        int count = replacement.size;
+        int newSize = size - (to - from) + count;
+        if (newSize > types.length) {
+            int capacity = Math.max(newSize, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        if (count != to - from) {
+            int tail = size - to;
+            System.arraycopy(types, to, types, from + count, tail);
+            System.arraycopy(starts, to, starts, from + count, tail);
+            System.arraycopy(lengths, to, lengths, from + count, tail);
+            System.arraycopy(values, to, values, from + count, tail);
+        }
+        System.arraycopy(replacement.types, 0, types, from, count);
+        System.arraycopy(replacement.starts, 0, starts, from, count);
+        System.arraycopy(replacement.lengths, 0, lengths, from, count);
+        System.arraycopy(replacement.values, 0, values, from, count);
+        size = newSize;
+        if (delta != 0) {
+            for (int i = from + count; i < size; i++) {
+                starts[i] += delta;
+            }
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    /** Cursor positioned at the given token index. */
+    public Cursor cursor(int index) {
+        return new Cursor(index);
+    }
+
+    /** Cursor over the stream that reads straight from the arrays. */
+    public class Cursor implements TokenCursor {
+        private int index;
+
+        private Cursor(int index) {
+            this.index = index;
+        }
+
+        /** Index of the next token in the stream. */
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public LexicalAnalyzer.TokenType peekType() {
+            return index < size ? TYPES[types[index]] : null;
+        }
+
+        @Override
+        public LexicalAnalyzer.Token peek() {
+            return index < size ? token(index) : null;
+        }
+
+        @Override
+        public void advance() {
+            index++;
+        }
+
+        @Override
+        public String text() {
+            return TokenStream.this.text(index - 1);
+        }
+
+        @Override
+        public int number() {
+            return values[index - 1];
+        }
+
+        @Override
+        public int peekStart() {
+            return index < size ? starts[index] : -1;
+        }
+
+        @Override
+        public int end() {
+            return index > 0 ? starts[index - 1] + lengths[index - 1] : -1;
+        }
+    }
+}